@@ -1,19 +1,33 @@
 package main.actions;
 
 import main.data.LineData;
+import main.data.TabState;
+import main.data.document.PieceTableDocument;
+import main.data.io.AtomicFileWriter;
+import main.data.io.HeapUsage;
+import main.data.io.MappedFileReader;
 import main.editor.Editor;
 import main.gui.EditorContainer;
 import main.gui.components.fileinfo.FileSelector;
+import main.gui.components.EditorTextPane;
+import main.gui.components.PagedViewer;
 import main.gui.components.PopUp;
 import main.gui.components.fileinfo.FileTree;
 
 import javax.swing.*;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.print.PrinterException;
 import java.io.*;
+import java.nio.CharBuffer;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Contains the actions (e.g. create new tab, save as, copy, paste) that are
@@ -27,18 +41,38 @@ public class EditorActions implements ActionListener {
     // Container for text editor used for additional functionality
     private final EditorContainer editorContainer;
 
-    // The maximum number of tabs allowed open in the editor
-    private final int MAX_TABS;
+    // Maps and decodes the files that are opened
+    private final MappedFileReader fileReader;
+
+    // Encodes and writes the files that are saved
+    private final AtomicFileWriter fileWriter;
+
+    // The saves started and not yet known to be finished
+    private final ArrayList<FileSaver> pendingSaves;
+
+    // Runs the saves in the background, one at a time and in the order they were started
+    private final ExecutorService saveExecutor;
 
     /**
      * Constructs a new EditorActions instance
      *
-     * @param MAX_TABS          the max number of tabs allowed open at once
      * @param editorContainer   contains GUI contents for the text editor
      */
-    public EditorActions(final int MAX_TABS, EditorContainer editorContainer) {
-        this.MAX_TABS = MAX_TABS;
+    public EditorActions(EditorContainer editorContainer) {
         this.editorContainer = editorContainer;
+
+        fileReader      = new MappedFileReader();
+        fileWriter      = new AtomicFileWriter();
+        pendingSaves    = new ArrayList<>();
+        saveExecutor    = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                // Does not keep the editor running once closed ('waitForSaves' is used for that)
+                Thread saveThread = new Thread(r, "File saver");
+                saveThread.setDaemon(true);
+                return saveThread;
+            }
+        });
     }
 
     /**
@@ -73,6 +107,10 @@ public class EditorActions implements ActionListener {
                 openRecentFunctionality();
                 break;
 
+            case "Go to File...":
+                goToFileFunctionality();
+                break;
+
             case "Settings...":
                 settingsFunctionality();
                 break;
@@ -153,6 +191,10 @@ public class EditorActions implements ActionListener {
                 joinLinesFunctionality(index);
                 break;
 
+            case "Go to Matching Bracket":
+                goToBracketFunctionality(index);
+                break;
+
             case "Switch Case":
                 switchCaseFunctionality(index);
                 break;
@@ -175,6 +217,10 @@ public class EditorActions implements ActionListener {
 
             case "Edit Configurations...":
                 break;
+
+            case "Paint Cost":
+                paintCostFunctionality(index);
+                break;
         }
     }
 
@@ -238,12 +284,14 @@ public class EditorActions implements ActionListener {
      * Closes the whole editor
      */
     public void closeEditorFunctionality() {
-        if(saveAllFunctionality())
+        if(saveAllFunctionality() && waitForSaves())
             editorContainer.getMainFrame().dispose();
     }
 
     /**
-     *  Closes the tab that is currently selected/ being looked at
+     *  Closes the tab that is currently selected/ being looked at.  A tab saved
+     *  before closing is closed once its file is written; it stays open if the
+     *  save fails (or if its text changed while saving).
      *
      * @param index     the tab index at which to close the tab
      */
@@ -252,33 +300,41 @@ public class EditorActions implements ActionListener {
         if(editorContainer.getFileData().numTabsOpen() <= 0)
             return;
 
-        String ogText               = editorContainer.getFileData().getTabOgText(index);
-        String currentText          = editorContainer.getTextPane(index).getText();
-        boolean closeTab            = true;
+        // Closing a hibernated tab does not wake it up, unless it is saved
+        final TabState tab                  = editorContainer.getFileData().getTabs().get(index);
+        final PieceTableDocument document   = editorContainer.getTabHibernator().getDocument(tab);
 
-        // Check if any changes were made to the file since last save
-        if (!ogText.equals(currentText)) {
+        /* Check if any changes were made to the file since last save (none in a read-only
+           viewer, or in a file still loading or not loaded completely, which cannot be saved) */
+        if (!editorContainer.getFileData().isReadOnly(index) && tab.getTextPane().isEditable()
+                && document.isModified()) {
             int p = PopUp.displayConfirmMessage(editorContainer.getMainFrame(),
                     "Save before closing tab?");
 
             if (p == PopUp.OK_OPTION) {
+                // The tab is closed by the saver, once the file is written
+                Runnable onSaved = new Runnable() {
+                    @Override
+                    public void run() {
+                        if(document.isModified())
+                            editorContainer.getFillerBox().setStatusText("Tab not closed: changed while saving");
+                        else
+                            removeTab(tab);
+                    }
+                };
+
                 if (editorContainer.getFileData().getTabPath(index) == null)
-                    closeTab = saveAsFunctionality(index);
+                    saveAsFunctionality(index, onSaved);
                 else
-                    closeTab = saveFunctionality(index);
+                    saveFunctionality(index, onSaved);
+
+                return;
             } else if(p != PopUp.NO_OPTION) {
-                closeTab = false;
+                return;
             }
         }
 
-        if(closeTab) {
-            editorContainer.getSearchBox().removeSearchBoxAtIndex(index);
-            editorContainer.getReplaceBox().removeReplaceBoxAtIndex(index);
-            editorContainer.getFileData().removeTabData(index);
-            editorContainer.getTabbedPane().remove(index);
-            editorContainer.removeTextPane(index);
-            editorContainer.checkTextForChanges();
-        }
+        removeTab(tab);
     }
 
     /**
@@ -317,6 +373,22 @@ public class EditorActions implements ActionListener {
         editorContainer.getReplaceBox().showReplaceBox(index, false);
     }
 
+    /**
+     *  Moves the caret to the bracket matching the one next to it (see BracketMatcher)
+     *
+     * @param index     the index in the tabbed pane
+     */
+    public void goToBracketFunctionality(int index) {
+        editorContainer.getTextPane(index).getBracketMatcher().jumpToMatch();
+    }
+
+    /**
+     * Shows a window to open a file of the project by typing part of its name
+     */
+    public void goToFileFunctionality() {
+        editorContainer.getFileFinderBox().showFinderBox();
+    }
+
     /**
      *  Joins the current line that the caret is positioned on with the
      *  line below it.  Doesn't do anything if the line the caret is on
@@ -332,15 +404,13 @@ public class EditorActions implements ActionListener {
      * Creates a new tab for the text editor
      */
     public void newFunctionality() {
-        if(editorContainer.getFileData().numTabsOpen() < MAX_TABS) {
-            // Index set to current number of tabs open since new tab not created yet
-            int index = editorContainer.getFileData().numTabsOpen();
-
-            editorContainer.getFileData().addTabData();
-            editorContainer.constructTextPane(index);
-            editorContainer.setFrameTitle(editorContainer.getFileData().getTabName(index), false);
-            editorContainer.getTabbedPane().setSelectedIndex(index);
-        }
+        // Index set to current number of tabs open since new tab not created yet
+        int index = editorContainer.getFileData().numTabsOpen();
+
+        editorContainer.getFileData().addTabData();
+        editorContainer.constructTextPane(index);
+        editorContainer.setFrameTitle(editorContainer.getFileData().getTabName(index), false);
+        editorContainer.getTabbedPane().setSelectedIndex(index);
     }
 
     public void newProjectFunctionality() {
@@ -351,6 +421,18 @@ public class EditorActions implements ActionListener {
      * Creates a new tab in the editor with text from a previously saved file
      */
     public void openFunctionality(String path) {
+        openFunctionality(path, null);
+    }
+
+    /**
+     *  Creates a new tab in the editor with text from a previously saved file, then
+     *  runs an action once all of its text is in (or once it is shown in a viewer)
+     *
+     * @param path      the path of the file; the user picks one if null or empty
+     * @param onOpened  run on the EDT once the file is opened; may be null.  Not run
+     *                  if the file could not be opened (or loaded completely).
+     */
+    public void openFunctionality(String path, Runnable onOpened) {
         FileSelector selector = new FileSelector(editorContainer.getFileData().getLastOpenPath());
         int r;
 
@@ -366,53 +448,53 @@ public class EditorActions implements ActionListener {
             else
                 file = new File(path);
 
-            try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            // Files too large to edit are shown in a read-only viewer, always in a new tab
+            if(PagedViewer.isTooLargeToEdit(file)) {
+                if(openInViewer(file) && onOpened != null)
+                    onOpened.run();
 
-                StringBuilder builder   = new StringBuilder();
-                String currentLine      = reader.readLine();
-                int index               = editorContainer.getTabbedPane().getSelectedIndex();
-
-                // Ask user if he/ she wants the file open in a new tab
-                int option = PopUp.displayConfirmMessage(editorContainer.getMainFrame(), "Open in new tab?");
-                if(option == PopUp.OK_OPTION) {
+                return;
+            }
 
-                    // No tabs open or max tab limit reached
-                    if(editorContainer.getFileData().numTabsOpen() <= 0 || editorContainer.getFileData().numTabsOpen() >= MAX_TABS) {
-                        PopUp.displayStandardMessage(editorContainer.getMainFrame(), "Too many tabs open.");
-                        return;
-                    }
+            int index = editorContainer.getTabbedPane().getSelectedIndex();
 
-                    newFunctionality();
-                    index = editorContainer.getTabbedPane().getSelectedIndex();
-                }
+            // Ask user if he/ she wants the file open in a new tab
+            int option = PopUp.displayConfirmMessage(editorContainer.getMainFrame(), "Open in new tab?");
+            if(option == PopUp.OK_OPTION) {
+                newFunctionality();
+                index = editorContainer.getTabbedPane().getSelectedIndex();
+            }
 
-                // User cancelled open functionality
-                if(option != PopUp.OK_OPTION && option != PopUp.NO_OPTION)
-                    return;
+            // User cancelled open functionality
+            if(option != PopUp.OK_OPTION && option != PopUp.NO_OPTION)
+                return;
 
-                // Read all text from given file
-                builder.append(currentLine.replaceAll("\n", ""));
-                while((currentLine = reader.readLine()) != null) {
-                    builder.append('\n');
-                    builder.append(currentLine.replaceAll("\n", ""));
-                }
+            // Large files are streamed into the text pane in the background
+            if(file.length() >= FileLoader.BACKGROUND_LOAD_SIZE) {
+                new FileLoader(editorContainer, index, file, onOpened).start();
+                setOpenedFileData(index, file, false);
+                return;
+            }
 
-                editorContainer.getTextPane(index).setText(builder.toString());
-                editorContainer.getFileData().setLastOpenPath(file.getAbsolutePath());
+            try {
+                long startTime = System.nanoTime();
+                HeapUsage.resetPeak();
 
-                // Set appropriate data for FileData instance
-                editorContainer.getFileData().setTabName(index, file.getName());
-                editorContainer.getFileData().setTabPath(index, file.getAbsolutePath());
-                editorContainer.getFileData().setTabOgText(index, builder.toString());
-                editorContainer.getFileData().setOpenedFromDir(index, true);
+                // Map the file and hand the decoded text straight to the document
+                CharBuffer text             = fileReader.read(file);
+                PieceTableDocument document = (PieceTableDocument) editorContainer.getTextPane(index).getDocument();
 
-                editorContainer.getFillerBox().setShownText(file.getAbsolutePath());
+                document.load(text.array(), text.limit());
+                document.putProperty(DefaultEditorKit.EndOfLineStringProperty, fileReader.getLineSeparator());
+                editorContainer.getTextPane(index).setCaretPosition(0);
 
-                // Set appropriate titles
-                editorContainer.setFrameTitle(editorContainer.getFileData().getTabName(index), false);
-                editorContainer.getTabbedPane().setTitleAt(index, editorContainer.getFileData().getTabName(index));
+                setOpenedFileData(index, file, true);
+                editorContainer.getFillerBox().setStatusText(String.format("Opened in %d ms (peak heap %d MB)",
+                        (System.nanoTime() - startTime) / 1_000_000, HeapUsage.getPeak() / (1_024 * 1_024)));
 
-            } catch(IOException i) {
+                if(onOpened != null)
+                    onOpened.run();
+            } catch(IOException | OutOfMemoryError i) {
                 PopUp.displayErrorMessage(editorContainer.getMainFrame(), i.getMessage());
             }
         }
@@ -427,6 +509,9 @@ public class EditorActions implements ActionListener {
 
             editorContainer.getFileTree().setNewModel(file);
 
+            // Searching the project only reads the files the index narrows it down to
+            editorContainer.getProjectIndexer().open(file.toPath());
+
             // Set appropriate title
             editorContainer.setFrameTitle("Project", false);
         }
@@ -436,6 +521,23 @@ public class EditorActions implements ActionListener {
 
     }
 
+    /**
+     *  Shows in the status bar what painting the text pane of a tab has cost since
+     *  last asked (see FrameCost), then starts counting again, e.g. to compare the
+     *  cost of typing or scrolling before and after a change
+     *
+     * @param index     the index of the tab in the tabbed pane
+     */
+    public void paintCostFunctionality(int index) {
+        EditorTextPane textPane = editorContainer.getTextPane(index);
+
+        if(textPane == null)
+            return;
+
+        editorContainer.getFillerBox().setStatusText("Painted " + textPane.getFrameCost());
+        textPane.getFrameCost().reset();
+    }
+
     /**
      *  Displays the replace box while hiding the search box
      *
@@ -491,10 +593,13 @@ public class EditorActions implements ActionListener {
 
         // Iterate over each tab
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
+            TabState tab                = editorContainer.getFileData().getTabs().get(i);
+            PieceTableDocument document = editorContainer.getTabHibernator().getDocument(tab);
+
             // File not "save as"-ed, only pop up once - no path yet
             if(!unsavedFile && editorContainer.getFileData().getTabPath(i) == null) {
                 // If no text in text pane, no need to save empty text pane to file
-                if(!editorContainer.getTextPane(i).getText().equals("")) {
+                if(document.getLength() > 0) {
                     if (PopUp.displayConfirmMessage(editorContainer.getMainFrame(),
                             "One or more files not saved to path.  Continue anyways?") != PopUp.OK_OPTION)
                         return false;
@@ -503,6 +608,10 @@ public class EditorActions implements ActionListener {
                 }
             }
 
+            // A hibernated tab matching its file is not woken up to save it again
+            if(editorContainer.getTabHibernator().isHibernated(tab) && !document.isModified())
+                continue;
+
             saveFunctionality(i);
         }
 
@@ -516,36 +625,30 @@ public class EditorActions implements ActionListener {
      * @return          true if successfully saved, false if not
      */
     public boolean saveAsFunctionality(int index) {
-        FileSelector selector    = new FileSelector(editorContainer.getFileData().getLastSavePath());
-        int r                   = selector.showSaveDialog(null);
-
-        if(r == FileSelector.APPROVE_OPTION) {
-            File file = selector.getSelectedFile();
-            try(BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-
-                String text = editorContainer.getTextPane(index).getText();
-
-                writer.write(text);
-
-                // Set appropriate data for FileData instance
-                editorContainer.getFileData().setTabName(index, file.getName());
-                editorContainer.getFileData().setTabPath(index, file.getAbsolutePath());
-                editorContainer.getFileData().setTabOgText(index, text);
-
-                // Set titles
-                editorContainer.setFrameTitle(editorContainer.getFileData().getTabName(index), false);
-                editorContainer.getTabbedPane().setTitleAt(index, editorContainer.getFileData().getTabName(index));
+        return saveAsFunctionality(index, null);
+    }
 
-                editorContainer.getFillerBox().setShownText(file.getAbsolutePath());
+    /**
+     *  Saves text to a file in a designated location on the user's computer, then
+     *  runs an action if (and only if) the file was written
+     *
+     * @param index     index in the tabbed pane, at which a text pane's text is to be saved
+     * @param onSaved   run on the EDT once the file is written; may be null
+     * @return          true if the save was started, false if not
+     */
+    public boolean saveAsFunctionality(int index, Runnable onSaved) {
+        // A viewer only holds the part of its file on the screen
+        if(editorContainer.getFileData().isReadOnly(index)) {
+            PopUp.displayStandardMessage(editorContainer.getMainFrame(), "Read-only file; cannot save as.");
+            return false;
+        }
 
-                writer.flush();
-                writer.close();
+        FileSelector selector    = new FileSelector(editorContainer.getFileData().getLastSavePath());
+        int r                   = selector.showSaveDialog(null);
 
-                return true;
-            } catch(IOException i) {
-                PopUp.displayErrorMessage(editorContainer.getMainFrame(), i.getMessage());
-            }
-        }
+        // The tab's name and path are set once the file is written
+        if(r == FileSelector.APPROVE_OPTION)
+            return saveTo(index, selector.getSelectedFile(), onSaved);
 
         return false;
     }
@@ -557,34 +660,26 @@ public class EditorActions implements ActionListener {
      * @return       true if successfully saved, false if not
      */
     public boolean saveFunctionality(int index) {
+        return saveFunctionality(index, null);
+    }
+
+    /**
+     *  Saves a given file, then runs an action if (and only if) the file was written
+     *
+     * @param index     the index at which to save a file
+     * @param onSaved   run on the EDT once the file is written; may be null
+     * @return          true if the save was started, false if not
+     */
+    public boolean saveFunctionality(int index, Runnable onSaved) {
         // No path set yet
         if(editorContainer.getFileData().getTabPath(index) == null)
             return false;
 
-        try(BufferedWriter writer
-                    = new BufferedWriter(new FileWriter(editorContainer
-                .getFileData().getTabPath(index), false))) {
-
-            String text = editorContainer.getTextPane(index).getText();
-
-            writer.write(text);
-
-            // Set new original text
-            editorContainer.getFileData().setTabOgText(index, text);
-
-            // Set titles
-            editorContainer.setFrameTitle(editorContainer.getFileData().getTabName(index), false);
-            editorContainer.getTabbedPane().setTitleAt(index, editorContainer.getFileData().getTabName(index));
-
-            writer.flush();
-            writer.close();
-
+        // Nothing to save in a read-only viewer
+        if(editorContainer.getFileData().isReadOnly(index))
             return true;
-        } catch(IOException i) {
-            PopUp.displayErrorMessage(editorContainer.getMainFrame(), i.getMessage());
-        }
 
-        return false;
+        return saveTo(index, new File(editorContainer.getFileData().getTabPath(index)), onSaved);
     }
 
     /**
@@ -716,6 +811,31 @@ public class EditorActions implements ActionListener {
         }
     }
 
+    /**
+     *  Waits for the saves running in the background to finish, e.g. before the
+     *  editor is closed
+     *
+     * @return  true if every save finished, false if one failed while waiting
+     */
+    public boolean waitForSaves() {
+        boolean saved = true;
+
+        for(FileSaver saver : pendingSaves) {
+            // Finished saves already reported how they went
+            if(saver.isDone())
+                continue;
+
+            try {
+                saver.get();
+            } catch(InterruptedException | ExecutionException ex) {
+                saved = false;
+            }
+        }
+
+        pendingSaves.clear();
+        return saved;
+    }
+
     /**
      *  Creates a new String that alternates between lower and upper case letters
      *  in the English alphabet
@@ -824,4 +944,110 @@ public class EditorActions implements ActionListener {
 
         return end;
     }
+
+    /**
+     *  Opens a file too large to edit in a new tab, as a read-only viewer
+     *
+     * @param file  the file to open
+     * @return      true if the file is shown, false if it could not be mapped
+     */
+    private boolean openInViewer(File file) {
+        newFunctionality();
+        int index = editorContainer.getTabbedPane().getSelectedIndex();
+
+        try {
+            editorContainer.constructViewer(index, file);
+            setOpenedFileData(index, file, true);
+            editorContainer.getFillerBox().setStatusText("Opened read-only (too large to edit)");
+            return true;
+        } catch(IOException i) {
+            PopUp.displayErrorMessage(editorContainer.getMainFrame(), i.getMessage());
+            closeTabFunctionality(index);
+            return false;
+        }
+    }
+
+    /**
+     *  Removes a tab, along with its data, from the editor
+     *
+     * @param tab   the tab to remove; nothing is done if it is already closed
+     */
+    private void removeTab(TabState tab) {
+        int index = editorContainer.getFileData().getTabs().indexOf(tab);
+
+        if(index < 0)
+            return;
+
+        // Stop indexing the file shown in a viewer, and close it
+        if(editorContainer.getTabbedPane().getComponentAt(index) instanceof PagedViewer)
+            ((PagedViewer) editorContainer.getTabbedPane().getComponentAt(index)).close();
+
+        editorContainer.getSearchBox().removeSearchBoxAtIndex(index);
+        editorContainer.getReplaceBox().removeReplaceBoxAtIndex(index);
+        editorContainer.getTabHibernator().forget(tab);
+        editorContainer.getFileData().removeTabData(index);
+        editorContainer.getTabbedPane().remove(index);
+        editorContainer.checkTextForChanges();
+    }
+
+    /**
+     *  Starts saving the text of a tab to a file in the background (see FileSaver)
+     *
+     * @param index     the index in the tabbed pane of the tab to save
+     * @param file      the file to save to
+     * @param onSaved   run on the EDT once the file is written; may be null
+     * @return          true if the save was started, false if the text cannot be saved yet
+     */
+    private boolean saveTo(int index, File file, Runnable onSaved) {
+        EditorTextPane textPane = editorContainer.getTextPane(index);
+
+        // A file still loading in the background (or that failed to load) is not complete
+        if(!textPane.isEditable()) {
+            PopUp.displayStandardMessage(editorContainer.getMainFrame(),
+                    "Cannot save a file that is loading, or that could not be loaded completely.");
+            return false;
+        }
+
+        PieceTableDocument document = (PieceTableDocument) textPane.getDocument();
+        Object lineSeparator        = document.getProperty(DefaultEditorKit.EndOfLineStringProperty);
+        FileSaver saver             = new FileSaver(editorContainer, index, file, document.snapshot(),
+                lineSeparator instanceof String ? (String) lineSeparator : "\n", fileWriter, onSaved);
+
+        // Forget the saves that have finished
+        pendingSaves.removeIf(FileSaver::isDone);
+        pendingSaves.add(saver);
+        saveExecutor.execute(saver);
+
+        return true;
+    }
+
+    /**
+     *  Records a file that was opened into a tab: its name and path in the
+     *  FileData instance, and the titles and path shown by the editor
+     *
+     * @param index     the index in the tabbed pane the file was opened into
+     * @param file      the file that was opened
+     * @param loaded    true if the text of the file is in the tab, and is marked saved; false
+     *                  if it is still loading (FileLoader marks it saved once all of it is in)
+     */
+    private void setOpenedFileData(int index, File file, boolean loaded) {
+        editorContainer.getFileData().setLastOpenPath(file.getAbsolutePath());
+
+        // Set appropriate data for FileData instance
+        editorContainer.getFileData().setTabName(index, file.getName());
+        editorContainer.getFileData().setTabPath(index, file.getAbsolutePath());
+        editorContainer.getFileData().setOpenedFromDir(index, true);
+
+        if(loaded) {
+            PieceTableDocument document = (PieceTableDocument) editorContainer.getTextPane(index).getDocument();
+
+            document.markSaved(document.snapshot());
+        }
+
+        editorContainer.getFillerBox().setShownText(file.getAbsolutePath());
+
+        // Set appropriate titles
+        editorContainer.setFrameTitle(editorContainer.getFileData().getTabName(index), false);
+        editorContainer.getTabbedPane().setTitleAt(index, editorContainer.getFileData().getTabName(index));
+    }
 }
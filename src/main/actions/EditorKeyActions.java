@@ -38,9 +38,15 @@ public class EditorKeyActions implements KeyListener {
     /** The key responsible for finding a user-typed phrase */
     public static final int FIND_PHRASE_KEY = KeyEvent.VK_F;
 
+    /** The key responsible for opening a file of the project by typing part of its name */
+    public static final int GO_TO_FILE_KEY = KeyEvent.VK_N;
+
     /** The key responsible for joining the current line (holding caret) with the line below */
     public static final int JOIN_LINES_KEY = KeyEvent.VK_J;
 
+    /** The key responsible for moving the caret to the bracket matching the one next to it */
+    public static final int MATCH_BRACKET_KEY = KeyEvent.VK_M;
+
     /** The key responsible for creating a new tab */
     public static final int NEW_TAB_KEY = KeyEvent.VK_T;
 
@@ -98,10 +104,12 @@ public class EditorKeyActions implements KeyListener {
 
         int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
 
-        if(editorContainer.getSearchBox().isTextChanged(tabIndex)
-                || isArrowKey(e.getKeyCode())) {
-            if(editorContainer.getSearchBox().isVisible())
+        // Edits are searched as they are made, so the text is only searched again if that was cut short
+        if(editorContainer.getSearchBox().isVisible()) {
+            if(editorContainer.getSearchBox().isTextChanged(tabIndex))
                 editorContainer.getSearchBox().rehighlight(true);
+            else if(isArrowKey(e.getKeyCode()))
+                editorContainer.getSearchBox().reselect();
         }
     }
 
@@ -0,0 +1,223 @@
+package main.actions;
+
+import main.data.document.PieceTableDocument;
+import main.data.io.HeapUsage;
+import main.data.io.MappedFileReader;
+import main.gui.EditorContainer;
+import main.gui.components.EditorTextPane;
+import main.gui.components.PopUp;
+
+import javax.swing.*;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Loads a (large) file into a text pane in the background.  The file is decoded
+ * a chunk at a time off the EDT, and each batch of decoded chunks is added to the
+ * end of the text pane's document in one EDT slice, so the first screen of text
+ * shows up right away and the editor stays responsive while the rest loads.
+ *
+ * The text pane is read-only until the whole file is in (for good, if the file
+ * cannot be read to its end), and the tab shows a progress bar meanwhile.  The whole load is undone as a single edit.
+ *
+ * @author Justin Kocur
+ */
+public class FileLoader extends SwingWorker<Void, CharBuffer> {
+    /** Files at least this large (in bytes) are loaded in the background */
+    public static final long BACKGROUND_LOAD_SIZE = 4 * 1_024 * 1_024;
+
+    // The number of bytes decoded for each chunk after the first one
+    private static final int CHUNK_SIZE = 2 * 1_024 * 1_024;
+
+    // The number of bytes decoded for the first chunk, enough to fill the screen
+    private static final int FIRST_CHUNK_SIZE = 16 * 1_024;
+
+    // The number of decoded chunks allowed to wait for the EDT at once
+    private static final int MAX_PENDING_CHUNKS = 4;
+
+    // Combines every change made by the load, so it is undone in one step
+    private final CompoundEdit edit;
+
+    // The main GUI for the text editor
+    private final EditorContainer editorContainer;
+
+    // The file to load
+    private final File file;
+
+    // The time at which the first chunk appeared in the text pane (ms since the load began)
+    private long firstChunkTime;
+
+    // Run once the whole file is in; may be null
+    private final Runnable onLoaded;
+
+    // Limits how far the background thread can get ahead of the EDT
+    private final Semaphore pendingChunks;
+
+    // Decodes the file a chunk at a time
+    private final MappedFileReader reader;
+
+    // The time at which the load began
+    private final long startTime;
+
+    // The component on the tab of the text pane (its scroll pane)
+    private final JComponent tabComponent;
+
+    // The text pane to load the file into
+    private final EditorTextPane textPane;
+
+    /**
+     *  Creates a loader for a file, running an action once the whole file is in;
+     *  call 'execute' to start it
+     *
+     * @param editorContainer   the main GUI for the text editor
+     * @param index             the index in the tabbed pane of the text pane to load into
+     * @param file              the file to load
+     * @param onLoaded          run on the EDT once the whole file is in; may be null.  Not
+     *                          run if the load is cancelled or fails.
+     */
+    public FileLoader(EditorContainer editorContainer, int index, File file, Runnable onLoaded) {
+        this.editorContainer    = editorContainer;
+        this.file               = file;
+        this.onLoaded           = onLoaded;
+
+        textPane        = editorContainer.getTextPane(index);
+        tabComponent    = (JComponent) editorContainer.getTabbedPane().getComponentAt(index);
+        reader          = new MappedFileReader();
+        pendingChunks   = new Semaphore(MAX_PENDING_CHUNKS);
+        edit            = new CompoundEdit();
+        startTime       = System.nanoTime();
+    }
+
+    /**
+     *  Decodes the file a chunk at a time, handing each chunk to the EDT
+     *
+     * @return              nothing
+     * @throws IOException  if the file cannot be read
+     */
+    @Override
+    protected Void doInBackground() throws IOException {
+        try {
+            reader.open(file);
+
+            int chunkSize = FIRST_CHUNK_SIZE;
+
+            while(!reader.isFinished() && !isCancelled()) {
+                pendingChunks.acquire();
+
+                publish(reader.readChunk(chunkSize));
+                setProgress((int) (100 * reader.getPosition() / Math.max(reader.getSize(), 1)));
+
+                chunkSize = CHUNK_SIZE;
+            }
+        } catch(InterruptedException | ClosedByInterruptException ex) {
+            // Cancelled while waiting for the EDT or reading
+        } finally {
+            reader.close();
+        }
+
+        return null;
+    }
+
+    /**
+     * Lets the text pane be edited again, records the loaded file and runs the action
+     * waiting for it; if the file could not be read, shows why and leaves the text
+     * pane read-only
+     */
+    @Override
+    protected void done() {
+        int index = editorContainer.getTabbedPane().indexOfComponent(tabComponent);
+
+        edit.end();
+
+        // Tab was closed while loading
+        if(index < 0 || isCancelled())
+            return;
+
+        PieceTableDocument document = (PieceTableDocument) textPane.getDocument();
+
+        /* The part of the file loaded stays read-only (and is never marked saved),
+           so it cannot be saved over the whole file by mistake */
+        try {
+            get();
+        } catch(InterruptedException | ExecutionException ex) {
+            String message = ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage();
+
+            PopUp.displayErrorMessage(editorContainer.getMainFrame(), message);
+            editorContainer.getTabbedPane().setLoadFailed(tabComponent, message);
+            editorContainer.getFillerBox().setStatusText("Could not load " + file.getName() + " completely; opened read-only");
+            editorContainer.checkTextForChanges();
+            return;
+        }
+
+        document.putProperty(DefaultEditorKit.EndOfLineStringProperty, reader.getLineSeparator());
+        document.postEdit(edit);
+
+        textPane.setEditable(true);
+        editorContainer.getTabbedPane().setLoadProgress(tabComponent, -1);
+        document.markSaved(document.snapshot());
+        editorContainer.getFillerBox().setStatusText(String.format(
+                "Opened in %d ms, first text after %d ms (peak heap %d MB)",
+                (System.nanoTime() - startTime) / 1_000_000, firstChunkTime, HeapUsage.getPeak() / (1_024 * 1_024)));
+        editorContainer.checkTextForChanges();
+
+        if(onLoaded != null)
+            onLoaded.run();
+    }
+
+    /**
+     *  Adds a batch of decoded chunks to the end of the document, all in this EDT slice
+     *
+     * @param chunks    the decoded chunks, in file order
+     */
+    @Override
+    protected void process(List<CharBuffer> chunks) {
+        // Stop reading if the tab was closed
+        if(editorContainer.getTabbedPane().indexOfComponent(tabComponent) < 0) {
+            cancel(true);
+            return;
+        }
+
+        PieceTableDocument document = (PieceTableDocument) textPane.getDocument();
+
+        for(CharBuffer chunk : chunks) {
+            addEdit(document.append(chunk.array(), chunk.limit()));
+            pendingChunks.release();
+        }
+
+        if(firstChunkTime == 0)
+            firstChunkTime = Math.max((System.nanoTime() - startTime) / 1_000_000, 1);
+
+        editorContainer.getTabbedPane().setLoadProgress(tabComponent, getProgress());
+    }
+
+    /**
+     * Empties the text pane and makes it read-only, then starts loading in the background
+     */
+    public void start() {
+        HeapUsage.resetPeak();
+
+        textPane.setEditable(false);
+        addEdit(((PieceTableDocument) textPane.getDocument()).clear());
+        editorContainer.getTabbedPane().setLoadProgress(tabComponent, 0);
+
+        execute();
+    }
+
+    /**
+     *  Adds a change made by the load to the edit undoing it
+     *
+     * @param change    the change; ignored if null
+     */
+    private void addEdit(UndoableEdit change) {
+        if(change != null)
+            edit.addEdit(change);
+    }
+}
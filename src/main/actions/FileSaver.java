@@ -0,0 +1,133 @@
+package main.actions;
+
+import main.data.TabState;
+import main.data.document.PieceTableDocument;
+import main.data.document.TextSnapshot;
+import main.data.io.AtomicFileWriter;
+import main.gui.EditorContainer;
+import main.gui.components.PopUp;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Saves the text of a tab in the background.  The text is snapshotted on the EDT
+ * (only the piece list is copied), then encoded and written off the EDT by an
+ * AtomicFileWriter, so the user can keep typing while a large file is saved and
+ * a failed save never damages the file.
+ *
+ * Once the file is written, the tab's name and path are updated, and the snapshot
+ * is recorded as the document's saved state, and the action waiting on the save
+ * (e.g. closing the tab) is run; it is never run if the save fails.
+ *
+ * @author Justin Kocur
+ */
+public class FileSaver extends SwingWorker<Void, Void> {
+    // The main GUI for the text editor
+    private final EditorContainer editorContainer;
+
+    // The document of the tab being saved
+    private final PieceTableDocument document;
+
+    // The file to save to
+    private final File file;
+
+    // The line separator to write in place of every '\n'
+    private final String lineSeparator;
+
+    // Run once the file is written; null if nothing waits on the save
+    private final Runnable onSaved;
+
+    // The time at which the save began
+    private final long startTime;
+
+    // The tab being saved
+    private final TabState tab;
+
+    // The text to save
+    private final TextSnapshot text;
+
+    // Writes the file; shared by every save, which run one at a time
+    private final AtomicFileWriter writer;
+
+    /**
+     *  Creates a saver for the text of a tab; it is run by an executor (or 'execute')
+     *
+     * @param editorContainer   the main GUI for the text editor
+     * @param index             the index in the tabbed pane of the tab to save
+     * @param file              the file to save to
+     * @param text              the snapshot of the text to save
+     * @param lineSeparator     the line separator to write in place of every '\n'
+     * @param writer            writes the file
+     * @param onSaved           run on the EDT once the file is written; may be null
+     */
+    public FileSaver(EditorContainer editorContainer, int index, File file, TextSnapshot text,
+                     String lineSeparator, AtomicFileWriter writer, Runnable onSaved) {
+        this.editorContainer    = editorContainer;
+        this.file               = file;
+        this.text               = text;
+        this.lineSeparator      = lineSeparator;
+        this.writer             = writer;
+        this.onSaved            = onSaved;
+
+        tab             = editorContainer.getFileData().getTabs().get(index);
+        document        = (PieceTableDocument) tab.getTextPane().getDocument();
+        startTime       = System.nanoTime();
+    }
+
+    /**
+     *  Writes the file
+     *
+     * @return              nothing
+     * @throws IOException  if the file cannot be written
+     */
+    @Override
+    protected Void doInBackground() throws IOException {
+        writer.write(text, lineSeparator, file);
+
+        return null;
+    }
+
+    /**
+     * Records the saved file for its tab, or shows why it could not be saved
+     */
+    @Override
+    protected void done() {
+        try {
+            get();
+        } catch(InterruptedException | ExecutionException ex) {
+            PopUp.displayErrorMessage(editorContainer.getMainFrame(), "Could not save " + file.getName() + ": "
+                    + (ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage()));
+            return;
+        }
+
+        // The document now matches the file, even if it changed again while saving
+        document.markSaved(text);
+
+        editorContainer.getProjectIndexer().fileSaved(file);
+
+        int index = editorContainer.getFileData().getTabs().indexOf(tab);
+
+        // Tab was closed while saving
+        if(index < 0)
+            return;
+
+        // Set appropriate data for FileData instance
+        tab.setName(file.getName());
+        tab.setPath(file.getAbsolutePath());
+
+        // Set titles (the text may have changed again while saving)
+        editorContainer.checkTextForChanges(index);
+
+        if(index == editorContainer.getTabbedPane().getSelectedIndex())
+            editorContainer.getFillerBox().setShownText(file.getAbsolutePath());
+
+        editorContainer.getFillerBox().setStatusText(String.format("Saved %s in %d ms",
+                file.getName(), (System.nanoTime() - startTime) / 1_000_000));
+
+        if(onSaved != null)
+            onSaved.run();
+    }
+}
@@ -0,0 +1,501 @@
+package main.actions;
+
+import main.data.search.FilePathPool;
+import main.data.search.ParallelSearch;
+import main.data.search.ProjectSearch;
+import main.data.search.TrigramIndex;
+import main.gui.EditorContainer;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a TrigramIndex of the project opened (see 'EditorActions.openProjectFunctionality'),
+ * so that searching the project only reads the files that can hold the phrase.
+ *
+ * The index is built on a thread of its own, reading the files on the threads of
+ * ParallelSearch.  It is written to a file in the user's home directory, and read
+ * back the next time the project is opened, so that only the files that changed
+ * in the meantime are read again.  While the project is open, the directory is
+ * watched for changes, and the files created, changed or deleted (and the files
+ * saved by the editor) are indexed again as they come in.  The index is written
+ * to disk again once the files have gone unchanged for a while.
+ *
+ * The paths of the files are kept as well (see FilePathPool), as soon as they are
+ * listed, so that a file can be found by name (see FileFinderBox) while the files
+ * are still being read.
+ *
+ * @author Justin Kocur
+ */
+public class ProjectIndexer {
+    // The number of files read at once while indexing
+    private static final int BATCH_SIZE = 256;
+
+    // How often the changes to the files are checked for (ms)
+    private static final long POLL_INTERVAL = 200;
+
+    // How long the files must go unchanged before the index is written to disk again (ms)
+    private static final long WRITE_DELAY = 5_000;
+
+    // The main GUI for the text editor
+    private final EditorContainer editorContainer;
+
+    // The index of the project, once built; null while it is built (or no project is open)
+    private volatile TrigramIndex index;
+
+    // The paths of the files of the project, once listed; null while listed (or no project is open)
+    private volatile FilePathPool paths;
+
+    // The directory of the project opened; null if none
+    private Path root;
+
+    // The files saved by the editor, to index again
+    private final ConcurrentLinkedQueue<Path> saved;
+
+    // Builds the index and keeps it up to date; null if no project is open
+    private Thread thread;
+
+    /**
+     *  Creates an indexer for the projects opened in a text editor
+     *
+     * @param editorContainer   the main GUI for the text editor
+     */
+    public ProjectIndexer(EditorContainer editorContainer) {
+        this.editorContainer = editorContainer;
+
+        saved = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     *  Returns the index of a directory, if it is the project opened and its index
+     *  is built
+     *
+     * @param root  the directory
+     * @return      the index of the directory; null if not indexed (yet)
+     */
+    public TrigramIndex getIndex(Path root) {
+        TrigramIndex current = index;
+
+        return current != null && current.getRoot().equals(root) ? current : null;
+    }
+
+    /**
+     *  Returns the paths of the files under a directory, if it is the project
+     *  opened and its files were listed
+     *
+     * @param root  the directory
+     * @return      the paths of the files of the directory; null if not listed (yet)
+     */
+    public FilePathPool getPaths(Path root) {
+        FilePathPool current = paths;
+
+        return current != null && current.getRoot().equals(root.toAbsolutePath().normalize()) ? current : null;
+    }
+
+    /**
+     *  Returns whether a directory is the project opened (its files may not be
+     *  listed or indexed yet)
+     *
+     * @param root  the directory
+     * @return      true if opened, false if not
+     */
+    public boolean isOpen(Path root) {
+        return this.root != null && this.root.equals(root.toAbsolutePath().normalize());
+    }
+
+    /**
+     *  Tells the indexer that the editor saved a file, which is indexed again if it
+     *  is part of the project
+     *
+     * @param file  the file saved
+     */
+    public void fileSaved(File file) {
+        saved.add(file.getAbsoluteFile().toPath());
+    }
+
+    /**
+     *  Starts indexing a directory (and keeping its index up to date), instead of
+     *  the project opened before
+     *
+     * @param root  the directory
+     */
+    public void open(Path root) {
+        stop();
+
+        this.root   = root.toAbsolutePath().normalize();
+        thread      = new Thread(new Indexing(this.root), "Project indexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops keeping the index of the project opened up to date, and forgets it
+     */
+    public void stop() {
+        if(thread != null)
+            thread.interrupt();
+
+        thread  = null;
+        index   = null;
+        paths   = null;
+        root    = null;
+    }
+
+    /**
+     *  Returns the file the index of a directory is written to
+     *
+     * @param root          the directory
+     * @return              the index file
+     * @throws IOException  if the directory holding the index files cannot be created
+     */
+    private static Path getIndexFile(Path root) throws IOException {
+        Path dir = Paths.get(System.getProperty("user.home"), ".text-editor", "index");
+
+        Files.createDirectories(dir);
+
+        String name = root.getFileName() != null ? root.getFileName().toString() : "root";
+
+        return dir.resolve(String.format("%s-%08x.idx", name, root.toString().hashCode()));
+    }
+
+    /**
+     *  Shows a message in the status bar of the editor
+     *
+     * @param text  the message
+     */
+    private void setStatusText(String text) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                editorContainer.getFillerBox().setStatusText(text);
+            }
+        });
+    }
+
+    /**
+     * Builds the index of a directory, then keeps it up to date until interrupted
+     */
+    private class Indexing implements Runnable {
+        // The directory watched for changes, by the key it was registered with
+        private final HashMap<WatchKey, Path> dirs;
+
+        // The paths of the files under the directory
+        private FilePathPool pool;
+
+        // The directory indexed
+        private final Path root;
+
+        // Tells about the changes to the files; open while indexing
+        private WatchService watcher;
+
+        /**
+         *  Creates the indexing of a directory
+         *
+         * @param root  the directory (an absolute path)
+         */
+        private Indexing(Path root) {
+            this.root = root;
+
+            dirs = new HashMap<>();
+        }
+
+        /**
+         * Builds the index (from the index written last time, if there is one), then
+         * indexes the files again as they change
+         */
+        @Override
+        public void run() {
+            try(WatchService watcher = root.getFileSystem().newWatchService()) {
+                this.watcher = watcher;
+
+                long start              = System.currentTimeMillis();
+                Path indexFile          = getIndexFile(root);
+                TrigramIndex built      = Files.isRegularFile(indexFile) ? TrigramIndex.read(indexFile, root) : null;
+
+                if(built == null)
+                    built = new TrigramIndex(root);
+
+                if(!sync(built))
+                    return;
+
+                index = built;
+                built.write(indexFile);
+
+                setStatusText(String.format("Indexed %d files in %d ms", built.getFileCount(),
+                        System.currentTimeMillis() - start));
+
+                watch(built, indexFile);
+            } catch(IOException ex) {
+                System.err.println(ex.getMessage());
+            } catch(InterruptedException ex) {
+                // Another project was opened
+            }
+        }
+
+        /**
+         *  Indexes the files (and every file under the directories) that changed
+         *
+         * @param built         the index
+         * @param changed       the files and directories created, changed or deleted
+         * @return              true if done, false if interrupted
+         * @throws IOException  if a directory cannot be walked
+         */
+        private boolean apply(TrigramIndex built, LinkedHashSet<Path> changed) throws IOException {
+            List<Path> files = new ArrayList<>();
+
+            for(Path file : changed) {
+                if(ProjectSearch.isHidden(file))
+                    continue;
+
+                if(Files.isDirectory(file)) {
+                    walk(file, files);
+                } else if(Files.isRegularFile(file)) {
+                    files.add(file);
+                } else {
+                    built.remove(file);
+                    pool.remove(file);
+                }
+            }
+
+            pool.addAll(files);
+
+            return update(built, files);
+        }
+
+        /**
+         *  Returns whether a file saved by the editor is part of the project
+         *
+         * @param file  the file
+         * @return      true if under the directory indexed (and not in a hidden directory), false if not
+         */
+        private boolean isInProject(Path file) {
+            if(!file.startsWith(root) || file.equals(root))
+                return false;
+
+            for(Path part : root.relativize(file))
+                if(ProjectSearch.isHidden(part))
+                    return false;
+
+            return true;
+        }
+
+        /**
+         *  Brings an index up to date with the files under the directory: the files
+         *  that are gone are removed, and the files that are new or changed are read.
+         *  The paths of the files are listed again as well.
+         *
+         * @param built         the index
+         * @return              true if done, false if interrupted
+         * @throws IOException  if the directory cannot be walked
+         */
+        private boolean sync(TrigramIndex built) throws IOException {
+            List<Path> files = new ArrayList<>();
+
+            walk(root, files);
+
+            // The files can be found by name before they are read
+            pool = new FilePathPool(root);
+            pool.addAll(files);
+            paths = pool;
+
+            built.retainAll(files);
+
+            return update(built, files);
+        }
+
+        /**
+         *  Reads the files that are not indexed as they are now, BATCH_SIZE at a time
+         *  on the threads of ParallelSearch, and indexes them.  A file that is too
+         *  large or looks binary is removed from the index.
+         *
+         * @param built     the index
+         * @param files     the files
+         * @return          true if done, false if interrupted
+         */
+        private boolean update(TrigramIndex built, List<Path> files) {
+            for(int from = 0; from < files.size(); from += BATCH_SIZE) {
+                if(Thread.currentThread().isInterrupted())
+                    return false;
+
+                List<Path> batch                    = files.subList(from, Math.min(files.size(), from + BATCH_SIZE));
+                List<ForkJoinTask<long[]>> tasks    = new ArrayList<>(batch.size());
+                long[] sizes                        = new long[batch.size()];
+                long[] modified                     = new long[batch.size()];
+
+                for(int i = 0; i < batch.size(); i++) {
+                    Path file = batch.get(i);
+
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+
+                        sizes[i]    = attrs.size();
+                        modified[i] = attrs.lastModifiedTime().toMillis();
+                    } catch(IOException ex) {
+                        sizes[i] = -1;
+                    }
+
+                    if(sizes[i] < 0 || sizes[i] > ProjectSearch.MAX_FILE_SIZE
+                            || built.isCurrent(file, sizes[i], modified[i])) {
+                        tasks.add(null);
+                        continue;
+                    }
+
+                    tasks.add(ParallelSearch.getPool().submit(new Callable<long[]>() {
+                        @Override
+                        public long[] call() throws IOException {
+                            CharBuffer text = ProjectSearch.readText(file);
+
+                            return text != null ? TrigramIndex.trigrams(text.array(), text.limit()) : null;
+                        }
+                    }));
+                }
+
+                // Added in order, so the files keep the order of the walk
+                for(int i = 0; i < batch.size(); i++) {
+                    ForkJoinTask<long[]> task = tasks.get(i);
+
+                    if(task == null) {
+                        if(sizes[i] < 0 || sizes[i] > ProjectSearch.MAX_FILE_SIZE)
+                            built.remove(batch.get(i));
+
+                        continue;
+                    }
+
+                    long[] trigrams;
+
+                    try {
+                        trigrams = task.join();
+                    } catch(RuntimeException ex) {
+                        trigrams = null;
+                    }
+
+                    if(trigrams != null)
+                        built.add(batch.get(i), sizes[i], modified[i], trigrams);
+                    else
+                        built.remove(batch.get(i));
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         *  Lists the files under a directory (not walking into hidden directories), and
+         *  watches every directory walked for changes
+         *
+         * @param dir           the directory
+         * @param files         the files found, added to
+         * @throws IOException  if the directory cannot be walked
+         */
+        private void walk(Path dir, List<Path> files) throws IOException {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+                    if(!path.equals(root) && ProjectSearch.isHidden(path))
+                        return FileVisitResult.SKIP_SUBTREE;
+
+                    // Too many directories to watch them all; the others are still indexed when walked
+                    try {
+                        dirs.put(path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), path);
+                    } catch(IOException ex) {
+                        System.err.println(ex.getMessage());
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if(attrs.isRegularFile() && !ProjectSearch.isHidden(file))
+                        files.add(file);
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        /**
+         *  Indexes the files again as they change (or are saved by the editor), until
+         *  interrupted, writing the index to disk once the files have gone unchanged
+         *  for a while
+         *
+         * @param built                 the index
+         * @param indexFile             the file the index is written to
+         * @throws IOException          if the index cannot be written
+         * @throws InterruptedException if another project was opened
+         */
+        private void watch(TrigramIndex built, Path indexFile) throws IOException, InterruptedException {
+            LinkedHashSet<Path> changed = new LinkedHashSet<>();
+            long lastChange             = 0;
+            boolean written             = true;
+
+            while(!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+
+                // Every change that came in is taken before indexing any of them
+                while(key != null) {
+                    Path dir = dirs.get(key);
+
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        // Too many changes to tell which: every file is looked at again
+                        if(event.kind() == StandardWatchEventKinds.OVERFLOW)
+                            changed.add(root);
+                        else if(dir != null)
+                            changed.add(dir.resolve((Path) event.context()));
+                    }
+
+                    if(!key.reset())
+                        dirs.remove(key);
+
+                    key = watcher.poll();
+                }
+
+                for(Path file = saved.poll(); file != null; file = saved.poll())
+                    if(isInProject(file))
+                        changed.add(file);
+
+                if(!changed.isEmpty()) {
+                    boolean done = changed.contains(root) ? sync(built) : apply(built, changed);
+
+                    if(!done)
+                        return;
+
+                    changed.clear();
+                    lastChange  = System.currentTimeMillis();
+                    written     = false;
+                }
+
+                if(!written && System.currentTimeMillis() - lastChange >= WRITE_DELAY) {
+                    built.write(indexFile);
+                    written = true;
+                }
+            }
+        }
+    }
+}
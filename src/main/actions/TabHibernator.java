@@ -0,0 +1,447 @@
+package main.actions;
+
+import main.data.TabState;
+import main.data.document.PieceTableDocument;
+import main.data.io.HeapUsage;
+import main.gui.EditorContainer;
+import main.gui.components.EditorTextPane;
+import main.gui.components.PopUp;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Frees the memory held by tabs that are not being looked at.  A tab that has
+ * not been selected for a while (or the least recently selected tabs, once the
+ * heap is nearly full) is hibernated: the buffers holding its text and undo
+ * history are spilled to a cache file, and its text pane is given an empty
+ * document, dropping the views and highlights built for the text.
+ *
+ * The tab's document, element tree, line and bracket indexes, positions and undo
+ * manager stay in memory, so nothing has to be rebuilt when the tab is woken up
+ * (when it is selected, or its text pane is asked for); the buffers are read back
+ * and the document is shown again with the caret where it was.  These structures
+ * are not small (for a file of many short lines, the element tree alone can take
+ * about as much of the heap as the text), but rebuilding them would cost as much
+ * as opening the file again, and the undo edits and positions handed out to Swing
+ * must stay valid.  Only the bytes of the spilled buffers are counted as released,
+ * so the heap saved is the buffers' size, not the tab's whole footprint.
+ *
+ * @author Justin Kocur
+ */
+public class TabHibernator {
+    /** How long a tab can go unselected before it is hibernated (ms) */
+    public static final long DEFAULT_IDLE_TIME = 10 * 60 * 1_000;
+
+    /** The share of the maximum heap size above which tabs are hibernated */
+    public static final double DEFAULT_MEMORY_THRESHOLD = 0.75;
+
+    /** Documents shorter than this (in characters) are not worth hibernating */
+    public static final int MIN_DOCUMENT_LENGTH = 64 * 1_024;
+
+    // How often the tabs are checked (ms)
+    private static final int CHECK_INTERVAL = 30_000;
+
+    // Holds the cache files of the hibernated tabs; created once needed
+    private Path cacheDir;
+
+    // The main GUI for the text editor
+    private final EditorContainer editorContainer;
+
+    // The hibernated tabs, by ID
+    private final HashMap<Integer, Hibernated> hibernated;
+
+    // How long a tab can go unselected before it is hibernated (ms)
+    private long idleTime;
+
+    /* The time at which each tab was last selected or left (ms), by ID; the least
+       recently selected tab comes first */
+    private final LinkedHashMap<Integer, Long> lastSelected;
+
+    // The share of the maximum heap size above which tabs are hibernated
+    private double memoryThreshold;
+
+    // The ID of the tab that is selected; -1 if none
+    private int selectedId;
+
+    // Checks the tabs every so often
+    private final Timer timer;
+
+    /**
+     *  Creates a hibernator for the tabs of a text editor, which starts checking
+     *  them right away
+     *
+     * @param editorContainer   the main GUI for the text editor
+     */
+    public TabHibernator(EditorContainer editorContainer) {
+        this.editorContainer = editorContainer;
+
+        hibernated      = new HashMap<>();
+        idleTime        = DEFAULT_IDLE_TIME;
+        lastSelected    = new LinkedHashMap<>();
+        memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+        selectedId      = -1;
+
+        timer = new Timer(CHECK_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                check();
+            }
+        });
+
+        timer.start();
+    }
+
+    /**
+     *  Returns the document of a tab, without waking the tab if it is hibernated.
+     *  The text of a hibernated document cannot be read, but whether it was
+     *  modified can be checked.
+     *
+     * @param tab   the tab
+     * @return      the document of the tab; null if it has no text pane
+     */
+    public PieceTableDocument getDocument(TabState tab) {
+        Hibernated entry = hibernated.get(tab.getId());
+
+        if(entry != null)
+            return entry.document;
+
+        return tab.getTextPane() != null ? (PieceTableDocument) tab.getTextPane().getDocument() : null;
+    }
+
+    /**
+     *  Returns whether a tab is hibernated
+     *
+     * @param tab   the tab
+     * @return      true if the text of the tab is spilled to disk, false if not
+     */
+    public boolean isHibernated(TabState tab) {
+        return hibernated.containsKey(tab.getId());
+    }
+
+    /**
+     *  Returns how long a tab can go unselected before it is hibernated
+     *
+     * @return  the idle time (ms)
+     */
+    public long getIdleTime() {
+        return idleTime;
+    }
+
+    /**
+     *  Sets how long a tab can go unselected before it is hibernated
+     *
+     * @param idleTime  the new idle time (ms)
+     */
+    public void setIdleTime(long idleTime) {
+        this.idleTime = idleTime;
+    }
+
+    /**
+     *  Returns the share of the maximum heap size above which tabs are hibernated
+     *
+     * @return  the memory threshold, from 0 to 1
+     */
+    public double getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     *  Sets the share of the maximum heap size above which tabs are hibernated
+     *
+     * @param memoryThreshold   the new memory threshold, from 0 to 1
+     */
+    public void setMemoryThreshold(double memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     *  Forgets a tab that is being closed, deleting its cache file
+     *
+     * @param tab   the tab being closed
+     */
+    public void forget(TabState tab) {
+        Hibernated entry = hibernated.remove(tab.getId());
+
+        lastSelected.remove(tab.getId());
+
+        if(entry != null)
+            deleteCacheFile(entry.cacheFile);
+    }
+
+    /**
+     *  Hibernates a tab, if it is not selected and worth hibernating
+     *
+     * @param index     the index of the tab in the tabbed pane
+     * @return          the number of bytes of text buffers spilled (the structures kept
+     *                  in memory are not counted); 0 if not hibernated
+     */
+    public long hibernate(int index) {
+        TabState tab = editorContainer.getFileData().getTabs().get(index);
+
+        if(tab == null || !canHibernate(tab))
+            return 0;
+
+        EditorTextPane textPane     = tab.getTextPane();
+        PieceTableDocument document = (PieceTableDocument) textPane.getDocument();
+        Hibernated entry            = new Hibernated(document, textPane.getCaret().getDot(),
+                textPane.getCaret().getMark());
+
+        try {
+            entry.cacheFile = Files.createTempFile(getCacheDir(), "tab" + tab.getId() + "-", ".bin");
+            entry.cacheFile.toFile().deleteOnExit();
+
+            // Drop the views and highlights of the text first, then its buffers
+            textPane.getHighlighter().removeAllHighlights();
+            textPane.setDocument(new PieceTableDocument());
+
+            // The saved text would otherwise keep the buffers in the heap
+            document.dropSavedText();
+            entry.released = document.getPieceTable().spill(entry.cacheFile);
+        } catch(IOException ex) {
+            System.err.println("Could not hibernate tab: " + ex.getMessage());
+
+            if(textPane.getDocument() != document)
+                show(textPane, entry);
+
+            if(entry.cacheFile != null)
+                deleteCacheFile(entry.cacheFile);
+
+            return 0;
+        }
+
+        hibernated.put(tab.getId(), entry);
+        editorContainer.checkTextForChanges(index);
+
+        return entry.released;
+    }
+
+    /**
+     *  Records that a tab was selected, waking it if it is hibernated
+     *
+     * @param index     the index of the tab in the tabbed pane
+     */
+    public void selected(int index) {
+        TabState tab    = editorContainer.getFileData().getTabs().get(index);
+        long now        = System.currentTimeMillis();
+
+        if(tab == null)
+            return;
+
+        // The tab that was selected is left now
+        if(selectedId >= 0 && editorContainer.getFileData().getTabs().getById(selectedId) != null)
+            touch(selectedId, now);
+
+        selectedId = tab.getId();
+        touch(selectedId, now);
+        wake(tab);
+    }
+
+    /**
+     *  Wakes a tab if it is hibernated, reading its text back from the cache file
+     *  and showing it in the tab's text pane again
+     *
+     * @param tab   the tab
+     * @return      true if the text of the tab is in memory, false if it could not be read
+     */
+    public boolean wake(TabState tab) {
+        Hibernated entry = hibernated.get(tab.getId());
+
+        if(entry == null)
+            return true;
+
+        try {
+            entry.document.getPieceTable().restore(entry.cacheFile);
+        } catch(IOException ex) {
+            // The text pane stays empty and read-only, so it is never saved over the file
+            tab.getTextPane().setEditable(false);
+
+            if(!entry.failed)
+                PopUp.displayErrorMessage(editorContainer.getMainFrame(), "Could not read back "
+                        + tab.getName() + " from " + entry.cacheFile + ": " + ex.getMessage());
+
+            entry.failed = true;
+            return false;
+        }
+
+        hibernated.remove(tab.getId());
+        show(tab.getTextPane(), entry);
+        deleteCacheFile(entry.cacheFile);
+
+        int index = editorContainer.getFileData().getTabs().indexOf(tab);
+
+        if(index >= 0)
+            editorContainer.checkTextForChanges(index);
+
+        return true;
+    }
+
+    /**
+     *  Returns whether a tab can be hibernated: its text can be edited and is long
+     *  enough to be worth it, and the tab is not selected
+     *
+     * @param tab   the tab
+     * @return      true if the tab can be hibernated, false if not
+     */
+    private boolean canHibernate(TabState tab) {
+        EditorTextPane textPane = tab.getTextPane();
+
+        // A read-only viewer or a file still loading holds no buffers of its own yet
+        return tab.getId() != selectedId && !tab.isReadOnly() && !isHibernated(tab)
+                && textPane != null && textPane.isEditable()
+                && textPane.getDocument().getLength() >= MIN_DOCUMENT_LENGTH;
+    }
+
+    /**
+     * Hibernates the tabs that have been idle for too long, then the least recently
+     * selected tabs while the heap is nearly full
+     */
+    private void check() {
+        long now                = System.currentTimeMillis();
+        long limit              = (long) (memoryThreshold * HeapUsage.getMax());
+        long used               = HeapUsage.getUsed();
+        long released           = 0;
+        int count               = 0;
+        ArrayList<Integer> ids  = new ArrayList<>();
+
+        // Tabs never selected count as idle from now
+        for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++)
+            if(!lastSelected.containsKey(editorContainer.getFileData().getTabs().get(i).getId()))
+                touch(editorContainer.getFileData().getTabs().get(i).getId(), now);
+
+        // Forget the tabs that were closed
+        for(Iterator<Integer> it = lastSelected.keySet().iterator(); it.hasNext(); ) {
+            int id = it.next();
+
+            if(editorContainer.getFileData().getTabs().getById(id) == null)
+                it.remove();
+            else
+                ids.add(id);
+        }
+
+        for(int id : ids) {
+            boolean idle    = now - lastSelected.get(id) >= idleTime;
+            /* Only the spilled buffers are counted, so the heap is taken to be fuller than it
+               is, and another tab may be hibernated rather than one too few */
+            boolean full    = used - released > limit;
+
+            if(!idle && !full)
+                continue;
+
+            TabState tab    = editorContainer.getFileData().getTabs().getById(id);
+            long bytes      = hibernate(editorContainer.getFileData().getTabs().indexOf(tab));
+
+            if(bytes > 0) {
+                released += bytes;
+                count++;
+            }
+        }
+
+        if(count > 0)
+            editorContainer.getFillerBox().setStatusText(String.format("Hibernated %d tab%s (%.1f MB of text spilled)",
+                    count, count == 1 ? "" : "s", released / (1_024.0 * 1_024.0)));
+    }
+
+    /**
+     *  Deletes a cache file, if it is still there
+     *
+     * @param cacheFile     the cache file
+     */
+    private void deleteCacheFile(Path cacheFile) {
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch(IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     *  Returns the directory holding the cache files, creating it if needed
+     *
+     * @return              the cache directory
+     * @throws IOException  if the directory cannot be created
+     */
+    private Path getCacheDir() throws IOException {
+        if(cacheDir == null || !Files.isDirectory(cacheDir)) {
+            cacheDir = Files.createTempDirectory("editor-tabs");
+            cacheDir.toFile().deleteOnExit();
+        }
+
+        return cacheDir;
+    }
+
+    /**
+     *  Shows a hibernated document in its text pane again, with the caret and
+     *  selection where they were, and the brackets next to the caret highlighted
+     *
+     * @param textPane  the text pane of the tab
+     * @param entry     the hibernated document
+     */
+    private void show(EditorTextPane textPane, Hibernated entry) {
+        int length = entry.document.getLength();
+
+        textPane.setDocument(entry.document);
+        textPane.setEditable(true);
+        textPane.setCaretPosition(Math.min(entry.mark, length));
+        textPane.moveCaretPosition(Math.min(entry.dot, length));
+
+        // The caret may not have moved, so the brackets removed with the highlights are matched again
+        textPane.getBracketMatcher().refresh();
+    }
+
+    /**
+     *  Records the time at which a tab was last selected or left, making it the
+     *  most recently selected tab
+     *
+     * @param id    the ID of the tab
+     * @param time  the time (ms)
+     */
+    private void touch(int id, long time) {
+        lastSelected.remove(id);
+        lastSelected.put(id, time);
+    }
+
+    /**
+     * The document of a hibernated tab, and where to find its text
+     */
+    private static class Hibernated {
+        // The file the buffers of the document are spilled to
+        private Path cacheFile;
+
+        // The document of the tab, whose buffers are spilled
+        private final PieceTableDocument document;
+
+        // The position of the caret
+        private final int dot;
+
+        // True once reading back the buffers failed (and was reported)
+        private boolean failed;
+
+        // The other end of the selection; the caret position if nothing is selected
+        private final int mark;
+
+        // The number of bytes of the heap the spilled buffers took up
+        private long released;
+
+        /**
+         *  Records the document of a tab being hibernated
+         *
+         * @param document  the document of the tab
+         * @param dot       the position of the caret
+         * @param mark      the other end of the selection
+         */
+        private Hibernated(PieceTableDocument document, int dot, int mark) {
+            this.document   = document;
+            this.dot        = dot;
+            this.mark       = mark;
+        }
+    }
+}
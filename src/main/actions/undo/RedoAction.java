@@ -17,15 +17,12 @@ public class RedoAction extends AbstractAction
 
     private UndoAction undoAction;
 
-    private final UndoManager[] undoManager;
-
-    public RedoAction(EditorContainer editorContainer, UndoManager[] undoManager)
+    public RedoAction(EditorContainer editorContainer)
     {
         super("Redo");
         setEnabled(false);
 
         this.editorContainer = editorContainer;
-        this.undoManager = undoManager;
     }
 
     public void actionPerformed(ActionEvent e)
@@ -35,9 +32,13 @@ public class RedoAction extends AbstractAction
 
         int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
 
+        // The text pane is still loading its file
+        if(!editorContainer.getTextPane(tabIndex).isEditable())
+            return;
+
         try
         {
-            undoManager[tabIndex].redo();
+            editorContainer.getUndoManager(tabIndex).redo();
             editorContainer.checkTextForChanges();
         }
         catch (CannotRedoException ex)
@@ -55,12 +56,12 @@ public class RedoAction extends AbstractAction
 
     protected void update()
     {
-        int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
+        UndoManager undoManager = editorContainer.getUndoManager(editorContainer.getTabbedPane().getSelectedIndex());
 
-        if (undoManager[tabIndex].canRedo())
+        if (undoManager != null && undoManager.canRedo())
         {
             setEnabled(true);
-            putValue(Action.NAME, undoManager[tabIndex].getRedoPresentationName());
+            putValue(Action.NAME, undoManager.getRedoPresentationName());
         }
         else
         {
@@ -17,15 +17,12 @@ public class UndoAction extends AbstractAction
 
     private RedoAction redoAction;
 
-    private final UndoManager[] undoManager;
-
-    public UndoAction(EditorContainer editorContainer, UndoManager[] undoManager)
+    public UndoAction(EditorContainer editorContainer)
     {
         super("Undo");
         setEnabled(false);
 
         this.editorContainer = editorContainer;
-        this.undoManager = undoManager;
     }
 
     public void actionPerformed(ActionEvent e)
@@ -35,9 +32,13 @@ public class UndoAction extends AbstractAction
 
         int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
 
+        // The text pane is still loading its file
+        if(!editorContainer.getTextPane(tabIndex).isEditable())
+            return;
+
         try
         {
-            undoManager[tabIndex].undo();
+            editorContainer.getUndoManager(tabIndex).undo();
             editorContainer.checkTextForChanges();
         }
         catch (CannotUndoException ex)
@@ -55,12 +56,12 @@ public class UndoAction extends AbstractAction
 
     protected void update()
     {
-        int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
+        UndoManager undoManager = editorContainer.getUndoManager(editorContainer.getTabbedPane().getSelectedIndex());
 
-        if (undoManager[tabIndex].canUndo())
+        if (undoManager != null && undoManager.canUndo())
         {
             setEnabled(true);
-            putValue(Action.NAME, undoManager[tabIndex].getUndoPresentationName());
+            putValue(Action.NAME, undoManager.getUndoPresentationName());
         }
         else
         {
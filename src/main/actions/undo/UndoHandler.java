@@ -1,10 +1,12 @@
 package main.actions.undo;
 
+import main.data.TabRegistry;
+import main.data.TabState;
 import main.gui.EditorContainer;
 
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
-import javax.swing.undo.UndoManager;
+import javax.swing.text.Document;
 
 /** CREDIT: https://alvinalexander.com/java/java-undo-redo/
  *
@@ -18,11 +20,8 @@ public class UndoHandler implements UndoableEditListener
 
     private UndoAction undoAction;
 
-    private final UndoManager[] undoManager;
-
-    public UndoHandler(EditorContainer editorContainer, UndoManager[] undoManager) {
+    public UndoHandler(EditorContainer editorContainer) {
         this.editorContainer = editorContainer;
-        this.undoManager = undoManager;
     }
 
     public void setRedoAction(RedoAction redoAction) {
@@ -35,16 +34,22 @@ public class UndoHandler implements UndoableEditListener
 
     /**
      * Messaged when the Document has created an edit, the edit is added to
-     * <code>undoManager</code>, an instance of UndoManager.
+     * the UndoManager of the tab the Document belongs to (which need not be
+     * the selected tab, e.g. when a file finishes loading in the background).
      */
     public void undoableEditHappened(UndoableEditEvent e)
     {
         if(undoAction == null || redoAction == null)
             return;
 
-        int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
+        Object id       = ((Document) e.getSource()).getProperty(TabRegistry.TAB_ID_PROPERTY);
+        TabState tab    = id instanceof Integer ? editorContainer.getFileData().getTabs().getById((Integer) id) : null;
+
+        // The tab was closed
+        if(tab == null)
+            return;
 
-        undoManager[tabIndex].addEdit(e.getEdit());
+        tab.getUndoManager().addEdit(e.getEdit());
         undoAction.update();
         redoAction.update();
     }
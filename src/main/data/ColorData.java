@@ -1,6 +1,7 @@
 package main.data;
 
 import main.gui.EditorContainer;
+import main.gui.components.EditorTextPane;
 
 import java.awt.*;
 
@@ -117,8 +118,10 @@ public class ColorData {
         this.bgSelectedText = bgSelectedText;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null)
-                editorContainer.getTextPane(i).setSelectionColor(bgSelectedText);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null)
+                pane.setSelectionColor(bgSelectedText);
         }
     }
 
@@ -140,8 +143,10 @@ public class ColorData {
         this.bgTextPane = bgTextPane;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null)
-                editorContainer.getTextPane(i).setBackground(bgTextPane);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null)
+                pane.setBackground(bgTextPane);
         }
     }
 
@@ -167,9 +172,10 @@ public class ColorData {
         this.bgTextPaneNo = bgTextPaneNo;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null
-                    && editorContainer.getTextPane(i).getNumberingSystem() != null)
-                editorContainer.getTextPane(i).getNumberingSystem().setBackgroundColor(bgTextPaneNo);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null && pane.getNumberingSystem() != null)
+                pane.getNumberingSystem().setBackgroundColor(bgTextPaneNo);
         }
     }
 
@@ -226,8 +232,10 @@ public class ColorData {
         this.caretColor = caretColor;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null)
-                editorContainer.getTextPane(i).setCustomCaretColor(caretColor);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null)
+                pane.setCustomCaretColor(caretColor);
         }
     }
 
@@ -249,11 +257,13 @@ public class ColorData {
         this.currentLineHighlight = currentLineHighlight;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null) {
-                editorContainer.getTextPane(i).setSelHighlightColor(currentLineHighlight);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null) {
+                pane.setSelHighlightColor(currentLineHighlight);
 
-                if(editorContainer.getTextPane(i).getNumberingSystem() != null)
-                editorContainer.getTextPane(i).getNumberingSystem().setCurrentLineBackground(currentLineHighlight);
+                if(pane.getNumberingSystem() != null)
+                    pane.getNumberingSystem().setCurrentLineBackground(currentLineHighlight);
             }
         }
     }
@@ -276,8 +286,10 @@ public class ColorData {
         this.fgTextPane = fgTextPane;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null)
-                editorContainer.getTextPane(i).setForeground(fgTextPane);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null)
+                pane.setForeground(fgTextPane);
         }
     }
 
@@ -299,9 +311,10 @@ public class ColorData {
         this.fgTextPaneNo = fgTextPaneNo;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null
-                && editorContainer.getTextPane(i).getNumberingSystem() != null)
-                editorContainer.getTextPane(i).getNumberingSystem().setForeground(fgTextPaneNo);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null && pane.getNumberingSystem() != null)
+                pane.getNumberingSystem().setForeground(fgTextPaneNo);
         }
     }
 
@@ -323,8 +336,10 @@ public class ColorData {
         this.fgSelectedText = fgSelectedText;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null)
-                editorContainer.getTextPane(i).setSelectedTextColor(fgSelectedText);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null)
+                pane.setSelectedTextColor(fgSelectedText);
         }
     }
 
@@ -350,9 +365,10 @@ public class ColorData {
         this.fgSelTextPaneNo = fgSelTextPaneNo;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null
-                && editorContainer.getTextPane(i).getNumberingSystem() != null)
-                editorContainer.getTextPane(i).getNumberingSystem().setCurrentLineForeground(fgSelTextPaneNo);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null && pane.getNumberingSystem() != null)
+                pane.getNumberingSystem().setCurrentLineForeground(fgSelTextPaneNo);
         }
     }
 
@@ -476,9 +492,10 @@ public class ColorData {
         this.tPBorder = tPBorder;
 
         for(int i = 0; i < editorContainer.getFileData().numTabsOpen(); i++) {
-            if(editorContainer.getTextPane(i) != null
-                && editorContainer.getTextPane(i).getNumberingSystem() != null)
-                editorContainer.getTextPane(i).getNumberingSystem().setSepBorder(tPBorder);
+            EditorTextPane pane = editorContainer.getFileData().getTabs().get(i).getTextPane();
+
+            if(pane != null && pane.getNumberingSystem() != null)
+                pane.getNumberingSystem().setSepBorder(tPBorder);
         }
     }
 
@@ -1,16 +1,15 @@
 package main.data;
 
-import java.util.Arrays;
-
 /**
  * Contains information for each individual file that is currently open
  * in the text editor
- * Although no getters/ setters are provided to change the references for
- * the arrays labeled 'names,' 'ogText,' and 'paths,' there are getters and
- * setters for modifying and retrieving elements in these arrays given an
- * index.  Therefore, the methods labeled 'get/setTabName,' 'get/setTabOgText,'
- * and 'get/setTabPath' will be placed above all other methods that aren't
- * considered getters and setters.
+ * The information on each tab is kept by a TabRegistry (one TabState per tab,
+ * with no limit on the number of tabs); the methods taking a tab index, such
+ * as 'get/setTabName' and 'get/setTabPath', look the tab up in the registry.
+ * They are placed above all other methods that aren't considered getters and
+ * setters.
+ * Whether a file has unsaved changes is tracked by its document (see
+ * 'PieceTableDocument.isModified'), so no copy of the saved text is kept here.
  *
  * @author Justin Kocur
  */
@@ -21,44 +20,14 @@ public class FileData {
     // The last known path from which the user saved a file
     private String lastSavePath;
 
-    // The maximum number of tabs this text editor will allow open at one time
-    private final int MAX_TABS;
-
-    /* The names of each file that is currently opened;
-           "Untitled" if tab not open at index */
-    private final String[] names;
-
-    /* The last known text in a file before it was last saved;
-       "" if tab not open at index */
-    private final String[] ogText;
-
-    /* True if the file at an arbitrary index was opened from a file;
-       false if first created in this text editor */
-    private final boolean[] openedFromDir;
-
-    /* The paths of each file that is currently opened (saved files only);
-       null if tab not open at index */
-    private final String[] paths;
-
-    // The position/ index at which to add a new tab
-    private int tabPointer;
+    // The state of each tab that is currently open, in the order of the tabbed pane
+    private final TabRegistry tabs;
 
     /**
-     *  Creates a designated type that holds data for text files in this application
-     *
-     * @param MAX_TABS  the maximum number of tabs allowed open in the text editor at once
+     * Creates a designated type that holds data for text files in this application
      */
-    public FileData(final int MAX_TABS) {
-        this.MAX_TABS = MAX_TABS;
-        tabPointer = -1;
-
-        names           = new String[MAX_TABS];
-        paths           = new String[MAX_TABS];
-        ogText          = new String[MAX_TABS];
-        openedFromDir   = new boolean[MAX_TABS];
-
-        Arrays.fill(names, "Untitled");
-        Arrays.fill(ogText, "");
+    public FileData() {
+        tabs = new TabRegistry();
 
         lastOpenPath = "c:";
         lastSavePath = "c:";
@@ -100,6 +69,15 @@ public class FileData {
         this.lastSavePath = lastSavePath;
     }
 
+    /**
+     *  Returns the registry holding the state of each open tab
+     *
+     * @return  the registry of the open tabs
+     */
+    public TabRegistry getTabs() {
+        return tabs;
+    }
+
     /**
      *  Returns the name of the file at the designated index
      *
@@ -107,11 +85,9 @@ public class FileData {
      * @return          the String name of the file; null if out of bounds
      */
     public String getTabName(int index) {
-        // Index out of bounds
-        if(index < 0 || index >= MAX_TABS)
-            return null;
+        TabState tab = tabs.get(index);
 
-        return names[index];
+        return tab != null ? tab.getName() : null;
     }
 
     /**
@@ -123,73 +99,75 @@ public class FileData {
      *                  bounds or tab not available
      */
     public boolean setTabName(int index, String name) {
+        TabState tab = tabs.get(index);
+
         // Index out of bounds
-        if(index < 0 || index >= numTabsOpen())
+        if(tab == null)
             return false;
 
-        names[index] = name;
+        tab.setName(name);
         return true;
     }
 
     /**
-     *  Returns the original text of the file at the designated index
+     *  Returns the 'openedFromDir' state of the file at the designated index
      *
-     * @param index     the index at which to fetch the original text of the file
-     * @return          the String representation of the original text of the file; null if out of bounds
+     * @param index     the index at which to fetch the opened state of the file
+     * @return          true if opened from file, false if not
      */
-    public String getTabOgText(int index) {
-        // Index out of bounds
-        if(index < 0 || index >= MAX_TABS)
-            return null;
+    public boolean isOpenedFromDir(int index) {
+        TabState tab = tabs.get(index);
 
-        return ogText[index];
+        return tab != null && tab.isOpenedFromDir();
     }
 
     /**
-     *  Sets the text of a file at the designated index
+     *  Sets the 'openedFromDir' state at the designated index
      *
-     * @param index     the index at which to change the name of a tab
-     * @param text      the new text for the tab
+     * @param index     the index to access
+     * @param flag      the new state for the tab
      * @return          true if successfully changed, false if index out of
      *                  bounds or tab not available
      */
-    public boolean setTabOgText(int index, String text) {
+    public boolean setOpenedFromDir(int index, boolean flag) {
+        TabState tab = tabs.get(index);
+
         // Index out of bounds
-        if(index < 0 || index >= numTabsOpen())
+        if(tab == null)
             return false;
 
-        ogText[index] = text;
+        tab.setOpenedFromDir(flag);
         return true;
     }
 
     /**
-     *  Returns the 'openedFromDir' state of the file at the designated index
+     *  Returns the 'readOnly' state of the file at the designated index
      *
-     * @param index     the index at which to fetch the opened state of the file
-     * @return          true if opened from file, false if not
+     * @param index     the index at which to fetch the read-only state of the file
+     * @return          true if shown in a read-only viewer, false if not
      */
-    public boolean isOpenedFromDir(int index) {
-        // Index out of bounds
-        if(index < 0 || index >= MAX_TABS)
-            return false;
+    public boolean isReadOnly(int index) {
+        TabState tab = tabs.get(index);
 
-        return openedFromDir[index];
+        return tab != null && tab.isReadOnly();
     }
 
     /**
-     *  Sets the 'openedFromDir' state at the designated index
+     *  Sets the 'readOnly' state at the designated index
      *
      * @param index     the index to access
      * @param flag      the new state for the tab
      * @return          true if successfully changed, false if index out of
      *                  bounds or tab not available
      */
-    public boolean setOpenedFromDir(int index, boolean flag) {
+    public boolean setReadOnly(int index, boolean flag) {
+        TabState tab = tabs.get(index);
+
         // Index out of bounds
-        if(index < 0 || index >= numTabsOpen())
+        if(tab == null)
             return false;
 
-        openedFromDir[index] = flag;
+        tab.setReadOnly(flag);
         return true;
     }
 
@@ -200,11 +178,9 @@ public class FileData {
      * @return          the String path of the file; null if out of bounds
      */
     public String getTabPath(int index) {
-        // Index out of bounds
-        if(index < 0 || index >= MAX_TABS)
-            return null;
+        TabState tab = tabs.get(index);
 
-        return paths[index];
+        return tab != null ? tab.getPath() : null;
     }
 
     /**
@@ -216,48 +192,40 @@ public class FileData {
      *                  bounds or tab not available
      */
     public boolean setTabPath(int index, String path) {
+        TabState tab = tabs.get(index);
+
         // Index out of bounds
-        if(index < 0 || index >= numTabsOpen())
+        if(tab == null)
             return false;
 
-        paths[index] = path;
+        tab.setPath(path);
         return true;
     }
 
     /**
-     *  Adds new tab information into the arrays, unless there is no more space
+     *  Adds the information of a new, untitled tab after the last one
      *
-     * @return          true if successfully added, false if there is no more space
+     * @return  the state of the new tab
      */
-    public boolean addTabData() {
-        // No more space
-        if(numTabsOpen() >= MAX_TABS)
-            return false;
-
-        tabPointer++;
-        return true;
+    public TabState addTabData() {
+        return tabs.add();
     }
 
     /**
-     *  Adds new tab information into the arrays, unless there is no more space
+     *  Adds the information of a new tab after the last one
      *
      * @param name  the name given to the file
      * @param path  the path given to the file
-     * @param text  the original text given to the file
      * @param flag  determines whether opened from directory
-     * @return      true if successfully added, false if there is no more space
+     * @return      the state of the new tab
      */
-    public boolean addTabData(String name, String path, String text, boolean flag) {
-        // No more space
-        if(numTabsOpen() >= MAX_TABS)
-            return false;
+    public TabState addTabData(String name, String path, boolean flag) {
+        TabState tab = tabs.add();
 
-        tabPointer++;
-        names[tabPointer] = name;
-        paths[tabPointer] = path;
-        ogText[tabPointer] = text;
-        openedFromDir[tabPointer] = flag;
-        return true;
+        tab.setName(name);
+        tab.setPath(path);
+        tab.setOpenedFromDir(flag);
+        return tab;
     }
 
     /**
@@ -266,7 +234,7 @@ public class FileData {
      * @return  the number of tabs currently open
      */
     public int numTabsOpen() {
-        return tabPointer + 1;
+        return tabs.size();
     }
 
     /**
@@ -276,25 +244,6 @@ public class FileData {
      * @return          true if successfully removed, false if no such data exists
      */
     public boolean removeTabData(int index) {
-        // Index out of bounds
-        if(index < 0 || index >= numTabsOpen())
-            return false;
-
-        // Shift all content on right of removed to the left
-        for(int i = index; i < numTabsOpen(); i++) {
-            if(i + 1 >= MAX_TABS) {
-                names[i] = "Untitled";
-                paths[i] = null;
-                ogText[i] = "";
-                openedFromDir[i] = false;
-            } else {
-                names[i] = names[i + 1];
-                paths[i] = paths[i + 1];
-                ogText[i] = ogText[i + 1];
-                openedFromDir[i] = openedFromDir[i + 1];
-            }
-        }
-        tabPointer--;
-        return true;
+        return tabs.remove(index) != null;
     }
 }
@@ -1,10 +1,10 @@
 package main.data;
 
+import main.data.document.LineIndex;
+import main.data.document.PieceTableDocument;
+
 import javax.swing.*;
 import javax.swing.text.BadLocationException;
-import javax.swing.text.Element;
-import java.awt.*;
-import java.util.LinkedList;
 
 /**
  * Contains information regarding the various lines in each text pane (e.g. current
@@ -14,161 +14,117 @@ import java.util.LinkedList;
  */
 public class LineData {
     /**
-     * CREDIT: https://community.oracle.com/tech/developers/discussion/1355067/getting-current-line-from-jtextpane-or-am-i-stupid
-     *
-     * Gets the current line in a text pane
+     *  Gets the current line in a text pane
      *
      * @param textPane      the text pane to extract the current line of text
      * @return              the String on the given line
      */
     public static LineInfo currentLine(JTextPane textPane) {
-        // Get section element
-        Element section = textPane.getDocument().getDefaultRootElement();
-
-        // Get number of paragraphs.
-        // In a text pane, a span of characters terminated by single
-        // newline is typically called a paragraph.
-        int paraCount = section.getElementCount();
-
-        int position = textPane.getCaret().getDot();
-
-        // Get index ranges for each paragraph
-        for (int i = 0; i < paraCount; i++)
-        {
-            Element e1 = section.getElement(i);
-
-            int rangeStart = e1.getStartOffset();
-            int rangeEnd = e1.getEndOffset();
-
-            try
-            {
-                String para = textPane.getText(rangeStart, rangeEnd - rangeStart);
-
-                if (position >= rangeStart && position <= rangeEnd)
-                    return new LineInfo(para, rangeStart);
-            }
-            catch (BadLocationException ex)
-            {
-                System.err.println(ex.getMessage());
-            }
+        LineIndex lineIndex = getLineIndex(textPane);
+        int line            = getLineNumber(textPane);
+        int rangeStart      = lineIndex.getLineStartOffset(line);
+        int rangeEnd        = lineIndex.getLineEndOffset(line);
+
+        try {
+            return new LineInfo(textPane.getText(rangeStart, rangeEnd - rangeStart), rangeStart);
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
         }
 
         return null;
     }
 
+    /**
+     *  Counts the lines that are completely covered by the selection in a text pane
+     *  (not counting the lines the selection starts and ends on)
+     *
+     * @param textPane      the text pane holding the selection
+     * @return              the number of whole lines selected
+     */
     public static int numWholeLinesSelected(JTextPane textPane) {
-        if(textPane.getSelectedText() == null)
+        if(textPane.getSelectionStart() == textPane.getSelectionEnd())
             return 0;
 
-        int lineCount = 0;
-
-        // Get section element
-        Element section = textPane.getDocument().getDefaultRootElement();
+        LineIndex lineIndex = getLineIndex(textPane);
+        int selStart        = textPane.getSelectionStart();
+        int selEnd          = textPane.getSelectionEnd();
+        int length          = textPane.getDocument().getLength();
 
-        // Get number of paragraphs.
-        // In a text pane, a span of characters terminated by single
-        // newline is typically called a paragraph.
-        int paraCount = section.getElementCount();
+        // Only the lines starting within the selection can be covered by it
+        int first           = lineIndex.getLineOfOffset(selStart) + 1;
+        int last            = lineIndex.getLineOfOffset(selEnd - 1);
+        int lineCount       = Math.max(last - first + 1, 0);
 
-        // Get index ranges for each paragraph
-        for (int i = 0; i < paraCount; i++)
-        {
-            Element e1 = section.getElement(i);
+        // The last of those lines is only covered if it ends within the selection
+        if(lineCount > 0) {
+            int rangeEnd = last == lineIndex.getLineCount() - 1 ? length + 1 : lineIndex.getLineEndOffset(last);
 
-            int rangeStart = e1.getStartOffset();
-            int rangeEnd = e1.getEndOffset();
-
-            if ((rangeStart > textPane.getSelectionStart() && rangeStart < textPane.getSelectionEnd())
-                    && ((rangeEnd > textPane.getSelectionStart() && rangeEnd < textPane.getSelectionEnd())
-                    || rangeEnd >= textPane.getText().length() - 1)) {
-                lineCount++;
-            }
+            if(rangeEnd >= selEnd && rangeEnd < length - 1)
+                lineCount--;
         }
 
-        if(paraCount <= 3)
+        if(lineIndex.getLineCount() <= 3)
             lineCount--;
 
         return Math.max(lineCount, 0);
     }
 
     /**
-     * CREDIT: https://community.oracle.com/tech/developers/discussion/1355067/getting-current-line-from-jtextpane-or-am-i-stupid
-     *
-     * Gets the current line number of the caret in a text pane
+     *  Gets the current line number of the caret in a text pane.  A caret at the
+     *  start of a line counts as being at the end of the line above it.
      *
      * @param textPane      the text pane to extract the current line number
      * @return              the number of the line the caret is on
      */
     public static int getLineNumber(JTextPane textPane) {
-        // Get section element
-        Element section = textPane.getDocument().getDefaultRootElement();
+        LineIndex lineIndex = getLineIndex(textPane);
+        int position        = textPane.getCaret().getDot();
+        int line            = lineIndex.getLineOfOffset(position);
 
-        // Get number of paragraphs.
-        // In a text pane, a span of characters terminated by single
-        // newline is typically called a paragraph.
-        int paraCount = section.getElementCount();
-
-        int position = textPane.getCaret().getDot();
-
-        // Get index ranges for each paragraph
-        for (int i = 0; i < paraCount; i++)
-        {
-            Element e1 = section.getElement(i);
-
-            int rangeStart = e1.getStartOffset();
-            int rangeEnd = e1.getEndOffset();
-
-            if (position >= rangeStart && position <= rangeEnd)
-                return i;
-        }
+        if(line > 0 && lineIndex.getLineStartOffset(line) == position)
+            line--;
 
-        return -1;
+        return line;
     }
 
     /**
-     * CREDIT: https://community.oracle.com/tech/developers/discussion/1355067/getting-current-line-from-jtextpane-or-am-i-stupid
-     *
-     * Gets the line number at a designated index
+     *  Gets the line number at a designated index of the pane's text, where
+     *  each line break counts as two characters ("\r\n")
      *
      * @param textPane      the text pane to extract the current line number
      * @param index         the index at which to locate the line
      * @return              the number of the line the index is on
      */
     public static int getIndexLineNumber(JTextPane textPane, int index) {
-        // Get section element
-        Element section = textPane.getDocument().getDefaultRootElement();
+        LineIndex lineIndex = getLineIndex(textPane);
+        int lastLine        = lineIndex.getLineCount() - 1;
 
-        // Get number of paragraphs.
-        // In a text pane, a span of characters terminated by single
-        // newline is typically called a paragraph.
-        int paraCount = section.getElementCount();
+        if(index < 0 || index > textPane.getDocument().getLength() + 1 + lastLine)
+            return -1;
 
-        // Get index ranges for each paragraph
-        for (int i = 0; i < paraCount; i++)
-        {
-            Element e1 = section.getElement(i);
+        // Find the last line whose start (moved by the line breaks above it) is at or before the index
+        int low     = 0;
+        int high    = lastLine;
 
-            int rangeStart = e1.getStartOffset() + i;
-            int rangeEnd = e1.getEndOffset() + i;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
 
-            if (index >= rangeStart && index <= rangeEnd) {
-                return i;
-            }
+            if(lineIndex.getLineStartOffset(mid) + mid <= index)
+                low = mid;
+            else
+                high = mid - 1;
         }
 
-        return -1;
+        return low;
     }
 
     /**
-     * CREDIT: https://community.oracle.com/tech/developers/discussion/1355067/getting-current-line-from-jtextpane-or-am-i-stupid
-     *
-     * Duplicates the current line that the caret is on, or the selected text, in a text pane
+     *  Duplicates the current line that the caret is on, or the selected text, in a text pane
      *
      * @param textPane      the text pane to extract the current line of text
      */
     public static void duplicateLine(JTextPane textPane) {
         int caretPos            = textPane.getCaretPosition();
-        int length              = 0;
 
         if(textPane.getSelectedText() != null) {
             int start   = textPane.getSelectionEnd();
@@ -183,36 +139,26 @@ public class LineData {
             return;
         }
 
-        // Get section element
-        Element section = textPane.getDocument().getDefaultRootElement();
-
-        // Get number of paragraphs.
-        // In a text pane, a span of characters terminated by single
-        // newline is typically called a paragraph.
-        int paraCount = section.getElementCount();
-
-        int position = textPane.getCaret().getDot();
-
-        // Get index ranges for each paragraph
-        for (int i = 0; i < paraCount; i++)
-        {
-            Element e1      = section.getElement(i);
-            int rangeStart  = e1.getStartOffset();
-            int rangeEnd    = e1.getEndOffset();
+        LineIndex lineIndex = getLineIndex(textPane);
+        int line            = lineIndex.getLineOfOffset(caretPos);
+        int rangeStart      = lineIndex.getLineStartOffset(line);
+        int rangeEnd        = lineIndex.getLineEndOffset(line);
+        int length          = 0;
 
-            try
-            {
-                String para = textPane.getText(rangeStart, rangeEnd - rangeStart);
+        try {
+            String para = textPane.getText(rangeStart, rangeEnd - rangeStart);
 
-                if (position >= rangeStart && position < rangeEnd) {
-                    length = para.length();
-                    textPane.getStyledDocument().insertString(rangeStart, para, null);
-                }
-            }
-            catch (BadLocationException ex)
-            {
-                System.err.println(ex.getMessage());
+            // The last line has no newline of its own, so the copy goes after it
+            if(line == lineIndex.getLineCount() - 1) {
+                para = "\n" + para;
+                textPane.getStyledDocument().insertString(rangeEnd, para, null);
+            } else {
+                textPane.getStyledDocument().insertString(rangeStart, para, null);
             }
+
+            length = para.length();
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
         }
 
         textPane.setCaretPosition(caretPos + length);
@@ -220,64 +166,28 @@ public class LineData {
     }
 
     /**
-     * CREDIT: https://community.oracle.com/tech/developers/discussion/1355067/getting-current-line-from-jtextpane-or-am-i-stupid
-     *
-     * Joins the current line that the caret is on with the line below it. Does nothing if
-     * no line below caret line
+     *  Joins the current line that the caret is on with the line below it. Does nothing if
+     *  no line below caret line
      *
      * @param textPane      the text pane to extract the current line of text
      */
     public static void joinLines(JTextPane textPane) {
-        int caretPos            = textPane.getCaretPosition();
-        int length              = 0;
-        int topIdx              = -1;
-        int topLen              = 0;
-
-        // Get section element
-        Element section = textPane.getDocument().getDefaultRootElement();
-
-        // Get number of paragraphs.
-        // In a text pane, a span of characters terminated by single
-        // newline is typically called a paragraph.
-        int paraCount = section.getElementCount();
-
-        int position = textPane.getCaret().getDot();
-
-        // Get index ranges for each paragraph
-        for (int i = 0; i < paraCount; i++)
-        {
-            Element e1      = section.getElement(i);
-            int rangeStart  = e1.getStartOffset();
-            int rangeEnd    = e1.getEndOffset();
-
-            try
-            {
-                String para = textPane.getText(rangeStart, rangeEnd - rangeStart);
-
-                // Join lines here
-                if(topIdx != -1) {
-                    length = para.length();
-                    textPane.getStyledDocument().insertString(topIdx + topLen - 1, para.replaceAll("\n", ""), null);
-                    textPane.getStyledDocument().remove(i == paraCount - 1 ? topIdx + topLen + length - 2
-                            : topIdx + topLen + length - 1,  length);
-
-                    // Break necessary to avoid exceptions with 'rangeStart' and 'rangeEnd'
-                    break;
-                }
-
-                if (position >= rangeStart && position < rangeEnd && i != paraCount - 1) {
-                    topIdx = rangeStart;
-                    topLen = para.length();
-                }
-            }
-            catch (BadLocationException ex)
-            {
+        LineIndex lineIndex = getLineIndex(textPane);
+        int line            = lineIndex.getLineOfOffset(textPane.getCaretPosition());
+
+        if(line < lineIndex.getLineCount() - 1) {
+            try {
+                // Removing the newline ending the caret line joins the two lines
+                textPane.getStyledDocument().remove(lineIndex.getLineEndOffset(line) - 1, 1);
+            } catch(BadLocationException ex) {
                 System.err.println(ex.getMessage());
             }
+
+            int joinedEnd = lineIndex.getLineEndOffset(line);
+
+            textPane.setCaretPosition(line == lineIndex.getLineCount() - 1 ? joinedEnd : joinedEnd - 1);
         }
 
-        if(topIdx + topLen + length - 2 >= 0)
-            textPane.setCaretPosition(topIdx + topLen + length - 2);
         textPane.getCaret().setVisible(true);
     }
 
@@ -302,6 +212,16 @@ public class LineData {
         return count;
     }
 
+    /**
+     *  Returns the line index kept by the document of a text pane
+     *
+     * @param textPane      the text pane whose line index to get
+     * @return              the line index of the text pane's document
+     */
+    private static LineIndex getLineIndex(JTextPane textPane) {
+        return ((PieceTableDocument) textPane.getDocument()).getLineIndex();
+    }
+
     /**
      * Contains information regarding a line of text.  Should be used for a text area, text pane,
      * or a similar component.
@@ -0,0 +1,125 @@
+package main.data;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Keeps the state (see TabState) of every open tab, in the order of the tabs in
+ * the tabbed pane.  There is no limit on the number of tabs open.
+ *
+ * A tab can be looked up by its index in the tabbed pane, or by its ID, which
+ * does not change when tabs before it are closed: background work that outlives
+ * a click (such as loading or saving a file) should hold on to the TabState or
+ * its ID rather than to an index.
+ *
+ * @author Justin Kocur
+ */
+public class TabRegistry {
+    /** The document property holding the ID of the tab a text pane's document belongs to */
+    public static final String TAB_ID_PROPERTY = "tabId";
+
+    // The open tabs, by ID
+    private final HashMap<Integer, TabState> byId;
+
+    // The ID given to the next tab opened
+    private int nextId;
+
+    // The open tabs, in the order of the tabbed pane
+    private final ArrayList<TabState> tabs;
+
+    /**
+     * Creates a registry with no tabs open
+     */
+    public TabRegistry() {
+        byId = new HashMap<>();
+        tabs = new ArrayList<>();
+    }
+
+    /**
+     *  Adds a new, untitled tab after the last one
+     *
+     * @return  the state of the new tab
+     */
+    public TabState add() {
+        TabState tab = new TabState(nextId++);
+
+        tabs.add(tab);
+        byId.put(tab.getId(), tab);
+        return tab;
+    }
+
+    /**
+     *  Returns the tab at an index of the tabbed pane
+     *
+     * @param index     the index of the tab
+     * @return          the state of the tab; null if out of bounds
+     */
+    public TabState get(int index) {
+        // Index out of bounds
+        if(index < 0 || index >= tabs.size())
+            return null;
+
+        return tabs.get(index);
+    }
+
+    /**
+     *  Returns the tab with an ID
+     *
+     * @param id    the ID of the tab
+     * @return      the state of the tab; null if no open tab has the ID
+     */
+    public TabState getById(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     *  Returns the index of a tab in the tabbed pane
+     *
+     * @param tab   the state of the tab
+     * @return      the index of the tab; -1 if it was closed
+     */
+    public int indexOf(TabState tab) {
+        return byId.get(tab.getId()) == tab ? tabs.indexOf(tab) : -1;
+    }
+
+    /**
+     *  Returns the index of the tab a file is open in
+     *
+     * @param file  the file
+     * @return      the index of the first tab holding the file; -1 if not open
+     */
+    public int indexOfFile(File file) {
+        for(int i = 0; i < tabs.size(); i++)
+            if(file.getAbsolutePath().equals(tabs.get(i).getPath()))
+                return i;
+
+        return -1;
+    }
+
+    /**
+     *  Removes the tab at an index of the tabbed pane
+     *
+     * @param index     the index of the tab
+     * @return          the state of the removed tab; null if out of bounds
+     */
+    public TabState remove(int index) {
+        // Index out of bounds
+        if(index < 0 || index >= tabs.size())
+            return null;
+
+        TabState tab = tabs.remove(index);
+
+        byId.remove(tab.getId());
+        return tab;
+    }
+
+    /**
+     *  Returns the number of tabs open
+     *
+     * @return  the number of tabs open
+     */
+    public int size() {
+        return tabs.size();
+    }
+}
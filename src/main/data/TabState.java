@@ -0,0 +1,193 @@
+package main.data;
+
+import main.gui.components.EditorTextPane;
+import main.gui.components.boxcomponents.ReplaceBox;
+import main.gui.components.boxcomponents.SearchBox;
+
+import javax.swing.undo.UndoManager;
+
+/**
+ * Holds everything the text editor knows about one open tab: the file shown in
+ * it, its text pane and undo history, and the state of the search and replace
+ * boxes in it.  Each tab gets an ID when it is opened, which stays the same
+ * while other tabs are opened and closed (unlike its index in the tabbed pane).
+ *
+ * @author Justin Kocur
+ */
+public class TabState {
+    // The ID of the tab, unique among the tabs opened since the editor started
+    private final int id;
+
+    // The name of the file in the tab; "Untitled" if never saved
+    private String name;
+
+    /* True if the file in the tab was opened from a file;
+       false if first created in this text editor */
+    private boolean openedFromDir;
+
+    // The path of the file in the tab (saved files only); null if never saved
+    private String path;
+
+    // True if the tab is a read-only viewer of a file too large to edit
+    private boolean readOnly;
+
+    // The state of the replace box in the tab
+    private final ReplaceBox.ReplaceData replaceData;
+
+    // The state of the search box in the tab
+    private final SearchBox.SearchData searchData;
+
+    // Holds the text of the file
+    private EditorTextPane textPane;
+
+    // The undo/ redo history of the text pane
+    private UndoManager undoManager;
+
+    /**
+     *  Creates the state of a new, untitled tab
+     *
+     * @param id    the ID of the tab
+     */
+    TabState(int id) {
+        this.id = id;
+
+        name        = "Untitled";
+        replaceData = new ReplaceBox.ReplaceData();
+        searchData  = new SearchBox.SearchData();
+    }
+
+    /**
+     *  Returns the ID of the tab
+     *
+     * @return  the ID of the tab
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     *  Returns the name of the file in the tab
+     *
+     * @return  the name of the file in the tab
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     *  Sets the name of the file in the tab
+     *
+     * @param name  the new name of the file
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     *  Returns whether the file in the tab was opened from a file
+     *
+     * @return  true if opened from a file, false if created in this text editor
+     */
+    public boolean isOpenedFromDir() {
+        return openedFromDir;
+    }
+
+    /**
+     *  Sets whether the file in the tab was opened from a file
+     *
+     * @param openedFromDir     true if opened from a file, false if not
+     */
+    public void setOpenedFromDir(boolean openedFromDir) {
+        this.openedFromDir = openedFromDir;
+    }
+
+    /**
+     *  Returns the path of the file in the tab
+     *
+     * @return  the path of the file; null if never saved
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     *  Sets the path of the file in the tab
+     *
+     * @param path  the new path of the file
+     */
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     *  Returns whether the tab is a read-only viewer
+     *
+     * @return  true if the file is too large to edit and only viewed, false if not
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     *  Sets whether the tab is a read-only viewer
+     *
+     * @param readOnly  true if the file is only viewed, false if not
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     *  Returns the state of the replace box in the tab
+     *
+     * @return  the state of the replace box in the tab
+     */
+    public ReplaceBox.ReplaceData getReplaceData() {
+        return replaceData;
+    }
+
+    /**
+     *  Returns the state of the search box in the tab
+     *
+     * @return  the state of the search box in the tab
+     */
+    public SearchBox.SearchData getSearchData() {
+        return searchData;
+    }
+
+    /**
+     *  Returns the text pane of the tab
+     *
+     * @return  the text pane of the tab; null until it is constructed
+     */
+    public EditorTextPane getTextPane() {
+        return textPane;
+    }
+
+    /**
+     *  Sets the text pane of the tab
+     *
+     * @param textPane  the text pane of the tab
+     */
+    public void setTextPane(EditorTextPane textPane) {
+        this.textPane = textPane;
+    }
+
+    /**
+     *  Returns the undo/ redo history of the tab's text pane
+     *
+     * @return  the undo manager of the tab; null until it is constructed
+     */
+    public UndoManager getUndoManager() {
+        return undoManager;
+    }
+
+    /**
+     *  Sets the undo/ redo history of the tab's text pane
+     *
+     * @param undoManager   the undo manager of the tab
+     */
+    public void setUndoManager(UndoManager undoManager) {
+        this.undoManager = undoManager;
+    }
+}
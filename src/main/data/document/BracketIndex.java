@@ -0,0 +1,683 @@
+package main.data.document;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import java.util.Arrays;
+
+/**
+ * Keeps the offset of every bracket of a document, so that the bracket matching
+ * another is found without reading the text between them.
+ *
+ * The brackets are kept in a balanced tree (a treap) in the order of their offsets.
+ * Each node also holds the depth its subtree adds up to (an opening bracket counts
+ * +1, a closing one -1) and the lowest depth reached inside it, so the bracket
+ * closing another (the first one after it taking the depth back down) is found by
+ * walking down the tree, passing over whole subtrees that stay too deep.  Finding
+ * a match, like updating the tree, takes a time logarithmic in the number of
+ * brackets.  An edit shifts the brackets after it by adding to a single node, and
+ * only the lines it touched are read again.
+ *
+ * Brackets inside a string ("...") or a character ('x') literal are not counted.
+ * Literals are taken to end at the end of a line, so a line can always be read
+ * without looking at the lines before it; a single quote is only taken as the
+ * start of a literal if another one closes it right after a character (or an
+ * escape), so apostrophes in plain text do not hide the brackets after them.
+ *
+ * @author Justin Kocur
+ */
+public class BracketIndex {
+    // The characters that close a bracket, by the index of the kind of bracket
+    private static final String CLOSING = ")]}";
+
+    // The characters that open a bracket, by the index of the kind of bracket
+    private static final String OPENING = "([{";
+
+    // The states of the reader of a line (see 'lex')
+    private static final int STATE_CHAR         = 1;    // After a single quote
+    private static final int STATE_CHAR_END     = 2;    // After a single quote and a character
+    private static final int STATE_CHAR_ESCAPE  = 3;    // Inside a character literal, after its '\'
+    private static final int STATE_PLAIN        = 0;    // Outside of any literal
+    private static final int STATE_STRING       = 4;    // Inside a string literal
+    private static final int STATE_STRING_ESC   = 5;    // Inside a string literal, right after a '\'
+
+    // Gives each node its (random) priority
+    private int seed;
+
+    // The root of the tree of brackets; null if there are none
+    private Node root;
+
+    /**
+     * Creates the index of an empty text, which has no brackets
+     */
+    public BracketIndex() {
+        seed = 0x2545F491;
+    }
+
+    /**
+     *  Returns the number of brackets in the text (outside of literals)
+     *
+     * @return  the number of brackets
+     */
+    public int getBracketCount() {
+        return size(root);
+    }
+
+    /**
+     *  Returns the offset of the bracket matching the one at an offset: the closing
+     *  bracket of an opening one, or the opening bracket of a closing one
+     *
+     * @param offset    the offset of a bracket
+     * @return          the offset of the bracket matching it; -1 if there is no bracket
+     *                  at the offset, if it is unmatched, or if it is matched by a
+     *                  bracket of another kind
+     */
+    public int getMatch(int offset) {
+        int rank = rankOf(offset);
+
+        if(rank < 0)
+            return -1;
+
+        Node bracket    = nodeAt(rank);
+        int depth       = depthAfter(rank);
+        int match;
+
+        if(bracket.value > 0) {
+            // The first bracket after it taking the depth back to the one before it
+            match = firstAtMost(root, rank + 1, 0, depth - 1);
+        } else {
+            // The opening bracket after the last one before it leaving the depth as low as after it
+            int last = lastAtMost(root, rank - 2, 0, depth);
+
+            match = last >= 0 ? last + 1 : (rank > 0 && depth >= 0 ? 0 : -1);
+        }
+
+        if(match < 0 || kindOf(bracket.bracket) != kindOf(nodeAt(match).bracket))
+            return -1;
+
+        return positionAt(match);
+    }
+
+    /**
+     *  Updates the index after text was inserted.  The content and the line index
+     *  must already hold the inserted text.
+     *
+     * @param offset                    the offset at which the text was inserted
+     * @param len                       the number of characters inserted
+     * @param content                   the content the text was inserted into
+     * @param lines                     the line index of the content
+     * @throws BadLocationException     if the inserted range is not within the content
+     */
+    public void insertUpdate(int offset, int len, AbstractDocument.Content content, LineIndex lines)
+            throws BadLocationException {
+        int start   = lines.getLineStartOffset(lines.getLineOfOffset(offset));
+        int end     = lines.getLineEndOffset(lines.getLineOfOffset(offset + len));
+
+        // The lines touched ended 'len' characters earlier before the insertion
+        update(start, end - len, len, content, end);
+    }
+
+    /**
+     *  Updates the index after text was removed.  The content and the line index
+     *  must already be without the removed text.
+     *
+     * @param offset                    the offset at which the text was removed
+     * @param len                       the number of characters removed
+     * @param content                   the content the text was removed from
+     * @param lines                     the line index of the content
+     * @throws BadLocationException     if the line of the removal is not within the content
+     */
+    public void removeUpdate(int offset, int len, AbstractDocument.Content content, LineIndex lines)
+            throws BadLocationException {
+        int line    = lines.getLineOfOffset(offset);
+        int start   = lines.getLineStartOffset(line);
+        int end     = lines.getLineEndOffset(line);
+
+        // The line the removal joined was 'len' characters longer before it
+        update(start, end + len, -len, content, end);
+    }
+
+    /**
+     *  Returns the depth after a bracket: the number of opening brackets up to and
+     *  including it, less the number of closing ones
+     *
+     * @param rank  the position of the bracket among the brackets
+     * @return      the depth after the bracket
+     */
+    private int depthAfter(int rank) {
+        int depth   = 0;
+        Node node   = root;
+
+        while(true) {
+            int leftSize = size(node.left);
+
+            if(rank < leftSize) {
+                node = node.left;
+                continue;
+            }
+
+            depth += sum(node.left) + node.value;
+
+            if(rank == leftSize)
+                return depth;
+
+            rank    -= leftSize + 1;
+            node    = node.right;
+        }
+    }
+
+    /**
+     *  Returns the first bracket, from a position on, after which the depth is at
+     *  most a target
+     *
+     * @param node      the subtree to look in
+     * @param from      the position (in the subtree) of the first bracket to look at
+     * @param depth     the depth before the subtree
+     * @param target    the highest depth looked for
+     * @return          the position of the bracket in the subtree; -1 if there is none
+     */
+    private static int firstAtMost(Node node, int from, int depth, int target) {
+        // No bracket of the subtree takes the depth low enough
+        if(node == null || depth + node.minDepth > target)
+            return -1;
+
+        int leftSize = size(node.left);
+
+        if(from < leftSize) {
+            int found = firstAtMost(node.left, from, depth, target);
+
+            if(found >= 0)
+                return found;
+        }
+
+        depth += sum(node.left) + node.value;
+
+        if(from <= leftSize && depth <= target)
+            return leftSize;
+
+        int found = firstAtMost(node.right, from - leftSize - 1, depth, target);
+
+        return found < 0 ? -1 : leftSize + 1 + found;
+    }
+
+    /**
+     *  Returns the kind of a bracket (e.g. 0 for '(' and ')')
+     *
+     * @param bracket   the bracket
+     * @return          the index of its kind in 'OPENING' and 'CLOSING'
+     */
+    private static int kindOf(char bracket) {
+        int kind = OPENING.indexOf(bracket);
+
+        return kind >= 0 ? kind : CLOSING.indexOf(bracket);
+    }
+
+    /**
+     *  Returns the last bracket, up to a position, after which the depth is at most
+     *  a target
+     *
+     * @param node      the subtree to look in
+     * @param to        the position (in the subtree) of the last bracket to look at
+     * @param depth     the depth before the subtree
+     * @param target    the highest depth looked for
+     * @return          the position of the bracket in the subtree; -1 if there is none
+     */
+    private static int lastAtMost(Node node, int to, int depth, int target) {
+        if(node == null || to < 0 || depth + node.minDepth > target)
+            return -1;
+
+        int leftSize    = size(node.left);
+        int after       = depth + sum(node.left) + node.value;
+
+        if(to > leftSize) {
+            int found = lastAtMost(node.right, to - leftSize - 1, after, target);
+
+            if(found >= 0)
+                return leftSize + 1 + found;
+        }
+
+        if(to >= leftSize && after <= target)
+            return leftSize;
+
+        return lastAtMost(node.left, to, depth, target);
+    }
+
+    /**
+     *  Reads the brackets of a run of whole lines, leaving out the ones inside literals
+     *
+     * @param content                   the content holding the lines
+     * @param start                     the offset of the first line
+     * @param end                       the offset just past the last line
+     * @return                          the tree of the brackets read; null if none
+     * @throws BadLocationException     if the lines are not within the content
+     */
+    private Node lex(AbstractDocument.Content content, int start, int end) throws BadLocationException {
+        Segment text            = new Segment();
+        TreeBuilder brackets    = new TreeBuilder();
+        int state               = STATE_PLAIN;
+
+        // A bracket right after a single quote, only counted if the quote does not start a literal
+        char pending        = 0;
+        int pendingOffset   = 0;
+
+        text.setPartialReturn(true);
+
+        // The content holds an implied newline after the text, which is never read
+        end = Math.min(end, content.length() - 1);
+
+        for(int where = start; where < end; where += text.count) {
+            content.getChars(where, end - where, text);
+
+            for(int i = 0; i < text.count; i++) {
+                char c = text.array[text.offset + i];
+
+                switch(state) {
+                    case STATE_CHAR:
+                        if(c == '\\') {
+                            state = STATE_CHAR_ESCAPE;
+                        } else if(c == '\n' || c == '\'') {
+                            state = STATE_PLAIN;
+                        } else {
+                            pending         = c;
+                            pendingOffset   = where + i;
+                            state           = STATE_CHAR_END;
+                        }
+                        continue;
+
+                    case STATE_CHAR_END:
+                        // Closed right away: a literal
+                        if(c == '\'') {
+                            state = STATE_PLAIN;
+                            continue;
+                        }
+
+                        // Not a literal after all: the character after the quote may start a string
+                        if(pending == '"') {
+                            state = c == '"' || c == '\n' ? STATE_PLAIN : c == '\\' ? STATE_STRING_ESC : STATE_STRING;
+                            continue;
+                        }
+
+                        if(kindOf(pending) >= 0)
+                            brackets.add(newNode(pendingOffset, pending));
+
+                        state = STATE_PLAIN;
+                        break;
+
+                    case STATE_CHAR_ESCAPE:
+                        if(c == '\'' || c == '\n')
+                            state = STATE_PLAIN;
+                        continue;
+
+                    case STATE_STRING:
+                        if(c == '\\')
+                            state = STATE_STRING_ESC;
+                        else if(c == '"' || c == '\n')
+                            state = STATE_PLAIN;
+                        continue;
+
+                    case STATE_STRING_ESC:
+                        state = c == '\n' ? STATE_PLAIN : STATE_STRING;
+                        continue;
+                }
+
+                // Outside of any literal
+                if(c == '"')
+                    state = STATE_STRING;
+                else if(c == '\'')
+                    state = STATE_CHAR;
+                else if(kindOf(c) >= 0)
+                    brackets.add(newNode(where + i, c));
+            }
+        }
+
+        // The text ended right after a quote and a bracket
+        if(state == STATE_CHAR_END && kindOf(pending) >= 0)
+            brackets.add(newNode(pendingOffset, pending));
+
+        return brackets.build();
+    }
+
+    /**
+     *  Joins two trees, every bracket of the first coming before every bracket of
+     *  the second
+     *
+     * @param left      the tree of the brackets coming first; may be null
+     * @param right     the tree of the brackets coming after; may be null
+     * @return          the joined tree
+     */
+    private static Node merge(Node left, Node right) {
+        if(left == null)
+            return right;
+
+        if(right == null)
+            return left;
+
+        if(left.priority > right.priority) {
+            push(left);
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+
+        push(right);
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    /**
+     *  Creates the node of a bracket
+     *
+     * @param offset    the offset of the bracket
+     * @param bracket   the bracket
+     * @return          the node, with a random priority
+     */
+    private Node newNode(int offset, char bracket) {
+        // Xorshift, which is plenty random for balancing
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+
+        return update(new Node(offset, bracket, OPENING.indexOf(bracket) >= 0 ? 1 : -1, seed));
+    }
+
+    /**
+     *  Returns the node of a bracket
+     *
+     * @param rank  the position of the bracket among the brackets
+     * @return      the node of the bracket
+     */
+    private Node nodeAt(int rank) {
+        Node node = root;
+
+        while(rank != size(node.left)) {
+            if(rank < size(node.left)) {
+                node = node.left;
+            } else {
+                rank    -= size(node.left) + 1;
+                node    = node.right;
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     *  Returns the offset of a bracket.  The shifts not yet handed down the tree are
+     *  added up on the way down, so the tree is left as it is.
+     *
+     * @param rank  the position of the bracket among the brackets
+     * @return      the offset of the bracket
+     */
+    private int positionAt(int rank) {
+        Node node = root;
+        int shift = 0;
+
+        while(rank != size(node.left)) {
+            shift += node.shift;
+
+            if(rank < size(node.left)) {
+                node = node.left;
+            } else {
+                rank    -= size(node.left) + 1;
+                node    = node.right;
+            }
+        }
+
+        return node.offset + shift;
+    }
+
+    /**
+     *  Hands the shift of a node down to its children
+     *
+     * @param node  the node
+     */
+    private static void push(Node node) {
+        if(node.shift == 0)
+            return;
+
+        shift(node.left, node.shift);
+        shift(node.right, node.shift);
+        node.shift = 0;
+    }
+
+    /**
+     *  Returns the position of the bracket at an offset among the brackets, without
+     *  changing the tree
+     *
+     * @param offset    the offset
+     * @return          the position of the bracket; -1 if there is no bracket at the offset
+     */
+    private int rankOf(int offset) {
+        Node node   = root;
+        int shift   = 0;
+        int rank    = 0;
+
+        while(node != null) {
+            int nodeOffset = node.offset + shift;
+
+            shift += node.shift;
+
+            if(offset == nodeOffset)
+                return rank + size(node.left);
+
+            if(offset < nodeOffset) {
+                node = node.left;
+            } else {
+                rank    += size(node.left) + 1;
+                node    = node.right;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     *  Adds to the offset of every bracket of a tree
+     *
+     * @param node      the root of the tree; may be null
+     * @param shift     the number of characters to add
+     */
+    private static void shift(Node node, int shift) {
+        if(node == null)
+            return;
+
+        node.offset += shift;
+        node.shift  += shift;
+    }
+
+    /**
+     *  Returns the number of brackets of a tree
+     *
+     * @param node  the root of the tree; may be null
+     * @return      the number of brackets
+     */
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     *  Splits a tree in two at an offset
+     *
+     * @param node      the root of the tree; may be null
+     * @param offset    the offset to split at
+     * @return          the trees of the brackets before the offset and from the offset on
+     */
+    private static Node[] split(Node node, int offset) {
+        if(node == null)
+            return new Node[2];
+
+        push(node);
+
+        if(node.offset < offset) {
+            Node[] parts    = split(node.right, offset);
+            node.right      = parts[0];
+            parts[0]        = update(node);
+
+            return parts;
+        }
+
+        Node[] parts    = split(node.left, offset);
+        node.left       = parts[1];
+        parts[1]        = update(node);
+
+        return parts;
+    }
+
+    /**
+     *  Returns the depth a tree adds up to
+     *
+     * @param node  the root of the tree; may be null
+     * @return      the number of opening brackets of the tree, less the number of closing ones
+     */
+    private static int sum(Node node) {
+        return node == null ? 0 : node.sum;
+    }
+
+    /**
+     *  Reads the brackets of the lines touched by an edit again
+     *
+     * @param start                     the offset of the first line touched
+     * @param oldEnd                    the offset just past the last line touched, before the edit
+     * @param delta                     the number of characters inserted (less if removed)
+     * @param content                   the content, after the edit
+     * @param end                       the offset just past the last line touched, after the edit
+     * @throws BadLocationException     if the lines are not within the content
+     */
+    private void update(int start, int oldEnd, int delta, AbstractDocument.Content content, int end)
+            throws BadLocationException {
+        Node[] before   = split(root, start);
+        Node[] after    = split(before[1], oldEnd);
+
+        shift(after[1], delta);
+
+        root = merge(merge(before[0], lex(content, start, end)), after[1]);
+    }
+
+    /**
+     *  Works out what a node holds about its subtree from its children
+     *
+     * @param node  the node
+     * @return      the node
+     */
+    private static Node update(Node node) {
+        Node left   = node.left;
+        Node right  = node.right;
+        int depth   = sum(left) + node.value;
+
+        node.size       = size(left) + 1 + size(right);
+        node.sum        = depth + sum(right);
+        node.minDepth   = depth;
+
+        if(left != null)
+            node.minDepth = Math.min(node.minDepth, left.minDepth);
+
+        if(right != null)
+            node.minDepth = Math.min(node.minDepth, depth + right.minDepth);
+
+        return node;
+    }
+
+    /**
+     * A bracket, and the root of the subtree of the brackets around it
+     */
+    private static class Node {
+        // The bracket
+        private final char bracket;
+
+        // The brackets before it
+        private Node left;
+
+        // The lowest depth reached after a bracket of the subtree, counting from the depth before the subtree
+        private int minDepth;
+
+        // The offset of the bracket, less the shifts of its parents not yet handed down
+        private int offset;
+
+        // Keeps the tree balanced: a node's priority is higher than its children's
+        private final int priority;
+
+        // The brackets after it
+        private Node right;
+
+        // The number of characters to add to the offsets of the subtree, not yet handed down to the children
+        private int shift;
+
+        // The number of brackets of the subtree
+        private int size;
+
+        // The depth the subtree adds up to
+        private int sum;
+
+        // +1 for an opening bracket, -1 for a closing one
+        private final int value;
+
+        /**
+         *  Creates the node of a bracket, without children
+         *
+         * @param offset    the offset of the bracket
+         * @param bracket   the bracket
+         * @param value     +1 for an opening bracket, -1 for a closing one
+         * @param priority  the priority of the node
+         */
+        private Node(int offset, char bracket, int value, int priority) {
+            this.offset     = offset;
+            this.bracket    = bracket;
+            this.value      = value;
+            this.priority   = priority;
+        }
+    }
+
+    /**
+     * Builds a tree from brackets given in order, in a time linear in their number:
+     * only the rightmost path of the tree is kept track of while building, as every
+     * bracket added goes at its end
+     */
+    private static class TreeBuilder {
+        // The nodes of the rightmost path of the tree, from the root down
+        private Node[] path;
+
+        // The number of nodes on the path
+        private int size;
+
+        /**
+         * Creates a builder of an empty tree
+         */
+        private TreeBuilder() {
+            path = new Node[16];
+        }
+
+        /**
+         *  Adds a bracket after the ones added so far
+         *
+         * @param node  the node of the bracket
+         */
+        private void add(Node node) {
+            Node last = null;
+
+            // The nodes of lower priority end up on its left, and no longer change
+            while(size > 0 && path[size - 1].priority < node.priority)
+                last = update(path[--size]);
+
+            node.left = last;
+
+            if(size > 0)
+                path[size - 1].right = node;
+
+            if(size == path.length)
+                path = Arrays.copyOf(path, 2 * size);
+
+            path[size++] = node;
+        }
+
+        /**
+         *  Returns the tree of the brackets added
+         *
+         * @return  the root of the tree; null if no bracket was added
+         */
+        private Node build() {
+            for(int i = size - 1; i >= 0; i--)
+                update(path[i]);
+
+            return size > 0 ? path[0] : null;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package main.data.document;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/**
+ * Keeps the offset at which every line of a document starts, so that finding
+ * the line of an offset (or the offset of a line) is a binary search rather
+ * than a walk over every paragraph.
+ *
+ * The line starts are stored in an array with a gap at the line of the last
+ * edit.  Starts before the gap are stored as offsets, while starts after the gap
+ * are stored as distances from the end of the text.  An edit therefore only moves
+ * the starts between the previous edit and this one, and the starts after the
+ * edit do not have to be shifted at all.
+ *
+ * @author Justin Kocur
+ */
+public class LineIndex {
+    // The initial number of line starts the index has room for
+    private static final int INITIAL_CAPACITY = 64;
+
+    // The index in 'starts' of the first line start after the gap
+    private int gapEnd;
+
+    // The index in 'starts' of the gap (the number of line starts before it)
+    private int gapStart;
+
+    // The number of characters in the text (not counting the implied newline)
+    private int length;
+
+    // The line starts, with the gap between 'gapStart' and 'gapEnd'
+    private int[] starts;
+
+    /**
+     * Creates the index of an empty text, which has a single line
+     */
+    public LineIndex() {
+        starts      = new int[INITIAL_CAPACITY];
+        starts[0]   = 0;
+        gapStart    = 1;
+        gapEnd      = INITIAL_CAPACITY;
+    }
+
+    /**
+     *  Returns the number of lines in the text
+     *
+     * @return  the number of lines in the text
+     */
+    public int getLineCount() {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    /**
+     *  Returns the offset at which a line ends.  The newline that ends the
+     *  line (if there is one) is included.
+     *
+     * @param line  the line number (starting at 0)
+     * @return      the offset just past the end of the line
+     */
+    public int getLineEndOffset(int line) {
+        return line == getLineCount() - 1 ? length : getLineStartOffset(line + 1);
+    }
+
+    /**
+     *  Returns the line an offset is on
+     *
+     * @param offset    the offset in the text
+     * @return          the line number (starting at 0) of the offset
+     */
+    public int getLineOfOffset(int offset) {
+        int low     = 0;
+        int high    = getLineCount() - 1;
+
+        // Find the last line starting at or before the offset
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+
+            if(getLineStartOffset(mid) <= offset)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+
+        return low;
+    }
+
+    /**
+     *  Returns the offset at which a line starts
+     *
+     * @param line  the line number (starting at 0)
+     * @return      the offset of the first character of the line
+     */
+    public int getLineStartOffset(int line) {
+        return line < gapStart ? starts[line] : length - starts[line + gapEnd - gapStart];
+    }
+
+    /**
+     *  Updates the index after text was inserted.  The content must already hold the
+     *  inserted text.
+     *
+     * @param offset                    the offset at which the text was inserted
+     * @param len                       the number of characters inserted
+     * @param content                   the content the text was inserted into
+     * @throws BadLocationException     if the inserted range is not within the content
+     */
+    public void insertUpdate(int offset, int len, AbstractDocument.Content content) throws BadLocationException {
+        moveGap(getLineOfOffset(offset) + 1);
+        length += len;
+
+        // Read the inserted text piece by piece, recording a line start after each newline
+        Segment text    = new Segment();
+        int end         = offset + len;
+
+        text.setPartialReturn(true);
+
+        for(int where = offset; where < end; where += text.count) {
+            content.getChars(where, end - where, text);
+
+            for(int i = 0; i < text.count; i++) {
+                if(text.array[text.offset + i] == '\n') {
+                    if(gapStart == gapEnd)
+                        growGap();
+
+                    starts[gapStart++] = where + i + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     *  Updates the index after text was removed
+     *
+     * @param offset    the offset at which the text was removed
+     * @param len       the number of characters removed
+     */
+    public void removeUpdate(int offset, int len) {
+        moveGap(getLineOfOffset(offset) + 1);
+
+        // Drop the lines whose preceding newline was removed
+        while(gapEnd < starts.length && length - starts[gapEnd] <= offset + len)
+            gapEnd++;
+
+        length -= len;
+    }
+
+    /**
+     * Doubles the room for line starts, keeping the starts after the gap at the end
+     */
+    private void growGap() {
+        int[] grown     = new int[starts.length * 2];
+        int after       = starts.length - gapEnd;
+
+        System.arraycopy(starts, 0, grown, 0, gapStart);
+        System.arraycopy(starts, gapEnd, grown, grown.length - after, after);
+
+        gapEnd  = grown.length - after;
+        starts  = grown;
+    }
+
+    /**
+     *  Moves the gap so that it sits just before a line
+     *
+     * @param line  the line that should be the first one after the gap
+     */
+    private void moveGap(int line) {
+        while(gapStart > line)
+            starts[--gapEnd] = length - starts[--gapStart];
+
+        while(gapStart < line)
+            starts[gapStart++] = length - starts[gapEnd++];
+    }
+}
@@ -0,0 +1,1218 @@
+package main.data.document;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A piece table implementation of the storage behind a Swing document.
+ * The text is never moved once it has been stored: the characters of a
+ * file that was opened live in a (read-only) original buffer, and every
+ * character typed afterwards is appended to the add buffer.  The document
+ * itself is described by an ordered list of pieces, each pointing at a run
+ * of characters in one of the buffers.
+ *
+ * Inserting or removing text only splits, adds or drops pieces, so the cost
+ * of an edit depends on the number of pieces rather than the size of the file.
+ * Positions (used by Swing for element boundaries, highlights, etc.) are kept
+ * in the same way the GapContent class keeps them, relative to a virtual gap
+ * at the last edit, so only the positions between two edit points are touched.
+ *
+ * Every edit (including undo and redo) bumps a version number and updates a hash
+ * of the text.  The hash is the sum of a hash of every pair of adjacent characters
+ * (with markers for the start and end of the text), so an edit only rehashes the
+ * characters it inserts or removes, and undoing back to an earlier text always
+ * brings back that text's hash.  Texts made of the same pairs (e.g. with two lines
+ * swapped) share a hash, so equal hashes do not prove the texts are equal.
+ *
+ * The buffers can be spilled to a file and restored later (see 'spill'), which
+ * frees the heap they take up without touching the pieces, positions or undo
+ * edits that point into them.
+ *
+ * @author Justin Kocur
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+    // Identifies a piece whose characters are stored in the add buffer
+    private static final int ADD = -1;
+
+    // Stands for the end of the text when hashing pairs of adjacent characters
+    private static final int END = 0x10001;
+
+    // The initial capacity of the add buffer
+    private static final int INITIAL_ADD_CAPACITY = 1_024;
+
+    // The size of the byte buffer used to spill the buffers to a file and read them back
+    private static final int SPILL_BUFFER_SIZE = 1_024 * 1_024;
+
+    // Stands for the start of the text when hashing pairs of adjacent characters
+    private static final int START = 0x10000;
+
+    // Append-only buffer holding every character inserted after construction
+    private char[] addBuffer;
+
+    // The number of characters used in 'addBuffer'
+    private int addLength;
+
+    // The index (in 'pieces') of the last piece that was looked up
+    private int cachedIndex;
+
+    // The offset in the content at which the piece at 'cachedIndex' starts
+    private int cachedStart;
+
+    // The offset of the virtual gap used for storing the positions
+    private int gapStart;
+
+    // The size of the virtual gap used for storing the positions
+    private long gapSize;
+
+    // The sum of the hashes of every pair of adjacent characters in the content
+    private long hash;
+
+    // The total number of characters in the content, including the implied newline
+    private int length;
+
+    /* The marks created since 'marks' was last used, sorted by their stored index;
+       merged into 'marks' at once, as positions are mostly created in order (e.g.
+       for the lines of inserted text) and adding each to 'marks' on its own would
+       move all the marks after it */
+    private final ArrayList<MarkData> addedMarks;
+
+    // The positions handed out by this content, sorted by their stored index
+    private final ArrayList<MarkData> marks;
+
+    /* The read-only buffers handed to this content (e.g. the text of an opened
+       file), indexed by the 'source' of the pieces pointing into them */
+    private final ArrayList<char[]> originals;
+
+    // The pieces that, read in order, make up the content
+    private final ArrayList<Piece> pieces;
+
+    // Receives the marks whose positions are no longer referenced
+    private final ReferenceQueue<StickyPosition> queue;
+
+    // The number of marks in 'marks' whose positions are no longer referenced
+    private int unusedMarks;
+
+    // The number of edits made to the content (undone edits count as edits too)
+    private long version;
+
+    /**
+     * Creates an empty content holding only the implied newline
+     */
+    public PieceTableContent() {
+        this(new char[0], 0);
+    }
+
+    /**
+     *  Creates a content whose text is the first 'length' characters of 'original',
+     *  followed by the implied newline.  The array is used as is (no copy is made),
+     *  so the caller must not change it afterwards.
+     *
+     * @param original  the text of the opened file
+     * @param length    the number of characters of 'original' that are used
+     */
+    public PieceTableContent(char[] original, int length) {
+        originals       = new ArrayList<>();
+        addBuffer       = new char[INITIAL_ADD_CAPACITY];
+        pieces          = new ArrayList<>();
+        marks           = new ArrayList<>();
+        addedMarks      = new ArrayList<>();
+        queue           = new ReferenceQueue<>();
+        gapSize         = Integer.MAX_VALUE;
+
+        if(length > 0) {
+            originals.add(original);
+            pieces.add(new Piece(0, 0, length));
+        }
+
+        // The implied newline every Swing document ends with
+        addBuffer[addLength++] = '\n';
+        pieces.add(new Piece(ADD, 0, 1));
+
+        this.length = length + 1;
+        hash        = pairHashes(START, pieces.toArray(new Piece[0]), END);
+    }
+
+    /**
+     *  Creates a position within the content that will track changes as the
+     *  content is mutated
+     *
+     * @param offset                    the offset in the content
+     * @return                          a position tracking the offset
+     * @throws BadLocationException     if the offset is not within the content
+     */
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if(offset < 0 || offset > length)
+            throw new BadLocationException("Invalid position", offset);
+
+        removeUnusedMarks();
+
+        long index  = storedIndex(offset);
+        int last    = addedMarks.size() - 1;
+
+        // The marks gathered so far are merged first if this one comes before them
+        if(last >= 0 && addedMarks.get(last).index > index) {
+            flushMarks();
+            last = -1;
+        }
+
+        // Share the position of an existing mark at the same place
+        if(last >= 0 && addedMarks.get(last).index == index && addedMarks.get(last).get() != null)
+            return addedMarks.get(last).get();
+
+        int i = findMarkIndex(index);
+
+        if(i < marks.size() && marks.get(i).index == index) {
+            StickyPosition position = marks.get(i).get();
+
+            if(position != null)
+                return position;
+        }
+
+        StickyPosition position = new StickyPosition();
+        MarkData mark           = new MarkData(position, queue, index);
+
+        position.mark = mark;
+        addedMarks.add(mark);
+
+        return position;
+    }
+
+    /**
+     *  Retrieves a portion of the content.  If the portion spans more than one
+     *  piece and the segment does not allow a partial return, the characters are
+     *  copied into a new array; otherwise the segment points straight into the
+     *  buffer holding them, which must not be modified.
+     *
+     * @param where                     the starting position >= 0
+     * @param len                       the number of characters to retrieve >= 0
+     * @param txt                       the Segment object to return the characters in
+     * @throws BadLocationException     if the portion is not within the content
+     */
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        if(where < 0 || len < 0 || where + len > length)
+            throw new BadLocationException("Invalid location", length);
+
+        if(len == 0) {
+            txt.array   = addBuffer;
+            txt.offset  = 0;
+            txt.count   = 0;
+            return;
+        }
+
+        int i           = findPiece(where);
+        Piece piece     = pieces.get(i);
+        int inPiece     = where - cachedStart;
+        int available   = piece.length - inPiece;
+
+        // Whole request lies within a single piece (or only part is wanted)
+        if(len <= available || txt.isPartialReturn()) {
+            txt.array   = buffer(piece);
+            txt.offset  = piece.start + inPiece;
+            txt.count   = Math.min(len, available);
+            return;
+        }
+
+        char[] chars = new char[len];
+        copyChars(i, inPiece, chars, 0, len);
+
+        txt.array   = chars;
+        txt.offset  = 0;
+        txt.count   = len;
+    }
+
+    /**
+     *  Fetches a string of characters contained in the content
+     *
+     * @param where                     the starting position >= 0
+     * @param len                       the number of characters to retrieve >= 0
+     * @return                          the string
+     * @throws BadLocationException     if the portion is not within the content
+     */
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment segment = new Segment();
+        getChars(where, len, segment);
+
+        return new String(segment.array, segment.offset, segment.count);
+    }
+
+    /**
+     *  Inserts a string of characters into the content.  The characters are
+     *  appended to the add buffer and a piece pointing at them is placed into
+     *  the piece list.
+     *
+     * @param where                     the starting position >= 0 && < length()
+     * @param str                       the non-null string to insert
+     * @return                          an UndoableEdit object for undoing
+     * @throws BadLocationException     if the position is not within the content
+     */
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if(where < 0 || where > length)
+            throw new BadLocationException("Invalid insert", length);
+
+        int len = str.length();
+
+        if(len == 0)
+            return null;
+
+        ensureAddCapacity(len);
+        str.getChars(0, len, addBuffer, addLength);
+
+        insertPieces(where, new Piece[] { new Piece(ADD, addLength, len) });
+        addLength += len;
+
+        return new InsertUndo(where, len);
+    }
+
+    /**
+     *  Inserts characters into the content without copying them: the array becomes
+     *  another read-only original buffer, so the caller must not change it afterwards.
+     *  Meant for large blocks of text such as the contents of an opened file.
+     *
+     * @param where                     the starting position >= 0 && < length()
+     * @param chars                     the array holding the characters to insert
+     * @param len                       the number of characters of 'chars' to insert
+     * @return                          an UndoableEdit object for undoing
+     * @throws BadLocationException     if the position is not within the content
+     */
+    public UndoableEdit insertChars(int where, char[] chars, int len) throws BadLocationException {
+        if(where < 0 || where > length)
+            throw new BadLocationException("Invalid insert", length);
+
+        if(len == 0)
+            return null;
+
+        originals.add(chars);
+        insertPieces(where, new Piece[] { new Piece(originals.size() - 1, 0, len) });
+
+        return new InsertUndo(where, len);
+    }
+
+    /**
+     *  Returns the length of the content, including the implied newline
+     *
+     * @return  the length >= 1
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     *  Returns whether the buffers are spilled to a file (see 'spill')
+     *
+     * @return  true if no text can be read until 'restore' is called
+     */
+    public boolean isSpilled() {
+        return addBuffer == null;
+    }
+
+    /**
+     *  Returns the number of pieces the content currently consists of
+     *
+     * @return  the number of pieces
+     */
+    public int pieceCount() {
+        return pieces.size();
+    }
+
+    /**
+     *  Removes some portion of the content.  The removed pieces are kept by the
+     *  returned edit, so undoing the removal does not need a copy of the text.
+     *
+     * @param where                     the starting position >= 0
+     * @param nitems                    the number of characters to remove >= 0
+     * @return                          an UndoableEdit object for undoing
+     * @throws BadLocationException     if the portion is not within the content
+     */
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if(where < 0 || nitems < 0 || where + nitems >= length)
+            throw new BadLocationException("Invalid remove", length + 1);
+
+        if(nitems == 0)
+            return null;
+
+        UndoPosRef[] posRefs = positionsInRange(where, nitems);
+
+        return new RemoveUndo(where, removePieces(where, nitems), posRefs);
+    }
+
+    /**
+     *  Reads back the buffers written by 'spill'
+     *
+     * @param file          the file the buffers were spilled to
+     * @throws IOException  if the file cannot be read; the content stays spilled
+     */
+    public void restore(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SPILL_BUFFER_SIZE);
+
+        buffer.flip();
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            char[] add              = readChars(channel, buffer, INITIAL_ADD_CAPACITY);
+            char[][] restored       = new char[readInt(channel, buffer)][];
+
+            for(int i = 0; i < restored.length; i++)
+                restored[i] = readChars(channel, buffer, 0);
+
+            for(int i = 0; i < restored.length; i++)
+                originals.set(i, restored[i]);
+
+            addBuffer = add;
+        }
+    }
+
+    /**
+     *  Takes a snapshot of the text (without the implied newline) that can be read
+     *  from any thread.  Only the piece list is copied.
+     *
+     * @return  the snapshot of the text
+     */
+    public TextSnapshot snapshot() {
+        int count           = pieces.size();
+        char[][] arrays     = new char[count][];
+        int[] starts        = new int[count];
+        int[] lengths       = new int[count];
+        int remaining       = length - 1;
+        int runs            = 0;
+
+        // The last piece ends with the implied newline, which is left out
+        for(int i = 0; i < count && remaining > 0; i++, runs++) {
+            Piece piece = pieces.get(i);
+
+            arrays[runs]    = buffer(piece);
+            starts[runs]    = piece.start;
+            lengths[runs]   = Math.min(piece.length, remaining);
+            remaining       -= lengths[runs];
+        }
+
+        return new TextSnapshot(arrays, starts, lengths, runs, version, hash);
+    }
+
+    /**
+     *  Writes the buffers to a file and drops them, e.g. while the document is
+     *  not shown (see TabHibernator).  The pieces, positions and undo edits are
+     *  kept, as they only point into the buffers.  Until 'restore' is called, the
+     *  text must not be read or changed; its length, hash and version still are
+     *  known.  Snapshots taken earlier keep the buffers they read from.
+     *
+     * @param file          the file to write the buffers to
+     * @return              the number of bytes of the heap the buffers took up
+     * @throws IOException  if the file cannot be written; the buffers are kept
+     */
+    public long spill(Path file) throws IOException {
+        ByteBuffer buffer   = ByteBuffer.allocate(SPILL_BUFFER_SIZE);
+        long released       = 2L * addBuffer.length;
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeChars(channel, buffer, addBuffer, addLength);
+
+            writeInt(channel, buffer, originals.size());
+
+            for(char[] original : originals) {
+                writeChars(channel, buffer, original, original.length);
+                released += 2L * original.length;
+            }
+
+            writeOut(channel, buffer);
+        }
+
+        addBuffer = null;
+
+        for(int i = 0; i < originals.size(); i++)
+            originals.set(i, null);
+
+        return released;
+    }
+
+    /**
+     *  Returns a hash of the text.  Two contents holding the same text have the
+     *  same hash, however they were edited.
+     *
+     * @return  the hash of the text
+     */
+    public long textHash() {
+        return hash;
+    }
+
+    /**
+     *  Returns the number of edits made to the content so far
+     *
+     * @return  the version of the content; changes with every edit
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     *  Returns the buffer that holds the characters of a piece
+     *
+     * @param piece     the piece to look up
+     * @return          the original or add buffer
+     */
+    private char[] buffer(Piece piece) {
+        return piece.source == ADD ? addBuffer : originals.get(piece.source);
+    }
+
+    /**
+     *  Returns the character at an offset
+     *
+     * @param offset    the offset in the content, 0 <= offset < length
+     * @return          the character at the offset
+     */
+    private char charAt(int offset) {
+        Piece piece = pieces.get(findPiece(offset));
+
+        return buffer(piece)[piece.start + offset - cachedStart];
+    }
+
+    /**
+     *  Copies characters, starting inside the piece at 'index', into an array
+     *
+     * @param index     the index of the first piece to copy from
+     * @param inPiece   the offset within that piece to start copying at
+     * @param dest      the array to copy into
+     * @param destPos   the position in 'dest' to start copying to
+     * @param len       the number of characters to copy
+     */
+    private void copyChars(int index, int inPiece, char[] dest, int destPos, int len) {
+        while(len > 0) {
+            Piece piece = pieces.get(index++);
+            int n       = Math.min(len, piece.length - inPiece);
+
+            System.arraycopy(buffer(piece), piece.start + inPiece, dest, destPos, n);
+
+            destPos += n;
+            len     -= n;
+            inPiece = 0;
+        }
+    }
+
+    /**
+     *  Makes sure the add buffer has room for more characters
+     *
+     * @param len   the number of characters about to be appended
+     */
+    private void ensureAddCapacity(int len) {
+        if(addLength + len <= addBuffer.length)
+            return;
+
+        // Old arrays are never written to again, so pieces already read stay valid
+        char[] grown = new char[Math.max(addBuffer.length * 2, addLength + len)];
+        System.arraycopy(addBuffer, 0, grown, 0, addLength);
+        addBuffer = grown;
+    }
+
+    /**
+     * Merges the marks created since 'marks' was last used into 'marks'
+     */
+    private void flushMarks() {
+        if(addedMarks.isEmpty())
+            return;
+
+        marks.addAll(addedMarks);
+        addedMarks.clear();
+
+        // Two sorted runs, which the sort merges in a single pass
+        marks.sort((m1, m2) -> Long.compare(m1.index, m2.index));
+    }
+
+    /**
+     *  Finds the first mark whose stored index is at least 'index'
+     *
+     * @param index     the stored index to look for
+     * @return          the position in 'marks'; the size of 'marks' if none
+     */
+    private int findMarkIndex(long index) {
+        int lower = 0;
+        int upper = marks.size();
+
+        while(lower < upper) {
+            int mid = (lower + upper) >>> 1;
+
+            if(marks.get(mid).index < index)
+                lower = mid + 1;
+            else
+                upper = mid;
+        }
+
+        return lower;
+    }
+
+    /**
+     *  Finds the piece containing an offset.  The search starts at the piece
+     *  that was last looked up, so edits and reads close together are cheap.
+     *  After the call, 'cachedStart' holds the offset at which the piece starts.
+     *
+     * @param offset    the offset in the content, 0 <= offset < length
+     * @return          the index of the piece in 'pieces'
+     */
+    private int findPiece(int offset) {
+        int i       = cachedIndex;
+        int start   = cachedStart;
+
+        if(i >= pieces.size() || offset < start / 2) {
+            i       = 0;
+            start   = 0;
+        }
+
+        while(offset < start) {
+            i--;
+            start -= pieces.get(i).length;
+        }
+
+        while(offset >= start + pieces.get(i).length) {
+            start += pieces.get(i).length;
+            i++;
+        }
+
+        cachedIndex = i;
+        cachedStart = start;
+
+        return i;
+    }
+
+    /**
+     *  Moves the positions after an insertion point.  Positions at the
+     *  insertion point move along with the inserted text, except for
+     *  positions at offset 0, which always stay at the start of the content.
+     *
+     * @param where     the offset at which text was inserted
+     * @param len       the number of characters inserted
+     */
+    private void insertMarks(int where, int len) {
+        moveGap(where);
+
+        long oldGapSize = gapSize;
+
+        gapStart    += len;
+        gapSize     -= len;
+
+        if(where == 0) {
+            for(MarkData mark : marks) {
+                if(mark.index != oldGapSize)
+                    break;
+
+                mark.index = 0;
+            }
+        }
+    }
+
+    /**
+     *  Places pieces into the piece list at an offset, splitting the piece
+     *  found there if needed, and moves the positions after the offset
+     *
+     * @param where     the offset at which to insert
+     * @param inserted  the pieces to insert, in order
+     */
+    private void insertPieces(int where, Piece[] inserted) {
+        int len = 0;
+        for(Piece piece : inserted)
+            len += piece.length;
+
+        // The inserted text comes between two characters that were adjacent
+        int before  = where > 0 ? charAt(where - 1) : START;
+        int after   = where < length ? charAt(where) : END;
+
+        hash += pairHashes(before, inserted, after) - pairHash(before, after);
+        version++;
+
+        int i;
+        int start;
+
+        if(where == length) {
+            i       = pieces.size();
+            start   = length;
+        } else {
+            i       = findPiece(where);
+            start   = cachedStart;
+        }
+
+        // Split the piece holding 'where' so that a piece boundary lies there
+        if(where > start) {
+            Piece piece = pieces.get(i);
+            int left    = where - start;
+
+            pieces.set(i, new Piece(piece.source, piece.start, left));
+            pieces.add(i + 1, new Piece(piece.source, piece.start + left, piece.length - left));
+
+            i++;
+            start = where;
+        }
+
+        // Typing extends the previous piece instead of creating a new one
+        Piece prev = i > 0 ? pieces.get(i - 1) : null;
+        if(inserted.length == 1 && prev != null && prev.source == inserted[0].source
+                && prev.start + prev.length == inserted[0].start) {
+            pieces.set(i - 1, new Piece(prev.source, prev.start, prev.length + len));
+
+            cachedIndex = i - 1;
+            cachedStart = start - prev.length;
+        } else {
+            pieces.addAll(i, List.of(inserted));
+
+            cachedIndex = i;
+            cachedStart = start;
+        }
+
+        length += len;
+        insertMarks(where, len);
+    }
+
+    /**
+     *  Moves the virtual gap to a new offset, converting the stored index of
+     *  every mark between the old and new gap position
+     *
+     * @param newGapStart   the offset to move the gap to
+     */
+    private void moveGap(int newGapStart) {
+        flushMarks();
+
+        if(newGapStart > gapStart) {
+            long end = newGapStart + gapSize;
+
+            for(int i = findMarkIndex(gapStart + gapSize); i < marks.size(); i++) {
+                MarkData mark = marks.get(i);
+
+                if(mark.index >= end)
+                    break;
+
+                mark.index -= gapSize;
+            }
+        } else if(newGapStart < gapStart) {
+            for(int i = findMarkIndex(newGapStart); i < marks.size(); i++) {
+                MarkData mark = marks.get(i);
+
+                if(mark.index >= gapStart)
+                    break;
+
+                mark.index += gapSize;
+            }
+        }
+
+        gapStart = newGapStart;
+    }
+
+    /**
+     *  Returns the offset of a mark in the content
+     *
+     * @param mark  the mark to look up
+     * @return      the offset of the mark
+     */
+    private int offset(MarkData mark) {
+        return (int) (mark.index < gapStart ? mark.index : mark.index - gapSize);
+    }
+
+    /**
+     *  Hashes a pair of adjacent characters
+     *
+     * @param first     the first character, or START
+     * @param second    the second character, or END
+     * @return          the hash of the pair
+     */
+    private static long pairHash(int first, int second) {
+        // Mixes the bits of the pair (the finalizer of the SplitMix64 generator)
+        long x = ((long) first << 17 | second) * 0x9E3779B97F4A7C15L;
+
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     *  Sums the hashes of the pairs of adjacent characters in a run of pieces,
+     *  including the pairs formed with the characters around the run
+     *
+     * @param before    the character before the run, or START
+     * @param run       the pieces of the run, in order
+     * @param after     the character after the run, or END
+     * @return          the sum of the hashes of the pairs
+     */
+    private long pairHashes(int before, Piece[] run, int after) {
+        long sum    = 0;
+        int prev    = before;
+
+        for(Piece piece : run) {
+            char[] chars = buffer(piece);
+
+            for(int k = piece.start; k < piece.start + piece.length; k++) {
+                sum     += pairHash(prev, chars[k]);
+                prev    = chars[k];
+            }
+        }
+
+        return sum + pairHash(prev, after);
+    }
+
+    /**
+     *  Records the positions within a range, so they can be put back where they
+     *  were when a removal of the range is undone
+     *
+     * @param where     the offset at which the range starts
+     * @param len       the length of the range
+     * @return          the positions found, along with their current offsets
+     */
+    private UndoPosRef[] positionsInRange(int where, int len) {
+        ArrayList<UndoPosRef> refs = new ArrayList<>();
+
+        flushMarks();
+
+        for(int i = findMarkIndex(storedIndex(where)); i < marks.size(); i++) {
+            MarkData mark   = marks.get(i);
+            int offset      = offset(mark);
+
+            if(offset > where + len)
+                break;
+
+            if(mark.get() != null)
+                refs.add(new UndoPosRef(mark, offset));
+        }
+
+        return refs.toArray(new UndoPosRef[0]);
+    }
+
+    /**
+     *  Reads an array of characters written by 'writeChars'
+     *
+     * @param channel       the file to read from
+     * @param buffer        holds the bytes read from the file but not used yet
+     * @param minCapacity   the minimum length of the returned array
+     * @return              the characters read, at the start of the array
+     * @throws IOException  if the file cannot be read
+     */
+    private static char[] readChars(FileChannel channel, ByteBuffer buffer, int minCapacity) throws IOException {
+        int count       = readInt(channel, buffer);
+        char[] chars    = new char[Math.max(count, minCapacity)];
+
+        for(int read = 0; read < count; ) {
+            if(buffer.remaining() < 2)
+                readMore(channel, buffer);
+
+            CharBuffer view = buffer.asCharBuffer();
+            int n           = Math.min(view.remaining(), count - read);
+
+            view.get(chars, read, n);
+            buffer.position(buffer.position() + 2 * n);
+            read += n;
+        }
+
+        return chars;
+    }
+
+    /**
+     *  Reads an int written to the file by 'spill'
+     *
+     * @param channel       the file to read from
+     * @param buffer        holds the bytes read from the file but not used yet
+     * @return              the int read
+     * @throws IOException  if the file cannot be read
+     */
+    private static int readInt(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.remaining() < 4)
+            readMore(channel, buffer);
+
+        return buffer.getInt();
+    }
+
+    /**
+     *  Reads more bytes from a file into a buffer, keeping the bytes not used yet
+     *
+     * @param channel       the file to read from
+     * @param buffer        holds the bytes read from the file but not used yet
+     * @throws IOException  if the file cannot be read, or ends too soon
+     */
+    private static void readMore(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.compact();
+
+        int read = channel.read(buffer);
+
+        buffer.flip();
+
+        if(read < 0)
+            throw new EOFException("Spilled text ends too soon");
+    }
+
+    /**
+     *  Takes a range of characters out of the piece list, moving the positions
+     *  after it.  Positions inside the range collapse onto its start.
+     *
+     * @param where     the offset of the first character to remove
+     * @param len       the number of characters to remove
+     * @return          the removed pieces, in order
+     */
+    private Piece[] removePieces(int where, int len) {
+        int i       = findPiece(where);
+        int start   = cachedStart;
+
+        // Split the first piece so that the removed range starts on a boundary
+        if(where > start) {
+            Piece piece = pieces.get(i);
+            int left    = where - start;
+
+            pieces.set(i, new Piece(piece.source, piece.start, left));
+            pieces.add(i + 1, new Piece(piece.source, piece.start + left, piece.length - left));
+
+            i++;
+        }
+
+        ArrayList<Piece> removed    = new ArrayList<>();
+        int remaining               = len;
+        int end                     = i;
+
+        while(remaining > 0) {
+            Piece piece = pieces.get(end);
+
+            if(piece.length <= remaining) {
+                removed.add(piece);
+                remaining -= piece.length;
+                end++;
+            } else {
+                // Split the last piece; its tail stays in the content
+                removed.add(new Piece(piece.source, piece.start, remaining));
+                pieces.set(end, new Piece(piece.source, piece.start + remaining, piece.length - remaining));
+                remaining = 0;
+            }
+        }
+
+        pieces.subList(i, end).clear();
+
+        // The piece after the removed range now starts at 'where' (edits close together stay cheap)
+        if(i < pieces.size()) {
+            cachedIndex = i;
+            cachedStart = where;
+        } else {
+            cachedIndex = 0;
+            cachedStart = 0;
+        }
+
+        length -= len;
+
+        // The characters around the removed text are now adjacent
+        Piece[] removedPieces   = removed.toArray(new Piece[0]);
+        int before              = where > 0 ? charAt(where - 1) : START;
+        int after               = charAt(where);
+
+        hash += pairHash(before, after) - pairHashes(before, removedPieces, after);
+        version++;
+
+        // Positions inside the removed range collapse onto 'where'
+        moveGap(where);
+
+        long collapsed = where + gapSize + len;
+
+        for(int m = findMarkIndex(where + gapSize); m < marks.size(); m++) {
+            MarkData mark = marks.get(m);
+
+            if(mark.index >= collapsed)
+                break;
+
+            mark.index = collapsed;
+        }
+
+        gapSize += len;
+
+        return removedPieces;
+    }
+
+    /**
+     * Drops the marks whose positions are no longer referenced once enough of them pile up
+     */
+    private void removeUnusedMarks() {
+        while(queue.poll() != null)
+            unusedMarks++;
+
+        if(unusedMarks > Math.max(16, marks.size() / 8)) {
+            flushMarks();
+            marks.removeIf(mark -> mark.get() == null);
+            unusedMarks = 0;
+        }
+    }
+
+    /**
+     *  Puts positions recorded by 'positionsInRange' back at their offsets after
+     *  the text of their range was inserted again
+     *
+     * @param posRefs   the recorded positions
+     * @param where     the offset at which the range starts
+     * @param len       the length of the range
+     */
+    private void restorePositions(UndoPosRef[] posRefs, int where, int len) {
+        if(posRefs.length == 0)
+            return;
+
+        flushMarks();
+
+        for(UndoPosRef ref : posRefs)
+            ref.mark.index = storedIndex(ref.offset);
+
+        // Only the marks within the range can be out of order
+        int first   = findMarkIndex(storedIndex(where));
+        int last    = first;
+
+        while(last < marks.size() && offset(marks.get(last)) <= where + len)
+            last++;
+
+        marks.subList(first, last).sort((m1, m2) -> Long.compare(m1.index, m2.index));
+    }
+
+    /**
+     *  Returns the index at which a position at an offset is stored
+     *
+     * @param offset    the offset in the content
+     * @return          the stored index
+     */
+    private long storedIndex(int offset) {
+        return offset < gapStart ? offset : offset + gapSize;
+    }
+
+    /**
+     *  Writes the length and characters of an array, through a buffer that is
+     *  written out whenever it fills up
+     *
+     * @param channel       the file to write to
+     * @param buffer        holds the bytes not written out yet
+     * @param chars         the array holding the characters
+     * @param count         the number of characters of the array to write
+     * @throws IOException  if the file cannot be written
+     */
+    private static void writeChars(FileChannel channel, ByteBuffer buffer, char[] chars, int count)
+            throws IOException {
+        writeInt(channel, buffer, count);
+
+        for(int written = 0; written < count; ) {
+            if(buffer.remaining() < 2)
+                writeOut(channel, buffer);
+
+            CharBuffer view = buffer.asCharBuffer();
+            int n           = Math.min(view.remaining(), count - written);
+
+            view.put(chars, written, n);
+            buffer.position(buffer.position() + 2 * n);
+            written += n;
+        }
+    }
+
+    /**
+     *  Writes an int through a buffer that is written out whenever it fills up
+     *
+     * @param channel       the file to write to
+     * @param buffer        holds the bytes not written out yet
+     * @param value         the int to write
+     * @throws IOException  if the file cannot be written
+     */
+    private static void writeInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+        if(buffer.remaining() < 4)
+            writeOut(channel, buffer);
+
+        buffer.putInt(value);
+    }
+
+    /**
+     *  Writes out the bytes held by a buffer, emptying it
+     *
+     * @param channel       the file to write to
+     * @param buffer        holds the bytes not written out yet
+     * @throws IOException  if the file cannot be written
+     */
+    private static void writeOut(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    /**
+     * Holds the stored index of a position.  The index is the offset itself for
+     * positions before the virtual gap, and the offset plus the gap size after it.
+     */
+    private static class MarkData extends WeakReference<StickyPosition> {
+        // The stored index of the position
+        private long index;
+
+        /**
+         *  Creates a mark for a position
+         *
+         * @param position  the position this mark belongs to
+         * @param queue     notified once the position is no longer referenced
+         * @param index     the stored index of the position
+         */
+        private MarkData(StickyPosition position, ReferenceQueue<StickyPosition> queue, long index) {
+            super(position, queue);
+
+            this.index = index;
+        }
+    }
+
+    /**
+     * A run of characters in either an original or the add buffer.  Pieces
+     * are never changed once created; edits replace them with new ones.
+     */
+    private static class Piece {
+        // The number of characters in the run
+        private final int length;
+
+        // ADD, or the index in 'originals' of the buffer holding the characters
+        private final int source;
+
+        // The index of the first character of the run in its buffer
+        private final int start;
+
+        /**
+         *  Creates a new piece
+         *
+         * @param source    ADD or the index of an original buffer
+         * @param start     the index of the first character in the buffer
+         * @param length    the number of characters
+         */
+        private Piece(int source, int start, int length) {
+            this.source = source;
+            this.start  = start;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A position that was inside a removed range, along with the offset it had
+     */
+    private static class UndoPosRef {
+        // The mark of the position
+        private final MarkData mark;
+
+        // The offset of the position before the range was removed
+        private final int offset;
+
+        private UndoPosRef(MarkData mark, int offset) {
+            this.mark   = mark;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Undoes/ redoes an insertion by taking its pieces out of, and putting them back into, the piece list
+     */
+    private class InsertUndo extends AbstractUndoableEdit {
+        // The number of characters that were inserted
+        private final int length;
+
+        // The positions within the inserted text when this edit was undone
+        private UndoPosRef[] posRefs;
+
+        // The pieces taken out when this edit was undone
+        private Piece[] removed;
+
+        // The offset at which the characters were inserted
+        private final int where;
+
+        private InsertUndo(int where, int length) {
+            this.where  = where;
+            this.length = length;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+
+            insertPieces(where, removed);
+            restorePositions(posRefs, where, length);
+
+            removed = null;
+            posRefs = null;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+
+            posRefs = positionsInRange(where, length);
+            removed = removePieces(where, length);
+        }
+    }
+
+    /**
+     * Undoes/ redoes a removal by putting its pieces back into, and taking them out of, the piece list
+     */
+    private class RemoveUndo extends AbstractUndoableEdit {
+        // The number of characters that were removed
+        private final int length;
+
+        // The positions within the removed text
+        private UndoPosRef[] posRefs;
+
+        // The pieces that were removed
+        private Piece[] removed;
+
+        // The offset at which the characters were removed
+        private final int where;
+
+        private RemoveUndo(int where, Piece[] removed, UndoPosRef[] posRefs) {
+            this.where      = where;
+            this.removed    = removed;
+            this.posRefs    = posRefs;
+
+            int len = 0;
+            for(Piece piece : removed)
+                len += piece.length;
+
+            length = len;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+
+            posRefs = positionsInRange(where, length);
+            removed = removePieces(where, length);
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+
+            insertPieces(where, removed);
+            restorePositions(posRefs, where, length);
+        }
+    }
+
+    /**
+     * A position handed out by this content; its offset is read from its mark
+     */
+    private class StickyPosition implements Position {
+        // The mark holding the stored index of this position
+        private MarkData mark;
+
+        @Override
+        public int getOffset() {
+            return offset(mark);
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+}
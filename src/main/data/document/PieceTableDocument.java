@@ -0,0 +1,404 @@
+package main.data.document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleContext;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * The document used by each text pane in the editor.  Behaves exactly like a
+ * DefaultStyledDocument (elements, attributes, undo), but stores its text in a
+ * PieceTableContent so that edits on large files do not move the whole buffer.
+ *
+ * The document also remembers the version and hash of the text last saved, so
+ * whether it has unsaved changes is mostly known without comparing the text
+ * itself.  The hash does not tell apart texts made of the same pairs of adjacent
+ * characters (e.g. once two lines are swapped), so when an edited text has the
+ * length and hash of the saved one, it is compared with a snapshot of the saved
+ * text (once per version).
+ *
+ * @author Justin Kocur
+ */
+public class PieceTableDocument extends DefaultStyledDocument {
+    // The offset of each bracket of the document (outside of literals)
+    private final BracketIndex bracketIndex;
+
+    // True if the text differed from the saved text at version 'checkedVersion'
+    private boolean checkedModified;
+
+    // The version of the content last compared with the saved text; -1 if none
+    private long checkedVersion;
+
+    // The offset at which each line of the document starts
+    private final LineIndex lineIndex;
+
+    // The hash of the text last saved
+    private long savedHash;
+
+    // The length of the text last saved
+    private int savedLength;
+
+    // A snapshot of the text last saved; null if dropped (see 'dropSavedText')
+    private TextSnapshot savedText;
+
+    // The version of the content when its text was last saved
+    private long savedVersion;
+
+    /**
+     * Creates an empty document; an empty text counts as saved
+     */
+    public PieceTableDocument() {
+        super(new PieceTableContent(), new StyleContext());
+
+        lineIndex       = new LineIndex();
+        bracketIndex    = new BracketIndex();
+        savedHash       = getPieceTable().textHash();
+        savedVersion    = getPieceTable().version();
+        checkedVersion  = -1;
+    }
+
+    /**
+     *  Returns the index of the brackets of this document
+     *
+     * @return  the index of the brackets of this document
+     */
+    public BracketIndex getBracketIndex() {
+        return bracketIndex;
+    }
+
+    /**
+     *  Returns the index of the line starts of this document
+     *
+     * @return  the index of the line starts of this document
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     *  Returns the piece table holding the text of this document
+     *
+     * @return  the piece table holding the text of this document
+     */
+    public PieceTableContent getPieceTable() {
+        return (PieceTableContent) getContent();
+    }
+
+    /**
+     *  Adds characters to the end of the document.  The array is handed to the piece
+     *  table as is (no copy is made), so the caller must not change it afterwards.
+     *  The text does not go through the document filter, and the edit is returned
+     *  instead of being sent to the undoable edit listeners (see 'postEdit').
+     *
+     * @param chars     the array holding the text to add
+     * @param length    the number of characters of 'chars' to add
+     * @return          the edit adding the text; null if there was nothing to add
+     */
+    public UndoableEdit append(char[] chars, int length) {
+        if(length == 0)
+            return null;
+
+        writeLock();
+
+        try {
+            DefaultDocumentEvent chng   = new DefaultDocumentEvent(getLength(), length, DocumentEvent.EventType.INSERT);
+            UndoableEdit u              = getPieceTable().insertChars(getLength(), chars, length);
+
+            chng.addEdit(u);
+            insertUpdate(chng, null);
+            chng.end();
+
+            fireInsertUpdate(chng);
+
+            return chng;
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
+        } finally {
+            writeUnlock();
+        }
+
+        return null;
+    }
+
+    /**
+     *  Removes all the text of the document.  The text does not go through the document
+     *  filter, and the edit is returned instead of being sent to the undoable edit
+     *  listeners (see 'postEdit').
+     *
+     * @return  the edit removing the text; null if the document was already empty
+     */
+    public UndoableEdit clear() {
+        if(getLength() == 0)
+            return null;
+
+        writeLock();
+
+        try {
+            DefaultDocumentEvent chng = new DefaultDocumentEvent(0, getLength(), DocumentEvent.EventType.REMOVE);
+
+            removeUpdate(chng);
+            UndoableEdit u = getContent().remove(0, getLength());
+            chng.addEdit(u);
+            postRemoveUpdate(chng);
+            chng.end();
+
+            fireRemoveUpdate(chng);
+
+            return chng;
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
+        } finally {
+            writeUnlock();
+        }
+
+        return null;
+    }
+
+    /**
+     *  Drops the snapshot of the text last saved, so that it no longer keeps the
+     *  buffers it reads from (e.g. before they are spilled, see TabHibernator).
+     *  Whether the text is modified is settled first; should the text later be
+     *  edited back to the length and hash of the saved text, it counts as modified.
+     */
+    public void dropSavedText() {
+        isModified();
+
+        savedText = null;
+    }
+
+    /**
+     *  Returns whether the text differs from the text last saved.  Answered from
+     *  the version and hash of the text, unless they match the saved text's while
+     *  the version does not, in which case the text is compared with the saved text.
+     *
+     * @return  true if there are unsaved changes
+     */
+    public boolean isModified() {
+        PieceTableContent content = getPieceTable();
+
+        if(content.version() == savedVersion)
+            return false;
+
+        if(getLength() != savedLength || content.textHash() != savedHash)
+            return true;
+
+        // Edits were made, but they may have been undone back to the saved text
+        if(checkedVersion != content.version()) {
+            checkedModified = savedText == null || !hasText(savedText);
+            checkedVersion  = content.version();
+        }
+
+        return checkedModified;
+    }
+
+    /**
+     *  Replaces the whole text of the document with the given characters, as an
+     *  undoable change.  The array is handed to the piece table as is (no copy is
+     *  made), so the caller must not change it afterwards.
+     *
+     * @param chars     the array holding the new text
+     * @param length    the number of characters of 'chars' to use
+     */
+    public void load(char[] chars, int length) {
+        postEdit(clear());
+        postEdit(append(chars, length));
+    }
+
+    /**
+     *  Records a text as the one last saved (or opened)
+     *
+     * @param text  a snapshot of the saved text, taken from this document
+     */
+    public void markSaved(TextSnapshot text) {
+        savedHash       = text.getHash();
+        savedLength     = text.getLength();
+        savedText       = text;
+        savedVersion    = text.getVersion();
+        checkedVersion  = -1;
+    }
+
+    /**
+     *  Returns the offset of the bracket matching the one at an offset (see
+     *  BracketIndex)
+     *
+     * @param offset    the offset of a bracket
+     * @return          the offset of the bracket matching it; -1 if there is none
+     */
+    public int matchBracket(int offset) {
+        readLock();
+
+        try {
+            return bracketIndex.getMatch(offset);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     *  Sends an edit made by 'append' or 'clear' (or several of them, combined) to
+     *  the undoable edit listeners
+     *
+     * @param edit  the edit to send; nothing is sent if null
+     */
+    public void postEdit(UndoableEdit edit) {
+        if(edit != null)
+            fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+    }
+
+    /**
+     *  Replaces part of the text (e.g. an occurrence found by a search).  The removal
+     *  and the insertion are sent to the document listeners as two events covering
+     *  only the part replaced, so the elements and views of the rest of the text are
+     *  left alone.  The text does not go through the document filter, and the edit is
+     *  returned instead of being sent to the undoable edit listeners (see 'postEdit').
+     *
+     * @param offset    the offset of the part to replace
+     * @param length    the number of characters to replace
+     * @param text      the text to put in their place
+     * @return          the edit replacing the part; null if nothing changed
+     */
+    public UndoableEdit replaceText(int offset, int length, String text) {
+        if(length == 0 && text.isEmpty())
+            return null;
+
+        CompoundEdit edit = new CompoundEdit();
+
+        writeLock();
+
+        try {
+            if(length > 0) {
+                DefaultDocumentEvent chng = new DefaultDocumentEvent(offset, length, DocumentEvent.EventType.REMOVE);
+
+                removeUpdate(chng);
+                UndoableEdit u = getContent().remove(offset, length);
+                chng.addEdit(u);
+                postRemoveUpdate(chng);
+                chng.end();
+
+                fireRemoveUpdate(chng);
+                edit.addEdit(chng);
+            }
+
+            if(!text.isEmpty()) {
+                DefaultDocumentEvent chng   = new DefaultDocumentEvent(offset, text.length(), DocumentEvent.EventType.INSERT);
+                UndoableEdit u              = getContent().insertString(offset, text);
+
+                chng.addEdit(u);
+                insertUpdate(chng, null);
+                chng.end();
+
+                fireInsertUpdate(chng);
+                edit.addEdit(chng);
+            }
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
+        } finally {
+            writeUnlock();
+        }
+
+        edit.end();
+        return edit;
+    }
+
+    /**
+     *  Takes a snapshot of the text of the document that can be read from any
+     *  thread (e.g. to save it in the background)
+     *
+     * @return  the snapshot of the text
+     */
+    public TextSnapshot snapshot() {
+        readLock();
+
+        try {
+            return getPieceTable().snapshot();
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     *  Updates the line and bracket indexes before notifying the listeners of an
+     *  insertion.  Undo and redo also come through here, so the indexes never miss
+     *  an edit.
+     *
+     * @param e     the event describing the insertion
+     */
+    @Override
+    protected void fireInsertUpdate(DocumentEvent e) {
+        try {
+            lineIndex.insertUpdate(e.getOffset(), e.getLength(), getContent());
+            bracketIndex.insertUpdate(e.getOffset(), e.getLength(), getContent(), lineIndex);
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
+        }
+
+        super.fireInsertUpdate(e);
+    }
+
+    /**
+     *  Updates the line and bracket indexes before notifying the listeners of a
+     *  removal
+     *
+     * @param e     the event describing the removal
+     */
+    @Override
+    protected void fireRemoveUpdate(DocumentEvent e) {
+        lineIndex.removeUpdate(e.getOffset(), e.getLength());
+
+        try {
+            bracketIndex.removeUpdate(e.getOffset(), e.getLength(), getContent(), lineIndex);
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
+        }
+
+        super.fireRemoveUpdate(e);
+    }
+
+    /**
+     *  Returns whether the document holds the text of a snapshot, comparing the
+     *  characters piece by piece without copying them
+     *
+     * @param text  the snapshot
+     * @return      true if the document holds the same characters as the snapshot
+     */
+    private boolean hasText(TextSnapshot text) {
+        if(text.getLength() != getLength())
+            return false;
+
+        Segment segment = new Segment();
+        int where       = 0;
+
+        segment.setPartialReturn(true);
+        readLock();
+
+        try {
+            for(int run = 0; run < text.getRunCount(); run++) {
+                char[] chars    = text.getRunArray(run);
+                int start       = text.getRunStart(run);
+                int end         = start + text.getRunLength(run);
+
+                while(start < end) {
+                    getContent().getChars(where, end - start, segment);
+
+                    for(int i = 0; i < segment.count; i++)
+                        if(segment.array[segment.offset + i] != chars[start + i])
+                            return false;
+
+                    start += segment.count;
+                    where += segment.count;
+                }
+            }
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
+            return false;
+        } finally {
+            readUnlock();
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,148 @@
+package main.data.document;
+
+import java.util.Arrays;
+
+/**
+ * A CharSequence reading the text of a TextSnapshot in place, so that it can be
+ * matched against a regular expression (see 'java.util.regex.Matcher') without
+ * copying the text into a String first.
+ *
+ * A character is looked up by finding the run holding it; the run last read from
+ * is remembered, as a matcher mostly reads characters one after the other.  A
+ * sequence must only be read by one thread at a time.
+ *
+ * @author Justin Kocur
+ */
+public class SnapshotCharSequence implements CharSequence {
+    // The buffer holding the characters of each run
+    private final char[][] arrays;
+
+    // The offset in the snapshot at which the sequence starts
+    private final int from;
+
+    // The number of characters of the sequence
+    private final int length;
+
+    // The offset in the snapshot of each run, and of the end of the text after them
+    private final int[] offsets;
+
+    // The run read from last
+    private int run;
+
+    // The offset in its buffer at which each run starts
+    private final int[] starts;
+
+    /**
+     *  Creates a sequence of the whole text of a snapshot
+     *
+     * @param text  the snapshot to read
+     */
+    public SnapshotCharSequence(TextSnapshot text) {
+        int runCount = text.getRunCount();
+
+        arrays  = new char[runCount][];
+        starts  = new int[runCount];
+        offsets = new int[runCount + 1];
+
+        for(int i = 0; i < runCount; i++) {
+            arrays[i]       = text.getRunArray(i);
+            starts[i]       = text.getRunStart(i);
+            offsets[i + 1]  = offsets[i] + text.getRunLength(i);
+        }
+
+        from    = 0;
+        length  = text.getLength();
+    }
+
+    /**
+     *  Creates a sequence of part of the text of another sequence, sharing its runs
+     *
+     * @param sequence  the sequence to read
+     * @param from      the offset in the snapshot at which the part starts
+     * @param length    the number of characters of the part
+     */
+    private SnapshotCharSequence(SnapshotCharSequence sequence, int from, int length) {
+        this.arrays     = sequence.arrays;
+        this.starts     = sequence.starts;
+        this.offsets    = sequence.offsets;
+        this.from       = from;
+        this.length     = length;
+        this.run        = sequence.run;
+    }
+
+    /**
+     *  Returns a character of the sequence
+     *
+     * @param index     the index of the character, from 0 up to 'length'
+     * @return          the character
+     */
+    @Override
+    public char charAt(int index) {
+        if(index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " of " + length);
+
+        int offset = from + index;
+
+        // Not in the run read from last
+        if(offset < offsets[run] || offset >= offsets[run + 1])
+            findRun(offset);
+
+        return arrays[run][starts[run] + offset - offsets[run]];
+    }
+
+    /**
+     *  Returns the number of characters of the sequence
+     *
+     * @return  the number of characters of the sequence
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     *  Returns part of the sequence, without copying it
+     *
+     * @param start     the index of the first character of the part
+     * @param end       the index after the last character of the part
+     * @return          the part of the sequence
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("Range " + start + " to " + end + " of " + length);
+
+        return new SnapshotCharSequence(this, from + start, end - start);
+    }
+
+    /**
+     *  Returns the sequence as a String
+     *
+     * @return  the characters of the sequence
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(length);
+
+        for(int i = 0; i < length; i++)
+            text.append(charAt(i));
+
+        return text.toString();
+    }
+
+    /**
+     *  Makes the run holding a character the one read from (kept out of 'charAt', which
+     *  is called for every character read, so that it stays small)
+     *
+     * @param offset    the offset in the snapshot of the character
+     */
+    private void findRun(int offset) {
+        int found = Arrays.binarySearch(offsets, 0, arrays.length, offset);
+
+        // The run starting at or before the offset (empty runs are skipped over)
+        run = found >= 0 ? found : -found - 2;
+
+        while(offsets[run + 1] <= offset)
+            run++;
+    }
+}
@@ -0,0 +1,168 @@
+package main.data.document;
+
+import java.nio.CharBuffer;
+
+/**
+ * The text of a PieceTableDocument at one point in time, which can be read from
+ * any thread while the document keeps changing (e.g. to save it in the background).
+ *
+ * Taking a snapshot only copies the piece list: the snapshot points at the same
+ * buffers as the document, whose characters are never overwritten once stored.
+ * The text is read as a series of runs, one per piece.
+ *
+ * @author Justin Kocur
+ */
+public class TextSnapshot {
+    // The buffer holding the characters of each run
+    private final char[][] arrays;
+
+    // The hash of the text (see 'PieceTableContent.textHash')
+    private final long hash;
+
+    // The number of characters of the text
+    private final int length;
+
+    // The number of characters in each run
+    private final int[] lengths;
+
+    // The number of runs the text consists of
+    private final int runCount;
+
+    // The offset in its buffer at which each run starts
+    private final int[] starts;
+
+    // The version of the content the snapshot was taken from
+    private final long version;
+
+    /**
+     *  Creates a snapshot of a text held in one array, e.g. a file read to be
+     *  searched without opening it in a document.  It has no version, and its hash
+     *  is 0, as it was not taken from a document.
+     *
+     * @param chars     the array holding the text
+     * @param length    the number of characters of the text, from the start of the array
+     */
+    public TextSnapshot(char[] chars, int length) {
+        this(new char[][] {chars}, new int[] {0}, new int[] {length}, 1, 0, 0);
+    }
+
+    /**
+     *  Creates a snapshot from the runs of characters making up a text
+     *
+     * @param arrays    the buffer holding the characters of each run
+     * @param starts    the offset in its buffer at which each run starts
+     * @param lengths   the number of characters in each run
+     * @param runCount  the number of runs used in the arrays
+     * @param version   the version of the content the snapshot is taken from
+     * @param hash      the hash of the text
+     */
+    TextSnapshot(char[][] arrays, int[] starts, int[] lengths, int runCount, long version, long hash) {
+        this.arrays     = arrays;
+        this.starts     = starts;
+        this.lengths    = lengths;
+        this.runCount   = runCount;
+        this.version    = version;
+        this.hash       = hash;
+
+        int total = 0;
+
+        for(int i = 0; i < runCount; i++)
+            total += lengths[i];
+
+        length = total;
+    }
+
+    /**
+     *  Returns the hash of the text (see 'PieceTableContent.textHash')
+     *
+     * @return  the hash of the text
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     *  Returns the number of characters of the text
+     *
+     * @return  the number of characters of the text
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     *  Returns the characters of a run, without copying them.  The buffer is
+     *  read-only, as it is shared with the document.
+     *
+     * @param run   the run, from 0 up to 'getRunCount'
+     * @return      a read-only buffer holding the characters of the run
+     */
+    public CharBuffer getRun(int run) {
+        return CharBuffer.wrap(arrays[run], starts[run], lengths[run]).asReadOnlyBuffer();
+    }
+
+    /**
+     *  Returns the buffer holding the characters of a run, without copying it.
+     *  The buffer is shared with the document, so it must only be read, and only
+     *  from 'getRunStart' for 'getRunLength' characters.
+     *
+     * @param run   the run, from 0 up to 'getRunCount'
+     * @return      the buffer holding the characters of the run
+     */
+    public char[] getRunArray(int run) {
+        return arrays[run];
+    }
+
+    /**
+     *  Returns the number of runs the text consists of
+     *
+     * @return  the number of runs the text consists of
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     *  Returns the number of characters in a run
+     *
+     * @param run   the run, from 0 up to 'getRunCount'
+     * @return      the number of characters in the run
+     */
+    public int getRunLength(int run) {
+        return lengths[run];
+    }
+
+    /**
+     *  Returns the index in its buffer (see 'getRunArray') of the first character of a run
+     *
+     * @param run   the run, from 0 up to 'getRunCount'
+     * @return      the index of the run's first character
+     */
+    public int getRunStart(int run) {
+        return starts[run];
+    }
+
+    /**
+     *  Returns the version of the content the snapshot was taken from
+     *
+     * @return  the version of the content the snapshot was taken from
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     *  Returns the text as a String
+     *
+     * @return  the text of the snapshot
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(length);
+
+        for(int i = 0; i < runCount; i++)
+            text.append(arrays[i], starts[i], lengths[i]);
+
+        return text.toString();
+    }
+}
@@ -0,0 +1,288 @@
+package main.data.io;
+
+import main.data.document.TextSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes text files so that a crash (or a full disk) never leaves a file half
+ * written.  The text is encoded into a temporary file next to the target, which
+ * is forced to the disk and then moved over the target in one step, so the
+ * target holds either its old text or the whole new text.  The temporary file
+ * takes on the permissions (and, where allowed, the owner) of the target first,
+ * so saving never changes them, and the directory is forced to the disk after
+ * the move, so the rename itself survives a crash.
+ *
+ * The encoder and the (direct) byte buffer are reused for every file written, so
+ * a writer must only be used by one thread at a time.
+ *
+ * @author Justin Kocur
+ */
+public class AtomicFileWriter {
+    /** The size of the buffer the text is encoded into before being written */
+    public static final int BUFFER_SIZE = 1_024 * 1_024;
+
+    // Holds the encoded bytes until they are written
+    private final ByteBuffer buffer;
+
+    // Encodes the text of every file written
+    private final CharsetEncoder encoder;
+
+    /* Holds the first half of a surrogate pair that was split between two runs,
+       so it is encoded along with the second half */
+    private final CharBuffer pending;
+
+    /**
+     * Creates a writer encoding files in the platform's default charset
+     */
+    public AtomicFileWriter() {
+        this(Charset.defaultCharset());
+    }
+
+    /**
+     *  Creates a writer encoding files in the given charset
+     *
+     * @param charset   the charset to encode the files in
+     */
+    public AtomicFileWriter(Charset charset) {
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        buffer  = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        pending = CharBuffer.allocate(2);
+    }
+
+    /**
+     *  Writes a text to a file, replacing the file in one step once the whole text
+     *  is on the disk.  The temporary file is removed if anything goes wrong.
+     *
+     * @param text              the text to write, with '\n' line breaks
+     * @param lineSeparator     the line separator to write in place of every '\n'
+     * @param file              the file to write
+     * @throws IOException      if the file cannot be written
+     */
+    public void write(TextSnapshot text, String lineSeparator, File file) throws IOException {
+        Path target     = file.toPath().toAbsolutePath();
+        Path temp       = createTemp(target);
+        boolean moved   = false;
+
+        try {
+            try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                encoder.reset();
+                buffer.clear();
+                pending.clear();
+
+                for(int i = 0; i < text.getRunCount(); i++)
+                    writeRun(text.getRun(i), lineSeparator, channel);
+
+                encode(CharBuffer.allocate(0), channel, true);
+
+                while(encoder.flush(buffer).isOverflow())
+                    drain(channel);
+
+                drain(channel);
+                channel.force(true);
+            }
+
+            if(Files.exists(target))
+                copyAttributes(target, temp);
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException ex) {
+                // E.g. a file system without atomic renames; still never truncates the target
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            moved = true;
+        } finally {
+            if(!moved)
+                Files.deleteIfExists(temp);
+        }
+
+        syncDirectory(target.getParent());
+    }
+
+    /**
+     *  Gives a file the permissions, owner and group of another, as far as the
+     *  file system supports them and the user is allowed to
+     *
+     * @param from          the file to copy from
+     * @param to            the file to copy to
+     * @throws IOException  if the permissions cannot be copied
+     */
+    private void copyAttributes(Path from, Path to) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+
+        // E.g. Windows, where a new file takes the access rules of its directory
+        if(view == null)
+            return;
+
+        PosixFileAttributes attributes = Files.readAttributes(from, PosixFileAttributes.class);
+
+        // Only root may give a file away; a group may be set if the user is in it
+        try {
+            view.setOwner(attributes.owner());
+        } catch(IOException ex) {
+            // Keeps the user as the owner
+        }
+
+        try {
+            view.setGroup(attributes.group());
+        } catch(IOException ex) {
+            // Keeps the user's group
+        }
+
+        view.setPermissions(attributes.permissions());
+    }
+
+    /**
+     *  Creates an empty temporary file next to a file.  Unlike 'Files.createTempFile',
+     *  which only lets the user read it, the file gets the default permissions of a
+     *  new file (e.g. for saving a file that does not exist yet).
+     *
+     * @param target        the file the temporary file will replace
+     * @return              the temporary file
+     * @throws IOException  if the file cannot be created
+     */
+    private Path createTemp(Path target) throws IOException {
+        while(true) {
+            Path temp = target.resolveSibling("." + target.getFileName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+
+            try {
+                return Files.createFile(temp);
+            } catch(FileAlreadyExistsException ex) {
+                // Try another name
+            }
+        }
+    }
+
+    /**
+     *  Writes out the bytes encoded so far, emptying the buffer
+     *
+     * @param channel       the file to write to
+     * @throws IOException  if the bytes cannot be written
+     */
+    private void drain(FileChannel channel) throws IOException {
+        buffer.flip();
+
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    /**
+     *  Encodes characters following the ones encoded by the last call, keeping a
+     *  surrogate pair split between two calls together
+     *
+     * @param in            the characters to encode
+     * @param channel       the file to write to
+     * @param endOfInput    true if no more characters follow 'in'
+     * @throws IOException  if the characters cannot be encoded or written
+     */
+    private void encode(CharBuffer in, FileChannel channel, boolean endOfInput) throws IOException {
+        // Complete the surrogate pair left over from the previous run
+        if(pending.position() > 0 && (in.hasRemaining() || endOfInput)) {
+            if(in.hasRemaining())
+                pending.put(in.get());
+
+            pending.flip();
+            encodeFully(pending, channel, endOfInput && !in.hasRemaining());
+            pending.clear();
+        }
+
+        encodeFully(in, channel, endOfInput);
+
+        // A run may end with the first half of a surrogate pair
+        if(in.hasRemaining())
+            pending.put(in);
+    }
+
+    /**
+     *  Encodes as many characters as the encoder can take, writing out the buffer
+     *  whenever it fills up
+     *
+     * @param in            the characters to encode
+     * @param channel       the file to write to
+     * @param endOfInput    true if no more characters follow 'in'
+     * @throws IOException  if the characters cannot be encoded or written
+     */
+    private void encodeFully(CharBuffer in, FileChannel channel, boolean endOfInput) throws IOException {
+        while(true) {
+            CoderResult result = encoder.encode(in, buffer, endOfInput);
+
+            if(result.isError())
+                result.throwException();
+
+            if(!result.isOverflow())
+                return;
+
+            drain(channel);
+        }
+    }
+
+    /**
+     *  Forces a directory to the disk, so that a file renamed into it stays renamed
+     *  after a crash.  Nothing is done where directories cannot be opened (e.g. Windows).
+     *
+     * @param directory     the directory
+     */
+    private void syncDirectory(Path directory) {
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch(IOException ex) {
+            // The file is written either way
+        }
+    }
+
+    /**
+     *  Encodes a run of the text, writing the line separator in place of every '\n'
+     *
+     * @param run                           the characters of the run
+     * @param lineSeparator                 the line separator to write
+     * @param channel                       the file to write to
+     * @throws IOException                  if the characters cannot be encoded or written
+     */
+    private void writeRun(CharBuffer run, String lineSeparator, FileChannel channel) throws IOException {
+        if(lineSeparator.equals("\n")) {
+            encode(run, channel, false);
+            return;
+        }
+
+        int end = run.limit();
+
+        // Encode the text between line breaks straight from the run
+        for(int i = run.position(); i < end; i++) {
+            if(run.get(i) == '\n') {
+                run.limit(i);
+                encode(run, channel, false);
+                encode(CharBuffer.wrap(lineSeparator), channel, false);
+
+                run.limit(end);
+                run.position(i + 1);
+            }
+        }
+
+        encode(run, channel, false);
+    }
+}
@@ -0,0 +1,58 @@
+package main.data.io;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Measures the peak amount of heap memory used by an operation (e.g. opening a file),
+ * and how much of the heap is in use right now
+ *
+ * @author Justin Kocur
+ */
+public class HeapUsage {
+    /**
+     *  Returns the largest the heap is allowed to grow
+     *
+     * @return  the maximum heap size, in bytes; the committed size if there is no maximum
+     */
+    public static long getMax() {
+        MemoryUsage usage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+        return usage.getMax() > 0 ? usage.getMax() : usage.getCommitted();
+    }
+
+    /**
+     *  Returns the highest amount of heap memory used since the peaks were last reset
+     *
+     * @return  the peak heap usage, in bytes
+     */
+    public static long getPeak() {
+        long peak = 0;
+
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                peak += pool.getPeakUsage().getUsed();
+
+        return peak;
+    }
+
+    /**
+     *  Returns the amount of heap memory in use, including garbage not collected yet
+     *
+     * @return  the current heap usage, in bytes
+     */
+    public static long getUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Starts measuring the peak heap usage from the current usage
+     */
+    public static void resetPeak() {
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if(pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+    }
+}
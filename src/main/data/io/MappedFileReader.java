@@ -0,0 +1,352 @@
+package main.data.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads text files by mapping them into memory and decoding the mapped bytes,
+ * a chunk at a time, straight into char arrays.  The decoder is reused for every
+ * file read, and no Strings are created along the way, so the only copy of the
+ * text in the heap is the arrays handed back (which a document can use as is).
+ *
+ * A file is either read whole with 'read', or opened with 'open' and then read
+ * a chunk at a time with 'readChunk' (e.g. to show its text while it loads).
+ *
+ * Line breaks are normalized to '\n' as the text is read; the line separator
+ * found in the file is kept so it can be written back when saving.
+ *
+ * Small files are read into a buffer kept by the reader instead of being mapped,
+ * as mapping a file costs more than copying a few pages of it (e.g. when reading
+ * every file of a project).
+ *
+ * @author Justin Kocur
+ */
+public class MappedFileReader implements Closeable {
+    /** The number of bytes mapped and decoded at a time */
+    public static final int CHUNK_SIZE = 64 * 1_024 * 1_024;
+
+    // The smallest chunk read, large enough to always hold a whole character
+    private static final int MIN_CHUNK_SIZE = 16;
+
+    // Files smaller than this (bytes) are read into 'smallBuffer' rather than mapped
+    private static final int MIN_MAP_SIZE = 64 * 1_024;
+
+    // The file opened with 'open', read a chunk at a time
+    private FileChannel channel;
+
+    // Decodes the mapped bytes of every file read
+    private final CharsetDecoder decoder;
+
+    // The line separator of the last file read
+    private String lineSeparator;
+
+    // True if the last chunk read ended with a '\r' (whose '\n' may start the next chunk)
+    private boolean pendingCR;
+
+    // The position in the opened file of the next byte to decode
+    private long position;
+
+    // The size, in bytes, of the opened file
+    private long size;
+
+    // Holds the bytes of a small file read; created once needed
+    private ByteBuffer smallBuffer;
+
+    /**
+     * Creates a reader decoding files in the platform's default charset
+     */
+    public MappedFileReader() {
+        this(Charset.defaultCharset());
+    }
+
+    /**
+     *  Creates a reader decoding files in the given charset
+     *
+     * @param charset   the charset the files are encoded in
+     */
+    public MappedFileReader(Charset charset) {
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        lineSeparator = System.lineSeparator();
+    }
+
+    /**
+     * Closes the file opened with 'open', if any
+     *
+     * @throws IOException  if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if(channel != null)
+            channel.close();
+
+        channel = null;
+    }
+
+    /**
+     *  Returns the line separator found in the last file read ("\n", "\r\n" or "\r"),
+     *  or the platform's line separator if that file had no line breaks
+     *
+     * @return  the line separator of the last file read
+     */
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    /**
+     *  Returns the position in the opened file of the next byte to decode
+     *
+     * @return  the number of bytes of the opened file read so far
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     *  Returns the size of the opened file
+     *
+     * @return  the size, in bytes, of the opened file
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     *  Returns whether the whole opened file has been read
+     *
+     * @return  true if there are no more chunks to read
+     */
+    public boolean isFinished() {
+        return position >= size && channel == null;
+    }
+
+    /**
+     *  Opens a file to be read a chunk at a time with 'readChunk'
+     *
+     * @param file          the file to read
+     * @throws IOException  if the file cannot be opened
+     */
+    public void open(File file) throws IOException {
+        close();
+
+        channel         = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        size            = channel.size();
+        position        = 0;
+        lineSeparator   = null;
+        pendingCR       = false;
+
+        decoder.reset();
+    }
+
+    /**
+     *  Reads the whole text of a file
+     *
+     * @param file          the file to read
+     * @return              a buffer whose backing array holds the text, from 0 up to its limit
+     * @throws IOException  if the file cannot be read, or holds too many characters for one array
+     */
+    public CharBuffer read(File file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size           = channel.size();
+            long maxChars       = (long) Math.ceil(size * (double) decoder.maxCharsPerByte());
+
+            if(maxChars > Integer.MAX_VALUE - 8)
+                throw new IOException(file.getName() + " is too large to open for editing.");
+
+            CharBuffer out = CharBuffer.allocate((int) maxChars);
+
+            decoder.reset();
+            lineSeparator   = null;
+            pendingCR       = false;
+
+            // Map and decode the file a chunk at a time
+            for(long position = 0; position < size; ) {
+                long chunk      = Math.min(CHUNK_SIZE, size - position);
+                ByteBuffer in   = size < MIN_MAP_SIZE ? readSmall(channel, (int) size)
+                        : channel.map(FileChannel.MapMode.READ_ONLY, position, chunk);
+                boolean last    = position + chunk == size;
+
+                decode(in, out, last);
+
+                // A character split over two chunks is decoded along with the next one
+                position += chunk - in.remaining();
+
+                if(in.remaining() == chunk && !last)
+                    throw new IOException("Cannot decode " + file.getName() + ".");
+            }
+
+            // The decoder must still be told the input ended when the file is empty
+            if(size == 0)
+                decode(ByteBuffer.allocate(0), out, true);
+
+            flush(out);
+
+            out.limit(normalizeLineBreaks(out.array(), out.position()));
+            out.position(0);
+
+            if(lineSeparator == null)
+                lineSeparator = pendingCR ? "\r" : System.lineSeparator();
+
+            pendingCR = false;
+
+            return out;
+        }
+    }
+
+    /**
+     *  Reads the next chunk of the opened file into a new char array.  The file is
+     *  closed once its last chunk has been read.
+     *
+     * @param maxBytes      the maximum number of bytes to decode
+     * @return              a buffer whose backing array holds the text of the chunk, from
+     *                      0 up to its limit; null if the whole file has already been read
+     * @throws IOException  if the file cannot be read
+     */
+    public CharBuffer readChunk(int maxBytes) throws IOException {
+        if(channel == null)
+            return null;
+
+        long chunk          = Math.min(Math.max(maxBytes, MIN_CHUNK_SIZE), size - position);
+        boolean last        = position + chunk == size;
+        CharBuffer out      = CharBuffer.allocate((int) Math.ceil(chunk * (double) decoder.maxCharsPerByte()) + 1);
+        ByteBuffer in       = chunk == 0 ? ByteBuffer.allocate(0)
+                : channel.map(FileChannel.MapMode.READ_ONLY, position, chunk);
+
+        decode(in, out, last);
+
+        // A character split over two chunks is decoded along with the next one
+        position += chunk - in.remaining();
+
+        if(last) {
+            flush(out);
+            close();
+        } else if(in.remaining() == chunk) {
+            throw new IOException("Cannot decode the file.");
+        }
+
+        out.limit(normalizeLineBreaks(out.array(), out.position()));
+        out.position(0);
+
+        if(last && lineSeparator == null)
+            lineSeparator = pendingCR ? "\r" : System.lineSeparator();
+
+        return out;
+    }
+
+    /**
+     *  Decodes bytes into a char buffer
+     *
+     * @param in                            the bytes to decode
+     * @param out                           the buffer receiving the characters
+     * @param endOfInput                    true if no more bytes follow 'in'
+     * @throws CharacterCodingException     if the bytes cannot be decoded
+     */
+    private void decode(ByteBuffer in, CharBuffer out, boolean endOfInput) throws CharacterCodingException {
+        CoderResult result = decoder.decode(in, out, endOfInput);
+
+        if(result.isError())
+            result.throwException();
+    }
+
+    /**
+     *  Writes out whatever the decoder still holds
+     *
+     * @param out                           the buffer receiving the characters
+     * @throws CharacterCodingException     if the remaining bytes cannot be decoded
+     */
+    private void flush(CharBuffer out) throws CharacterCodingException {
+        CoderResult result = decoder.flush(out);
+
+        if(result.isError())
+            result.throwException();
+    }
+
+    /**
+     *  Reads the whole of a small file into the buffer kept for small files
+     *
+     * @param channel       the file
+     * @param size          the size of the file (bytes); less than MIN_MAP_SIZE
+     * @return              the buffer, holding the bytes of the file from 0 up to its limit
+     * @throws IOException  if the file cannot be read
+     */
+    private ByteBuffer readSmall(FileChannel channel, int size) throws IOException {
+        if(smallBuffer == null)
+            smallBuffer = ByteBuffer.allocate(MIN_MAP_SIZE);
+
+        smallBuffer.clear();
+        smallBuffer.limit(size);
+
+        while(smallBuffer.hasRemaining())
+            if(channel.read(smallBuffer, smallBuffer.position()) < 0)
+                throw new IOException("The file got shorter while it was read.");
+
+        smallBuffer.flip();
+
+        return smallBuffer;
+    }
+
+    /**
+     *  Turns every "\r\n" and lone '\r' into '\n', shifting the text in place.  The
+     *  first kind of line break found is kept as the line separator.  A '\r' ending
+     *  the text is remembered, so that a '\n' starting the next chunk is dropped.
+     *
+     * @param text      the text to normalize
+     * @param length    the number of characters of 'text' that are used
+     * @return          the number of characters left after normalizing
+     */
+    private int normalizeLineBreaks(char[] text, int length) {
+        int to      = 0;
+        int from    = 0;
+
+        if(pendingCR && length > 0) {
+            if(lineSeparator == null)
+                lineSeparator = text[0] == '\n' ? "\r\n" : "\r";
+
+            if(text[0] == '\n')
+                from++;
+
+            pendingCR = false;
+        }
+
+        for(; from < length; from++) {
+            char c = text[from];
+
+            if(c == '\r') {
+                // The '\n' of a "\r\n" split over two chunks is in the next one
+                if(from + 1 == length) {
+                    pendingCR       = true;
+                    text[to++]      = '\n';
+                    break;
+                }
+
+                boolean crlf = text[from + 1] == '\n';
+
+                if(lineSeparator == null)
+                    lineSeparator = crlf ? "\r\n" : "\r";
+
+                if(crlf)
+                    from++;
+
+                c = '\n';
+            } else if(c == '\n' && lineSeparator == null) {
+                lineSeparator = "\n";
+            }
+
+            text[to++] = c;
+        }
+
+        return to;
+    }
+}
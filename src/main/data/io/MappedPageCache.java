@@ -0,0 +1,366 @@
+package main.data.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Gives line-by-line access to a file too large to be decoded into the heap.  The
+ * file is memory-mapped (in segments, as a single mapping is limited to 2 GB), and
+ * its lines are decoded a page at a time, a page being the lines between two
+ * checkpoints of the file's SparseLineIndex.  Only the MAX_PAGES pages used most
+ * recently are kept; the rest of the file stays in the mapping, where the OS pages
+ * it in and out as needed.
+ *
+ * The "\r\n" line breaks are turned into '\n' as the pages are decoded.
+ *
+ * @author Justin Kocur
+ */
+public class MappedPageCache implements Closeable {
+    /** The maximum number of decoded pages kept */
+    public static final int MAX_PAGES = 64;
+
+    // The number of bytes searched between two checks for cancellation
+    private static final int CANCEL_CHECK_INTERVAL = 16 * 1_024 * 1_024;
+
+    // The maximum number of bytes decoded for one page; the rest of the page is cut off
+    private static final int MAX_PAGE_BYTES = 4 * 1_024 * 1_024;
+
+    // The number of bytes mapped by each segment
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    // The mapped file
+    private final FileChannel channel;
+
+    // The charset the file is encoded in
+    private final Charset charset;
+
+    // Decodes the pages
+    private final CharsetDecoder decoder;
+
+    // The offsets of the file's lines, built in the background
+    private final SparseLineIndex lineIndex;
+
+    // The decoded pages, from least to most recently used
+    private final LinkedHashMap<Integer, Page> pages;
+
+    // The file, mapped SEGMENT_SIZE bytes at a time
+    private final MappedByteBuffer[] segments;
+
+    // The size, in bytes, of the file
+    private final long size;
+
+    /**
+     *  Maps a file encoded in the platform's default charset
+     *
+     * @param file          the file to map
+     * @throws IOException  if the file cannot be mapped
+     */
+    public MappedPageCache(File file) throws IOException {
+        this(file, Charset.defaultCharset());
+    }
+
+    /**
+     *  Maps a file encoded in the given charset
+     *
+     * @param file          the file to map
+     * @param charset       the charset the file is encoded in
+     * @throws IOException  if the file cannot be mapped
+     */
+    public MappedPageCache(File file, Charset charset) throws IOException {
+        this.charset = charset;
+
+        channel     = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        size        = channel.size();
+        segments    = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        lineIndex   = new SparseLineIndex();
+        decoder     = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        pages       = new LinkedHashMap<Integer, Page>(MAX_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > MAX_PAGES;
+            }
+        };
+
+        for(int i = 0; i < segments.length; i++) {
+            long position   = i * SEGMENT_SIZE;
+            segments[i]     = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+        }
+    }
+
+    /**
+     *  Returns the charset the file is encoded in
+     *
+     * @return  the charset the file is encoded in
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     *  Returns the index of the file's lines.  It is empty until built with
+     *  'SparseLineIndex.build'.
+     *
+     * @return  the index of the file's lines
+     */
+    public SparseLineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     *  Returns a segment of the mapped file, with its own position and limit so it
+     *  can be read from any thread
+     *
+     * @param segment   the segment, from 0 up to 'getSegmentCount'
+     * @return          a buffer holding the bytes of the segment
+     */
+    public ByteBuffer getSegment(int segment) {
+        return segments[segment].duplicate();
+    }
+
+    /**
+     *  Returns the number of segments the file is mapped in
+     *
+     * @return  the number of segments the file is mapped in
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     *  Returns the size of the file
+     *
+     * @return  the size, in bytes, of the file
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Drops the decoded pages and closes the file.  The mappings are released once
+     * they are garbage collected.
+     *
+     * @throws IOException  if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        pages.clear();
+        channel.close();
+    }
+
+    /**
+     *  Finds the next occurrence of a byte sequence in the file
+     *
+     * @param pattern       the bytes to find; must not be empty
+     * @param from          the byte offset to start searching at
+     * @param cancelled     tells whether to stop searching
+     * @return              the byte offset of the occurrence; -1 if there is none
+     *                      (or the search was cancelled)
+     */
+    public long find(byte[] pattern, long from, BooleanSupplier cancelled) {
+        long last = size - pattern.length;
+
+        for(long position = Math.max(from, 0); position <= last; ) {
+            int s               = (int) (position / SEGMENT_SIZE);
+            ByteBuffer segment  = segments[s];
+            long segmentStart   = s * SEGMENT_SIZE;
+            int end             = (int) (Math.min(last + 1, segmentStart + segment.limit()) - segmentStart);
+
+            for(int i = (int) (position - segmentStart); i < end; i++) {
+                // A match may run into the next segment, so the rest is read through 'getByte'
+                if(segment.get(i) == pattern[0] && matches(pattern, segmentStart + i))
+                    return segmentStart + i;
+
+                if((i & (CANCEL_CHECK_INTERVAL - 1)) == 0 && cancelled.getAsBoolean())
+                    return -1;
+            }
+
+            position = segmentStart + end;
+        }
+
+        return -1;
+    }
+
+    /**
+     *  Returns a byte of the file
+     *
+     * @param position  the byte offset
+     * @return          the byte at the offset
+     */
+    public byte getByte(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     *  Returns the number of characters the bytes of a line up to an offset decode to
+     *
+     * @param lineStart     the byte offset at which the line starts
+     * @param position      the byte offset within the line
+     * @return              the column of the offset, in characters
+     */
+    public int getColumn(long lineStart, long position) {
+        return decode(lineStart, (int) Math.min(position - lineStart, MAX_PAGE_BYTES)).length;
+    }
+
+    /**
+     *  Returns the text of a line (without its line break), decoding its page if
+     *  it is not cached.  Lines past the part of the file that has been indexed are
+     *  returned empty.
+     *
+     * @param line  the line (starting at 0)
+     * @return      the text of the line
+     */
+    public CharSequence getLine(long line) {
+        Page page   = getPage((int) (line / SparseLineIndex.LINES_PER_CHECKPOINT));
+        int i       = (int) (line % SparseLineIndex.LINES_PER_CHECKPOINT);
+
+        // Past the end of a page that was cut off
+        if(page == null || i >= page.lineCount)
+            return "";
+
+        return CharBuffer.wrap(page.text, page.lineStarts[i], page.lineStarts[i + 1] - page.lineStarts[i] - 1);
+    }
+
+    /**
+     *  Decodes bytes of the file into a char array
+     *
+     * @param position  the byte offset to start at
+     * @param length    the number of bytes to decode
+     * @return          the decoded characters
+     */
+    private char[] decode(long position, int length) {
+        byte[] bytes = new byte[length];
+
+        // Copy the bytes a segment at a time
+        for(int copied = 0; copied < length; ) {
+            ByteBuffer segment  = getSegment((int) ((position + copied) / SEGMENT_SIZE));
+            int offset          = (int) ((position + copied) % SEGMENT_SIZE);
+            int count           = Math.min(length - copied, segment.limit() - offset);
+
+            segment.position(offset);
+            segment.get(bytes, copied, count);
+            copied += count;
+        }
+
+        try {
+            CharBuffer chars = decoder.reset().decode(ByteBuffer.wrap(bytes));
+            char[] text = new char[chars.remaining()];
+
+            chars.get(text);
+            return text;
+        } catch(IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+
+        return new char[0];
+    }
+
+    /**
+     *  Returns a decoded page, decoding it if it is not cached.  A page whose end has
+     *  not been indexed yet is decoded up to the part indexed, and is not cached.
+     *
+     * @param page  the page; the lines from 'page * LINES_PER_CHECKPOINT' on
+     * @return      the decoded page; null if the page has not been indexed yet
+     */
+    private Page getPage(int page) {
+        Page cached = pages.get(page);
+
+        if(cached != null)
+            return cached;
+
+        if(page >= lineIndex.getCheckpointCount())
+            return null;
+
+        long start      = lineIndex.getCheckpoint(page);
+        boolean whole   = page + 1 < lineIndex.getCheckpointCount() || lineIndex.isComplete();
+        long end        = page + 1 < lineIndex.getCheckpointCount() ? lineIndex.getCheckpoint(page + 1)
+                : whole ? size : Math.max(lineIndex.getScannedBytes(), start);
+        Page decoded    = new Page(decode(start, (int) Math.min(end - start, MAX_PAGE_BYTES)));
+
+        if(whole)
+            pages.put(page, decoded);
+
+        return decoded;
+    }
+
+    /**
+     *  Returns whether a byte sequence occurs at an offset of the file
+     *
+     * @param pattern   the bytes to look for
+     * @param position  the byte offset
+     * @return          true if the bytes at the offset match the pattern
+     */
+    private boolean matches(byte[] pattern, long position) {
+        for(int i = 1; i < pattern.length; i++) {
+            if(getByte(position + i) != pattern[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * The decoded lines between two checkpoints of the line index
+     */
+    private static class Page {
+        // The number of lines in the page
+        private final int lineCount;
+
+        // The offset in 'text' at which each line starts, followed by the end of the last line
+        private final int[] lineStarts;
+
+        // The text of the page, with every line ended by '\n'
+        private final char[] text;
+
+        /**
+         *  Splits decoded text into lines
+         *
+         * @param decoded   the decoded bytes of the page
+         */
+        private Page(char[] decoded) {
+            int[] starts    = new int[SparseLineIndex.LINES_PER_CHECKPOINT + 1];
+            int count       = 0;
+            int to          = 0;
+
+            for(int from = 0; from < decoded.length && count < SparseLineIndex.LINES_PER_CHECKPOINT; from++) {
+                char c = decoded[from];
+
+                // Only '\n' is counted as a line break by the index, so a lone '\r' is kept
+                if(c == '\r' && from + 1 < decoded.length && decoded[from + 1] == '\n')
+                    c = decoded[++from];
+
+                decoded[to++] = c;
+
+                if(c == '\n')
+                    starts[++count] = to;
+            }
+
+            // The last line of the file (or of a page that was cut off) has no line break
+            if(count < SparseLineIndex.LINES_PER_CHECKPOINT && starts[count] < to) {
+                if(to == decoded.length)
+                    decoded = Arrays.copyOf(decoded, to + 1);
+
+                decoded[to++]       = '\n';
+                starts[++count]     = to;
+            }
+
+            lineCount   = count;
+            lineStarts  = starts;
+            text        = decoded;
+        }
+    }
+}
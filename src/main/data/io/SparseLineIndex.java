@@ -0,0 +1,208 @@
+package main.data.io;
+
+import java.nio.ByteBuffer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps the byte offset of every LINES_PER_CHECKPOINT-th line of a mapped file, so
+ * that a line can be found by jumping to the nearest checkpoint and counting at most
+ * LINES_PER_CHECKPOINT line breaks, without keeping the offset of every line in
+ * the heap.
+ *
+ * The index is built on a background thread with 'build', while the viewer
+ * reads it on the EDT; the lines scanned so far can be used right away.
+ *
+ * Line breaks are found by looking for the byte '\n', so the file must be in a
+ * charset where that byte is never part of another character (e.g. UTF-8, ASCII
+ * or ISO-8859-1).
+ *
+ * @author Justin Kocur
+ */
+public class SparseLineIndex {
+    /** The number of lines between two checkpoints */
+    public static final int LINES_PER_CHECKPOINT = 256;
+
+    // The number of bytes scanned between two updates of the published counts
+    private static final int PUBLISH_INTERVAL = 1_024 * 1_024;
+
+    // The number of checkpoints in 'checkpoints' that are set
+    private volatile int checkpointCount;
+
+    // The byte offset at which every LINES_PER_CHECKPOINT-th line starts
+    private volatile long[] checkpoints;
+
+    // True once the whole file has been scanned
+    private volatile boolean complete;
+
+    // The number of lines found so far
+    private volatile long lineCount;
+
+    // The number of bytes of the file scanned so far
+    private volatile long scannedBytes;
+
+    /**
+     * Creates an empty index; its first line starts at offset 0
+     */
+    public SparseLineIndex() {
+        checkpoints     = new long[1_024];
+        checkpointCount = 1;
+        lineCount       = 1;
+    }
+
+    /**
+     *  Returns the byte offset at which a checkpoint line starts
+     *
+     * @param checkpoint    the checkpoint; line 'checkpoint * LINES_PER_CHECKPOINT'
+     * @return              the byte offset at which the line starts
+     */
+    public long getCheckpoint(int checkpoint) {
+        return checkpoints[checkpoint];
+    }
+
+    /**
+     *  Returns the number of checkpoints found so far
+     *
+     * @return  the number of checkpoints found so far
+     */
+    public int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     *  Returns the number of lines found so far; the last of them may not be
+     *  scanned to its end yet
+     *
+     * @return  the number of lines found so far
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     *  Returns the number of bytes of the file scanned so far
+     *
+     * @return  the number of bytes of the file scanned so far
+     */
+    public long getScannedBytes() {
+        return scannedBytes;
+    }
+
+    /**
+     *  Returns whether the whole file has been scanned
+     *
+     * @return  true if the whole file has been scanned
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     *  Scans a file for line breaks, recording a checkpoint every LINES_PER_CHECKPOINT
+     *  lines.  Meant to be run on a background thread.
+     *
+     * @param cache         the mapped file to scan
+     * @param cancelled     tells whether to stop scanning
+     */
+    public void build(MappedPageCache cache, BooleanSupplier cancelled) {
+        long lines      = 1;
+        long position   = 0;
+
+        for(int s = 0; s < cache.getSegmentCount() && !cancelled.getAsBoolean(); s++) {
+            ByteBuffer segment  = cache.getSegment(s);
+            int limit           = segment.limit();
+
+            for(int i = 0; i < limit; i++) {
+                if(segment.get(i) == '\n' && lines++ % LINES_PER_CHECKPOINT == 0)
+                    addCheckpoint(position + i + 1);
+
+                // Let the viewer use the lines found so far
+                if((i & (PUBLISH_INTERVAL - 1)) == 0) {
+                    lineCount       = lines;
+                    scannedBytes    = position + i;
+
+                    if(cancelled.getAsBoolean())
+                        return;
+                }
+            }
+
+            position += limit;
+        }
+
+        lineCount       = lines;
+        scannedBytes    = position;
+        complete        = !cancelled.getAsBoolean();
+    }
+
+    /**
+     *  Returns the line a byte offset is on
+     *
+     * @param cache     the mapped file the index was built from
+     * @param position  the byte offset; must have been scanned already
+     * @return          the line (starting at 0) of the byte offset
+     */
+    public long getLineOfPosition(MappedPageCache cache, long position) {
+        int low     = 0;
+        int high    = getCheckpointCount() - 1;
+
+        // Find the last checkpoint at or before the offset
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+
+            if(getCheckpoint(mid) <= position)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+
+        long line = (long) low * LINES_PER_CHECKPOINT;
+
+        for(long p = getCheckpoint(low); p < position; p++) {
+            if(cache.getByte(p) == '\n')
+                line++;
+        }
+
+        return line;
+    }
+
+    /**
+     *  Returns the byte offset at which a line starts, counting line breaks from the
+     *  nearest checkpoint before it
+     *
+     * @param cache     the mapped file the index was built from
+     * @param line      the line (starting at 0); must be less than the line count
+     * @return          the byte offset at which the line starts
+     */
+    public long getLineStart(MappedPageCache cache, long line) {
+        int checkpoint  = (int) (line / LINES_PER_CHECKPOINT);
+        long position   = getCheckpoint(checkpoint);
+
+        for(long lines = line % LINES_PER_CHECKPOINT; lines > 0; position++) {
+            if(cache.getByte(position) == '\n')
+                lines--;
+        }
+
+        return position;
+    }
+
+    /**
+     *  Records the start of the next checkpoint line, growing the array as needed.
+     *  The array is only replaced once it is filled, so readers always see a
+     *  consistent copy.
+     *
+     * @param position  the byte offset at which the line starts
+     */
+    private void addCheckpoint(long position) {
+        long[] array = checkpoints;
+
+        if(checkpointCount == array.length) {
+            long[] grown = new long[array.length * 2];
+
+            System.arraycopy(array, 0, grown, 0, array.length);
+            array       = grown;
+            checkpoints = grown;
+        }
+
+        array[checkpointCount]  = position;
+        checkpointCount         = checkpointCount + 1;
+    }
+}
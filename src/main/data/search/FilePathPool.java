@@ -0,0 +1,396 @@
+package main.data.search;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The paths of every file under a directory (e.g. a project), kept in memory so
+ * that a file can be found by name (see FuzzyFinder) without listing a directory
+ * again.  There can be hundreds of thousands of files, so the paths (relative to
+ * the root) are not kept as Strings: their characters are pooled back to back in
+ * a single array, and a path is the run of characters from its start to the start
+ * of the next one.
+ *
+ * Each path also has a mask of the characters it holds (see 'mask'), so that the
+ * paths that cannot hold every character of a name are passed over without
+ * reading them.  A removed path is only marked as such, and dropped once a good
+ * part of the pool was removed; its ID is not given to another path until then.
+ *
+ * The methods changing the pool are synchronized: the pool is kept up to date on
+ * one thread while it is searched on others, and a search holds the lock of the
+ * pool until it is done.
+ *
+ * @author Justin Kocur
+ */
+public class FilePathPool {
+    // The smallest number of removed paths that are dropped at once
+    private static final int MIN_COMPACT_SIZE = 1_024;
+
+    // The characters of every path, back to back; only the first 'length' are used
+    private char[] chars;
+
+    // The number of paths added, removed or not (the ID given to the next path added)
+    private int count;
+
+    // The number of characters used
+    private int length;
+
+    // The mask of the characters each path holds (see 'mask'), by ID
+    private long[] masks;
+
+    // The IDs of the paths removed
+    private final BitSet removed;
+
+    // The number of paths removed
+    private int removedCount;
+
+    // The directory the paths are relative to
+    private final Path root;
+
+    // A table of the paths by their characters, by open addressing: the ID of a path plus 1, 0 if empty
+    private int[] slots;
+
+    // The index in 'chars' at which each path starts, by ID; the last entry is 'length'
+    private int[] starts;
+
+    // Changes whenever a path is added or removed
+    private int version;
+
+    /**
+     *  Creates an empty pool of the paths under a directory
+     *
+     * @param root  the directory the paths are relative to
+     */
+    public FilePathPool(Path root) {
+        this.root = root;
+
+        chars   = new char[16 * 1_024];
+        masks   = new long[1_024];
+        starts  = new int[masks.length + 1];
+        slots   = new int[2 * masks.length];
+        removed = new BitSet();
+    }
+
+    /**
+     *  Returns the characters of every path, back to back
+     *
+     * @return  the array pooling the characters of the paths
+     */
+    char[] getChars() {
+        return chars;
+    }
+
+    /**
+     *  Returns the number of files in the pool
+     *
+     * @return  the number of files (not counting the removed ones)
+     */
+    public synchronized int getFileCount() {
+        return count - removedCount;
+    }
+
+    /**
+     *  Returns the number of IDs given out, including the IDs of removed paths
+     *
+     * @return  the number of IDs
+     */
+    int getIdCount() {
+        return count;
+    }
+
+    /**
+     *  Returns the mask of the characters each path holds (see 'mask')
+     *
+     * @return  the masks, by ID
+     */
+    long[] getMasks() {
+        return masks;
+    }
+
+    /**
+     *  Returns the file with an ID
+     *
+     * @param id    the ID of the file
+     * @return      the file (an absolute path if the root is)
+     */
+    public synchronized Path getPath(int id) {
+        return root.resolve(new String(chars, starts[id], starts[id + 1] - starts[id]));
+    }
+
+    /**
+     *  Returns the directory the paths are relative to
+     *
+     * @return  the root directory of the pool
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     *  Returns the index in the characters of the pool at which each path starts
+     *
+     * @return  the start of each path, by ID; the entry after the last ID is the end of the last path
+     */
+    int[] getStarts() {
+        return starts;
+    }
+
+    /**
+     *  Returns a number that changes whenever a path is added or removed, so that
+     *  what was found in the pool is known to be out of date
+     *
+     * @return  the version of the pool
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     *  Returns whether the path with an ID was removed
+     *
+     * @param id    the ID of the path
+     * @return      true if removed, false if not
+     */
+    boolean isRemoved(int id) {
+        return removed.get(id);
+    }
+
+    /**
+     *  Adds a file, unless it is in the pool already
+     *
+     * @param file  the file; under the root
+     */
+    public synchronized void add(Path file) {
+        String path = root.relativize(file).toString();
+        int slot    = find(path);
+
+        // Added back once removed, the path gets a new ID (in the same slot), and its old one stays removed
+        if(slots[slot] != 0 && !removed.get(slots[slot] - 1))
+            return;
+
+        if(count + 1 == starts.length) {
+            masks   = Arrays.copyOf(masks, 2 * masks.length);
+            starts  = Arrays.copyOf(starts, masks.length + 1);
+        }
+
+        if(length + path.length() > chars.length)
+            chars = Arrays.copyOf(chars, Math.max(length + path.length(), 2 * chars.length));
+
+        path.getChars(0, path.length(), chars, length);
+
+        masks[count]        = mask(chars, length, length + path.length());
+        length              += path.length();
+        starts[count + 1]   = length;
+        slots[slot]         = ++count;
+        version++;
+
+        if(2 * count > slots.length)
+            rehash(2 * slots.length);
+    }
+
+    /**
+     *  Adds every file of a list that is not in the pool already
+     *
+     * @param files     the files; under the root
+     */
+    public synchronized void addAll(List<Path> files) {
+        for(Path file : files)
+            add(file);
+    }
+
+    /**
+     *  Removes a file from the pool, or every file under a directory (e.g. when
+     *  the directory was deleted)
+     *
+     * @param file  the file or directory
+     */
+    public synchronized void remove(Path file) {
+        String path     = root.relativize(file).toString();
+        String prefix   = path.isEmpty() ? "" : path + file.getFileSystem().getSeparator();
+        int slot        = find(path);
+
+        // A file is found at once; only a directory needs every path looked at
+        if(slots[slot] != 0) {
+            if(!removed.get(slots[slot] - 1)) {
+                removed.set(slots[slot] - 1);
+                removedCount++;
+                version++;
+            }
+        } else {
+            for(int id = 0; id < count; id++) {
+                if(!removed.get(id) && matches(prefix, starts[id], starts[id + 1], false)) {
+                    removed.set(id);
+                    removedCount++;
+                    version++;
+                }
+            }
+        }
+
+        if(removedCount >= MIN_COMPACT_SIZE && 2 * removedCount > count)
+            compact();
+    }
+
+    /**
+     *  Returns the mask of the characters a run of text holds: a bit for each letter
+     *  (case folded) and digit, and the other bits shared by the other characters.
+     *  A text can only hold another if its mask has every bit of the other's mask.
+     *
+     * @param chars     the array holding the text
+     * @param start     the index of the first character of the text
+     * @param end       the index just past the last character of the text
+     * @return          the mask of the characters of the text
+     */
+    static long mask(char[] chars, int start, int end) {
+        long mask = 0;
+
+        for(int i = start; i < end; i++)
+            mask |= mask(TrigramIndex.fold(chars[i]));
+
+        return mask;
+    }
+
+    /**
+     *  Drops the paths removed, renumbering the others (in the same order)
+     */
+    private void compact() {
+        int kept        = 0;
+        int keptLength  = 0;
+
+        for(int id = 0; id < count; id++) {
+            if(removed.get(id))
+                continue;
+
+            int start       = starts[id];
+            int pathLength  = starts[id + 1] - start;
+
+            System.arraycopy(chars, start, chars, keptLength, pathLength);
+
+            masks[kept]     = masks[id];
+            starts[kept]    = keptLength;
+            keptLength      += pathLength;
+            kept++;
+        }
+
+        starts[kept]    = keptLength;
+        count           = kept;
+        length          = keptLength;
+        removedCount    = 0;
+
+        removed.clear();
+        rehash(slots.length);
+    }
+
+    /**
+     *  Returns the slot of the table holding a path, or the empty slot it would go in
+     *
+     * @param path  the path (relative to the root)
+     * @return      the slot of the path
+     */
+    private int find(String path) {
+        int mask = slots.length - 1;
+        int slot = hash(path) & mask;
+
+        while(slots[slot] != 0) {
+            int id = slots[slot] - 1;
+
+            if(matches(path, starts[id], starts[id + 1], true))
+                return slot;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     *  Returns the hash of a path of the pool (the same as the hash of the path as a String)
+     *
+     * @param chars     the array holding the path
+     * @param start     the index of the first character of the path
+     * @param end       the index just past the last character of the path
+     * @return          the hash of the path
+     */
+    private static int hash(char[] chars, int start, int end) {
+        int h = 0;
+
+        for(int i = start; i < end; i++)
+            h = 31 * h + chars[i];
+
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     *  Returns the hash of a path
+     *
+     * @param path  the path
+     * @return      the hash of the path
+     */
+    private static int hash(String path) {
+        int h = path.hashCode();
+
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     *  Returns the bit of the mask (see 'mask') of a case folded character
+     *
+     * @param c     the character, case folded
+     * @return      the bit of the character
+     */
+    private static long mask(char c) {
+        if(c >= 'a' && c <= 'z')
+            return 1L << (c - 'a');
+
+        if(c >= '0' && c <= '9')
+            return 1L << (26 + c - '0');
+
+        return 1L << (36 + c % 28);
+    }
+
+    /**
+     *  Returns whether a path of the pool is (or starts with) a String
+     *
+     * @param text      the String
+     * @param start     the index of the first character of the path
+     * @param end       the index just past the last character of the path
+     * @param whole     true if the path must be the String, false if it only has to start with it
+     * @return          true if it matches, false if not
+     */
+    private boolean matches(String text, int start, int end, boolean whole) {
+        int pathLength = end - start;
+
+        if(whole ? pathLength != text.length() : pathLength < text.length())
+            return false;
+
+        for(int i = 0; i < text.length(); i++)
+            if(chars[start + i] != text.charAt(i))
+                return false;
+
+        return true;
+    }
+
+    /**
+     *  Rebuilds the table of the paths with a number of slots
+     *
+     * @param capacity  the number of slots; a power of two, more than twice the number of paths
+     */
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+
+        int mask = capacity - 1;
+
+        for(int id = 0; id < count; id++) {
+            if(removed.get(id))
+                continue;
+
+            int slot = hash(chars, starts[id], starts[id + 1]) & mask;
+
+            while(slots[slot] != 0)
+                slot = (slot + 1) & mask;
+
+            slots[slot] = id + 1;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package main.data.search;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the files of a FilePathPool whose path holds the characters of a name in
+ * order (not necessarily next to each other, e.g. "edcon" finds EditorContainer),
+ * ranking them by how well the name fits the path.
+ *
+ * A path scores for every character of the name, and more for the characters
+ * starting a word (after a separator, '_', '-', '.' or at a change of case) or
+ * following the character matched before, so that "ec" ranks "EditorContainer"
+ * above "selection".  It loses a little for every character skipped between two
+ * characters matched.  The characters are matched as close to the end of the path
+ * as they can be, and fitting the name of the file itself scores more than fitting
+ * the directories it is in.  Among paths scoring the same, the shorter one wins.
+ *
+ * The pool is split in chunks searched on the threads of ParallelSearch, each
+ * keeping its best paths in a heap; the heaps are merged once every chunk is done.
+ * Every path found is kept in the result, so that the next search, for a name
+ * typed on from the one before, only looks at those paths rather than the whole
+ * pool again.
+ *
+ * @author Justin Kocur
+ */
+public class FuzzyFinder {
+    // Scored for a character at a change of case (e.g. the 'C' of "EditorContainer") or starting a number
+    private static final int BONUS_CAMEL = 8;
+
+    // Scored for a character following the character matched before
+    private static final int BONUS_CONSECUTIVE = 5;
+
+    // Scored if the whole name is in the name of the file (rather than in its directories)
+    private static final int BONUS_FILE_NAME = 24;
+
+    // Scored for a character starting a part of the path (after a separator)
+    private static final int BONUS_SEPARATOR = 10;
+
+    // Scored for a character starting a word (after '_', '-', '.' or ' ')
+    private static final int BONUS_WORD = 9;
+
+    // The number of paths a thread searches at once
+    private static final int CHUNK_SIZE = 16 * 1_024;
+
+    // Scores are scaled by this, leaving room to rank the paths scoring the same by length
+    private static final int LENGTH_SCALE = 1_024;
+
+    // Lost for skipping characters between two characters matched
+    private static final int PENALTY_GAP = 3;
+
+    // Lost for every character skipped after the first
+    private static final int PENALTY_GAP_EXTENSION = 1;
+
+    // Scored for each character of the name
+    private static final int SCORE_MATCH = 16;
+
+    /**
+     *  Finds the files of a pool whose path fits a name best
+     *
+     * @param pool      the paths to search
+     * @param name      the name typed (not case sensitive)
+     * @param max       the number of files to rank
+     * @param previous  the result of the search before; only its files are searched if the
+     *                  name starts with the name it was for, and the pool has not changed
+     *                  since.  Null to search the whole pool.
+     * @return          the best files, and every file the name fits
+     */
+    public static Result find(FilePathPool pool, String name, int max, Result previous) {
+        char[] query = new char[name.length()];
+        char[] upper = new char[name.length()];
+
+        for(int i = 0; i < query.length; i++) {
+            query[i] = TrigramIndex.fold(name.charAt(i));
+            upper[i] = query[i] < 128 ? Character.toUpperCase(query[i]) : query[i];
+        }
+
+        long queryMask = FilePathPool.mask(query, 0, query.length);
+
+        // Holding the lock keeps the pool from changing while its arrays are read on other threads
+        synchronized(pool) {
+            int version     = pool.getVersion();
+            int[] ids       = null;
+            int idCount     = pool.getIdCount();
+
+            if(previous != null && previous.version == version && previous.pool == pool
+                    && new String(query).startsWith(previous.query)) {
+                ids     = previous.matches;
+                idCount = previous.matchCount;
+            }
+
+            List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+
+            for(int from = 0; from < idCount; from += CHUNK_SIZE)
+                tasks.add(ParallelSearch.getPool().submit(new Chunk(pool, query, upper, queryMask, max, ids,
+                        from, Math.min(idCount, from + CHUNK_SIZE))));
+
+            int[] matches   = new int[0];
+            int matchCount  = 0;
+            long[] best     = new long[max];
+            int bestCount   = 0;
+
+            // The chunks are joined in order, so the files found stay in the order of the pool
+            for(ForkJoinTask<Chunk> task : tasks) {
+                Chunk chunk = task.join();
+
+                if(matchCount + chunk.matchCount > matches.length)
+                    matches = Arrays.copyOf(matches, Math.max(matchCount + chunk.matchCount, 2 * matches.length));
+
+                System.arraycopy(chunk.matches, 0, matches, matchCount, chunk.matchCount);
+                matchCount += chunk.matchCount;
+
+                for(int i = 0; i < chunk.bestCount; i++)
+                    bestCount = offer(best, bestCount, chunk.best[i]);
+            }
+
+            Arrays.sort(best, 0, bestCount);
+
+            List<Path> files = new ArrayList<>(bestCount);
+
+            // Best first
+            for(int i = bestCount - 1; i >= 0; i--)
+                files.add(pool.getPath(Integer.MAX_VALUE - (int) best[i]));
+
+            return new Result(pool, version, new String(query), matches, matchCount, files);
+        }
+    }
+
+    /**
+     *  Returns how well a name fits a path: where the characters of the name are
+     *  matched, as close to the end of the path as they can be, and how many
+     *  characters are skipped between them
+     *
+     * @param chars     the array holding the path
+     * @param start     the index of the first character of the path
+     * @param end       the index just past the last character of the path
+     * @param query     the characters of the name, case folded
+     * @param upper     the characters of the name in upper case (if ASCII letters)
+     * @return          the score of the path, higher for a better fit; Integer.MIN_VALUE
+     *                  if the path does not hold the characters of the name in order
+     */
+    static int score(char[] chars, int start, int end, char[] query, char[] upper) {
+        if(query.length == 0)
+            return 0;
+
+        // The last character of the name, then the ones before it, as late in the path as they are
+        int q           = query.length - 1;
+        int matchStart  = end;
+
+        while(matchStart > start) {
+            if(matches(chars[--matchStart], query[q], upper[q]) && --q < 0)
+                break;
+        }
+
+        if(q >= 0)
+            return Integer.MIN_VALUE;
+
+        boolean inName = true;
+
+        // Only the characters from the first matched on are looked at (few of them, if in the name)
+        for(int i = matchStart; i < end && inName; i++)
+            inName = chars[i] != '/' && chars[i] != '\\';
+
+        // Then forward from the first of them, matching each character as early as it is
+        int score       = inName ? BONUS_FILE_NAME : 0;
+        boolean inGap   = false;
+        boolean matched = false;
+
+        q = 0;
+
+        for(int i = matchStart; q < query.length; i++) {
+            char c = chars[i];
+
+            if(!matches(c, query[q], upper[q])) {
+                score   -= inGap ? PENALTY_GAP_EXTENSION : PENALTY_GAP;
+                inGap   = true;
+                matched = false;
+                continue;
+            }
+
+            score += SCORE_MATCH + (matched ? BONUS_CONSECUTIVE : 0)
+                    + bonus(i > start ? chars[i - 1] : '/', c);
+            inGap   = false;
+            matched = true;
+            q++;
+        }
+
+        return score;
+    }
+
+    /**
+     *  Returns the bonus of a character matched, for where it is in the path
+     *
+     * @param previous  the character before it ('/' if it starts the path)
+     * @param c         the character
+     * @return          the bonus of the character
+     */
+    private static int bonus(char previous, char c) {
+        if(previous == '/' || previous == '\\')
+            return BONUS_SEPARATOR;
+
+        if(previous == '_' || previous == '-' || previous == '.' || previous == ' ')
+            return BONUS_WORD;
+
+        if(Character.isUpperCase(c) && !Character.isUpperCase(previous))
+            return BONUS_CAMEL;
+
+        if(Character.isDigit(c) && !Character.isDigit(previous))
+            return BONUS_CAMEL;
+
+        return 0;
+    }
+
+    /**
+     *  Returns whether a character of a path is a character of the name, but for
+     *  its case.  Checking both cases of an ASCII letter is faster than folding the
+     *  case of every character of the path.
+     *
+     * @param c         the character of the path
+     * @param folded    the character of the name, case folded
+     * @param upper     the character of the name in upper case (if an ASCII letter)
+     * @return          true if the same character but for its case, false if not
+     */
+    private static boolean matches(char c, char folded, char upper) {
+        return c == folded || c == upper || (c >= 128 && TrigramIndex.fold(c) == folded);
+    }
+
+    /**
+     *  Adds a file to a heap of the best files (the worst at the top), unless the
+     *  heap is full and the file is no better than the worst
+     *
+     * @param heap      the heap of the files, by their key (see 'Chunk')
+     * @param size      the number of files in the heap
+     * @param key       the key of the file
+     * @return          the number of files in the heap
+     */
+    private static int offer(long[] heap, int size, long key) {
+        if(size < heap.length) {
+            int i = size++;
+
+            // Sift up
+            while(i > 0 && heap[(i - 1) / 2] > key) {
+                heap[i] = heap[(i - 1) / 2];
+                i       = (i - 1) / 2;
+            }
+
+            heap[i] = key;
+        } else if(size > 0 && key > heap[0]) {
+            int i = 0;
+
+            // Sift down from the top, replacing the worst
+            while(2 * i + 1 < size) {
+                int child = 2 * i + 1;
+
+                if(child + 1 < size && heap[child + 1] < heap[child])
+                    child++;
+
+                if(heap[child] >= key)
+                    break;
+
+                heap[i] = heap[child];
+                i       = child;
+            }
+
+            heap[i] = key;
+        }
+
+        return size;
+    }
+
+    /**
+     * The files found by a search: the best ones, ranked, and every one the name fits
+     */
+    public static class Result {
+        // The best files, best first
+        private final List<Path> files;
+
+        // The number of files the name fits
+        private final int matchCount;
+
+        // The IDs of the files the name fits, in the order of the pool; only the first 'matchCount' are used
+        private final int[] matches;
+
+        // The pool searched
+        private final FilePathPool pool;
+
+        // The name searched for, case folded
+        private final String query;
+
+        // The version of the pool searched
+        private final int version;
+
+        /**
+         *  Creates the result of a search
+         *
+         * @param pool          the pool searched
+         * @param version       the version of the pool searched
+         * @param query         the name searched for, case folded
+         * @param matches       the IDs of the files the name fits, in the order of the pool
+         * @param matchCount    the number of files the name fits
+         * @param files         the best files, best first
+         */
+        private Result(FilePathPool pool, int version, String query, int[] matches, int matchCount, List<Path> files) {
+            this.pool       = pool;
+            this.version    = version;
+            this.query      = query;
+            this.matches    = matches;
+            this.matchCount = matchCount;
+            this.files      = files;
+        }
+
+        /**
+         *  Returns the best files, best first
+         *
+         * @return  the files ranked
+         */
+        public List<Path> getFiles() {
+            return files;
+        }
+
+        /**
+         *  Returns the number of files the name fits
+         *
+         * @return  the number of files found
+         */
+        public int getMatchCount() {
+            return matchCount;
+        }
+    }
+
+    /**
+     * The search of some of the files of the pool.  Each file found is ranked by a
+     * key: its score (scaled, less the length of its path) in the high bits, and its
+     * ID (subtracted from Integer.MAX_VALUE, so that the first of the files ranking
+     * the same wins) in the low bits.
+     */
+    private static class Chunk extends RecursiveTask<Chunk> {
+        // The keys of the best files of the chunk, in a heap; only the first 'bestCount' are used
+        private final long[] best;
+
+        // The number of best files
+        private int bestCount;
+
+        // The index of the first file of the chunk (in 'ids', or of the pool)
+        private final int from;
+
+        // The IDs of the files to search; null to search the files of the pool by ID
+        private final int[] ids;
+
+        // The number of files found
+        private int matchCount;
+
+        // The IDs of the files found; only the first 'matchCount' are used
+        private int[] matches;
+
+        // The pool searched
+        private final FilePathPool pool;
+
+        // The characters of the name, case folded
+        private final char[] query;
+
+        // The mask of the characters of the name
+        private final long queryMask;
+
+        // The characters of the name in upper case (if ASCII letters)
+        private final char[] upper;
+
+        // The index just past the last file of the chunk (in 'ids', or of the pool)
+        private final int to;
+
+        /**
+         *  Creates the search of some of the files
+         *
+         * @param pool      the pool searched
+         * @param query     the characters of the name, case folded
+         * @param upper     the characters of the name in upper case (if ASCII letters)
+         * @param queryMask the mask of the characters of the name
+         * @param max       the number of best files to keep
+         * @param ids       the IDs of the files to search; null to search the files of the pool by ID
+         * @param from      the index of the first file to search (in 'ids', or of the pool)
+         * @param to        the index just past the last file to search
+         */
+        private Chunk(FilePathPool pool, char[] query, char[] upper, long queryMask, int max, int[] ids,
+                      int from, int to) {
+            this.pool       = pool;
+            this.query      = query;
+            this.upper      = upper;
+            this.queryMask  = queryMask;
+            this.ids        = ids;
+            this.from       = from;
+            this.to         = to;
+
+            best    = new long[max];
+            matches = new int[Math.min(to - from, 1_024)];
+        }
+
+        /**
+         * Scores every file of the chunk holding the characters of the name
+         *
+         * @return  the chunk, with the files found
+         */
+        @Override
+        protected Chunk compute() {
+            char[] chars    = pool.getChars();
+            int[] starts    = pool.getStarts();
+            long[] masks    = pool.getMasks();
+
+            for(int i = from; i < to; i++) {
+                int id = ids != null ? ids[i] : i;
+
+                // Most files are passed over here, without reading their path
+                if((masks[id] & queryMask) != queryMask || pool.isRemoved(id))
+                    continue;
+
+                int start   = starts[id];
+                int end     = starts[id + 1];
+                int score   = score(chars, start, end, query, upper);
+
+                if(score == Integer.MIN_VALUE)
+                    continue;
+
+                if(matchCount == matches.length)
+                    matches = Arrays.copyOf(matches, 2 * matches.length);
+
+                matches[matchCount++] = id;
+
+                long rank = (long) score * LENGTH_SCALE - Math.min(end - start, LENGTH_SCALE - 1);
+
+                bestCount = offer(best, bestCount, (rank << 32) | (Integer.MAX_VALUE - id));
+            }
+
+            return this;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package main.data.search;
+
+import main.data.document.TextSnapshot;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.Arrays;
+
+/**
+ * Finds every occurrence of a phrase in a text, using the Boyer-Moore-Horspool
+ * algorithm: the phrase is compared from its last character, and on a mismatch
+ * the search skips ahead by up to the length of the phrase.
+ *
+ * The text is scanned run by run (see TextSnapshot) straight from the document's
+ * buffers, without copying it; only the few characters around the boundary of two
+ * runs are copied, to find the occurrences spanning it.  A case-insensitive search
+ * folds the case of each character as it is compared, rather than lowercasing the
+ * whole text.  A searcher holds no state between searches, so it can be used by
+ * several threads at once.
+ *
+ * @author Justin Kocur
+ */
+public class LiteralSearcher implements Searcher {
+    // The number of entries in the skip table; characters share the entry of their low byte
+    private static final int SHIFT_TABLE_SIZE = 256;
+
+    // True if case sensitive (e.g. 'A' != 'a'), false if not (e.g. 'A' == 'a')
+    private final boolean matchCase;
+
+    // The phrase to find; case folded if the search is case-insensitive
+    private final char[] phrase;
+
+    /* How far to move the search on from a window ending with a character (by the
+       character's low byte); the smallest skip of all characters sharing the entry */
+    private final int[] shifts;
+
+    /**
+     *  Creates a searcher for a phrase
+     *
+     * @param phrase        the phrase to find; not empty
+     * @param matchCase     true if case sensitive, false if not
+     */
+    public LiteralSearcher(String phrase, boolean matchCase) {
+        if(phrase.isEmpty())
+            throw new IllegalArgumentException("Cannot search for an empty phrase");
+
+        this.matchCase  = matchCase;
+        this.phrase     = new char[phrase.length()];
+
+        for(int i = 0; i < this.phrase.length; i++)
+            this.phrase[i] = fold(phrase.charAt(i));
+
+        int last    = this.phrase.length - 1;
+        shifts      = new int[SHIFT_TABLE_SIZE];
+
+        Arrays.fill(shifts, this.phrase.length);
+
+        // Later characters of the phrase overwrite earlier ones with a smaller skip
+        for(int i = 0; i < last; i++)
+            shifts[this.phrase[i] & (SHIFT_TABLE_SIZE - 1)] = last - i;
+    }
+
+    /**
+     *  Returns the length of the phrase
+     *
+     * @return  the number of characters of the phrase
+     */
+    public int getLength() {
+        return phrase.length;
+    }
+
+    /**
+     *  Returns whether the search is case sensitive
+     *
+     * @return  true if case sensitive, false if not
+     */
+    @Override
+    public boolean isMatchCase() {
+        return matchCase;
+    }
+
+    /**
+     *  Brings the occurrences found in a document up to date after an edit, finding
+     *  them again only around the edit (and as far past it as needed, as finding or
+     *  losing an occurrence can change the ones after it, e.g. of "aa" in "aaa")
+     *
+     * @param document  the edited document
+     * @param matches   the occurrences of the phrase in the text before the edit
+     * @param offset    where the text was edited
+     * @param inserted  the number of characters added
+     * @param removed   the number of characters removed
+     * @return          true if updated, false if the text could not be read (the
+     *                  occurrences must then be found again)
+     */
+    public boolean findAgain(Document document, MatchList matches, int offset, int inserted, int removed) {
+        int phraseLength = phrase.length;
+
+        // The text an occurrence overlapping the edit could span
+        int length  = document.getLength();
+        int start   = Math.max(0, offset - (phraseLength - 1));
+        int end     = Math.min(length, offset + inserted + (phraseLength - 1));
+
+        // Drop the occurrences overlapping the edit, and move the ones after it
+        int first   = matches.lowerBound(start);
+        int moved   = matches.lowerBound(offset + removed, first);
+
+        // The search must get past the edit, and past an occurrence dropped that ran over it
+        int settled = offset + inserted;
+
+        if(moved > first)
+            settled = Math.max(settled, matches.getEnd(moved - 1) - removed + inserted);
+
+        matches.shift(moved, inserted - removed);
+
+        // Instances do not overlap the one before them
+        int from            = first > 0 ? Math.max(start, matches.getEnd(first - 1)) : start;
+        int limit           = end;
+        int kept;
+        MatchList found     = new MatchList();
+        Segment text        = new Segment();
+
+        // An occurrence found (or no longer found) may take (or free) the characters of the
+        // next one (e.g. of "aa" in "aaa"), so the search goes on past the edit until it
+        // is back in step with the occurrences found before
+        while(true) {
+            if(from < limit) {
+                // Only the part of the text is copied (if at all) that is not in one piece
+                try {
+                    document.getText(from, limit - from, text);
+                } catch(BadLocationException ex) {
+                    System.err.println(ex.getMessage());
+                    return false;
+                }
+
+                findAll(text.array, text.offset, text.count, from, found);
+            }
+
+            // Go on past the last instance found, or from where one could still run past the limit
+            if(limit == length)
+                from = length;
+            else if(!found.isEmpty())
+                from = Math.max(from, Math.max(found.getEnd(found.size() - 1), limit - phraseLength + 1));
+            else
+                from = Math.max(from, limit - phraseLength + 1);
+
+            // From an offset past the edit and outside every instance, the same occurrences are found as before
+            kept = matches.lowerBound(from, moved);
+
+            if(from >= settled && (kept == moved || matches.getEnd(kept - 1) <= from))
+                break;
+
+            // Search on up to the end of the occurrence the search is inside of (or of the edit)
+            int target = Math.max(settled, kept > moved ? matches.getEnd(kept - 1) : 0);
+
+            limit = Math.min(length, Math.max(target, from) + phraseLength - 1);
+        }
+
+        matches.replace(first, kept, found);
+        return true;
+    }
+
+    /**
+     *  Finds every occurrence of the phrase in a text.  The occurrences do not
+     *  overlap: e.g. text 'abcabca' with phrase 'abca' only has one occurrence,
+     *  abca|bca, and the search goes on with 'bca'.
+     *
+     * @param text  the text to search
+     * @return      the offsets of the occurrences in the text, in order
+     */
+    public int[] findAll(TextSnapshot text) {
+        MatchList matches = new MatchList();
+
+        findAll(text, matches);
+        return matches.toArray();
+    }
+
+    /**
+     *  Finds every occurrence of the phrase in a text (see 'findAll(TextSnapshot)'),
+     *  adding them to a list
+     *
+     * @param text      the text to search
+     * @param matches   the list to add the offsets of the occurrences to
+     */
+    public void findAll(TextSnapshot text, MatchList matches) {
+        Scan scan = scan(text);
+
+        while(!scan.isDone())
+            scan.next(matches, Integer.MAX_VALUE);
+    }
+
+    /**
+     *  Finds every occurrence of the phrase within part of an array (e.g. a Segment
+     *  of a document), adding them to a list
+     *
+     * @param chars     the array holding the text
+     * @param start     the index in the array of the first character to search
+     * @param length    the number of characters to search
+     * @param offset    the offset in the text of the first character to search
+     * @param matches   the list to add the offsets of the occurrences to
+     */
+    public void findAll(char[] chars, int start, int length, int offset, MatchList matches) {
+        scanRange(chars, start, start + length, offset - start, matches);
+    }
+
+    /**
+     *  Starts a search of a text that is done a part at a time (e.g. so that it can
+     *  be cancelled, or its results shown as they come in)
+     *
+     * @param text  the text to search
+     * @return      the search, which has not scanned anything yet
+     */
+    @Override
+    public Scan scan(TextSnapshot text) {
+        return new Scan(text);
+    }
+
+    /**
+     *  Folds the case of a character if the search is case-insensitive, so that
+     *  characters differing only in case are folded to the same character
+     *
+     * @param c     the character
+     * @return      the folded character
+     */
+    private char fold(char c) {
+        if(matchCase)
+            return c;
+
+        // ASCII letters are by far the most common
+        if(c < 128)
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     *  Finds every occurrence of the phrase within part of an array
+     *
+     * @param chars     the array holding the text
+     * @param from      the first index of the part to search
+     * @param to        the index after the part to search; occurrences must end by it
+     * @param delta     added to an index of the array to get the offset in the text
+     * @param matches   the occurrences found so far, added to
+     */
+    private void scanRange(char[] chars, int from, int to, int delta, MatchList matches) {
+        int last        = phrase.length - 1;
+        char lastChar   = phrase[last];
+
+        // Nothing to skip for a single character; a plain scan is faster
+        if(last == 0) {
+            for(int i = from; i < to; i++)
+                if(fold(chars[i]) == lastChar)
+                    matches.add(i + delta, i + delta + 1);
+
+            return;
+        }
+
+        // Kept apart from the case-insensitive loop, so the common case folds nothing
+        if(matchCase) {
+            for(int i = from + last; i < to; ) {
+                char c = chars[i];
+
+                if(c == lastChar) {
+                    int j = last - 1;
+
+                    while(j >= 0 && chars[i - last + j] == phrase[j])
+                        j--;
+
+                    // Occurrences do not overlap
+                    if(j < 0) {
+                        matches.add(i - last + delta, i + 1 + delta);
+                        i += phrase.length;
+                        continue;
+                    }
+                }
+
+                i += shifts[c & (SHIFT_TABLE_SIZE - 1)];
+            }
+        } else {
+            for(int i = from + last; i < to; ) {
+                char c = fold(chars[i]);
+
+                if(c == lastChar) {
+                    int j = last - 1;
+
+                    while(j >= 0 && fold(chars[i - last + j]) == phrase[j])
+                        j--;
+
+                    // Occurrences do not overlap
+                    if(j < 0) {
+                        matches.add(i - last + delta, i + 1 + delta);
+                        i += phrase.length;
+                        continue;
+                    }
+                }
+
+                i += shifts[c & (SHIFT_TABLE_SIZE - 1)];
+            }
+        }
+    }
+
+    /**
+     * A search of a text that goes on from where it stopped each time 'next' is called
+     */
+    public class Scan implements Searcher.Scan {
+        // The last characters before the current run, to find occurrences spanning two runs
+        private final char[] carry;
+
+        // The number of characters carried
+        private int carryLength;
+
+        // Where the next occurrence can start at the earliest, as occurrences do not overlap
+        private int next;
+
+        // The offset in the text of the current run
+        private int offset;
+
+        // Where to go on from in the current run (from its start)
+        private int position;
+
+        // The current run
+        private int run;
+
+        // The text to search
+        private final TextSnapshot text;
+
+        /**
+         *  Creates a search of a text
+         *
+         * @param text  the text to search
+         */
+        private Scan(TextSnapshot text) {
+            this.text = text;
+
+            carry = new char[2 * (phrase.length - 1)];
+        }
+
+        /**
+         *  Returns how much of the text was scanned
+         *
+         * @return  the number of characters scanned
+         */
+        @Override
+        public int getScanned() {
+            return offset + position;
+        }
+
+        /**
+         *  Returns whether the whole text was scanned
+         *
+         * @return  true if done, false if not
+         */
+        @Override
+        public boolean isDone() {
+            return run >= text.getRunCount();
+        }
+
+        /**
+         *  Scans the next part of the text, adding the occurrences found to a list
+         *
+         * @param matches   the list to add the offsets of the occurrences to
+         * @param maxChars  roughly how many characters to scan
+         */
+        @Override
+        public void next(MatchList matches, int maxChars) {
+            int last    = phrase.length - 1;
+            int scanned = 0;
+
+            while(!isDone() && scanned < maxChars) {
+                char[] chars    = text.getRunArray(run);
+                int start       = text.getRunStart(run);
+                int length      = text.getRunLength(run);
+
+                // Occurrences starting in the carried characters and ending in this run
+                if(position == 0 && carryLength > 0) {
+                    int joined = Math.min(length, last);
+
+                    System.arraycopy(chars, start, carry, carryLength, joined);
+                    scanPart(matches, carry, Math.max(0, next - (offset - carryLength)),
+                            carryLength + joined, offset - carryLength);
+                }
+
+                // Occurrences starting in this part of the run
+                int end = (int) Math.min(length, (long) position + maxChars - scanned);
+
+                scanPart(matches, chars, start + Math.max(position, next - offset),
+                        start + Math.min(length, end + last), offset - start);
+
+                scanned     += end - position;
+                position    = end;
+
+                if(position < length)
+                    continue;
+
+                // Carry the last characters seen over to the next run
+                int kept = Math.min(last, carryLength + length);
+
+                if(length >= kept) {
+                    System.arraycopy(chars, start + length - kept, carry, 0, kept);
+                } else {
+                    System.arraycopy(carry, carryLength - (kept - length), carry, 0, kept - length);
+                    System.arraycopy(chars, start, carry, kept - length, length);
+                }
+
+                carryLength = kept;
+                offset      += length;
+                position    = 0;
+                run++;
+            }
+        }
+
+        /**
+         *  Scans part of an array, then records where the next occurrence can start
+         *
+         * @param matches   the list to add the offsets of the occurrences to
+         * @param chars     the array holding the text
+         * @param from      the first index of the part to search
+         * @param to        the index after the part to search; occurrences must end by it
+         * @param delta     added to an index of the array to get the offset in the text
+         */
+        private void scanPart(MatchList matches, char[] chars, int from, int to, int delta) {
+            int count = matches.size();
+
+            scanRange(chars, from, to, delta, matches);
+
+            if(matches.size() > count)
+                next = matches.end();
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package main.data.search;
+
+import java.util.Arrays;
+
+/**
+ * The occurrences of a phrase (or pattern) in a text, in order, with one of them
+ * selected (the one the user is looking at).  The start and end offsets are kept
+ * in growable int arrays, so nothing is boxed: the occurrence nearest a position is
+ * found by a binary search, and the selection moves to the previous or next
+ * occurrence in constant time.
+ *
+ * An edit moves every occurrence after it, which is not done right away: the
+ * occurrences from some position of the list on are stored without the number of
+ * characters they were moved by, which is added as they are read (the way
+ * GapContent stores its marks relative to its gap).  Moving them again only touches
+ * the occurrences between the two edits, so typing in one place costs the same
+ * however many occurrences follow it.
+ *
+ * @author Justin Kocur
+ */
+public class MatchList {
+    // The number of occurrences in the list
+    private int count;
+
+    // The offsets just past the occurrences; only the first 'count' are used
+    private int[] ends;
+
+    // The offsets of the occurrences; only the first 'count' are used
+    private int[] offsets;
+
+    // The position in the list of the selected occurrence; -1 if none
+    private int selected;
+
+    // The number of characters the occurrences from 'shiftFrom' on were moved by, not added yet
+    private int shiftDelta;
+
+    // The position in the list of the first occurrence stored without 'shiftDelta'; at most 'count'
+    private int shiftFrom;
+
+    /**
+     * Creates an empty list
+     */
+    public MatchList() {
+        offsets     = new int[16];
+        ends        = new int[16];
+        selected    = -1;
+    }
+
+    /**
+     *  Returns the offset of an occurrence
+     *
+     * @param i     the position of the occurrence in the list, from 0 up to 'size'
+     * @return      the offset of the occurrence in the text
+     */
+    public int get(int i) {
+        if(i < 0 || i >= count)
+            throw new IndexOutOfBoundsException("Match " + i + " of " + count);
+
+        return offsetAt(i);
+    }
+
+    /**
+     *  Returns the offset just past an occurrence
+     *
+     * @param i     the position of the occurrence in the list, from 0 up to 'size'
+     * @return      the offset in the text of the character after the occurrence
+     */
+    public int getEnd(int i) {
+        if(i < 0 || i >= count)
+            throw new IndexOutOfBoundsException("Match " + i + " of " + count);
+
+        return endAt(i);
+    }
+
+    /**
+     *  Returns the position in the list of the selected occurrence
+     *
+     * @return  the position of the selected occurrence; -1 if none
+     */
+    public int getSelected() {
+        return selected;
+    }
+
+    /**
+     *  Returns the offset of the selected occurrence
+     *
+     * @return  the offset of the selected occurrence; -1 if none
+     */
+    public int getSelectedOffset() {
+        return selected >= 0 ? offsetAt(selected) : -1;
+    }
+
+    /**
+     *  Selects an occurrence
+     *
+     * @param i     the position of the occurrence in the list; -1 for none
+     */
+    public void setSelected(int i) {
+        if(i < -1 || i >= count)
+            throw new IndexOutOfBoundsException("Match " + i + " of " + count);
+
+        selected = i;
+    }
+
+    /**
+     *  Returns whether the list has no occurrences
+     *
+     * @return  true if empty, false if not
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     *  Adds an occurrence after the others
+     *
+     * @param offset    the offset of the occurrence in the text; not before the end of the last one
+     * @param end       the offset just past the occurrence
+     */
+    public void add(int offset, int end) {
+        if(count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * count);
+            ends    = Arrays.copyOf(ends, 2 * count);
+        }
+
+        // The new occurrence comes after 'shiftFrom', so is stored without 'shiftDelta'
+        offsets[count]  = offset - shiftDelta;
+        ends[count++]   = end - shiftDelta;
+    }
+
+    /**
+     *  Adds the occurrences of another list after the others
+     *
+     * @param matches   the occurrences to add; not before the end of the last one
+     */
+    public void addAll(MatchList matches) {
+        replace(count, count, matches);
+    }
+
+    /**
+     * Removes every occurrence, keeping the array for the next search
+     */
+    public void clear() {
+        count       = 0;
+        selected    = -1;
+        shiftDelta  = 0;
+        shiftFrom   = 0;
+    }
+
+    /**
+     *  Returns the position in the list of the first occurrence ending after an offset,
+     *  i.e. the first one containing or following it (e.g. to paint part of the text)
+     *
+     * @param offset    the offset in the text
+     * @return          the position of the occurrence; 'size' if there is none
+     */
+    public int firstEndingAfter(int offset) {
+        int low     = 0;
+        int high    = count;
+
+        // Occurrences do not overlap, so their ends are in order as well
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+
+            if(endAt(mid) <= offset)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     *  Returns the position in the list of the first occurrence at or after an offset
+     *
+     * @param offset    the offset in the text
+     * @return          the position of the occurrence; 'size' if there is none
+     */
+    public int lowerBound(int offset) {
+        return lowerBound(offset, 0);
+    }
+
+    /**
+     *  Returns the position in the list of the first occurrence at or after an offset,
+     *  looking only from a position of the list on
+     *
+     * @param offset    the offset in the text
+     * @param from      the position in the list to look from; the occurrences from it on are in order
+     * @return          the position of the occurrence; 'size' if there is none
+     */
+    public int lowerBound(int offset, int from) {
+        int low     = from;
+        int high    = count;
+
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+
+            if(offsetAt(mid) < offset)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     *  Returns the position in the list of the occurrence nearest an offset (e.g.
+     *  the caret).  An occurrence containing the offset is the nearest one.
+     *
+     * @param offset    the offset in the text
+     * @return          the position of the nearest occurrence; -1 if the list is empty
+     */
+    public int nearest(int offset) {
+        if(count == 0)
+            return -1;
+
+        int next = lowerBound(offset);
+
+        if(next == 0)
+            return 0;
+
+        if(next == count)
+            return count - 1;
+
+        // Negative if the offset is inside the previous occurrence
+        int before  = offset - endAt(next - 1);
+        int after   = offsetAt(next) - offset;
+
+        return before <= after ? next - 1 : next;
+    }
+
+    /**
+     *  Replaces a range of occurrences with others (e.g. the ones found again in
+     *  a part of the text that changed).  If the selected occurrence is replaced,
+     *  none is selected.
+     *
+     * @param from          the position in the list of the first occurrence to replace
+     * @param to            the position after the last occurrence to replace
+     * @param replacement   the occurrences to put in their place
+     */
+    public void replace(int from, int to, MatchList replacement) {
+        int added   = replacement.count - (to - from);
+        int needed  = count + added;
+
+        // The occurrences before 'to' are stored as they are, the ones after it without 'shiftDelta'
+        moveShift(to);
+        replacement.moveShift(replacement.count);
+
+        if(needed > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(needed, 2 * offsets.length));
+            ends    = Arrays.copyOf(ends, offsets.length);
+        }
+
+        System.arraycopy(offsets, to, offsets, to + added, count - to);
+        System.arraycopy(ends, to, ends, to + added, count - to);
+        System.arraycopy(replacement.offsets, 0, offsets, from, replacement.count);
+        System.arraycopy(replacement.ends, 0, ends, from, replacement.count);
+        count       = needed;
+        shiftFrom   = to + added;
+
+        if(selected >= to)
+            selected += added;
+        else if(selected >= from)
+            selected = -1;
+    }
+
+    /**
+     *  Selects the occurrence after the selected one, if there is one
+     *
+     * @return  true if the selection moved, false if the last occurrence is selected
+     */
+    public boolean selectNext() {
+        if(selected + 1 >= count)
+            return false;
+
+        selected++;
+        return true;
+    }
+
+    /**
+     *  Selects the occurrence before the selected one, if there is one
+     *
+     * @return  true if the selection moved, false if the first occurrence is selected
+     */
+    public boolean selectPrevious() {
+        if(selected <= 0)
+            return false;
+
+        selected--;
+        return true;
+    }
+
+    /**
+     *  Moves the occurrences from a position of the list on, e.g. after text was
+     *  added or removed before them.  Only the occurrences between this position
+     *  and the one the occurrences were last moved from are touched.
+     *
+     * @param from      the position in the list of the first occurrence to move
+     * @param delta     the number of characters to move them by
+     */
+    public void shift(int from, int delta) {
+        if(delta == 0)
+            return;
+
+        moveShift(from);
+        shiftDelta += delta;
+    }
+
+    /**
+     *  Returns the number of occurrences in the list
+     *
+     * @return  the number of occurrences
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     *  Returns the start offsets of the occurrences
+     *
+     * @return  a copy of the offsets, in order
+     */
+    public int[] toArray() {
+        int[] array = Arrays.copyOf(offsets, count);
+
+        for(int i = shiftFrom; i < count; i++)
+            array[i] += shiftDelta;
+
+        return array;
+    }
+
+    /**
+     *  Returns where the next occurrence can start at the earliest, as occurrences
+     *  do not overlap
+     *
+     * @return  the offset just past the last occurrence; 0 if none
+     */
+    int end() {
+        return count > 0 ? endAt(count - 1) : 0;
+    }
+
+    /**
+     *  Returns the offset just past an occurrence, adding what it was moved by
+     *
+     * @param i     the position of the occurrence in the list
+     * @return      the offset in the text of the character after the occurrence
+     */
+    private int endAt(int i) {
+        return i >= shiftFrom ? ends[i] + shiftDelta : ends[i];
+    }
+
+    /**
+     *  Stores the occurrences before a position of the list as they are, and the
+     *  ones from it on without 'shiftDelta'
+     *
+     * @param index     the position in the list; at most 'count'
+     */
+    private void moveShift(int index) {
+        if(shiftDelta != 0) {
+            for(int i = shiftFrom; i < index; i++) {
+                offsets[i]  += shiftDelta;
+                ends[i]     += shiftDelta;
+            }
+
+            for(int i = index; i < shiftFrom; i++) {
+                offsets[i]  -= shiftDelta;
+                ends[i]     -= shiftDelta;
+            }
+        }
+
+        shiftFrom = index;
+    }
+
+    /**
+     *  Returns the offset of an occurrence, adding what it was moved by
+     *
+     * @param i     the position of the occurrence in the list
+     * @return      the offset of the occurrence in the text
+     */
+    private int offsetAt(int i) {
+        return i >= shiftFrom ? offsets[i] + shiftDelta : offsets[i];
+    }
+}
@@ -0,0 +1,179 @@
+package main.data.search;
+
+import main.data.document.TextSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Searches several texts at once (e.g. the text of every open tab), each on a
+ * thread of a ForkJoinPool, so that searching them all takes about as long as
+ * searching the longest one rather than all of them one after the other.
+ *
+ * The texts are handed to the pool from the longest to the shortest: the longest
+ * ones start first, and the short ones fill in the threads that are left, rather
+ * than a long text starting last and keeping the search running after the others
+ * are done.  The results of each text are reported as soon as it was searched.
+ *
+ * @author Justin Kocur
+ */
+public class ParallelSearch {
+    // The number of characters of a text searched between checks whether the search was cancelled
+    private static final int CANCEL_CHECK_SIZE = 1_024 * 1_024;
+
+    // The maximum number of occurrences in a text described by a result (the others are only counted)
+    public static final int MAX_RESULTS = 1_000;
+
+    // The threads searching the texts, shared by all searches; its threads are daemons
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // True once the search was cancelled; the texts not yet searched are skipped
+    private volatile boolean cancelled;
+
+    // Told about the results of each text
+    private final Listener listener;
+
+    // Finds the occurrences in each text
+    private final Searcher searcher;
+
+    /**
+     *  Creates a search of several texts
+     *
+     * @param searcher  finds the occurrences in each text; used by several threads at once
+     * @param listener  told about the results of each text, on the thread that searched it
+     */
+    public ParallelSearch(Searcher searcher, Listener listener) {
+        this.searcher   = searcher;
+        this.listener   = listener;
+    }
+
+    /**
+     *  Returns the pool the texts are searched on, e.g. to search files on it as well
+     *
+     * @return  the pool of threads searching the texts
+     */
+    public static ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     *  Returns whether the search was cancelled
+     *
+     * @return  true if cancelled, false if not
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the search: texts being searched stop soon after, and the others are skipped
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     *  Searches every text, waiting until all of them were searched (or the search
+     *  was cancelled)
+     *
+     * @param texts     the texts to search
+     * @throws RuntimeException     thrown by the searcher for any of the texts (e.g.
+     *                              RegexSearcher.BudgetExceededException); the others
+     *                              are still searched
+     */
+    public void search(List<TextSnapshot> texts) {
+        Integer[] order = new Integer[texts.size()];
+
+        for(int i = 0; i < order.length; i++)
+            order[i] = i;
+
+        // Longest first
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(texts.get(b).getLength(), texts.get(a).getLength());
+            }
+        });
+
+        List<ForkJoinTask<Void>> tasks = new ArrayList<>(order.length);
+
+        // Submitted from outside the pool, so the tasks are taken up in the order given
+        for(int index : order)
+            tasks.add(pool.submit(new TextSearch(index, texts.get(index))));
+
+        RuntimeException failure = null;
+
+        for(ForkJoinTask<Void> task : tasks) {
+            try {
+                task.join();
+            } catch(RuntimeException ex) {
+                failure = ex;
+            }
+        }
+
+        if(failure != null)
+            throw failure;
+    }
+
+    /**
+     * Told about the results of each text searched
+     */
+    public interface Listener {
+        /**
+         *  Called once a text was searched (not if the search was cancelled first)
+         *
+         * @param index     the position of the text in the list searched
+         * @param count     the number of occurrences in the text
+         * @param results   the first occurrences (up to 'MAX_RESULTS'), in order
+         */
+        void found(int index, int count, List<SearchResult> results);
+    }
+
+    /**
+     * The search of one of the texts
+     */
+    private class TextSearch extends RecursiveAction {
+        // The position of the text in the list searched
+        private final int index;
+
+        // The text to search
+        private final TextSnapshot text;
+
+        /**
+         *  Creates the search of a text
+         *
+         * @param index     the position of the text in the list searched
+         * @param text      the text to search
+         */
+        private TextSearch(int index, TextSnapshot text) {
+            this.index  = index;
+            this.text   = text;
+        }
+
+        /**
+         * Searches the text, then tells the listener what was found
+         */
+        @Override
+        protected void compute() {
+            MatchList matches   = new MatchList();
+            Searcher.Scan scan  = searcher.scan(text);
+
+            while(!scan.isDone()) {
+                if(cancelled)
+                    return;
+
+                scan.next(matches, CANCEL_CHECK_SIZE);
+            }
+
+            List<SearchResult> results = SearchResult.describe(text, matches, MAX_RESULTS);
+
+            if(!cancelled)
+                listener.found(index, matches.size(), results);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package main.data.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Keeps the regular expressions searched for most recently compiled, so that
+ * searching (or replacing) the same expression again, e.g. on each key typed or
+ * each click, does not compile it again.  The cache is bounded: once full, the
+ * expression used least recently is dropped.
+ *
+ * The patterns are compiled in multiline mode, so '^' and '$' match at the start
+ * and end of each line of the text rather than only of the whole text.
+ *
+ * @author Justin Kocur
+ */
+public class PatternCache {
+    // The maximum number of patterns kept
+    private static final int MAX_PATTERNS = 32;
+
+    // The patterns by expression (and case sensitivity), from the least to the most recently used
+    private static final LinkedHashMap<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > MAX_PATTERNS;
+        }
+    };
+
+    /**
+     *  Returns the compiled pattern of a regular expression, compiling it only if
+     *  it is not in the cache
+     *
+     * @param regex         the regular expression
+     * @param matchCase     true if case sensitive, false if not
+     * @return              the compiled pattern
+     * @throws PatternSyntaxException   if the expression is not valid
+     */
+    public static synchronized Pattern compile(String regex, boolean matchCase) {
+        String key      = (matchCase ? 'c' : 'i') + regex;
+        Pattern pattern = patterns.get(key);
+
+        if(pattern == null) {
+            int flags = Pattern.MULTILINE;
+
+            if(!matchCase)
+                flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+            pattern = Pattern.compile(regex, flags);
+            patterns.put(key, pattern);
+        }
+
+        return pattern;
+    }
+}
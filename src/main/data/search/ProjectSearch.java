@@ -0,0 +1,339 @@
+package main.data.search;
+
+import main.data.document.TextSnapshot;
+import main.data.io.MappedFileReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches every text file under a directory (e.g. the root of the FileTree),
+ * without opening them in tabs.  The directory is walked on the calling thread,
+ * and each file is handed to the pool of ParallelSearch as soon as it is found,
+ * so that the files are searched on every core while the walk goes on.
+ *
+ * A file is skipped if it looks binary: its first bytes hold a NUL character,
+ * which text files do not.  Otherwise it is mapped into memory and decoded
+ * straight into a char array (see MappedFileReader), which is searched in place;
+ * no Strings are made of its text.  Line breaks are normalized as the file is
+ * read, as they are when it is opened, so the offsets found are the offsets of
+ * the occurrences once the file is opened in a tab.
+ *
+ * Hidden directories (e.g. '.git') are not walked into.  If the directory is
+ * indexed (see TrigramIndex), only the files the index narrows the search down to
+ * are searched, with 'search(List)'.
+ *
+ * @author Justin Kocur
+ */
+public class ProjectSearch {
+    // The largest file searched (bytes); larger files are skipped, as several are read at once
+    public static final long MAX_FILE_SIZE = MappedFileReader.CHUNK_SIZE;
+
+    // The size (bytes) above which a file is looked at before it is read, to skip it if binary
+    private static final int SNIFF_LIMIT = 64 * 1_024;
+
+    // The number of bytes at the start of a file looked at to tell whether it is binary
+    private static final int SNIFF_SIZE = 8 * 1_024;
+
+    // Decodes the files searched on each thread; a reader reuses its decoder for every file
+    private static final ThreadLocal<MappedFileReader> readers = new ThreadLocal<MappedFileReader>() {
+        @Override
+        protected MappedFileReader initialValue() {
+            return new MappedFileReader();
+        }
+    };
+
+    // True once the search was cancelled; the walk stops, and the files not yet searched are skipped
+    private volatile boolean cancelled;
+
+    // Told about the results of each file
+    private final Listener listener;
+
+    // The number of files searched
+    private final AtomicInteger searched;
+
+    // Finds the occurrences in each file
+    private final Searcher searcher;
+
+    // The number of files skipped: binary, too large, unreadable or taking too long to match
+    private final AtomicInteger skipped;
+
+    /**
+     *  Creates a search of the files under a directory
+     *
+     * @param searcher  finds the occurrences in each file; used by several threads at once
+     * @param listener  told about the results of each file, on the thread that searched it
+     */
+    public ProjectSearch(Searcher searcher, Listener listener) {
+        this.searcher   = searcher;
+        this.listener   = listener;
+
+        searched    = new AtomicInteger();
+        skipped     = new AtomicInteger();
+    }
+
+    /**
+     *  Returns the number of files searched so far
+     *
+     * @return  the number of files searched
+     */
+    public int getSearched() {
+        return searched.get();
+    }
+
+    /**
+     *  Returns the number of files skipped so far (binary, too large, unreadable
+     *  or taking too long to match)
+     *
+     * @return  the number of files skipped
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     *  Returns whether the search was cancelled
+     *
+     * @return  true if cancelled, false if not
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the search: the walk stops, and the files not yet searched are skipped
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     *  Searches every file under a directory, waiting until all of them were
+     *  searched (or the search was cancelled)
+     *
+     * @param root          the directory to search
+     * @throws IOException  if the directory cannot be walked (a file or directory
+     *                      that cannot be read is only skipped)
+     */
+    public void search(Path root) throws IOException {
+        List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if(cancelled)
+                    return FileVisitResult.TERMINATE;
+
+                return !dir.equals(root) && isHidden(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if(cancelled)
+                    return FileVisitResult.TERMINATE;
+
+                if(attrs.isRegularFile())
+                    submit(file, attrs.size(), tasks);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                skipped.incrementAndGet();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        for(ForkJoinTask<Void> task : tasks)
+            task.join();
+    }
+
+    /**
+     *  Searches some of the files under a directory (e.g. the ones an index narrowed
+     *  the search down to), waiting until all of them were searched (or the search
+     *  was cancelled)
+     *
+     * @param files     the files to search
+     */
+    public void search(List<Path> files) {
+        List<ForkJoinTask<Void>> tasks = new ArrayList<>(files.size());
+
+        for(Path file : files) {
+            if(cancelled)
+                break;
+
+            try {
+                submit(file, Files.size(file), tasks);
+            } catch(IOException ex) {
+                skipped.incrementAndGet();
+            }
+        }
+
+        for(ForkJoinTask<Void> task : tasks)
+            task.join();
+    }
+
+    /**
+     *  Returns whether a file or directory is hidden, and so not searched (e.g. '.git')
+     *
+     * @param file  the file or directory
+     * @return      true if hidden, false if not
+     */
+    public static boolean isHidden(Path file) {
+        return file.getFileName() != null && file.getFileName().toString().startsWith(".");
+    }
+
+    /**
+     *  Reads the text of a file to search it, unless it looks binary.  The file is
+     *  mapped and decoded on the calling thread, with a reader kept for the thread.
+     *  Only a large file is looked at before it is read, as opening a small file a
+     *  second time costs more than decoding it.
+     *
+     * @param file          the file
+     * @return              a buffer whose backing array holds the text, from 0 up to its
+     *                      limit; null if the file looks binary
+     * @throws IOException  if the file cannot be read
+     */
+    public static CharBuffer readText(Path file) throws IOException {
+        if(Files.size(file) > SNIFF_LIMIT && isBinary(file))
+            return null;
+
+        CharBuffer text = readers.get().read(file.toFile());
+        char[] chars    = text.array();
+
+        // A NUL byte is decoded to a NUL character
+        for(int i = 0; i < Math.min(text.limit(), SNIFF_SIZE); i++)
+            if(chars[i] == 0)
+                return null;
+
+        return text;
+    }
+
+    /**
+     *  Returns whether a file looks binary: its first bytes hold a NUL character
+     *
+     * @param file          the file
+     * @return              true if binary, false if it looks like text
+     * @throws IOException  if the file cannot be read
+     */
+    private static boolean isBinary(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(SNIFF_SIZE);
+
+            while(start.hasRemaining() && channel.read(start) > 0);
+
+            for(int i = 0; i < start.position(); i++)
+                if(start.get(i) == 0)
+                    return true;
+
+            return false;
+        }
+    }
+
+    /**
+     *  Hands a file to the pool to be searched, unless it is too large
+     *
+     * @param file      the file
+     * @param size      the size of the file (bytes)
+     * @param tasks     the searches of the files handed to the pool so far, added to
+     */
+    private void submit(Path file, long size, List<ForkJoinTask<Void>> tasks) {
+        if(size > MAX_FILE_SIZE) {
+            skipped.incrementAndGet();
+            return;
+        }
+
+        tasks.add(ParallelSearch.getPool().submit(new FileSearch(tasks.size(), file)));
+    }
+
+    /**
+     * Told about the results of each file searched
+     */
+    public interface Listener {
+        /**
+         *  Called once a file holding the phrase was searched (not if the search was
+         *  cancelled first)
+         *
+         * @param index     the position of the file among the files searched
+         * @param file      the file
+         * @param count     the number of occurrences in the file
+         * @param results   the first occurrences (up to 'ParallelSearch.MAX_RESULTS'), in order
+         */
+        void found(int index, Path file, int count, List<SearchResult> results);
+    }
+
+    /**
+     * The search of one of the files
+     */
+    private class FileSearch extends RecursiveAction {
+        // The file to search
+        private final Path file;
+
+        // The position of the file among the files searched
+        private final int index;
+
+        /**
+         *  Creates the search of a file
+         *
+         * @param index     the position of the file among the files searched
+         * @param file      the file to search
+         */
+        private FileSearch(int index, Path file) {
+            this.index  = index;
+            this.file   = file;
+        }
+
+        /**
+         * Reads and searches the file, then tells the listener what was found
+         */
+        @Override
+        protected void compute() {
+            if(cancelled)
+                return;
+
+            MatchList matches = new MatchList();
+            TextSnapshot text;
+
+            try {
+                CharBuffer chars = readText(file);
+
+                if(chars == null) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+
+                text = new TextSnapshot(chars.array(), chars.limit());
+
+                Searcher.Scan scan = searcher.scan(text);
+
+                // The files are small enough to search whole before checking whether the search was cancelled
+                while(!scan.isDone())
+                    scan.next(matches, Integer.MAX_VALUE);
+            } catch(IOException | RegexSearcher.BudgetExceededException ex) {
+                skipped.incrementAndGet();
+                return;
+            }
+
+            searched.incrementAndGet();
+
+            if(matches.isEmpty() || cancelled)
+                return;
+
+            listener.found(index, file, matches.size(), SearchResult.describe(text, matches, ParallelSearch.MAX_RESULTS));
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package main.data.search;
+
+import main.data.document.SnapshotCharSequence;
+import main.data.document.TextSnapshot;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds every occurrence of a regular expression in a text.  The text is matched
+ * in place through a SnapshotCharSequence, without copying it into a String.
+ *
+ * A badly written expression can take exponentially long to match (e.g. '(a+)+b'
+ * against a long line of a's), so finding the next occurrence has a time budget:
+ * the characters read by the matcher are counted, and every so often the time is
+ * checked, stopping the match with a 'BudgetExceededException' once the budget is
+ * spent.  The budget is for making progress rather than for the whole match, so it
+ * starts over whenever the matcher reads further into the text than before: a long
+ * text with no occurrences is scanned however long it takes, but a matcher going
+ * back over the same characters again and again is stopped.  Interrupting the thread
+ * searching stops it the same way, with a 'CancellationException'.
+ *
+ * Occurrences of no characters (e.g. of 'a*' between two b's) are skipped, as there
+ * is nothing to show of them.
+ *
+ * @author Justin Kocur
+ */
+public class RegexSearcher implements Searcher {
+    /** The time (in milliseconds) the matcher may take without progress by default */
+    public static final long DEFAULT_TIME_BUDGET = 2_000;
+
+    // The number of characters read by the matcher between checks of the time
+    private static final int CHECK_INTERVAL = 4_096;
+
+    // The pattern to find
+    private final Pattern pattern;
+
+    // The time (in milliseconds) the matcher may take without progress
+    private final long timeBudget;
+
+    /**
+     *  Creates a searcher for a pattern, with the default time budget
+     *
+     * @param pattern   the pattern to find (see 'PatternCache')
+     */
+    public RegexSearcher(Pattern pattern) {
+        this(pattern, DEFAULT_TIME_BUDGET);
+    }
+
+    /**
+     *  Creates a searcher for a pattern
+     *
+     * @param pattern       the pattern to find (see 'PatternCache')
+     * @param timeBudget    the time (in milliseconds) the matcher may take without progress
+     */
+    public RegexSearcher(Pattern pattern, long timeBudget) {
+        this.pattern    = pattern;
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     *  Returns the pattern to find
+     *
+     * @return  the pattern to find
+     */
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     *  Returns whether the search is case sensitive
+     *
+     * @return  true if case sensitive, false if not
+     */
+    @Override
+    public boolean isMatchCase() {
+        return (pattern.flags() & Pattern.CASE_INSENSITIVE) == 0;
+    }
+
+    /**
+     *  Finds every occurrence of the pattern in a text, along with what each one is
+     *  to be replaced with (e.g. to replace them all, see 'Replacer')
+     *
+     * @param text          the text to search
+     * @param replacement   the replacement (see 'Matcher.appendReplacement'), e.g. '$1' for the first group
+     * @param matches       the list to add the occurrences to
+     * @param replacements  the list to add the replacement of each occurrence to
+     * @throws BudgetExceededException  if the matcher went on for longer than the time budget without progress
+     * @throws IllegalArgumentException if the replacement refers to a group the pattern does not have
+     */
+    public void findAll(TextSnapshot text, String replacement, MatchList matches, List<String> replacements) {
+        Watchdog watched        = new Watchdog(new SnapshotCharSequence(text));
+        Matcher matcher         = pattern.matcher(watched);
+        StringBuilder expanded  = new StringBuilder();
+        int previousEnd         = 0;
+
+        watched.restart();
+
+        while(matcher.find()) {
+            /* The text since the last occurrence is appended along with the replacement,
+               and dropped again, as the matcher cannot expand a replacement on its own */
+            expanded.setLength(0);
+            matcher.appendReplacement(expanded, replacement);
+
+            if(matcher.end() > matcher.start()) {
+                matches.add(matcher.start(), matcher.end());
+                replacements.add(expanded.substring(matcher.start() - previousEnd));
+            }
+
+            previousEnd = matcher.end();
+            watched.restart();
+        }
+    }
+
+    /**
+     *  Starts a search of a text that is done a part at a time
+     *
+     * @param text  the text to search
+     * @return      the search, which has not scanned anything yet
+     */
+    @Override
+    public Scan scan(TextSnapshot text) {
+        return new Scan(text);
+    }
+
+    /**
+     * Thrown when the matcher goes on for longer than the time budget without progress
+     *
+     * @author Justin Kocur
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        /**
+         *  Creates the exception
+         *
+         * @param timeBudget    the time budget (in milliseconds) that was spent
+         */
+        public BudgetExceededException(long timeBudget) {
+            super("The pattern went on for longer than " + timeBudget + " ms without finding anything");
+        }
+    }
+
+    /**
+     * A search of a text that goes on from where it stopped each time 'next' is called
+     */
+    public class Scan implements Searcher.Scan {
+        // True once no more occurrences are found
+        private boolean done;
+
+        // Finds the occurrences
+        private final Matcher matcher;
+
+        // The number of characters scanned
+        private int scanned;
+
+        // The text being matched, read through the time check
+        private final Watchdog text;
+
+        /**
+         *  Creates a search of a text
+         *
+         * @param text  the text to search
+         */
+        private Scan(TextSnapshot text) {
+            this.text   = new Watchdog(new SnapshotCharSequence(text));
+            matcher     = pattern.matcher(this.text);
+        }
+
+        /**
+         *  Returns how much of the text was scanned
+         *
+         * @return  the number of characters scanned
+         */
+        @Override
+        public int getScanned() {
+            return scanned;
+        }
+
+        /**
+         *  Returns whether the whole text was scanned
+         *
+         * @return  true if done, false if not
+         */
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         *  Scans the next part of the text, adding the occurrences found to a list.  An
+         *  occurrence is found in one go, so a long stretch without any is scanned at once.
+         *
+         * @param matches   the list to add the occurrences to
+         * @param maxChars  roughly how many characters to scan
+         * @throws BudgetExceededException  if the matcher went on for longer than the time budget without progress
+         */
+        @Override
+        public void next(MatchList matches, int maxChars) {
+            long stop = (long) scanned + maxChars;
+
+            while(!done && scanned < stop) {
+                text.restart();
+
+                if(!matcher.find()) {
+                    done    = true;
+                    scanned = text.length();
+                    return;
+                }
+
+                if(matcher.end() > matcher.start())
+                    matches.add(matcher.start(), matcher.end());
+
+                scanned = matcher.end();
+            }
+        }
+    }
+
+    /**
+     * Reads a text for a matcher, checking every so often whether the time budget was
+     * spent or the thread was interrupted
+     */
+    private class Watchdog implements CharSequence {
+        // The time (from 'System.nanoTime') at which the matcher runs out of time
+        private long deadline;
+
+        // The furthest index read, and the furthest one when the time was last checked
+        private int furthest, lastFurthest;
+
+        // The number of characters read since the time was last checked
+        private int reads;
+
+        // The text being read
+        private final CharSequence text;
+
+        /**
+         *  Creates a watchdog over a text
+         *
+         * @param text  the text to read
+         */
+        private Watchdog(CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if(index > furthest)
+                furthest = index;
+
+            if(++reads >= CHECK_INTERVAL) {
+                reads = 0;
+
+                if(Thread.currentThread().isInterrupted())
+                    throw new CancellationException("The search was cancelled");
+
+                // Progress was made
+                if(furthest > lastFurthest) {
+                    lastFurthest = furthest;
+                    restart();
+                } else if(System.nanoTime() - deadline > 0) {
+                    throw new BudgetExceededException(timeBudget);
+                }
+            }
+
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        /**
+         * Gives the matcher the whole time budget again
+         */
+        public void restart() {
+            deadline = System.nanoTime() + timeBudget * 1_000_000;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
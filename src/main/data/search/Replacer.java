@@ -0,0 +1,247 @@
+package main.data.search;
+
+import main.data.document.PieceTableDocument;
+import main.data.document.TextSnapshot;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.undo.CompoundEdit;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Replaces every occurrence of a phrase (or pattern) in a document.  Rather than
+ * building the whole new text and setting it, the occurrences are found by a
+ * Searcher, and only the parts of the text holding them are replaced (see
+ * 'PieceTableDocument.replaceText'), so the elements and views of the rest of the
+ * text, and the highlights, are kept.  All the replacements are combined into one
+ * edit, so they are undone in a single step.
+ *
+ * Occurrences close together (e.g. one on every line) are replaced along with the
+ * text between them, as one change: each change is sent to the document listeners
+ * (the views, the line and bracket indexes, ...) as its own pair of events, which
+ * costs far more than the few characters kept in between.  Replacing 50k
+ * occurrences, one per line, then sends two events rather than 100k.
+ *
+ * Finding the occurrences (see 'find') can be done off the EDT, on a snapshot of
+ * the text, and stopped by interrupting the thread; only replacing them (see
+ * 'replace') must be done on the EDT.
+ *
+ * The occurrences are replaced from the first to the last, keeping track of how
+ * far the text after the last replacement moved.  Splitting the piece holding the
+ * rest of the text then only adds pieces at the end of the piece list, whereas
+ * going from the last to the first would insert each new piece before all the
+ * ones added so far.
+ *
+ * @author Justin Kocur
+ */
+public class Replacer {
+    // Occurrences at most this many characters apart are replaced as one change
+    private static final int MERGE_GAP = 1_024;
+
+    // The number of characters scanned for a phrase between checks for an interrupt
+    private static final int SCAN_BATCH_SIZE = 1_024 * 1_024;
+
+    // The pattern to find; null if a phrase is replaced as typed
+    private final RegexSearcher regexSearcher;
+
+    // The text to put in place of each occurrence (or the replacement pattern, e.g. '$1')
+    private final String replacement;
+
+    // Finds the occurrences of the phrase
+    private final Searcher searcher;
+
+    /**
+     *  Creates a replacer of the occurrences of a phrase
+     *
+     * @param phrase        the phrase to find; not empty
+     * @param matchCase     true if case sensitive, false if not
+     * @param replacement   the text to put in place of each occurrence
+     */
+    public Replacer(String phrase, boolean matchCase, String replacement) {
+        this.replacement    = replacement;
+
+        searcher        = new LiteralSearcher(phrase, matchCase);
+        regexSearcher   = null;
+    }
+
+    /**
+     *  Creates a replacer of the occurrences of a pattern
+     *
+     * @param searcher      the pattern to find
+     * @param replacement   the replacement (see 'Matcher.appendReplacement'), e.g. '$1' for the first group
+     */
+    public Replacer(RegexSearcher searcher, String replacement) {
+        this.replacement    = replacement;
+        this.searcher       = searcher;
+
+        regexSearcher = searcher;
+    }
+
+    /**
+     *  Finds every occurrence in a text, along with what each one is to be replaced
+     *  with; may be called from any thread
+     *
+     * @param text  the snapshot of the text to search
+     * @return      the occurrences found, to be replaced by 'replace'
+     * @throws RegexSearcher.BudgetExceededException    if matching the pattern took too long
+     * @throws IllegalArgumentException                 if the replacement refers to a group the pattern does not have
+     * @throws CancellationException                    if the thread was interrupted
+     */
+    public Replacements find(TextSnapshot text) {
+        Replacements found = new Replacements(text.getVersion());
+
+        if(regexSearcher != null) {
+            found.replacements = new ArrayList<>();
+            regexSearcher.findAll(text, replacement, found.matches, found.replacements);
+        } else {
+            Searcher.Scan scan = searcher.scan(text);
+
+            while(!scan.isDone()) {
+                if(Thread.currentThread().isInterrupted())
+                    throw new CancellationException("The replace was cancelled");
+
+                scan.next(found.matches, SCAN_BATCH_SIZE);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     *  Replaces the occurrences found in a document, as a single undoable edit sent
+     *  to the document's undoable edit listeners.  The document must not have changed
+     *  since they were found.
+     *
+     * @param document  the document to replace the occurrences in
+     * @param found     the occurrences found in the document's text (see 'find')
+     * @return          the number of occurrences replaced
+     */
+    public int replace(PieceTableDocument document, Replacements found) {
+        MatchList matches       = found.matches;
+        CompoundEdit edit       = new CompoundEdit();
+        StringBuilder newText   = new StringBuilder();
+        Segment text            = new Segment();
+        int moved               = 0;
+
+        for(int first = 0; first < matches.size(); ) {
+            // The occurrences replaced together, each close to the one before
+            int last = first;
+
+            while(last + 1 < matches.size() && matches.get(last + 1) - matches.getEnd(last) <= MERGE_GAP)
+                last++;
+
+            int start   = matches.get(first);
+            int length  = matches.getEnd(last) - start;
+
+            try {
+                document.getText(start + moved, length, text);
+            } catch(BadLocationException ex) {
+                System.err.println(ex.getMessage());
+                break;
+            }
+
+            // The text between the occurrences is kept
+            newText.setLength(0);
+
+            for(int i = first; i <= last; i++) {
+                if(i > first)
+                    newText.append(text.array, text.offset + matches.getEnd(i - 1) - start,
+                            matches.get(i) - matches.getEnd(i - 1));
+
+                newText.append(found.replacements != null ? found.replacements.get(i) : replacement);
+            }
+
+            edit.addEdit(document.replaceText(start + moved, length, newText.toString()));
+            moved += newText.length() - length;
+            first = last + 1;
+        }
+
+        edit.end();
+
+        if(!matches.isEmpty())
+            document.postEdit(edit);
+
+        return matches.size();
+    }
+
+    /**
+     *  Replaces every occurrence in a document, as a single undoable edit sent to
+     *  the document's undoable edit listeners
+     *
+     * @param document  the document to replace the occurrences in
+     * @return          the number of occurrences replaced
+     * @throws RegexSearcher.BudgetExceededException    if matching the pattern took too long (nothing is replaced)
+     * @throws IllegalArgumentException                 if the replacement refers to a group the pattern does not have
+     */
+    public int replaceAll(PieceTableDocument document) {
+        return replace(document, find(document.snapshot()));
+    }
+
+    /**
+     * The occurrences found in a text, and what each one is to be replaced with
+     *
+     * @author Justin Kocur
+     */
+    public class Replacements {
+        // The occurrences found
+        private final MatchList matches;
+
+        // The replacement of each occurrence; null if all are replaced by the same text
+        private ArrayList<String> replacements;
+
+        // The version of the text searched
+        private final long version;
+
+        /**
+         *  Creates an empty list of occurrences
+         *
+         * @param version   the version of the text searched
+         */
+        private Replacements(long version) {
+            this.version = version;
+
+            matches = new MatchList();
+        }
+
+        /**
+         *  Returns the number of occurrences found
+         *
+         * @return  the number of occurrences
+         */
+        public int getCount() {
+            return matches.size();
+        }
+
+        /**
+         *  Returns the version of the text searched, to check it did not change since
+         *
+         * @return  the version of the text (see 'TextSnapshot.getVersion')
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         *  Returns where an offset of the text searched is once the occurrences are
+         *  replaced (e.g. to put the caret back).  An offset within an occurrence
+         *  moves to the start of its replacement.
+         *
+         * @param offset    the offset in the text searched
+         * @return          the offset in the text once the occurrences are replaced
+         */
+        public int mapOffset(int offset) {
+            int moved = 0;
+
+            for(int i = 0; i < matches.size() && matches.get(i) < offset; i++) {
+                if(matches.getEnd(i) > offset)
+                    return matches.get(i) + moved;
+
+                String newText  = replacements != null ? replacements.get(i) : replacement;
+                moved           += newText.length() - (matches.getEnd(i) - matches.get(i));
+            }
+
+            return offset + moved;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package main.data.search;
+
+import main.data.document.SnapshotCharSequence;
+import main.data.document.TextSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One occurrence found by a search of several texts (e.g. of every open tab), with
+ * the line it is on and a preview of that line, so that it can be listed apart
+ * from the text it was found in.
+ *
+ * @author Justin Kocur
+ */
+public class SearchResult {
+    // The maximum number of characters of a line shown before the occurrence
+    private static final int PREVIEW_CONTEXT = 40;
+
+    // The maximum number of characters of a line shown
+    private static final int PREVIEW_LENGTH = 120;
+
+    // The offset of the occurrence in its line
+    private final int column;
+
+    // The offset in the text just past the occurrence
+    private final int end;
+
+    // The line of the text the occurrence starts on (from 0)
+    private final int line;
+
+    // The offset of the occurrence in the text
+    private final int offset;
+
+    // The part of the line around the occurrence
+    private final String preview;
+
+    /**
+     *  Creates a result
+     *
+     * @param offset    the offset of the occurrence in the text
+     * @param end       the offset in the text just past the occurrence
+     * @param line      the line the occurrence starts on (from 0)
+     * @param column    the offset of the occurrence in its line
+     * @param preview   the part of the line around the occurrence
+     */
+    public SearchResult(int offset, int end, int line, int column, String preview) {
+        this.offset     = offset;
+        this.end        = end;
+        this.line       = line;
+        this.column     = column;
+        this.preview    = preview;
+    }
+
+    /**
+     *  Returns the offset of the occurrence in the line it starts on
+     *
+     * @return  the column of the occurrence, from 0
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     *  Returns the offset in the text just past the occurrence
+     *
+     * @return  the end offset of the occurrence
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     *  Returns the line the occurrence starts on
+     *
+     * @return  the line, from 0
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     *  Returns the offset of the occurrence in the text
+     *
+     * @return  the offset of the occurrence
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     *  Returns the part of the line around the occurrence
+     *
+     * @return  the preview of the line
+     */
+    public String getPreview() {
+        return preview;
+    }
+
+    /**
+     *  Describes the first occurrences of a list by the line each is on, reading the
+     *  text once from its start up to the last occurrence described
+     *
+     * @param text      the text the occurrences were found in
+     * @param matches   the occurrences, in order
+     * @param max       the maximum number of occurrences to describe
+     * @return          the results, in order
+     */
+    public static List<SearchResult> describe(TextSnapshot text, MatchList matches, int max) {
+        SnapshotCharSequence chars  = new SnapshotCharSequence(text);
+        int count                   = Math.min(matches.size(), max);
+        List<SearchResult> results  = new ArrayList<>(count);
+        int line                    = 0;
+        int lineStart               = 0;
+        int position                = 0;
+
+        for(int i = 0; i < count; i++) {
+            int offset = matches.get(i);
+
+            // Several occurrences on one line share its number
+            for(; position < offset; position++) {
+                if(chars.charAt(position) == '\n') {
+                    line++;
+                    lineStart = position + 1;
+                }
+            }
+
+            int from    = Math.max(lineStart, offset - PREVIEW_CONTEXT);
+            int to      = from;
+
+            while(to < chars.length() && to - from < PREVIEW_LENGTH && chars.charAt(to) != '\n')
+                to++;
+
+            String preview = chars.subSequence(from, to).toString().replace('\t', ' ').trim();
+
+            results.add(new SearchResult(offset, matches.getEnd(i), line, offset - lineStart, preview));
+        }
+
+        return results;
+    }
+
+    /**
+     *  Returns the result as shown in a list: its line (from 1) and the preview
+     *
+     * @return  the line and the preview of the line
+     */
+    @Override
+    public String toString() {
+        return (line + 1) + ": " + preview;
+    }
+}
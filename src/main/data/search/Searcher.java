@@ -0,0 +1,54 @@
+package main.data.search;
+
+import main.data.document.TextSnapshot;
+
+/**
+ * Finds every occurrence of something (a phrase, or a pattern) in a text.  The
+ * search of a text is done a part at a time (see 'Scan'), so that it can run in
+ * the background, be cancelled, and have its results shown as they come in.
+ *
+ * @author Justin Kocur
+ */
+public interface Searcher {
+    /**
+     *  Returns whether the search is case sensitive
+     *
+     * @return  true if case sensitive, false if not
+     */
+    boolean isMatchCase();
+
+    /**
+     *  Starts a search of a text
+     *
+     * @param text  the text to search
+     * @return      the search, which has not scanned anything yet
+     */
+    Scan scan(TextSnapshot text);
+
+    /**
+     * A search of a text that goes on from where it stopped each time 'next' is called
+     */
+    interface Scan {
+        /**
+         *  Returns how much of the text was scanned
+         *
+         * @return  the number of characters scanned
+         */
+        int getScanned();
+
+        /**
+         *  Returns whether the whole text was scanned
+         *
+         * @return  true if done, false if not
+         */
+        boolean isDone();
+
+        /**
+         *  Scans the next part of the text, adding the occurrences found to a list
+         *
+         * @param matches   the list to add the occurrences to
+         * @param maxChars  roughly how many characters to scan
+         */
+        void next(MatchList matches, int maxChars);
+    }
+}
@@ -0,0 +1,825 @@
+package main.data.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the files under a directory (e.g. a project), telling which files
+ * hold every trigram (three characters in a row) of their text.  A file can only
+ * hold a phrase if it holds every trigram of the phrase, so the files to search
+ * for a phrase are narrowed down to the few holding all of them before any file
+ * is read.  The trigrams are case folded, so one index serves case sensitive and
+ * case-insensitive searches alike (the files narrowed down to are then searched
+ * for the exact phrase).
+ *
+ * Each file has an ID, and the IDs of the files holding a trigram are kept in a
+ * posting list, in increasing order: each ID is stored as the difference to the
+ * one before it, in as few bytes as it needs (7 bits a byte, the high bit set on
+ * all but the last byte).  A file that changed gets a new ID, larger than all the
+ * others, so it is only ever added at the end of the posting lists; its old ID is
+ * marked stale and dropped from the lists when the index is written to disk.
+ *
+ * There are millions of trigrams in a large project, so the posting lists are
+ * kept in a table of their own keyed by the packed trigram (a long), rather than
+ * in a HashMap boxing every trigram looked up.
+ *
+ * The methods are synchronized, as the index is kept up to date on one thread
+ * while it is searched on another.
+ *
+ * @author Justin Kocur
+ */
+public class TrigramIndex {
+    // Starts every index file
+    private static final int MAGIC = 0x54524749;
+
+    // The version of the format of the index files
+    private static final int VERSION = 1;
+
+    // The ID of each file indexed, by its path (relative to the root); stale IDs are not in it
+    private final HashMap<String, Integer> ids;
+
+    // The time each file was last modified (ms), by ID
+    private long[] modified;
+
+    // The path of each file (relative to the root), by ID
+    private final ArrayList<String> paths;
+
+    // The posting list of each trigram
+    private PostingTable postings;
+
+    // The directory indexed
+    private final Path root;
+
+    // The size of each file (bytes), by ID
+    private long[] sizes;
+
+    // The IDs of the files that changed or were removed since they were indexed
+    private final BitSet stale;
+
+    /**
+     *  Creates an empty index of a directory
+     *
+     * @param root  the directory indexed
+     */
+    public TrigramIndex(Path root) {
+        this.root = root;
+
+        ids         = new HashMap<>();
+        paths       = new ArrayList<>();
+        postings    = new PostingTable(1_024);
+        stale       = new BitSet();
+        sizes       = new long[16];
+        modified    = new long[16];
+    }
+
+    /**
+     *  Returns the number of files indexed
+     *
+     * @return  the number of files indexed
+     */
+    public synchronized int getFileCount() {
+        return ids.size();
+    }
+
+    /**
+     *  Returns the directory indexed
+     *
+     * @return  the root directory of the index
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     *  Returns whether a file is indexed as it is now
+     *
+     * @param file      the file
+     * @param size      the size of the file (bytes)
+     * @param modified  the time the file was last modified (ms)
+     * @return          true if indexed with the same size and time, false if not indexed
+     *                  or changed since
+     */
+    public synchronized boolean isCurrent(Path file, long size, long modified) {
+        Integer id = ids.get(root.relativize(file).toString());
+
+        return id != null && sizes[id] == size && this.modified[id] == modified;
+    }
+
+    /**
+     *  Indexes a file, replacing what was indexed of it before
+     *
+     * @param file      the file
+     * @param size      the size of the file (bytes)
+     * @param modified  the time the file was last modified (ms)
+     * @param trigrams  the distinct trigrams of its text (see 'trigrams')
+     */
+    public synchronized void add(Path file, long size, long modified, long[] trigrams) {
+        String path = root.relativize(file).toString();
+        Integer old = ids.get(path);
+
+        if(old != null)
+            stale.set(old);
+
+        int id = paths.size();
+
+        if(id == sizes.length) {
+            sizes           = Arrays.copyOf(sizes, 2 * id);
+            this.modified   = Arrays.copyOf(this.modified, 2 * id);
+        }
+
+        paths.add(path);
+        sizes[id]           = size;
+        this.modified[id]   = modified;
+        ids.put(path, id);
+
+        for(long trigram : trigrams)
+            postings.add(trigram).add(id);
+    }
+
+    /**
+     *  Returns the files that can hold a phrase: every file holding all of its
+     *  trigrams (or, for a pattern, all the trigrams of the literal parts every match
+     *  must contain)
+     *
+     * @param phrase    the phrase (or pattern) searched for
+     * @param regex     true if the phrase is a regular expression, false if not
+     * @return          the files that can hold the phrase, in the order they were indexed;
+     *                  null if the phrase is too short (or the pattern too loose) to narrow
+     *                  down the files
+     */
+    public synchronized List<Path> candidates(String phrase, boolean regex) {
+        List<String> literals = regex ? requiredLiterals(phrase) : Arrays.asList(phrase);
+        ArrayList<PostingList> lists = new ArrayList<>();
+
+        for(String literal : literals) {
+            if(literal.length() < 3)
+                continue;
+
+            long[] trigrams = trigrams(literal.toCharArray(), literal.length());
+
+            for(long trigram : trigrams) {
+                PostingList list = postings.get(trigram);
+
+                // No file holds the trigram
+                if(list == null)
+                    return new ArrayList<>();
+
+                lists.add(list);
+            }
+        }
+
+        if(lists.isEmpty())
+            return null;
+
+        // The shortest list first, so that the fewest IDs are carried from list to list
+        lists.sort(new Comparator<PostingList>() {
+            @Override
+            public int compare(PostingList a, PostingList b) {
+                return Integer.compare(a.count, b.count);
+            }
+        });
+
+        int[] found = lists.get(0).decode();
+        int count   = found.length;
+
+        for(int i = 1; i < lists.size() && count > 0; i++)
+            count = lists.get(i).retain(found, count);
+
+        List<Path> files = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++)
+            if(!stale.get(found[i]))
+                files.add(root.resolve(paths.get(found[i])));
+
+        return files;
+    }
+
+    /**
+     *  Removes a file from the index, or every file under a directory (e.g. when
+     *  the directory was deleted)
+     *
+     * @param file  the file or directory
+     */
+    public synchronized void remove(Path file) {
+        String path     = root.relativize(file).toString();
+        String prefix   = path.isEmpty() ? "" : path + file.getFileSystem().getSeparator();
+
+        Iterator<Map.Entry<String, Integer>> entries = ids.entrySet().iterator();
+
+        while(entries.hasNext()) {
+            Map.Entry<String, Integer> entry = entries.next();
+
+            if(entry.getKey().equals(path) || entry.getKey().startsWith(prefix)) {
+                stale.set(entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     *  Removes every file that is not in a list, e.g. the files deleted while the
+     *  index was not kept up to date
+     *
+     * @param files     the files to keep
+     */
+    public synchronized void retainAll(List<Path> files) {
+        HashMap<String, Integer> kept = new HashMap<>();
+
+        for(Path file : files) {
+            String path = root.relativize(file).toString();
+            Integer id  = ids.get(path);
+
+            if(id != null)
+                kept.put(path, id);
+        }
+
+        for(Map.Entry<String, Integer> entry : ids.entrySet())
+            if(!kept.containsKey(entry.getKey()))
+                stale.set(entry.getValue());
+
+        ids.clear();
+        ids.putAll(kept);
+    }
+
+    /**
+     *  Reads an index written by 'write'
+     *
+     * @param file          the file holding the index
+     * @param root          the directory the index must be of
+     * @return              the index; null if the file holds an index of another directory,
+     *                      or was written in another format
+     * @throws IOException  if the file cannot be read
+     */
+    public static TrigramIndex read(Path file, Path root) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(root.toString()))
+                return null;
+
+            TrigramIndex index  = new TrigramIndex(root);
+            int fileCount       = in.readInt();
+
+            index.sizes     = new long[Math.max(16, fileCount)];
+            index.modified  = new long[index.sizes.length];
+
+            for(int id = 0; id < fileCount; id++) {
+                String path = in.readUTF();
+
+                index.paths.add(path);
+                index.ids.put(path, id);
+                index.sizes[id]     = in.readLong();
+                index.modified[id]  = in.readLong();
+            }
+
+            int trigramCount = in.readInt();
+
+            index.postings = new PostingTable(2 * trigramCount);
+
+            for(int i = 0; i < trigramCount; i++) {
+                long trigram        = in.readLong();
+                PostingList list    = new PostingList();
+
+                list.count  = in.readInt();
+                list.last   = in.readInt();
+                list.length = in.readInt();
+                list.data   = new byte[list.length];
+
+                in.readFully(list.data);
+                index.postings.put(trigram, list);
+            }
+
+            return index;
+        }
+    }
+
+    /**
+     *  Returns the distinct trigrams of a text, each case folded and packed into a
+     *  long (16 bits a character)
+     *
+     * @param chars     the array holding the text
+     * @param length    the number of characters of the text, from the start of the array
+     * @return          the trigrams, in no particular order
+     */
+    public static long[] trigrams(char[] chars, int length) {
+        if(length < 3)
+            return new long[0];
+
+        // A set of the trigrams seen, by open addressing; 0 (three NULs) marks an empty slot
+        long[] seen         = new long[Integer.highestOneBit(2 * (length - 2) - 1) << 1];
+        int mask            = seen.length - 1;
+        long[] trigrams     = new long[length - 2];
+        int distinct        = 0;
+        boolean zero        = false;
+        long window         = ((long) fold(chars[0]) << 16) | fold(chars[1]);
+
+        for(int i = 2; i < length; i++) {
+            window = ((window << 16) | fold(chars[i])) & 0xFFFF_FFFF_FFFFL;
+
+            if(window == 0) {
+                if(!zero)
+                    trigrams[distinct++] = 0;
+
+                zero = true;
+                continue;
+            }
+
+            int slot = hash(window) & mask;
+
+            while(seen[slot] != 0 && seen[slot] != window)
+                slot = (slot + 1) & mask;
+
+            if(seen[slot] == 0) {
+                seen[slot]              = window;
+                trigrams[distinct++]    = window;
+            }
+        }
+
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /**
+     *  Writes the index to a file (replacing the file at once, so an index being
+     *  written is never read half done).  The stale IDs are dropped first, and the
+     *  other files renumbered.
+     *
+     * @param file          the file to write to
+     * @throws IOException  if the file cannot be written
+     */
+    public synchronized void write(Path file) throws IOException {
+        compact();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.toString());
+            out.writeInt(paths.size());
+
+            for(int id = 0; id < paths.size(); id++) {
+                out.writeUTF(paths.get(id));
+                out.writeLong(sizes[id]);
+                out.writeLong(modified[id]);
+            }
+
+            out.writeInt(postings.size);
+
+            for(int slot = 0; slot < postings.lists.length; slot++) {
+                PostingList list = postings.lists[slot];
+
+                if(list == null)
+                    continue;
+
+                out.writeLong(postings.keys[slot]);
+                out.writeInt(list.count);
+                out.writeInt(list.last);
+                out.writeInt(list.length);
+                out.write(list.data, 0, list.length);
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Drops the stale IDs from the posting lists, renumbering the other files
+     */
+    private void compact() {
+        if(stale.isEmpty())
+            return;
+
+        int[] newIds            = new int[paths.size()];
+        ArrayList<String> kept  = new ArrayList<>(ids.size());
+
+        for(int id = 0; id < paths.size(); id++) {
+            if(stale.get(id)) {
+                newIds[id] = -1;
+                continue;
+            }
+
+            newIds[id]                  = kept.size();
+            sizes[kept.size()]          = sizes[id];
+            modified[kept.size()]       = modified[id];
+
+            kept.add(paths.get(id));
+        }
+
+        PostingTable lists = new PostingTable(2 * postings.size);
+
+        // Renumbering keeps the IDs of each list in increasing order; emptied lists are dropped
+        for(int slot = 0; slot < postings.lists.length; slot++)
+            if(postings.lists[slot] != null && postings.lists[slot].renumber(newIds))
+                lists.put(postings.keys[slot], postings.lists[slot]);
+
+        postings = lists;
+
+        paths.clear();
+        paths.addAll(kept);
+        ids.clear();
+
+        for(int id = 0; id < paths.size(); id++)
+            ids.put(paths.get(id), id);
+
+        stale.clear();
+    }
+
+    /**
+     *  Folds the case of a character, so that characters differing only in case
+     *  are folded to the same character (as a case-insensitive search does)
+     *
+     * @param c     the character
+     * @return      the folded character
+     */
+    static char fold(char c) {
+        // ASCII letters are by far the most common
+        if(c < 128)
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     *  Spreads the bits of a packed trigram, so that trigrams differing only in
+     *  their last characters fall in distant slots of a table
+     *
+     * @param trigram   the packed trigram
+     * @return          the hash of the trigram
+     */
+    private static int hash(long trigram) {
+        long h = trigram * 0x9E37_79B9_7F4A_7C15L;
+
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     *  Returns the literal parts of a regular expression that every match of it
+     *  must contain, looking only at the parts outside of groups.  Anything that is
+     *  not a plain character (e.g. '.', a class or an escape) ends a part, and a
+     *  character made optional by a quantifier is left out of it.
+     *
+     * @param regex     the regular expression
+     * @return          the literal parts; empty if the expression has alternatives (or
+     *                  escapes too involved to follow), as then no part is required
+     */
+    static List<String> requiredLiterals(String regex) {
+        ArrayList<String> literals  = new ArrayList<>();
+        StringBuilder literal       = new StringBuilder();
+        int depth                   = 0;
+
+        if(regex.indexOf('|') >= 0)
+            return literals;
+
+        for(int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+
+            switch(c) {
+                case '?':
+                case '*':
+                case '{':
+                    // The character before is optional (a '{' quantifier may allow 0 of it)
+                    if(literal.length() > 0)
+                        literal.setLength(literal.length() - 1);
+
+                    if(c == '{')
+                        i = Math.max(i, regex.indexOf('}', i));
+
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    break;
+
+                case '\\':
+                    // Escapes reading more than one character after the backslash
+                    if(i + 1 < regex.length() && "xuc0pPNkQ".indexOf(regex.charAt(i + 1)) >= 0)
+                        return new ArrayList<>();
+
+                    i++;
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    break;
+
+                case '[':
+                    i = skipClass(regex, i);
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    break;
+
+                case '(':
+                    depth++;
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    break;
+
+                case ')':
+                    depth--;
+                    break;
+
+                case '.':
+                case '^':
+                case '$':
+                case '+':
+                    // The character before '+' is required; only the run ends here
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    break;
+
+                default:
+                    if(depth == 0)
+                        literal.append(c);
+            }
+        }
+
+        literals.add(literal.toString());
+
+        return literals;
+    }
+
+    /**
+     *  Skips over a character class of a regular expression (which may hold
+     *  classes of its own, e.g. '[a-z&&[^b]]')
+     *
+     * @param regex     the regular expression
+     * @param start     the index of the '[' starting the class
+     * @return          the index of the ']' ending the class; the end of the expression if none
+     */
+    private static int skipClass(String regex, int start) {
+        int depth = 0;
+
+        for(int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+
+            if(c == '\\') {
+                i++;
+            } else if(c == '[') {
+                depth++;
+
+                // A ']' right after the '[' (or '[^') is a character of the class
+                if(i + 1 < regex.length() && regex.charAt(i + 1) == '^')
+                    i++;
+
+                if(i + 1 < regex.length() && regex.charAt(i + 1) == ']')
+                    i++;
+            } else if(c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+
+        return regex.length();
+    }
+
+    /**
+     * The IDs of the files holding a trigram, in increasing order, each stored as
+     * the difference to the one before it in a variable number of bytes
+     */
+    private static class PostingList {
+        // The number of IDs in the list
+        private int count;
+
+        // The bytes of the list; only the first 'length' are used
+        private byte[] data;
+
+        // The last ID in the list; -1 if none
+        private int last;
+
+        // The number of bytes used
+        private int length;
+
+        /**
+         * Creates an empty list
+         */
+        private PostingList() {
+            data = new byte[4];
+            last = -1;
+        }
+
+        /**
+         *  Adds an ID after the others
+         *
+         * @param id    the ID; larger than the last one
+         */
+        private void add(int id) {
+            int delta = id - last;
+
+            // At most 5 bytes per ID
+            if(length + 5 > data.length)
+                data = Arrays.copyOf(data, Math.max(length + 5, 2 * data.length));
+
+            while(delta >= 0x80) {
+                data[length++]  = (byte) (delta | 0x80);
+                delta           >>>= 7;
+            }
+
+            data[length++]  = (byte) delta;
+            last            = id;
+            count++;
+        }
+
+        /**
+         *  Returns the IDs of the list
+         *
+         * @return  the IDs, in increasing order
+         */
+        private int[] decode() {
+            int[] ids       = new int[count];
+            int position    = 0;
+            int id          = -1;
+
+            for(int i = 0; i < count; i++) {
+                int delta = 0;
+
+                for(int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+
+                    delta |= (b & 0x7F) << shift;
+
+                    if(b >= 0)
+                        break;
+                }
+
+                id      += delta;
+                ids[i]  = id;
+            }
+
+            return ids;
+        }
+
+        /**
+         *  Renumbers the IDs of the list, dropping the IDs without a new number
+         *
+         * @param newIds    the new number of each ID; -1 to drop it
+         * @return          true if IDs are left, false if the list is empty
+         */
+        private boolean renumber(int[] newIds) {
+            int[] ids = decode();
+
+            count   = 0;
+            length  = 0;
+            last    = -1;
+
+            for(int id : ids)
+                if(newIds[id] >= 0)
+                    add(newIds[id]);
+
+            return count > 0;
+        }
+
+        /**
+         *  Keeps only the IDs of an array that are in the list as well
+         *
+         * @param ids       the IDs, in increasing order; the ones kept are moved to the front
+         * @param size      the number of IDs of the array that are used
+         * @return          the number of IDs kept
+         */
+        private int retain(int[] ids, int size) {
+            int kept        = 0;
+            int position    = 0;
+            int id          = -1;
+            int read        = 0;
+
+            // Both in increasing order, so they are merged
+            for(int i = 0; i < size; i++) {
+                while(id < ids[i] && read < count) {
+                    int delta = 0;
+
+                    for(int shift = 0; ; shift += 7) {
+                        byte b = data[position++];
+
+                        delta |= (b & 0x7F) << shift;
+
+                        if(b >= 0)
+                            break;
+                    }
+
+                    id += delta;
+                    read++;
+                }
+
+                if(id == ids[i])
+                    ids[kept++] = ids[i];
+                else if(id < ids[i])
+                    break;
+            }
+
+            return kept;
+        }
+    }
+
+    /**
+     * The posting list of each trigram, in a table of packed trigrams searched by
+     * linear probing (its size is always a power of two, at most half of it used)
+     */
+    private static class PostingTable {
+        // The trigram in each slot; only meaningful where a list is
+        private long[] keys;
+
+        // The posting list in each slot; null if the slot is empty
+        private PostingList[] lists;
+
+        // The number of trigrams in the table
+        private int size;
+
+        /**
+         *  Creates an empty table
+         *
+         * @param capacity  the number of slots to start with (rounded up to a power of two)
+         */
+        private PostingTable(int capacity) {
+            capacity = Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+
+            keys    = new long[capacity];
+            lists   = new PostingList[capacity];
+        }
+
+        /**
+         *  Returns the posting list of a trigram, adding an empty one if there is none
+         *
+         * @param trigram   the packed trigram
+         * @return          the posting list of the trigram
+         */
+        private PostingList add(long trigram) {
+            int slot = find(trigram);
+
+            if(lists[slot] == null) {
+                put(trigram, new PostingList());
+                slot = find(trigram);
+            }
+
+            return lists[slot];
+        }
+
+        /**
+         *  Returns the slot holding a trigram, or the empty slot it would go in
+         *
+         * @param trigram   the packed trigram
+         * @return          the slot of the trigram
+         */
+        private int find(long trigram) {
+            int mask = keys.length - 1;
+            int slot = hash(trigram) & mask;
+
+            while(lists[slot] != null && keys[slot] != trigram)
+                slot = (slot + 1) & mask;
+
+            return slot;
+        }
+
+        /**
+         *  Returns the posting list of a trigram
+         *
+         * @param trigram   the packed trigram
+         * @return          the posting list of the trigram; null if no file holds it
+         */
+        private PostingList get(long trigram) {
+            return lists[find(trigram)];
+        }
+
+        /**
+         * Doubles the number of slots, moving every trigram to its new slot
+         */
+        private void grow() {
+            long[] oldKeys          = keys;
+            PostingList[] oldLists  = lists;
+
+            keys    = new long[2 * oldKeys.length];
+            lists   = new PostingList[keys.length];
+
+            for(int slot = 0; slot < oldKeys.length; slot++) {
+                if(oldLists[slot] != null) {
+                    int newSlot = find(oldKeys[slot]);
+
+                    keys[newSlot]   = oldKeys[slot];
+                    lists[newSlot]  = oldLists[slot];
+                }
+            }
+        }
+
+        /**
+         *  Sets the posting list of a trigram that is not in the table yet
+         *
+         * @param trigram   the packed trigram
+         * @param list      the posting list of the trigram
+         */
+        private void put(long trigram, PostingList list) {
+            if(2 * (size + 1) > keys.length)
+                grow();
+
+            int slot = find(trigram);
+
+            keys[slot]  = trigram;
+            lists[slot] = list;
+            size++;
+        }
+    }
+}
@@ -89,9 +89,6 @@ public class Editor {
     /** The name of this text editor */
     public static final String EDITOR_NAME = "The Justin Editor 5.0";
 
-    // The maximum number of tabs this text editor will allow open at one time
-    private static final int MAX_TABS = 10;
-
     // The Dimension instance of the user's screen
     private static final Dimension SCREEN_SIZE = Toolkit.getDefaultToolkit().getScreenSize();
 
@@ -105,13 +102,12 @@ public class Editor {
      * tab in the text editor, and adds it as an argument to the GUI
      * class EditorContainer, responsible for displaying the graphics
      *
-     * @param MAX_TABS   the maximum number of tabs allowed open in the editor at once
      * @param WIDTH      initial width of the application
      * @param HEIGHT     initial height of the application
      */
-    public Editor(final int MAX_TABS, final int WIDTH, final int HEIGHT) {
-        FileData data = new FileData(MAX_TABS);
-        new EditorContainer(MAX_TABS, WIDTH, HEIGHT, data);
+    public Editor(final int WIDTH, final int HEIGHT) {
+        FileData data = new FileData();
+        new EditorContainer(WIDTH, HEIGHT, data);
     }
 
     /**
@@ -123,14 +119,15 @@ public class Editor {
      *                  in which the second argument, -1, will set its corresponding attribute to a
      *                  default, pre-assigned value)
      *                  The arguments, in the order they must be listed, are:
-     *                      1) MAX_TABS - max num of tabs allowed open at once
+     *                      1) MAX_TABS - no longer used, as any number of tabs can be open;
+     *                         still accepted (and ignored) so existing launch commands keep working
      *                      2) WIDTH - the initial width for the GUI app
      *                      3) HEIGHT - the initial height for the GUI app
      */
     public static void main(String[] args) {
         // User abstained from arguments; default provided
         if(args == null || args.length == 0) {
-            new Editor(MAX_TABS, WIDTH, HEIGHT);
+            new Editor(WIDTH, HEIGHT);
         }
 
         // Arguments entered in; -1 should be entered for default functionality
@@ -140,7 +137,13 @@ public class Editor {
                 PopUp.displayErrorMessage(null, "Error: Incorrect number of arguments entered!");
                 return;
             }
-            new Editor(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+
+            // The tab limit is gone; the argument is only kept for the launch commands passing it
+            if(!args[0].equals("-1"))
+                System.err.println("Warning: MAX_TABS (" + args[0] + ") is deprecated and ignored; "
+                        + "any number of tabs can be open");
+
+            new Editor(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
         }
     }
 }
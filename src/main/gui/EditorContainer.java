@@ -2,11 +2,16 @@ package main.gui;
 
 import main.actions.EditorActions;
 import main.actions.EditorKeyActions;
+import main.actions.ProjectIndexer;
+import main.actions.TabHibernator;
 import main.actions.undo.RedoAction;
 import main.actions.undo.UndoAction;
 import main.actions.undo.UndoHandler;
 import main.data.ColorData;
 import main.data.FileData;
+import main.data.TabRegistry;
+import main.data.TabState;
+import main.data.document.PieceTableDocument;
 import main.editor.Editor;
 import main.gui.components.*;
 import main.gui.components.boxcomponents.FillerBox;
@@ -25,6 +30,7 @@ import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
 import java.util.ListIterator;
 
 /**
@@ -53,6 +59,9 @@ public class EditorContainer {
     // The data provided for each of the files open in the editor
     private final FileData fileData;
 
+    // Opens a file of the project by typing part of its name
+    private final FileFinderBox fileFinderBox;
+
     // Provides the nodes (files and folders) that the user can access
     private final FileTree fileTree;
 
@@ -65,8 +74,8 @@ public class EditorContainer {
        for the text editor */
     private final JFrame mainFrame;
 
-    // The maximum number of tabs this text editor will allow open at one time
-    private final int MAX_TABS;
+    // Keeps an index of the project opened, to narrow down the files searched
+    private final ProjectIndexer projectIndexer;
 
     private final RedoAction redoAction;
 
@@ -76,6 +85,9 @@ public class EditorContainer {
     // The search box associated with this text editor
     private final SearchBox searchBox;
 
+    // Lists the occurrences found by a search of every open tab
+    private final SearchResultsPanel searchResultsPanel;
+
     /* Allows the user to select a portion of the text in a text pane.
        Only one instance is needed for the whole text editor, as the select
        box works on the currently selected tab */
@@ -90,8 +102,8 @@ public class EditorContainer {
     // Contains all the tabs for the editor
     private final EditorTabbedPane tabbedPane;
 
-    // Holds the actual text from each file
-    private final EditorTextPane[] textPanes;
+    // Spills the text of tabs that are not being looked at to disk
+    private final TabHibernator tabHibernator;
 
     // The font used for the text panes
     private final Font textPaneFont;
@@ -100,18 +112,14 @@ public class EditorContainer {
 
     private final UndoHandler undoHandler;
 
-    private final UndoManager[] undoManager;
-
     /**
      * Sets up the text editor with its required components
      *
-     * @param MAX_TABS              the maximum number of tabs allowed open in the editor at once
      * @param INITIAL_WIDTH         the initial width of the application
      * @param INITIAL_HEIGHT        the initial height of the application
      * @param fileData              the data provided for each of the files open in the editor
      */
-    public EditorContainer(final int MAX_TABS, final int INITIAL_WIDTH, final int INITIAL_HEIGHT,
-                           FileData fileData) {
+    public EditorContainer(final int INITIAL_WIDTH, final int INITIAL_HEIGHT, FileData fileData) {
         // Set look and feel before doing anything else
         try {
             UIManager.setLookAndFeel("com.sun.java.swing.plaf.windows.WindowsLookAndFeel");
@@ -123,7 +131,6 @@ public class EditorContainer {
         UIManager.getDefaults().put("TabbedPane.contentBorderInsets", new Insets(0,0,0,0));
         UIManager.getDefaults().put("TabbedPane.tabsOverlapBorder", true);
 
-        this.MAX_TABS = MAX_TABS;
         this.fileData = fileData;
 
         colorData = new ColorData(this);
@@ -137,30 +144,32 @@ public class EditorContainer {
 
         layeredPane = new JLayeredPane();
 
-        undoManager = new UndoManager[MAX_TABS];
-        undoHandler = new UndoHandler(this, undoManager);
-        undoAction  = new UndoAction(this, undoManager);
-        redoAction  = new RedoAction(this, undoManager);
+        undoHandler = new UndoHandler(this);
+        undoAction  = new UndoAction(this);
+        redoAction  = new RedoAction(this);
 
-        editorActions       = new EditorActions(MAX_TABS, this);
+        editorActions       = new EditorActions(this);
         editorKeyActions    = new EditorKeyActions(this);
 
         menuBar = new EditorMenuBar();
 
         constructMenuSystem();
 
-        textPanes = new EditorTextPane[MAX_TABS];
-
         // Construct the search box
-        searchBox       = new SearchBox(this, MAX_TABS, null);
-        replaceBox      = new ReplaceBox(this, MAX_TABS, null);
+        searchBox       = new SearchBox(this, null);
+        replaceBox      = new ReplaceBox(this, null);
         fillerBox       = new FillerBox();
         selectBoundsBox = new SelectBoundsBox(this);
+        fileFinderBox   = new FileFinderBox(this);
         contextMenu     = new ContextMenu(this);
 
+        searchResultsPanel = new SearchResultsPanel(this);
+
         settingsMenu = new SettingsMenu(this);
 
-        tabbedPane = new EditorTabbedPane();
+        tabbedPane      = new EditorTabbedPane();
+        tabHibernator   = new TabHibernator(this);
+        projectIndexer  = new ProjectIndexer(this);
 
         constructTabbedPane();
 
@@ -181,6 +190,20 @@ public class EditorContainer {
 
         mainFrame.add(fileTree.getScrollableTree(), BorderLayout.WEST);
         mainFrame.add(layeredPane);
+        mainFrame.add(searchResultsPanel, BorderLayout.SOUTH);
+
+        // The tabbed pane makes room for the results while they are shown
+        searchResultsPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                resizeTabbedPane();
+            }
+
+            @Override
+            public void componentShown(ComponentEvent e) {
+                resizeTabbedPane();
+            }
+        });
 
         //colorData.setStyle(ColorData.HALLOWEEN);
 
@@ -205,6 +228,15 @@ public class EditorContainer {
         return fileData;
     }
 
+    /**
+     *  Returns the FileFinderBox instance associated with this text editor
+     *
+     * @return  the FileFinderBox instance associated with this text editor
+     */
+    public FileFinderBox getFileFinderBox() {
+        return fileFinderBox;
+    }
+
     /**
      *  Returns the FileTree instance associated with this text editor
      *
@@ -241,6 +273,15 @@ public class EditorContainer {
         return menuBar;
     }
 
+    /**
+     *  Returns the ProjectIndexer instance associated with this text editor
+     *
+     * @return  the ProjectIndexer instance associated with this text editor
+     */
+    public ProjectIndexer getProjectIndexer() {
+        return projectIndexer;
+    }
+
     /**
      *  Returns the replace box associated with this text editor
      *
@@ -259,6 +300,15 @@ public class EditorContainer {
         return searchBox;
     }
 
+    /**
+     *  Returns the panel listing the occurrences found by a search of every open tab
+     *
+     * @return  the search results panel associated with this text editor
+     */
+    public SearchResultsPanel getSearchResultsPanel() {
+        return searchResultsPanel;
+    }
+
     /**
      *  Returns the SelectBoundsBox instance associated with this text editor
      *
@@ -296,16 +346,41 @@ public class EditorContainer {
     }
 
     /**
-     *  Returns a text pane from the text pane array
+     *  Returns the TabHibernator instance associated with this text editor
+     *
+     * @return  the TabHibernator instance associated with this text editor
+     */
+    public TabHibernator getTabHibernator() {
+        return tabHibernator;
+    }
+
+    /**
+     *  Returns a text pane from the text pane array, waking its tab if it is
+     *  hibernated (see TabHibernator)
      *
      * @param index     the index at which to retrieve a text pane
-     * @return          the designated text pane at the given index
+     * @return          the designated text pane at the given index; null if out of bounds
      */
     public EditorTextPane getTextPane(int index) {
-        if(index < 0 || index >= fileData.numTabsOpen())
+        TabState tab = fileData.getTabs().get(index);
+
+        if(tab == null)
             return null;
 
-        return textPanes[index];
+        tabHibernator.wake(tab);
+        return tab.getTextPane();
+    }
+
+    /**
+     *  Returns the undo/ redo history of a tab's text pane
+     *
+     * @param index     the index of the tab in the tabbed pane
+     * @return          the undo manager of the tab; null if out of bounds
+     */
+    public UndoManager getUndoManager(int index) {
+        TabState tab = fileData.getTabs().get(index);
+
+        return tab != null ? tab.getUndoManager() : null;
     }
 
     /**
@@ -326,40 +401,37 @@ public class EditorContainer {
      * based on whether or not changes were made to the text.
      */
     public void checkTextForChanges() {
-        int index = tabbedPane.getSelectedIndex();
+        checkTextForChanges(tabbedPane.getSelectedIndex());
+    }
 
-        if(index < 0 || index >= MAX_TABS)
-            return;
+    /**
+     *  Updates the String name of a tab (and of the JFrame container, if the tab
+     *  is selected) based on whether or not changes were made to its text.
+     *
+     * @param index     the index of the tab in the tabbed pane
+     */
+    public void checkTextForChanges(int index) {
+        TabState tab = fileData.getTabs().get(index);
 
-        if(textPanes[index] == null)
+        // A hibernated tab is not woken up just to retitle it
+        if(tab == null || tab.getTextPane() == null)
             return;
 
-        String ogText       = fileData.getTabOgText(index);
-        String currentText  = textPanes[index].getText();
-        String name         = fileData.getTabName(index);
-
-        // Compares the last saved text to the current state of the text on the text pane
-        if(!ogText.equals(currentText)) {
-            setFrameTitle(name, true);
-            tabbedPane.setTitleAt(index, name + "*");
-        } else {
-            setFrameTitle(name, false);
-            tabbedPane.setTitleAt(index, name);
-        }
-    }
+        PieceTableDocument document = tabHibernator.getDocument(tab);
+        String name                 = fileData.getTabName(index);
 
-    public void removeTextPane(int index) {
-        if(index < 0 || index >= MAX_TABS)
-            return;
+        /* Compares the text on the text pane to the last saved text, without reading either
+           (a read-only viewer cannot be changed, and only holds part of its file; neither can
+           a file still loading or not loaded completely, which cannot be saved) */
+        boolean changed = !fileData.isReadOnly(index) && tab.getTextPane().isEditable() && document.isModified();
 
-        // Shift all content on right of removed to the left
-        for(int i = index; i < MAX_TABS; i++) {
-            if(i + 1 >= MAX_TABS) {
-                textPanes[i] = null;
-            } else {
-                textPanes[i] = textPanes[i + 1];
-            }
-        }
+        if(index == tabbedPane.getSelectedIndex())
+            setFrameTitle(name, changed);
+
+        if(tabHibernator.isHibernated(tab))
+            tabbedPane.setTitleAt(index, (changed ? name + "*" : name) + " (hibernated)");
+        else
+            tabbedPane.setTitleAt(index, changed ? name + "*" : name);
     }
 
     /**
@@ -408,6 +480,11 @@ public class EditorContainer {
         textPane.setEditorKit(new StyledEditorKit() {
             public static final int TAB_SIZE = 10;
 
+            @Override
+            public Document createDefaultDocument() {
+                return new PieceTableDocument();
+            }
+
             @Override
             public ViewFactory getViewFactory() {
                 return new MyViewFactory();
@@ -457,6 +534,8 @@ public class EditorContainer {
             }
         });
 
+        // Lets the undo handler find the tab an edit belongs to, wherever the tab is
+        textPane.getDocument().putProperty(TabRegistry.TAB_ID_PROPERTY, fileData.getTabs().get(index).getId());
         textPane.getDocument().addUndoableEditListener(undoHandler);
         textPane.addDocumentFilter();
         textPane.getActionMap().put("select-word", new WordSelectionAction());
@@ -483,14 +562,29 @@ public class EditorContainer {
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
 
         tabbedPane.add(fileData.getTabName(index), scrollPane);
-        textPanes[index] = textPane;
+        fileData.getTabs().get(index).setTextPane(textPane);
+    }
+
+    /**
+     *  Turns a tab into a read-only viewer of a file too large to edit (see PagedViewer).
+     *  The tab's text pane is kept, and shows the part of the file on the screen.
+     *
+     * @param index         the index in the tabbed pane of the tab
+     * @param file          the file to view
+     * @throws IOException  if the file cannot be mapped
+     */
+    public void constructViewer(int index, File file) throws IOException {
+        JScrollPane scrollPane = (JScrollPane) tabbedPane.getComponentAt(index);
+
+        tabbedPane.setComponentAt(index, new PagedViewer(getTextPane(index), scrollPane, file));
+        fileData.setReadOnly(index, true);
     }
 
     /**
      * Resets focus onto the selected tab's text pane
      */
     public void resetTextPaneFocus() {
-        EditorTextPane pane = textPanes[tabbedPane.getSelectedIndex()];
+        EditorTextPane pane = getTextPane(tabbedPane.getSelectedIndex());
 
         pane.requestFocus();
     }
@@ -524,7 +618,7 @@ public class EditorContainer {
         mainFrame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                if(editorActions.saveAllFunctionality())
+                if(editorActions.saveAllFunctionality() && editorActions.waitForSaves())
                     mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             }
         });
@@ -532,10 +626,7 @@ public class EditorContainer {
         mainFrame.addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(ComponentEvent e) {
-                int treeWidth = fileTree.getScrollableTree().getWidth();
-                tabbedPane.setBounds(0, 0, mainFrame.getWidth() - treeWidth - 15, mainFrame.getHeight() - 55);
-
-                fillerBox.setContainerDimensions(tabbedPane.getWidth(), fillerBox.getHeight());
+                resizeTabbedPane();
             }
         });
 
@@ -573,6 +664,7 @@ public class EditorContainer {
         JMenuItem openItem          = new JMenuItem("Open");
         JMenuItem openProjectItem   = new JMenuItem("Open Project");
         JMenuItem openRecentItem    = new JMenuItem("Open Recent");
+        JMenuItem goToFileItem      = new JMenuItem("Go to File...");
         JMenuItem settingsItem      = new JMenuItem("Settings...");
         JMenuItem saveItem          = new JMenuItem("Save");
         JMenuItem saveAllItem       = new JMenuItem("Save All");
@@ -593,6 +685,7 @@ public class EditorContainer {
         JMenuItem replaceItem       = new JMenuItem("Replace");
         JMenuItem duplicateLineItem = new JMenuItem("Duplicate Line");
         JMenuItem joinLinesItem     = new JMenuItem("Join Lines");
+        JMenuItem matchBracketItem  = new JMenuItem("Go to Matching Bracket");
         JMenuItem switchCaseItem    = new JMenuItem("Switch Case");
         JMenuItem uniformCaseItem   = new JMenuItem("Uniform Case");
         JMenuItem alternateCaseItem = new JMenuItem("Alternate Case");
@@ -601,10 +694,13 @@ public class EditorContainer {
         JMenuItem stopProgramItem   = new JMenuItem("Stop Program");
         JMenuItem editConfigItem    = new JMenuItem("Edit Configurations...");
 
+        JMenuItem paintCostItem     = new JMenuItem("Paint Cost");
+
         newItem.setAction(shortcut(newItem.getText(), EditorKeyActions.NEW_TAB_KEY));
         newProjectItem.setAction(shortcut(newProjectItem.getText(), EditorKeyActions.NEW_TAB_KEY, EditorKeyActions.CTRL_SHIFT_BINDING));
         openItem.setAction(shortcut(openItem.getText(), EditorKeyActions.OPEN_FILE_KEY));
         openProjectItem.setAction(shortcut(openProjectItem.getText(), EditorKeyActions.OPEN_FILE_KEY, EditorKeyActions.CTRL_SHIFT_BINDING));
+        goToFileItem.setAction(shortcut(goToFileItem.getText(), EditorKeyActions.GO_TO_FILE_KEY, EditorKeyActions.CTRL_SHIFT_BINDING));
         settingsItem.setAction(shortcut(settingsItem.getText(), KeyEvent.VK_S, EditorKeyActions.CTRL_ALT_BINDING));
         saveItem.setAction(shortcut(saveItem.getText(), EditorKeyActions.SAVE_FILE_KEY));
         printItem.setAction(shortcut(printItem.getText(), EditorKeyActions.PRINT_KEY));
@@ -622,6 +718,7 @@ public class EditorContainer {
         replaceItem.setAction(shortcut(replaceItem.getText(), EditorKeyActions.REPLACE_PHRASE_KEY));
         duplicateLineItem.setAction(shortcut(duplicateLineItem.getText(), EditorKeyActions.DUPLICATE_LINE_KEY));
         joinLinesItem.setAction(shortcut(joinLinesItem.getText(), EditorKeyActions.JOIN_LINES_KEY));
+        matchBracketItem.setAction(shortcut(matchBracketItem.getText(), EditorKeyActions.MATCH_BRACKET_KEY, EditorKeyActions.CTRL_SHIFT_BINDING));
 
         fileMenu.add(newItem);
         fileMenu.add(newProjectItem);
@@ -629,6 +726,7 @@ public class EditorContainer {
         fileMenu.add(openItem);
         fileMenu.add(openProjectItem);
         fileMenu.add(openRecentItem);
+        fileMenu.add(goToFileItem);
         fileMenu.addSeparator();
         fileMenu.add(settingsItem);
         fileMenu.addSeparator();
@@ -659,6 +757,7 @@ public class EditorContainer {
         editMenu.addSeparator();
         editMenu.add(duplicateLineItem);
         editMenu.add(joinLinesItem);
+        editMenu.add(matchBracketItem);
         toggleCaseOptions.add(switchCaseItem);
         toggleCaseOptions.add(uniformCaseItem);
         toggleCaseOptions.add(alternateCaseItem);
@@ -668,6 +767,8 @@ public class EditorContainer {
         runMenu.add(stopProgramItem);
         runMenu.add(editConfigItem);
 
+        helpMenu.add(paintCostItem);
+
         setMenuFont(fileMenu, standardFont);
         setMenuFont(editMenu, standardFont);
         setMenuFont(runMenu, standardFont);
@@ -699,27 +800,35 @@ public class EditorContainer {
         tabbedPane.setEditorContainer(this);
         tabbedPane.setFocusable(false);
         tabbedPane.addChangeListener(new ChangeListener() {
-            // The tab that was previously selected/ being looked at
-            int prevTab = 0;
+            // The ID of the tab that was previously selected/ being looked at
+            int prevTabId = -1;
 
             @Override
             public void stateChanged(ChangeEvent e) {
-                if(tabbedPane.getSelectedIndex() >= 0 && tabbedPane.getSelectedIndex() < MAX_TABS) {
-                    int tabIndex = tabbedPane.getSelectedIndex();
+                if(tabbedPane.getSelectedIndex() >= 0 && tabbedPane.getSelectedIndex() < fileData.numTabsOpen()) {
+                    int tabIndex        = tabbedPane.getSelectedIndex();
+                    TabState prevTab    = fileData.getTabs().getById(prevTabId);
 
-                    searchBox.setCurrentSearch(prevTab);
-                    replaceBox.setCurrentReplace(prevTab);
-                    prevTab = tabIndex;
+                    // Wake the tab up first if it was hibernated
+                    tabHibernator.selected(tabIndex);
+
+                    // The previous tab may have been closed, or moved by closing a tab before it
+                    if(prevTab != null) {
+                        searchBox.setCurrentSearch(fileData.getTabs().indexOf(prevTab));
+                        replaceBox.setCurrentReplace(fileData.getTabs().indexOf(prevTab));
+                    }
+
+                    prevTabId = fileData.getTabs().get(tabIndex).getId();
 
                     searchBox.setTab(tabIndex);
-                    searchBox.setTextPane(textPanes[tabIndex]);
+                    searchBox.setTextPane(getTextPane(tabIndex));
                     replaceBox.setTab(tabIndex);
-                    replaceBox.setTextPane(textPanes[tabIndex]);
+                    replaceBox.setTextPane(getTextPane(tabIndex));
 
                     fillerBox.setShownText(fileData.getTabPath(tabIndex));
 
-                    if(textPanes[tabIndex] != null)
-                        textPanes[tabIndex].requestFocus();
+                    if(getTextPane(tabIndex) != null)
+                        getTextPane(tabIndex).requestFocus();
 
                     checkTextForChanges();
                 }
@@ -733,7 +842,7 @@ public class EditorContainer {
      * @param tabIndex  the index at which to create a new undo/ redo action
      */
     private void constructUndoAction(int tabIndex) {
-        undoManager[tabIndex] = new UndoManager();
+        fileData.getTabs().get(tabIndex).setUndoManager(new UndoManager());
 
         undoHandler.setUndoAction(undoAction);
         undoHandler.setRedoAction(redoAction);
@@ -747,6 +856,20 @@ public class EditorContainer {
                         EditorKeyActions.CTRL_SHIFT_BINDING));
     }
 
+    /**
+     * Fits the tabbed pane to the frame, leaving room for the file tree and, if
+     * shown, the search results panel
+     */
+    private void resizeTabbedPane() {
+        int treeWidth       = fileTree.getScrollableTree().getWidth();
+        int resultsHeight   = searchResultsPanel.isVisible() ? searchResultsPanel.getPreferredSize().height : 0;
+
+        tabbedPane.setBounds(0, 0, mainFrame.getWidth() - treeWidth - 15, mainFrame.getHeight() - 55 - resultsHeight);
+
+        fillerBox.setContainerDimensions(tabbedPane.getWidth(), fillerBox.getHeight());
+        mainFrame.revalidate();
+    }
+
     /**
      * Adds an EditorActions instance to each component in the provided JMenu instance
      *
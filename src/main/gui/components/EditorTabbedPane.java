@@ -75,6 +75,70 @@ public class EditorTabbedPane extends JTabbedPane {
         this.editorContainer = editorContainer;
     }
 
+    /**
+     *  Marks a tab whose file could not be loaded completely, next to the tab's
+     *  title (in place of its progress bar)
+     *
+     * @param component     the component which is on the tab
+     * @param message       why the file could not be loaded; shown as a tool tip
+     */
+    public void setLoadFailed(Component component, String message) {
+        int index = indexOfComponent(component);
+
+        if(index < 0 || !(getTabComponentAt(index) instanceof JPanel))
+            return;
+
+        setLoadProgress(component, -1);
+
+        JPanel titlePanel   = (JPanel) getTabComponentAt(index);
+        JLabel label        = new JLabel(" (incomplete)");
+
+        label.setForeground(Color.red);
+        label.setToolTipText("Could not load the whole file: " + message);
+        titlePanel.add(label);
+
+        titlePanel.revalidate();
+        titlePanel.repaint();
+    }
+
+    /**
+     *  Shows how much of a tab's file has been loaded, as a small progress bar
+     *  next to the tab's title
+     *
+     * @param component     the component which is on the tab
+     * @param progress      the percentage loaded; the bar is removed if < 0 or >= 100
+     */
+    public void setLoadProgress(Component component, int progress) {
+        int index = indexOfComponent(component);
+
+        if(index < 0 || !(getTabComponentAt(index) instanceof JPanel))
+            return;
+
+        JPanel titlePanel   = (JPanel) getTabComponentAt(index);
+        JProgressBar bar    = null;
+
+        // The bar is placed after the title and close button
+        if(titlePanel.getComponentCount() > 2 && titlePanel.getComponent(2) instanceof JProgressBar)
+            bar = (JProgressBar) titlePanel.getComponent(2);
+
+        if(progress < 0 || progress >= 100) {
+            if(bar != null)
+                titlePanel.remove(bar);
+        } else {
+            if(bar == null) {
+                bar = new JProgressBar(0, 100);
+                bar.setPreferredSize(new Dimension(40, 6));
+                bar.setForeground(selTabColor);
+                titlePanel.add(bar);
+            }
+
+            bar.setValue(progress);
+        }
+
+        titlePanel.revalidate();
+        titlePanel.repaint();
+    }
+
     /**
      *  Sets the color of the selected tab, represented by a line
      *  directly underneath the tab
@@ -111,7 +175,7 @@ public class EditorTabbedPane extends JTabbedPane {
         JPanel panel    = new JPanel();
 
         panel.setOpaque(false);
-        setTabComponentAt(getTabCount() - 1, getTitlePanel(component, title));
+        setTabComponentAt(getTabCount() - 1, getTitlePanel(title));
         return c;
     }
 
@@ -178,13 +242,13 @@ public class EditorTabbedPane extends JTabbedPane {
 
     /**
      *  Constructs a new heading for the whole tab, consisting of the
-     *  tab's title and a remove ("x") button.
+     *  tab's title and a remove ("x") button.  The tab is found through its heading,
+     *  so the component on the tab can be replaced (e.g. by a viewer).
      *
-     * @param component     the component which is on the tab
      * @param title         the title of the tab
      * @return              a JPanel containing the modified heading for the new tab
      */
-    private JPanel getTitlePanel(Component component, final String title) {
+    private JPanel getTitlePanel(final String title) {
         // Declare/ initialize required components
         JPanel titlePanel   = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
         JLabel titleLabel   = new JLabel(title);
@@ -207,7 +271,7 @@ public class EditorTabbedPane extends JTabbedPane {
             @Override
             public void mouseClicked(MouseEvent e) {
                 if(getEditorContainer() != null) {
-                    int index = indexOfComponent(component);
+                    int index = indexOfTabComponent(titlePanel);
                     getEditorContainer().getEditorActions().closeTabFunctionality(index);
                 }
             }
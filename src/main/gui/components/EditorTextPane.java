@@ -2,21 +2,47 @@ package main.gui.components;
 
 import main.data.ColorData;
 import main.data.LineData;
+import main.gui.components.textpanecomponents.AutoPairFilter;
+import main.gui.components.textpanecomponents.BracketMatcher;
+import main.gui.components.textpanecomponents.FrameCost;
 import main.gui.components.textpanecomponents.TextCaret;
 import main.gui.components.textpanecomponents.TextLineNumber;
 
 import javax.swing.*;
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 
 /**
  * CREDIT: https://stackoverflow.com/questions/5405550/highlight-current-row-in-jtextpane
+ *
+ * The current line and the selected lines are painted across the whole width of
+ * the text pane, further than the text itself is repainted when they change.  Rather
+ * than repainting the whole text pane for every change, the lines whose painting
+ * changed (the old and new line of the caret, the lines the selection grew or shrank
+ * over, and the lines edited) are repainted, once the change is over (see
+ * DamageHandler).  The cost of the frames painted is counted (see 'getFrameCost'),
+ * and shown in the status bar by Help > Paint Cost.
  */
 public class EditorTextPane extends JTextPane {
 
+    // Highlights the bracket next to the caret and the bracket matching it
+    private final BracketMatcher bracketMatcher;
+
+    // Repaints the lines whose painting changed
+    private final DamageHandler damageHandler;
+
+    // Counts the frames painted, and how much they cost
+    private final FrameCost frameCost;
+
     // The TextLineNumber class instance used for this text pane
     private TextLineNumber numberingSystem;
 
@@ -32,7 +58,10 @@ public class EditorTextPane extends JTextPane {
     public EditorTextPane() {
         super();
 
-        textCaret = new TextCaret(this);
+        textCaret       = new TextCaret(this);
+        bracketMatcher  = new BracketMatcher(this, new Color(20, 180, 210, 90));
+        damageHandler   = new DamageHandler();
+        frameCost       = new FrameCost();
 
         selHighlightColor = new Color(0, 0, 0, 25);
 
@@ -42,6 +71,10 @@ public class EditorTextPane extends JTextPane {
         setSelectionColor(new Color(20, 180, 210));
         setCaret(textCaret);
 
+        addCaretListener(damageHandler);
+        addPropertyChangeListener("document", damageHandler);
+        getDocument().addDocumentListener(damageHandler);
+
         addKeyListener(new KeyAdapter() {
             boolean shiftPressed    = false;
             boolean ctrlPressed     = false;
@@ -87,6 +120,16 @@ public class EditorTextPane extends JTextPane {
         setSelectedTextColor(colorData.getFgSelectedText());
     }
 
+    /**
+     *  Returns what highlights the brackets next to the caret (and moves it to the
+     *  matching bracket)
+     *
+     * @return  the bracket matcher of this text pane
+     */
+    public BracketMatcher getBracketMatcher() {
+        return bracketMatcher;
+    }
+
     /**
      *  Returns the color of the caret
      *
@@ -105,6 +148,16 @@ public class EditorTextPane extends JTextPane {
         textCaret.setCaretColor(caretColor);
     }
 
+    /**
+     *  Returns the counts of the frames painted by this text pane, and of how much
+     *  they cost
+     *
+     * @return  the frame cost counter of this text pane
+     */
+    public FrameCost getFrameCost() {
+        return frameCost;
+    }
+
     /**
      *  Returns the TextLineNumber class instance used for this text pane
      *
@@ -141,171 +194,35 @@ public class EditorTextPane extends JTextPane {
         this.selHighlightColor = selHighlightColor;
     }
 
+    /**
+     * Completes the pairs of quotes and brackets typed (see AutoPairFilter)
+     */
     public void addDocumentFilter() {
-        ((AbstractDocument) getDocument()).setDocumentFilter(new DocumentFilter() {
-            @Override
-            public void remove(FilterBypass fb, int offset, int length)
-                    throws BadLocationException {
-
-                // Must not have any selected text to remove and that there is 1+ chars
-                // after the char being removed
-                if(getSelectedText() == null && offset + 1 < getText().length()) {
-                    switch (getText().charAt(offset)) {
-                        case '"':
-                            if(getText().charAt(offset + 1) == '"')
-                                length++;
-                            break;
-
-                        case '\'':
-                            if(getText().charAt(offset + 1) == '\'')
-                                length++;
-                            break;
-
-                        case '(':
-                            if(getText().charAt(offset + 1) == ')')
-                                length++;
-                            break;
-
-                        case '{':
-                            if(getText().charAt(offset + 1) == '}')
-                                length++;
-                            break;
-
-                        case '[':
-                            if(getText().charAt(offset + 1) == ']')
-                                length++;
-                            break;
-                    }
-                }
-
-                super.remove(fb, offset, length);
-            }
-
-            @Override
-            public void replace(final FilterBypass fb, final int offset, final int length,
-                                final String text, final AttributeSet attrs)
-                    throws BadLocationException {
-
-                // Text highlighted, check if "key" char is added; if so, wrap text around it
-                if(getSelectedText() != null) {
-                    int start   = getSelectionStart();
-                    int end     = getSelectionEnd() - getSelectionStart() + 1;
-
-                    switch (text) {
-                        case "\"":
-                            getDocument().insertString(start, "\"", null);
-                            getDocument().insertString(start + end, "\"", null);
-                            setSelectionEnd(start + end);
-                            break;
-
-                        case "'":
-                            getDocument().insertString(start, "'", null);
-                            getDocument().insertString(start + end, "'", null);
-                            setSelectionEnd(start + end);
-                            break;
-
-                        case "(":
-                            getDocument().insertString(start, "(", null);
-                            getDocument().insertString(start + end, ")", null);
-                            setSelectionEnd(start + end);
-                            break;
-
-                        case "{":
-                            getDocument().insertString(start, "{", null);
-                            getDocument().insertString(start + end, "}", null);
-                            setSelectionEnd(start + end);
-                            break;
-
-                        case "[":
-                            getDocument().insertString(start, "[", null);
-                            getDocument().insertString(start + end, "]", null);
-                            setSelectionEnd(start + end);
-                            break;
-
-                        default:
-                            super.replace(fb, offset, length, text, attrs);
-                    }
-                }
-                // Place in appropriate character if "cue" char entered
-                else {
-                    int caretStart = getCaretPosition();
-
-                    // Closer already added; advance cursor and then exit
-                    if((offset >= 0 && offset < getText().length())
-                        && ((getText().charAt(offset) == '"' && text.equals("\""))
-                        || (getText().charAt(offset) == '\'' && text.equals("'"))
-                        || (getText().charAt(offset) == ')' && text.equals(")"))
-                        || (getText().charAt(offset) == '}' && text.equals("}"))
-                        || (getText().charAt(offset) == ']' && text.equals("]")))) {
-                        if(offset - 1 >= 0) {
-                            if(getText().charAt(offset - 1) != '\\') {
-                                setCaretPosition(getCaretPosition() + 1);
-                                return;
-                            } else {
-                                super.replace(fb, offset, length, text, attrs);
-                                return;
-                            }
-                        } else {
-                            setCaretPosition(getCaretPosition() + 1);
-                            return;
-                        }
-                    }
-
-                    // Add closer (indent appropriately for newline '\n')
-                    switch (text) {
-                        case "\"":
-                            getDocument().insertString(caretStart, "\"", null);
-                            getDocument().insertString(caretStart + 1, "\"", null);
-                            setCaretPosition(caretStart + 1);
-                            break;
-
-                        case "'":
-                            getDocument().insertString(caretStart, "'", null);
-                            getDocument().insertString(caretStart + 1, "'", null);
-                            setCaretPosition(caretStart + 1);
-                            break;
-
-                        case "(":
-                            getDocument().insertString(caretStart, "(", null);
-                            getDocument().insertString(caretStart + 1, ")", null);
-                            setCaretPosition(caretStart + 1);
-                            break;
-
-                        case "{":
-                            getDocument().insertString(caretStart, "{", null);
-                            getDocument().insertString(caretStart + 1, "}", null);
-                            setCaretPosition(caretStart + 1);
-                            break;
-
-                        case "[":
-                            getDocument().insertString(caretStart, "[", null);
-                            getDocument().insertString(caretStart + 1, "]", null);
-                            setCaretPosition(caretStart + 1);
-                            break;
-
-                        default:
-                            super.replace(fb, offset, length, text, attrs);
-                    }
-                }
-            }
-        });
-    }
-
-    @Override
-    public void repaint(long tm, int x, int y, int width, int height) {
-        // This forces repaints to repaint the entire TextPane.
-        super.repaint(tm, 0, 0, getWidth(), getHeight());
+        ((AbstractDocument) getDocument()).setDocumentFilter(new AutoPairFilter(this));
     }
 
+    /**
+     *  Paints the background, the current line and the selected lines inside the
+     *  area being repainted, then the text
+     *
+     * @param g     the graphics context
+     */
     @Override
     protected void paintComponent(Graphics g) {
+        long start      = System.nanoTime();
+        Rectangle clip  = g.getClipBounds() != null ? g.getClipBounds() : new Rectangle(getSize());
+
         g.setColor(getBackground());
-        g.fillRect(0, 0, getWidth(), getHeight());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
         try {
             Rectangle2D rect = modelToView2D(getCaretPosition());
             if (rect != null) {
-                g.setColor(selHighlightColor);
-                g.fillRect(0, (int) rect.getY(), getWidth(), (int) rect.getHeight());
+                Rectangle band = clip.intersection(new Rectangle(0, (int) rect.getY(), getWidth(), (int) rect.getHeight()));
+
+                if(!band.isEmpty()) {
+                    g.setColor(selHighlightColor);
+                    g.fillRect(band.x, band.y, band.width, band.height);
+                }
 
                 if(getSelectedText() != null) {
                     Rectangle2D startRect   = this.getUI().modelToView2D(this, getSelectionStart(), null);
@@ -329,5 +246,213 @@ public class EditorTextPane extends JTextPane {
         }
 
         super.paintComponent(g);
+
+        frameCost.record(System.nanoTime() - start, clip);
+    }
+
+    /**
+     * Repaints the lines whose painting changed, once the caret moved or the text
+     * changed.  Changes are gathered and the lines repainted later on the event
+     * thread, once the views of the text are up to date, so a burst of changes
+     * (e.g. an edit moving the caret) is handled once.
+     */
+    private class DamageHandler implements CaretListener, DocumentListener, PropertyChangeListener, Runnable {
+        // The line of the caret, as painted last (in the text pane); null if unknown
+        private Rectangle caretBand;
+
+        // The offset just past the text changed since the lines were last repainted; -1 if none
+        private int dirtyEnd = -1;
+
+        // The offset of the text changed since the lines were last repainted
+        private int dirtyStart = Integer.MAX_VALUE;
+
+        // True if lines were added or removed since the lines were last repainted
+        private boolean linesChanged;
+
+        // True if the lines are to be repainted already
+        private boolean scheduled;
+
+        // The end of the selection, as painted last
+        private int selectionEnd;
+
+        // The start of the selection, as painted last
+        private int selectionStart;
+
+        /**
+         *  Repaints the lines whose painting changed, once the caret moved
+         *
+         * @param e     the event describing the move
+         */
+        @Override
+        public void caretUpdate(CaretEvent e) {
+            schedule();
+        }
+
+        /**
+         *  Changes are only ever to attributes, which the views repaint themselves
+         *
+         * @param e     the event describing the change
+         */
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+
+        }
+
+        /**
+         *  Repaints the lines text was inserted into
+         *
+         * @param e     the event describing the insertion
+         */
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            textChanged(e);
+        }
+
+        /**
+         *  Listens to the new document of the text pane, and repaints it all
+         *
+         * @param e     the event describing the change of document
+         */
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            if(e.getOldValue() instanceof Document)
+                ((Document) e.getOldValue()).removeDocumentListener(this);
+
+            if(e.getNewValue() instanceof Document)
+                ((Document) e.getNewValue()).addDocumentListener(this);
+
+            caretBand = null;
+            repaint();
+        }
+
+        /**
+         *  Repaints the lines text was removed from
+         *
+         * @param e     the event describing the removal
+         */
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            textChanged(e);
+        }
+
+        /**
+         * Repaints the lines whose painting changed since the last time
+         */
+        @Override
+        public void run() {
+            scheduled = false;
+
+            int length  = getDocument().getLength();
+            int start   = getSelectionStart();
+            int end     = getSelectionEnd();
+
+            try {
+                Rectangle band = lineBand(getCaretPosition());
+
+                // The caret line highlight moved
+                if(!band.equals(caretBand)) {
+                    if(caretBand != null)
+                        repaint(caretBand);
+
+                    repaint(band);
+                    caretBand = band;
+                }
+
+                // Only the lines between the old and new ends of the selection changed
+                if(start != selectionStart || end != selectionEnd) {
+                    int oldStart    = Math.min(selectionStart, length);
+                    int oldEnd      = Math.min(selectionEnd, length);
+
+                    if(oldStart == oldEnd) {
+                        repaintLines(start, end);
+                    } else if(start == end) {
+                        repaintLines(oldStart, oldEnd);
+                    } else {
+                        repaintLines(Math.min(start, oldStart), Math.max(start, oldStart));
+                        repaintLines(Math.min(end, oldEnd), Math.max(end, oldEnd));
+                    }
+
+                    selectionStart  = start;
+                    selectionEnd    = end;
+                }
+
+                if(dirtyEnd >= 0) {
+                    // Every line after the edit moved
+                    if(linesChanged) {
+                        Rectangle first = lineBand(Math.min(dirtyStart, length));
+
+                        repaint(0, first.y, getWidth(), getHeight() - first.y);
+                    } else {
+                        repaintLines(Math.min(dirtyStart, length), Math.min(dirtyEnd, length));
+                    }
+                }
+            } catch(BadLocationException ex) {
+                repaint();
+            }
+
+            dirtyStart      = Integer.MAX_VALUE;
+            dirtyEnd        = -1;
+            linesChanged    = false;
+        }
+
+        /**
+         *  Returns the band across the text pane holding the line of an offset
+         *
+         * @param offset                    the offset
+         * @return                          the band of the line; empty if the text pane is not laid out
+         * @throws BadLocationException     if the offset is not within the text
+         */
+        private Rectangle lineBand(int offset) throws BadLocationException {
+            Rectangle2D r = modelToView2D(offset);
+
+            // Nothing to repaint until the text pane is laid out
+            if(r == null)
+                return new Rectangle();
+
+            return new Rectangle(0, (int) r.getY(), getWidth(), (int) r.getHeight());
+        }
+
+        /**
+         *  Repaints the lines from the line of an offset to the line of another, and
+         *  the line after it (which the selected lines may be painted over)
+         *
+         * @param start                     the offset on the first line
+         * @param end                       the offset on the last line
+         * @throws BadLocationException     if the offsets are not within the text
+         */
+        private void repaintLines(int start, int end) throws BadLocationException {
+            Rectangle first = lineBand(start);
+            Rectangle last  = lineBand(end);
+
+            repaint(0, first.y, getWidth(), last.y + 2 * last.height - first.y);
+        }
+
+        /**
+         * Repaints the lines whose painting changed once the events being handled are over
+         */
+        private void schedule() {
+            if(!scheduled) {
+                scheduled = true;
+                SwingUtilities.invokeLater(this);
+            }
+        }
+
+        /**
+         *  Records the text changed, to repaint its lines
+         *
+         * @param e     the event describing the change
+         */
+        private void textChanged(DocumentEvent e) {
+            int inserted = e.getType() == DocumentEvent.EventType.INSERT ? e.getLength() : 0;
+
+            // An insertion may move the text changed before it further down
+            dirtyStart  = Math.min(dirtyStart, e.getOffset());
+            dirtyEnd    = Math.max(dirtyEnd < 0 ? -1 : dirtyEnd + inserted, e.getOffset() + inserted);
+
+            if(e.getChange(e.getDocument().getDefaultRootElement()) != null)
+                linesChanged = true;
+
+            schedule();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,331 @@
+package main.gui.components;
+
+import main.actions.ProjectIndexer;
+import main.data.TabRegistry;
+import main.data.search.FilePathPool;
+import main.data.search.FuzzyFinder;
+import main.gui.EditorContainer;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A window to open a file of the project by typing part of its name (see
+ * FuzzyFinder), rather than expanding the FileTree down to it.  The files fitting
+ * the name best are listed as it is typed; the up and down keys move through them,
+ * and enter opens the one selected.
+ *
+ * The paths searched are the ones the ProjectIndexer keeps of the project, so the
+ * directories are not listed again for every search.  The project shown when the
+ * editor starts is only listed once the window is first shown.
+ *
+ * @author Justin Kocur
+ */
+public class FileFinderBox {
+    // The number of files listed
+    private static final int MAX_RESULTS = 50;
+
+    // How often to look again whether the files of the project were listed yet (ms)
+    private static final int WAIT_INTERVAL = 200;
+
+    private final EditorContainer editorContainer;
+
+    // The files fitting the name best, best first
+    private final JList<Path> fileList;
+
+    // The search being run; null if none was started
+    private FindWorker findWorker;
+
+    // The window holding the components
+    private final JDialog finderWindow;
+
+    // The files listed
+    private final DefaultListModel<Path> listModel;
+
+    // The result of the last search done, which the next search narrows down if it can
+    private FuzzyFinder.Result lastResult;
+
+    // Where the name is typed
+    private final JTextField nameField;
+
+    // Tells how many files fit the name, or that the files are still being listed
+    private final JLabel statusLabel;
+
+    // Searches again once the files of the project are listed
+    private final Timer waitTimer;
+
+    /**
+     *  Creates the (hidden) window to find files in
+     *
+     * @param editorContainer   the main GUI for the text editor
+     */
+    public FileFinderBox(EditorContainer editorContainer) {
+        this.editorContainer = editorContainer;
+
+        finderWindow    = new JDialog(editorContainer.getMainFrame(), "Go to File");
+        nameField       = new JTextField();
+        listModel       = new DefaultListModel<>();
+        fileList        = new JList<>(listModel);
+        statusLabel     = new JLabel(" ");
+        waitTimer       = new Timer(WAIT_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if(finderWindow.isVisible())
+                    find();
+            }
+        });
+
+        waitTimer.setRepeats(false);
+
+        constructWindow();
+        constructComponents();
+    }
+
+    /**
+     * Shows the window, with the files fitting the name typed last time
+     */
+    public void showFinderBox() {
+        ProjectIndexer indexer = editorContainer.getProjectIndexer();
+
+        if(!indexer.isOpen(getRoot()))
+            indexer.open(getRoot());
+
+        finderWindow.setLocationRelativeTo(editorContainer.getMainFrame());
+        finderWindow.setVisible(true);
+
+        nameField.selectAll();
+        nameField.requestFocusInWindow();
+
+        find();
+    }
+
+    /**
+     * Defines designated properties for each of the components belonging to the
+     * window
+     */
+    private void constructComponents() {
+        nameField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                find();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                find();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+
+            }
+        });
+
+        // The list is moved through while typing
+        nameField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                int selected = fileList.getSelectedIndex();
+
+                switch(e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        select(Math.min(selected + 1, listModel.size() - 1));
+                        e.consume();
+                        break;
+
+                    case KeyEvent.VK_UP:
+                        select(Math.max(selected - 1, 0));
+                        e.consume();
+                        break;
+
+                    case KeyEvent.VK_ENTER:
+                        open();
+                        break;
+
+                    case KeyEvent.VK_ESCAPE:
+                        finderWindow.setVisible(false);
+                        break;
+                }
+            }
+        });
+
+        fileList.setFocusable(false);
+        fileList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        fileList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Path file       = (Path) value;
+                Path parent     = getRoot().relativize(file).getParent();
+                String text     = file.getFileName() + (parent != null ? "   " + parent : "");
+
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+
+        fileList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if(e.getClickCount() == 2)
+                    open();
+            }
+        });
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(nameField, BorderLayout.NORTH);
+        panel.add(new JScrollPane(fileList), BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+        finderWindow.add(panel);
+    }
+
+    private void constructWindow() {
+        int width   = 500;
+        int height  = 400;
+
+        finderWindow.setSize(width, height);
+        finderWindow.setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+    }
+
+    /**
+     * Lists the files fitting the name typed, in the background; the search before,
+     * if still running, is left to finish unseen
+     */
+    private void find() {
+        FilePathPool pool = editorContainer.getProjectIndexer().getPaths(getRoot());
+
+        if(findWorker != null)
+            findWorker.cancel(false);
+
+        if(pool == null) {
+            statusLabel.setText("Listing the files of the project...");
+            waitTimer.restart();
+            return;
+        }
+
+        findWorker = new FindWorker(pool, nameField.getText().trim(), lastResult);
+        findWorker.execute();
+    }
+
+    /**
+     *  Returns the directory of the project, as shown by the FileTree
+     *
+     * @return  the root directory of the project
+     */
+    private Path getRoot() {
+        return editorContainer.getFileTree().getRoot().getAbsoluteFile().toPath().normalize();
+    }
+
+    /**
+     * Opens the file selected (or selects its tab, if open already), and hides the
+     * window
+     */
+    private void open() {
+        Path file = fileList.getSelectedValue();
+
+        if(file == null)
+            return;
+
+        finderWindow.setVisible(false);
+
+        TabRegistry tabs    = editorContainer.getFileData().getTabs();
+        int index           = tabs.indexOfFile(file.toFile());
+
+        if(index < 0) {
+            editorContainer.getEditorActions().openFunctionality(file.toString());
+            index = tabs.indexOfFile(file.toFile());
+        }
+
+        if(index >= 0)
+            editorContainer.getTabbedPane().setSelectedIndex(index);
+    }
+
+    /**
+     *  Selects a file of the list, scrolling to it
+     *
+     * @param index     the index of the file in the list; ignored if out of bounds
+     */
+    private void select(int index) {
+        if(index < 0 || index >= listModel.size())
+            return;
+
+        fileList.setSelectedIndex(index);
+        fileList.ensureIndexIsVisible(index);
+    }
+
+    /**
+     * Finds the files fitting a name on a background thread, then lists them
+     */
+    private class FindWorker extends SwingWorker<FuzzyFinder.Result, Void> {
+        // The name typed
+        private final String name;
+
+        // The paths searched
+        private final FilePathPool pool;
+
+        // The result of the search before, narrowed down if the name was typed on from its name
+        private final FuzzyFinder.Result previous;
+
+        // When the search started (ns)
+        private final long start;
+
+        /**
+         *  Creates the search for a name
+         *
+         * @param pool      the paths to search
+         * @param name      the name typed
+         * @param previous  the result of the search before; null if none
+         */
+        private FindWorker(FilePathPool pool, String name, FuzzyFinder.Result previous) {
+            this.pool       = pool;
+            this.name       = name;
+            this.previous   = previous;
+
+            start = System.nanoTime();
+        }
+
+        /**
+         *  Finds the files fitting the name best
+         *
+         * @return  the files found
+         */
+        @Override
+        protected FuzzyFinder.Result doInBackground() {
+            return FuzzyFinder.find(pool, name, MAX_RESULTS, previous);
+        }
+
+        /**
+         * Lists the files found, unless another search was started since
+         */
+        @Override
+        protected void done() {
+            if(isCancelled())
+                return;
+
+            try {
+                lastResult = get();
+            } catch(InterruptedException | ExecutionException ex) {
+                System.err.println(ex.getMessage());
+                return;
+            }
+
+            listModel.clear();
+
+            for(Path file : lastResult.getFiles())
+                listModel.addElement(file);
+
+            select(0);
+            statusLabel.setText(String.format("%d of %d files (%d ms)", lastResult.getMatchCount(),
+                    pool.getFileCount(), (System.nanoTime() - start) / 1_000_000));
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package main.gui.components;
+
+import main.data.document.PieceTableDocument;
+import main.data.io.MappedPageCache;
+import main.data.io.SparseLineIndex;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A read-only tab for files too large to be loaded into a text pane.  The file is
+ * memory-mapped, and the tab's text pane only ever holds the lines that fit on
+ * the screen, decoded through a MappedPageCache.  The lines of the file are
+ * indexed in the background (see SparseLineIndex), and can be scrolled through,
+ * jumped to and searched as soon as they are indexed.
+ *
+ * @author Justin Kocur
+ */
+public class PagedViewer extends JPanel {
+    // The number of milliseconds between two checks of how far the line index got
+    private static final int INDEX_POLL_DELAY = 250;
+
+    // The number of lines scrolled by one notch of the mouse wheel
+    private static final int WHEEL_SCROLL_LINES = 3;
+
+    // The mapped file, decoded a page at a time
+    private final MappedPageCache cache;
+
+    // The phrase to search for
+    private final JTextField findField;
+
+    // The search that is running, if any
+    private SwingWorker<long[], Void> findWorker;
+
+    // The first line of the file shown in the text pane
+    private long firstLine;
+
+    // Builds the line index in the background
+    private final SwingWorker<Void, Void> indexer;
+
+    // Updates the line bar and line count while the line index is built
+    private final Timer indexTimer;
+
+    // Scrolls through the lines of the file
+    private final JScrollBar lineBar;
+
+    // Shows the number of lines indexed so far
+    private final JLabel lineCountLabel;
+
+    // The line to go to
+    private final JTextField lineField;
+
+    // The byte offset of the last phrase found; -1 if none
+    private long matchPosition;
+
+    /* The line, column and length of the text to select once its line is indexed
+       and the text pane laid out; null if no text waits to be selected */
+    private long[] pendingSelection;
+
+    // Shows the result of the last search or go-to-line
+    private final JLabel statusLabel;
+
+    // Shows the lines of the file that fit on the screen
+    private final EditorTextPane textPane;
+
+    /**
+     *  Maps a file and shows its first lines in a tab's text pane, which is made
+     *  read-only.  The text pane's scroll pane is placed in the viewer.
+     *
+     * @param textPane      the text pane of the tab
+     * @param scrollPane    the scroll pane holding the text pane
+     * @param file          the file to view
+     * @throws IOException  if the file cannot be mapped
+     */
+    public PagedViewer(EditorTextPane textPane, JScrollPane scrollPane, File file) throws IOException {
+        super(new BorderLayout());
+
+        this.textPane = textPane;
+
+        cache           = new MappedPageCache(file);
+        lineBar         = new JScrollBar(JScrollBar.VERTICAL);
+        findField       = new JTextField(20);
+        lineField       = new JTextField(8);
+        lineCountLabel  = new JLabel();
+        statusLabel     = new JLabel();
+        matchPosition   = -1;
+
+        // The scroll pane no longer scrolls vertically; the line bar does instead
+        textPane.setEditable(false);
+        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_NEVER);
+        scrollPane.setWheelScrollingEnabled(false);
+        scrollPane.addMouseWheelListener(new MouseWheelListener() {
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                showLine(firstLine + (long) e.getWheelRotation() * WHEEL_SCROLL_LINES);
+            }
+        });
+        scrollPane.getViewport().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateLineCount();
+                showLine(firstLine);
+                selectPending();
+            }
+        });
+
+        lineBar.addAdjustmentListener(new AdjustmentListener() {
+            @Override
+            public void adjustmentValueChanged(AdjustmentEvent e) {
+                if(e.getValue() != firstLine) {
+                    firstLine = e.getValue();
+                    refresh();
+                }
+            }
+        });
+
+        textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_DOWN, 0), "viewer-page-down");
+        textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_UP, 0), "viewer-page-up");
+        textPane.getActionMap().put("viewer-page-down", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showLine(firstLine + getVisibleLineCount());
+            }
+        });
+        textPane.getActionMap().put("viewer-page-up", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showLine(firstLine - getVisibleLineCount());
+            }
+        });
+
+        findField.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                find();
+            }
+        });
+        lineField.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                goToLine();
+            }
+        });
+
+        // Tools shown above the text
+        JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+
+        toolBar.add(lineCountLabel);
+        toolBar.add(new JLabel("Go to line:"));
+        toolBar.add(lineField);
+        toolBar.add(new JLabel("Find:"));
+        toolBar.add(findField);
+        toolBar.add(statusLabel);
+
+        add(toolBar, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+        add(lineBar, BorderLayout.EAST);
+
+        indexTimer = new Timer(INDEX_POLL_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateLineCount();
+                selectPending();
+            }
+        });
+
+        indexer = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                cache.getLineIndex().build(cache, this::isCancelled);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                indexTimer.stop();
+                updateLineCount();
+                selectPending();
+            }
+        };
+
+        indexTimer.start();
+        indexer.execute();
+    }
+
+    /**
+     *  Returns whether a file is too large to be loaded into a text pane, and should
+     *  be opened in a viewer instead
+     *
+     * @param file  the file to open
+     * @return      true if the decoded file would take up too much of the heap
+     */
+    public static boolean isTooLargeToEdit(File file) {
+        return file.length() > Runtime.getRuntime().maxMemory() / 4 || file.length() > Integer.MAX_VALUE - 8;
+    }
+
+    /**
+     * Stops indexing and searching, and closes the file
+     */
+    public void close() {
+        indexTimer.stop();
+        indexer.cancel(true);
+
+        if(findWorker != null)
+            findWorker.cancel(true);
+
+        try {
+            cache.close();
+        } catch(IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     *  Scrolls to a line and selects text on it (e.g. an occurrence found by a search
+     *  of the file).  If the line is not indexed yet, or the viewer not laid out yet,
+     *  the text is selected once it is.
+     *
+     * @param line      the line (starting at 0)
+     * @param column    the offset of the text in the line
+     * @param length    the length of the text
+     */
+    public void select(long line, int column, int length) {
+        pendingSelection = new long[] {line, column, length};
+        selectPending();
+    }
+
+    /**
+     *  Scrolls so that a line is the first one shown, or as close as possible to
+     *  the top if it is one of the last lines of the file
+     *
+     * @param line  the line (starting at 0)
+     */
+    public void showLine(long line) {
+        long lineCount      = cache.getLineIndex().getLineCount();
+        int visible         = getVisibleLineCount();
+        long lastFirstLine  = Math.max(lineCount - visible, 0);
+
+        firstLine = Math.max(Math.min(line, lastFirstLine), 0);
+
+        /* The line bar may not know of the lines indexed since it was last updated,
+           and would move back to the last line it knows of */
+        lineBar.setValues((int) Math.min(firstLine, Integer.MAX_VALUE), visible, 0,
+                (int) Math.min(Math.max(lineCount, visible), Integer.MAX_VALUE));
+
+        refresh();
+    }
+
+    /**
+     * Searches the mapped file for the phrase in the find field in the background,
+     * starting after the last phrase found (or at the first line shown)
+     */
+    private void find() {
+        final String phrase = findField.getText();
+
+        if(phrase.isEmpty())
+            return;
+
+        if(findWorker != null)
+            findWorker.cancel(true);
+
+        final byte[] pattern        = phrase.getBytes(cache.getCharset());
+        final SparseLineIndex index = cache.getLineIndex();
+        final long from             = matchPosition >= 0 ? matchPosition + 1 : index.getLineStart(cache, firstLine);
+
+        statusLabel.setText("Searching...");
+
+        findWorker = new SwingWorker<long[], Void>() {
+            @Override
+            protected long[] doInBackground() {
+                long position = cache.find(pattern, from, this::isCancelled);
+
+                // Wrap around to the start of the file
+                if(position < 0 && from > 0 && !isCancelled())
+                    position = cache.find(pattern, 0, this::isCancelled);
+
+                if(position < 0)
+                    return null;
+
+                long line = index.getLineOfPosition(cache, position);
+
+                return new long[] {position, line, index.getLineStart(cache, line)};
+            }
+
+            @Override
+            protected void done() {
+                if(isCancelled())
+                    return;
+
+                try {
+                    long[] match = get();
+
+                    if(match == null) {
+                        matchPosition = -1;
+                        statusLabel.setText("\"" + phrase + "\" not found");
+                        return;
+                    }
+
+                    matchPosition = match[0];
+                    showLine(match[1]);
+
+                    int start = getWindowOffset(match[1]) + cache.getColumn(match[2], match[0]);
+
+                    textPane.setCaretPosition(start);
+                    textPane.getHighlighter().removeAllHighlights();
+                    textPane.getHighlighter().addHighlight(start, start + phrase.length(),
+                            new DefaultHighlighter.DefaultHighlightPainter(textPane.getSelectionColor()));
+                    statusLabel.setText(String.format("Found on line %,d", match[1] + 1));
+                } catch(InterruptedException | ExecutionException | BadLocationException ex) {
+                    System.err.println(ex.getMessage());
+                }
+            }
+        };
+
+        findWorker.execute();
+    }
+
+    /**
+     *  Returns the number of lines that fit in the text pane's viewport
+     *
+     * @return  the number of lines shown at once
+     */
+    private int getVisibleLineCount() {
+        int lineHeight = textPane.getFontMetrics(textPane.getFont()).getHeight();
+
+        return Math.max(textPane.getParent().getHeight() / lineHeight, 1);
+    }
+
+    /**
+     *  Returns the offset in the text pane at which a line of the file starts
+     *
+     * @param line  the line (starting at 0); must be one of the lines shown
+     * @return      the offset of the line in the text pane
+     */
+    private int getWindowOffset(long line) {
+        int row = (int) Math.max(line - firstLine, 0);
+
+        return textPane.getDocument().getDefaultRootElement().getElement(row).getStartOffset();
+    }
+
+    /**
+     * Scrolls to the line in the go-to-line field, and places the caret on it
+     */
+    private void goToLine() {
+        try {
+            long line = Long.parseLong(lineField.getText().trim().replace(",", "")) - 1;
+
+            if(line < 0 || line >= cache.getLineIndex().getLineCount()) {
+                statusLabel.setText("No line " + lineField.getText().trim());
+                return;
+            }
+
+            showLine(line);
+            textPane.setCaretPosition(getWindowOffset(line));
+            textPane.requestFocusInWindow();
+        } catch(NumberFormatException ex) {
+            statusLabel.setText("Not a line number");
+        }
+    }
+
+    /**
+     * Replaces the text pane's text with the lines from 'firstLine' on that fit
+     * on the screen.  The change is not undoable.
+     */
+    private void refresh() {
+        long end                = Math.min(firstLine + getVisibleLineCount(), cache.getLineIndex().getLineCount());
+        StringBuilder window    = new StringBuilder();
+
+        for(long line = firstLine; line < end; line++) {
+            if(line > firstLine)
+                window.append('\n');
+
+            window.append(cache.getLine(line));
+        }
+
+        char[] text                 = new char[window.length()];
+        PieceTableDocument document = (PieceTableDocument) textPane.getDocument();
+
+        window.getChars(0, text.length, text, 0);
+        textPane.getHighlighter().removeAllHighlights();
+        document.clear();
+        document.append(text, text.length);
+        textPane.setCaretPosition(0);
+        textPane.getNumberingSystem().setLineOffset(firstLine);
+    }
+
+    /**
+     * Selects the text waiting to be selected, if its line is indexed and the text
+     * pane laid out by now
+     */
+    private void selectPending() {
+        if(pendingSelection == null)
+            return;
+
+        SparseLineIndex index   = cache.getLineIndex();
+        long line               = pendingSelection[0];
+
+        if(line >= index.getLineCount() && !index.isComplete()) {
+            statusLabel.setText(String.format("Waiting for line %,d to be indexed...", line + 1));
+            return;
+        }
+
+        // The lines shown depend on the height of the text pane
+        if(textPane.getParent().getHeight() == 0)
+            return;
+
+        long[] selection = pendingSelection;
+
+        pendingSelection = null;
+
+        if(line >= index.getLineCount()) {
+            statusLabel.setText(String.format("No line %,d", line + 1));
+            return;
+        }
+
+        showLine(line);
+        int length  = textPane.getDocument().getLength();
+        int start   = (int) Math.min(getWindowOffset(line) + selection[1], length);
+
+        textPane.select(start, (int) Math.min(start + selection[2], length));
+        statusLabel.setText(String.format("Line %,d", line + 1));
+    }
+
+    /**
+     * Updates the line bar and line count with the number of lines indexed so far,
+     * showing the new lines if the end of the file was on the screen
+     */
+    private void updateLineCount() {
+        SparseLineIndex index   = cache.getLineIndex();
+        long lineCount          = index.getLineCount();
+        int visible             = getVisibleLineCount();
+
+        lineBar.setValues((int) Math.min(firstLine, Integer.MAX_VALUE), visible, 0,
+                (int) Math.min(Math.max(lineCount, visible), Integer.MAX_VALUE));
+        lineBar.setBlockIncrement(visible);
+
+        lineCountLabel.setText(String.format(index.isComplete() ? "%,d lines" : "%,d lines (indexing...)", lineCount));
+
+        // The last lines indexed may belong on the screen
+        if(textPane.getDocument().getDefaultRootElement().getElementCount() < visible)
+            refresh();
+    }
+}
@@ -0,0 +1,273 @@
+package main.gui.components;
+
+import main.data.TabState;
+import main.data.search.SearchResult;
+import main.gui.EditorContainer;
+
+import javax.swing.*;
+import javax.swing.text.JTextComponent;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.util.List;
+
+/**
+ * Lists the occurrences found by a search of several texts (e.g. of every open
+ * tab, or every file of the project), grouped by the text they were found in.
+ * Clicking an occurrence (or pressing Enter on it) goes to it: its tab is selected
+ * (its file is opened first if it is not open yet) and the occurrence in it selected.
+ * The panel is shown below the tabbed pane once a search starts, and hidden again
+ * by its close button.
+ *
+ * @author Justin Kocur
+ */
+public class SearchResultsPanel extends JPanel {
+    // The height of the panel when shown
+    private static final int PANEL_HEIGHT = 200;
+
+    // Hides the panel
+    private final JButton closeButton;
+
+    private final EditorContainer editorContainer;
+
+    // The groups of results, as children of a hidden root
+    private final DefaultTreeModel model;
+
+    // The root of the tree; its children are the groups
+    private final DefaultMutableTreeNode root;
+
+    // Shows what was searched for, and how many occurrences were found
+    private final JLabel titleLabel;
+
+    // Shows the groups and their results
+    private final JTree tree;
+
+    /**
+     *  Creates the (hidden) panel
+     *
+     * @param editorContainer   the main GUI application for the text editor
+     */
+    public SearchResultsPanel(EditorContainer editorContainer) {
+        super(new BorderLayout());
+
+        this.editorContainer = editorContainer;
+
+        root        = new DefaultMutableTreeNode();
+        model       = new DefaultTreeModel(root);
+        tree        = new JTree(model);
+        titleLabel  = new JLabel();
+        closeButton = new JButton("X");
+
+        constructComponents();
+        setVisible(false);
+    }
+
+    /**
+     *  Adds the results found in one text, as a group listed among the others by
+     *  its order (e.g. the position of its tab)
+     *
+     * @param source    what the results were found in: the TabState of a tab, or a File
+     * @param name      the name of the group (e.g. the name of the tab)
+     * @param order     where the group goes among the others, from the first
+     * @param count     the number of occurrences found; more than the results if not all are listed
+     * @param results   the occurrences listed, in order
+     */
+    public void addGroup(Object source, String name, int order, int count, List<SearchResult> results) {
+        Group group                 = new Group(source, name, order, count);
+        DefaultMutableTreeNode node = new DefaultMutableTreeNode(group);
+
+        for(SearchResult result : results)
+            node.add(new DefaultMutableTreeNode(result, false));
+
+        if(count > results.size())
+            node.add(new DefaultMutableTreeNode(String.format("... %d more", count - results.size()), false));
+
+        int position = root.getChildCount();
+
+        // The groups mostly come in order, so the place of a group is looked for from the end
+        while(position > 0
+                && ((Group) ((DefaultMutableTreeNode) root.getChildAt(position - 1)).getUserObject()).order > order)
+            position--;
+
+        model.insertNodeInto(node, root, position);
+        tree.expandPath(new TreePath(node.getPath()));
+    }
+
+    /**
+     *  Removes every group and shows the panel, e.g. when a new search starts
+     *
+     * @param title     the text shown above the groups (e.g. what is searched for)
+     */
+    public void clear(String title) {
+        root.removeAllChildren();
+        model.reload();
+
+        titleLabel.setText(title);
+        setVisible(true);
+    }
+
+    /**
+     *  Sets the text shown above the groups, e.g. once the search is done
+     *
+     * @param title     the text to show
+     */
+    public void setTitle(String title) {
+        titleLabel.setText(title);
+    }
+
+    /**
+     * Defines the properties of the components of the panel
+     */
+    private void constructComponents() {
+        tree.setRootVisible(false);
+        tree.setShowsRootHandles(true);
+        tree.setFont(new Font("monospaced", Font.PLAIN, 12));
+
+        closeButton.setToolTipText("Close");
+        closeButton.setFocusable(false);
+        closeButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setVisible(false);
+            }
+        });
+
+        tree.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                TreePath path = tree.getPathForLocation(e.getX(), e.getY());
+
+                if(path != null)
+                    goTo(path);
+            }
+        });
+
+        tree.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if(e.getKeyCode() == KeyEvent.VK_ENTER && tree.getSelectionPath() != null)
+                    goTo(tree.getSelectionPath());
+            }
+        });
+
+        JPanel header = new JPanel(new BorderLayout());
+        header.add(titleLabel, BorderLayout.CENTER);
+        header.add(closeButton, BorderLayout.EAST);
+
+        add(header, BorderLayout.NORTH);
+        add(new JScrollPane(tree), BorderLayout.CENTER);
+
+        setPreferredSize(new Dimension(0, PANEL_HEIGHT));
+        setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, Color.lightGray));
+    }
+
+    /**
+     *  Goes to the occurrence at a path of the tree: selects its tab (opening its
+     *  file if needed), and the occurrence in it.  Nothing happens for a group, or
+     *  a tab closed since.
+     *
+     * @param path  the path of the node clicked
+     */
+    private void goTo(TreePath path) {
+        DefaultMutableTreeNode node = (DefaultMutableTreeNode) path.getLastPathComponent();
+
+        if(!(node.getUserObject() instanceof SearchResult))
+            return;
+
+        final SearchResult result   = (SearchResult) node.getUserObject();
+        final Object source         = ((Group) ((DefaultMutableTreeNode) node.getParent()).getUserObject()).source;
+
+        if(source instanceof File) {
+            final File file = (File) source;
+            int index       = editorContainer.getFileData().getTabs().indexOfFile(file);
+
+            // A large file is still loading once opened; select the occurrence once it is in
+            if(index < 0) {
+                editorContainer.getEditorActions().openFunctionality(file.getPath(), new Runnable() {
+                    @Override
+                    public void run() {
+                        select(editorContainer.getFileData().getTabs().indexOfFile(file), result);
+                    }
+                });
+                return;
+            }
+
+            select(index, result);
+        } else {
+            select(editorContainer.getFileData().getTabs().indexOf((TabState) source), result);
+        }
+    }
+
+    /**
+     *  Selects a tab, and an occurrence in it.  In a viewer, the occurrence is found
+     *  by its line, as only the lines on the screen are in the text pane.
+     *
+     * @param index     the index of the tab; nothing is done if negative
+     * @param result    the occurrence
+     */
+    private void select(int index, SearchResult result) {
+        if(index < 0)
+            return;
+
+        editorContainer.getTabbedPane().setSelectedIndex(index);
+
+        JTextComponent textPane = editorContainer.getTextPane(index);
+        Component tab           = editorContainer.getTabbedPane().getComponentAt(index);
+
+        if(tab instanceof PagedViewer) {
+            ((PagedViewer) tab).select(result.getLine(), result.getColumn(), result.getEnd() - result.getOffset());
+        } else {
+            // The text may have been edited since it was searched
+            int length = textPane.getDocument().getLength();
+
+            textPane.select(Math.min(result.getOffset(), length), Math.min(result.getEnd(), length));
+        }
+
+        textPane.requestFocusInWindow();
+    }
+
+    /**
+     * The results found in one text
+     */
+    private static class Group {
+        // The number of occurrences found
+        private final int count;
+
+        // The name of the group
+        private final String name;
+
+        // Where the group goes among the others
+        private final int order;
+
+        // What the results were found in
+        private final Object source;
+
+        /**
+         *  Creates a group
+         *
+         * @param source    what the results were found in
+         * @param name      the name of the group
+         * @param order     where the group goes among the others
+         * @param count     the number of occurrences found
+         */
+        private Group(Object source, String name, int order, int count) {
+            this.source = source;
+            this.name   = name;
+            this.order  = order;
+            this.count  = count;
+        }
+
+        /**
+         *  Returns the group as shown in the tree: its name and number of occurrences
+         *
+         * @return  the name and the count
+         */
+        @Override
+        public String toString() {
+            return String.format("%s (%d)", name, count);
+        }
+    }
+}
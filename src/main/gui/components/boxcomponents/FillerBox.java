@@ -16,20 +16,27 @@ public class FillerBox extends Box {
     // Contains the general text for the current directory
     private final JLabel genLabel;
 
+    // Displays short status messages (e.g. how long it took to open a file)
+    private final JLabel statusLabel;
+
     /**
      *  Creates the FillerBox instance
      */
     public FillerBox() {
         super();
 
-        genLabel = new JLabel("File Path: ");
-        dirLabel = new JLabel();
+        genLabel    = new JLabel("File Path: ");
+        dirLabel    = new JLabel();
+        statusLabel = new JLabel();
 
         add(genLabel);
         add(dirLabel);
+        add(statusLabel);
 
         genLabel.setFont(new Font("arial", Font.PLAIN, 12));
         dirLabel.setFont(new Font("arial", Font.ITALIC, 12));
+        statusLabel.setFont(new Font("arial", Font.PLAIN, 12));
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(0, 20, 0, 0));
     }
 
     /**
@@ -46,6 +53,15 @@ public class FillerBox extends Box {
         dirLabel.setText(Objects.requireNonNullElse(text, "Not Set "));
     }
 
+    /**
+     *  Sets the status message shown after the file path
+     *
+     * @param text  the status message; null or "" to show none
+     */
+    public void setStatusText(String text) {
+        statusLabel.setText(Objects.requireNonNullElse(text, ""));
+    }
+
     /**
      *  Sets the color of all text in the box
      *
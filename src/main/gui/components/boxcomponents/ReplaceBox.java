@@ -1,16 +1,24 @@
 package main.gui.components.boxcomponents;
 
+import main.data.TabState;
+import main.data.document.PieceTableDocument;
+import main.data.document.TextSnapshot;
+import main.data.search.PatternCache;
+import main.data.search.RegexSearcher;
+import main.data.search.Replacer;
 import main.gui.EditorContainer;
 import main.gui.components.PopUp;
 
 import javax.swing.*;
+import javax.swing.text.DefaultCaret;
+import javax.swing.text.Position;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.Arrays;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Consists of a set of components that work cohesively to replace
@@ -18,6 +26,8 @@ import java.util.regex.Pattern;
  * which will be searched for in the text of the text pane.  Another
  * text box will be used for the user to type in the replacement for
  * the phrase typed in the other text box.
+ * The contents of the replace box in each tab (see 'ReplaceData') are kept
+ * in the tab's TabState.
  *
  * @author Justin Kocur
  */
@@ -29,42 +39,44 @@ public class ReplaceBox extends Box {
     // The main GUI application for the text editor
     private final EditorContainer editorContainer;
 
-    // The maximum number of tabs allowed open at once in the text editor
-    private final int MAX_TABS;
-
     // Contains the new phrase to replace the phrase in 'ogPhraseArea' in the text pane
     private final JTextPane newPhraseArea;
 
     // Used to store the initial phrase that is to be looked for in the text pane
     private final JTextPane ogPhraseArea;
 
+    /* Regular expression button; toggle on so that the phrase is a regular expression
+       (and the replacement may refer to its groups, e.g. '$1'), or toggle off so that
+       both are used as typed */
+    private final JButton regexButton;
+
     // Used to replace the original phrase with the new one
     private final JButton replaceButton;
 
-    // Stores information regarding the replace process
-    private final ReplaceData replaceData;
-
     // The text pane that will contain the text to scrape/ search for phrase
     private JTextPane textPane;
 
+    // Finds the occurrences to replace in the background; null if none was started
+    private ReplaceWorker worker;
+
     /**
      *  Instantiates a new ReplaceBox
      *
      * @param editorContainer   the main GUI for the text editor
+     * @param textPane          the text pane in which to replace a phrase
      */
-    public ReplaceBox(EditorContainer editorContainer, int MAX_TABS, JTextPane textPane) {
+    public ReplaceBox(EditorContainer editorContainer, JTextPane textPane) {
         super(new FlowLayout(FlowLayout.LEFT));
         setLayout(new BoxLayout(this, BoxLayout.X_AXIS));
 
         this.editorContainer = editorContainer;
-        this.MAX_TABS = MAX_TABS;
         this.textPane = textPane;
-        replaceData = new ReplaceData();
 
         ogPhraseArea    = new JTextPane();
         newPhraseArea   = new JTextPane();
 
         caseSenButton = new JButton("Aa");
+        regexButton = new JButton(".*");
         replaceButton = new JButton("Replace");
 
         constructComponents();
@@ -89,15 +101,15 @@ public class ReplaceBox extends Box {
     }
 
     /**
-     *  Removes and resets the replace box data at a specified index
+     *  Hides the replace box of a tab that is being closed; its replace data
+     *  goes away with the tab
      *
      * @param index     index in the tabbed pane
      */
     public void removeReplaceBoxAtIndex(int index) {
-        if(index < 0 || index >= MAX_TABS)
+        if(index < 0 || index >= editorContainer.getFileData().numTabsOpen())
             return;
 
-        replaceData.resetAtIndex(index);
         setVisibleAtIndex(index, false);
     }
 
@@ -107,8 +119,8 @@ public class ReplaceBox extends Box {
      * @param tabIndex      the index at which to set the String text in each text area
      */
     public void setCurrentReplace(int tabIndex) {
-        replaceData.ogText[tabIndex] = ogPhraseArea.getText();
-        replaceData.newText[tabIndex] = newPhraseArea.getText();
+        getReplaceData(tabIndex).ogText = ogPhraseArea.getText();
+        getReplaceData(tabIndex).newText = newPhraseArea.getText();
     }
 
     /**
@@ -124,10 +136,10 @@ public class ReplaceBox extends Box {
      *                  to hide the replace box
      */
     public void setTab(int index) {
-        if(index < 0 || index >= MAX_TABS)
+        if(index < 0 || index >= editorContainer.getFileData().numTabsOpen())
             return;
 
-        setVisible(replaceData.visible[index]);
+        setVisible(getReplaceData(index).visible);
     }
 
     /**
@@ -158,7 +170,7 @@ public class ReplaceBox extends Box {
         }
 
         // Set highlighted text, focus, and caret position when/ where appropriate
-        if(replaceData.visible[tabIndex]) {
+        if(getReplaceData(tabIndex).visible) {
             ogPhraseArea.selectAll();
             ogPhraseArea.requestFocus();
         }
@@ -169,9 +181,11 @@ public class ReplaceBox extends Box {
      */
     private void constructComponents() {
         caseSenButton.setToolTipText("Case Sensitive");
+        regexButton.setToolTipText("Regular Expression");
         replaceButton.setToolTipText("Replace All");
 
         setDimensions(caseSenButton, 50, 25);
+        setDimensions(regexButton, 50, 25);
         setDimensions(replaceButton, 75, 25);
 
         JScrollPane ogPhraseScrollPane = new JScrollPane(ogPhraseArea);
@@ -193,18 +207,38 @@ public class ReplaceBox extends Box {
             public void actionPerformed(ActionEvent e) {
                 int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
 
-                replaceData.matchCases[tabIndex] = !replaceData.matchCases[tabIndex];
+                getReplaceData(tabIndex).matchCase = !getReplaceData(tabIndex).matchCase;
 
-                if(replaceData.matchCases[tabIndex]) {
+                if(getReplaceData(tabIndex).matchCase) {
                     caseSenButton.setBackground(new Color(125, 150, 200));
                 } else {
                     caseSenButton.setBackground(Color.lightGray);
                 }
             }
         });
+        regexButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
+
+                getReplaceData(tabIndex).regex = !getReplaceData(tabIndex).regex;
+
+                if(getReplaceData(tabIndex).regex) {
+                    regexButton.setBackground(new Color(125, 150, 200));
+                } else {
+                    regexButton.setBackground(Color.lightGray);
+                }
+            }
+        });
         replaceButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                // The button stops the replace while the occurrences are being found
+                if(worker != null && !worker.isDone()) {
+                    worker.cancel(true);
+                    return;
+                }
+
                 // Index of the tab currently being looked at
                 int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
 
@@ -213,18 +247,31 @@ public class ReplaceBox extends Box {
                 String searchText   = ogPhraseArea.getText();
                 String replaceText  = newPhraseArea.getText();
 
-                // Phrase replaces itself
-                if(searchText.equals(replaceText))
+                // Nothing to replace, or phrase replaces itself
+                if(searchText.isEmpty() || searchText.equals(replaceText))
                     return;
 
                 String message = String.format("Replace \"%s\" with \"%s?\"", searchText, replaceText);
 
                 if(PopUp.displayConfirmMessage(editorContainer.getMainFrame(), message) == PopUp.OK_OPTION) {
-                    JTextPane textPane = editorContainer.getTextPane(tabIndex);
-                    if(replaceData.matchCases[tabIndex])
-                        textPane.setText(textPane.getText().replaceAll(Pattern.quote(searchText), replaceText));
-                    else
-                        textPane.setText(textPane.getText().replaceAll(String.format("(?i)%s", Pattern.quote(searchText)), replaceText));
+                    ReplaceData data = getReplaceData(tabIndex);
+
+                    // A file still loading is not complete yet
+                    if(!editorContainer.getTextPane(tabIndex).isEditable())
+                        return;
+
+                    try {
+                        // A pattern is compiled once, however many times it is replaced
+                        Replacer replacer = data.regex
+                                ? new Replacer(new RegexSearcher(PatternCache.compile(searchText, data.matchCase)), replaceText)
+                                : new Replacer(searchText, data.matchCase, replaceText);
+
+                        worker = new ReplaceWorker(tabIndex, replacer);
+                        worker.execute();
+                    } catch(PatternSyntaxException ex) {
+                        PopUp.displayErrorMessage(editorContainer.getMainFrame(), "Invalid regular expression:\n"
+                                + ex.getDescription());
+                    }
                 }
             }
         });
@@ -232,6 +279,7 @@ public class ReplaceBox extends Box {
         add(ogPhraseScrollPane);
         add(newPhraseScrollPane);
         add(caseSenButton);
+        add(regexButton);
         add(replaceButton);
 
         KeyAdapter keyAdapter = new KeyAdapter() {
@@ -251,6 +299,16 @@ public class ReplaceBox extends Box {
         }
     }
 
+    /**
+     *  Returns the replace data of a tab
+     *
+     * @param index     the index of the tab in the tabbed pane
+     * @return          the replace data of the tab
+     */
+    private ReplaceData getReplaceData(int index) {
+        return editorContainer.getFileData().getTabs().get(index).getReplaceData();
+    }
+
     /**
      *  Determines whether or not the replace box should be visible
      *  at a given tab in the tabbed pane
@@ -259,60 +317,165 @@ public class ReplaceBox extends Box {
      * @param flag      true if visible at this position in the tabbed pane, false if not
      */
     private void setVisibleAtIndex(int index, boolean flag) {
-        if(index < 0 || index >= MAX_TABS)
+        if(index < 0 || index >= editorContainer.getFileData().numTabsOpen())
             return;
 
-        replaceData.visible[index] = flag;
+        getReplaceData(index).visible = flag;
 
         // Set visibility here if applicable; set corresponding text pane as well
         if(index == editorContainer.getTabbedPane().getSelectedIndex()) {
-            setVisible(replaceData.visible[index]);
+            setVisible(getReplaceData(index).visible);
             setTextPane(editorContainer.getTextPane(index));
         }
     }
 
     /**
      *  Stores information regarding replacing a phrase in
-     *  the text pane
+     *  the text pane of one tab
      *
      * @author Justin Kocur
      */
-    private class ReplaceData {
+    public static class ReplaceData {
         // True if case sensitive (e.g. 'A' != 'a'), false if not (e.g. 'A' == 'a')
-        private final boolean[] matchCases;
+        private boolean matchCase;
+
+        // The text in the 'newPhraseArea'
+        private String newText;
 
-        // The text in the 'newPhraseArea' at each tab index
-        private final String[] newText;
+        // The text in the 'ogPhraseArea'
+        private String ogText;
 
-        // The text in the 'ogPhraseArea' at each tab index
-        private final String[] ogText;
+        // True if the phrase is a regular expression, false if it is replaced as typed
+        private boolean regex;
 
-        // Determines if a specified tab should allow this replace box to be visible
-        private final boolean[] visible;
+        // Determines if the tab should allow the replace box to be visible
+        private boolean visible;
 
         /**
          *  Creates a ReplaceData instance
          */
         public ReplaceData() {
-            visible     = new boolean[ReplaceBox.this.MAX_TABS];
-            matchCases  = new boolean[ReplaceBox.this.MAX_TABS];
+            ogText  = "";
+            newText = "";
+        }
+    }
+
+    /**
+     * Finds the occurrences to replace in the background, on a snapshot of the text,
+     * so a slow pattern never freezes the editor; the Replace button (showing "Cancel"
+     * meanwhile) stops it.  The occurrences are then replaced on the EDT, unless the
+     * text changed in the meantime.
+     *
+     * @author Justin Kocur
+     */
+    private class ReplaceWorker extends SwingWorker<Replacer.Replacements, Void> {
+        // The document of the tab
+        private final PieceTableDocument document;
 
-            ogText  = new String[ReplaceBox.this.MAX_TABS];
-            Arrays.fill(ogText, "");
-            newText = new String[ReplaceBox.this.MAX_TABS];
-            Arrays.fill(newText, "");
+        // Finds and replaces the occurrences
+        private final Replacer replacer;
+
+        // The time at which the replace began
+        private final long startTime;
+
+        // The tab whose text is replaced
+        private final TabState tab;
+
+        // The snapshot of the text searched
+        private final TextSnapshot text;
+
+        /**
+         *  Creates a replace of the occurrences in the text of a tab; it is run by 'execute'
+         *
+         * @param tabIndex  the index of the tab in the tabbed pane
+         * @param replacer  finds and replaces the occurrences
+         */
+        private ReplaceWorker(int tabIndex, Replacer replacer) {
+            this.replacer = replacer;
+
+            tab         = editorContainer.getFileData().getTabs().get(tabIndex);
+            document    = (PieceTableDocument) editorContainer.getTextPane(tabIndex).getDocument();
+            text        = document.snapshot();
+            startTime   = System.nanoTime();
+
+            replaceButton.setText("Cancel");
+            editorContainer.getFillerBox().setStatusText("Replacing...");
         }
 
         /**
-         *  Resets all variables to their original values
+         *  Finds the occurrences in the snapshot of the text
          *
-         * @param tabIndex  the index at which to reset the values
+         * @return  the occurrences found
          */
-        private void resetAtIndex(int tabIndex) {
-            visible[tabIndex] = false;
-            matchCases[tabIndex] = false;
-            ogText[tabIndex] = "";
-            newText[tabIndex] = "";
+        @Override
+        protected Replacer.Replacements doInBackground() {
+            return replacer.find(text);
+        }
+
+        /**
+         * Replaces the occurrences found, or shows why they were not
+         */
+        @Override
+        protected void done() {
+            replaceButton.setText("Replace");
+
+            if(isCancelled()) {
+                editorContainer.getFillerBox().setStatusText("Replace cancelled");
+                return;
+            }
+
+            Replacer.Replacements found;
+
+            try {
+                found = get();
+            } catch(ExecutionException ex) {
+                // Took too long to match, or the replacement refers to a group that does not exist
+                PopUp.displayErrorMessage(editorContainer.getMainFrame(), ex.getCause().getMessage());
+                editorContainer.getFillerBox().setStatusText("Nothing replaced");
+                return;
+            } catch(InterruptedException ex) {
+                editorContainer.getFillerBox().setStatusText("Replace cancelled");
+                return;
+            }
+
+            int tabIndex = editorContainer.getFileData().getTabs().indexOf(tab);
+
+            // Tab was closed, or its text changed, while the occurrences were found
+            if(tabIndex < 0 || editorContainer.getTextPane(tabIndex).getDocument() != document
+                    || document.getPieceTable().version() != found.getVersion()) {
+                editorContainer.getFillerBox().setStatusText("Nothing replaced: the text changed meanwhile");
+                return;
+            }
+
+            JTextPane textPane = editorContainer.getTextPane(tabIndex);
+
+            // The search box would otherwise follow each replacement on its own
+            editorContainer.getSearchBox().discardMatches(tabIndex);
+
+            /* The caret is put back in place once, rather than following (and
+               scrolling to) each replacement before it; the text around it may
+               have been replaced along with the occurrences */
+            DefaultCaret caret  = (DefaultCaret) textPane.getCaret();
+            int updatePolicy    = caret.getUpdatePolicy();
+            int caretPos        = found.mapOffset(textPane.getCaretPosition());
+
+            caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+
+            try {
+                replacer.replace(document, found);
+            } finally {
+                caret.setUpdatePolicy(updatePolicy);
+                textPane.setCaretPosition(Math.min(caretPos, document.getLength()));
+            }
+
+            int count = found.getCount();
+
+            editorContainer.getFillerBox().setStatusText(String.format("Replaced %d occurrence%s in %d ms",
+                    count, count == 1 ? "" : "s", (System.nanoTime() - startTime) / 1_000_000));
+            editorContainer.checkTextForChanges();
+
+            if(editorContainer.getSearchBox().isVisible())
+                editorContainer.getSearchBox().rehighlight(true);
         }
     }
 }
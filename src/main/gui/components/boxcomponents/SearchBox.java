@@ -1,26 +1,49 @@
 package main.gui.components.boxcomponents;
 
-import main.data.LineData;
+import main.data.TabRegistry;
+import main.data.TabState;
+import main.data.document.PieceTableDocument;
+import main.data.document.TextSnapshot;
+import main.data.search.LiteralSearcher;
+import main.data.search.MatchList;
+import main.data.search.ParallelSearch;
+import main.data.search.PatternCache;
+import main.data.search.ProjectSearch;
+import main.data.search.RegexSearcher;
+import main.data.search.SearchResult;
+import main.data.search.Searcher;
+import main.data.search.TrigramIndex;
 import main.gui.EditorContainer;
+import main.gui.components.textpanecomponents.MatchHighlightPainter;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
 import javax.swing.text.Highlighter;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Allows the user to search for a phrase (sequence of characters)
- * in the currently selected tab in the text editor
- * There should only be one SearchBox instance for the application,
- * which is why type int 'MAX_TABS' and type boolean-array 'visible'
- * (located within 'SearchData' class type) are used
+ * in the currently selected tab in the text editor, or in every open tab or every
+ * file of the project at once (listed in the SearchResultsPanel)
+ * There should only be one SearchBox instance for the application;
+ * the search of each tab (see 'SearchData') is kept in the tab's TabState
  *
  * @author Justin Kocur
  */
 public class SearchBox extends Box {
+    // Searches every open tab for the phrase
+    private final JButton allTabsButton;
 
     /* Case sensitivity button; toggle on so that cases matter (e.g. 'A' != 'a')
        or toggle off so that cases do not matter (e.g. 'A' == 'a') */
@@ -36,19 +59,20 @@ public class SearchBox extends Box {
     // The initial text of the count label when nothing is being searched
     private final String initLblTxt;
 
-    // The maximum number of tabs allowed in this text editor
-    private final int MAX_TABS;
-
     /* Allows the user to find the previous and next occurrence,
        respectively, of a phrase */
     private final JButton prevButton, nextButton;
 
+    // Searches every file under the root of the file tree for the phrase
+    private final JButton projectButton;
+
+    /* Regular expression button; toggle on so that the phrase is a regular expression
+       (e.g. 'a.c' finds 'abc'), or toggle off so that it is found as typed */
+    private final JButton regexButton;
+
     // The component in which the user will type a phrase to search for
     private final JTextPane searchBox;
 
-    // Stores information for the searches in each tab
-    private final SearchData searchData;
-
     // Used to manage highlighting for user searches
     private final SearchHighlighter searchHighlighter;
 
@@ -66,23 +90,19 @@ public class SearchBox extends Box {
      * components necessary for the search box to properly function.
      *
      * @param editorContainer   the main GUI application for the text editor
-     * @param MAX_TABS          the max number of tabs allowed in editor
      * @param textPane          the text pane used to look for a phrase given by the user
      */
-    public SearchBox(EditorContainer editorContainer, final int MAX_TABS, JTextPane textPane) {
+    public SearchBox(EditorContainer editorContainer, JTextPane textPane) {
         super(new FlowLayout(FlowLayout.LEFT));
         setLayout(new BoxLayout(this, BoxLayout.X_AXIS));
 
         this.editorContainer = editorContainer;
-        this.MAX_TABS = MAX_TABS;
         this.textPane = textPane;
 
         listener = new SearchListener();
 
         searchHighlighter = new SearchHighlighter();
 
-        searchData = new SearchData();
-
         searchBox = new JTextPane();
 
         initLblTxt = "0/0 results";
@@ -90,6 +110,9 @@ public class SearchBox extends Box {
         prevButton = new JButton("Prev");
         nextButton = new JButton("Next");
         caseSenButton = new JButton("Aa");
+        regexButton = new JButton(".*");
+        allTabsButton = new JButton("All");
+        projectButton = new JButton("Project");
 
         countLabel = new JLabel(initLblTxt);
 
@@ -116,6 +139,24 @@ public class SearchBox extends Box {
         this.textPane = textPane;
     }
 
+    /**
+     *  Forgets the instances found in a tab until it is searched again, e.g. before
+     *  many edits are made to its text at once, which are then not followed one by one
+     *
+     * @param index     the index of the tab in the tabbed pane
+     */
+    public void discardMatches(int index) {
+        SearchData data = getSearchData(index);
+
+        if(listener.isSearching(data))
+            listener.worker.cancel(true);
+
+        searchHighlighter.removeAllHighlights(index);
+
+        data.lastRecordedVersion = -1;
+        data.matches.clear();
+    }
+
     /**
      *  Returns whether or not the text in the search bar changed
      *
@@ -123,8 +164,8 @@ public class SearchBox extends Box {
      * @return          true if search text changed, false if not
      */
     public boolean isSearchChanged(int index) {
-        String lastSearchedPhrase   = SearchBox.this.searchData.currentSearches[index];
-        String currentPhrase        = SearchBox.this.searchData.matchCases[index] ? SearchBox.this.searchBox.getText()
+        String lastSearchedPhrase   = getSearchData(index).currentSearch;
+        String currentPhrase        = getSearchData(index).matchCase ? SearchBox.this.searchBox.getText()
                                     : SearchBox.this.searchBox.getText().toLowerCase();
 
         return !lastSearchedPhrase.equals(currentPhrase);
@@ -138,9 +179,10 @@ public class SearchBox extends Box {
      * @return          true if text changed, false if not
      */
     public boolean isTextChanged(int index) {
-        String wholeText = editorContainer.getTextPane(index).getText();
+        PieceTableDocument document = (PieceTableDocument) editorContainer.getTextPane(index).getDocument();
 
-        return !wholeText.equals(SearchBox.this.searchData.lastRecordedText[index]);
+        // Every change to the text bumps the version of the document
+        return document.getPieceTable().version() != getSearchData(index).lastRecordedVersion;
     }
 
     /**
@@ -152,20 +194,42 @@ public class SearchBox extends Box {
     public void rehighlight(boolean selectFlag) {
         int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
 
+        // Only the piece list is copied, not the text
         listener.findAllOccurrences(searchBox.getText(),
-                editorContainer.getTextPane(tabIndex).getText(), selectFlag);
+                ((PieceTableDocument) editorContainer.getTextPane(tabIndex).getDocument()).snapshot(), selectFlag);
+    }
+
+    /**
+     *  Selects the instance of the searched phrase nearest the caret (e.g. after
+     *  the caret was moved), without searching the text again
+     */
+    public void reselect() {
+        int tabIndex    = editorContainer.getTabbedPane().getSelectedIndex();
+        SearchData data = getSearchData(tabIndex);
+
+        // Nothing searched, or the search is still running
+        if(data.searcher == null || listener.isSearching(data) || data.matches.isEmpty())
+            return;
+
+        int caretPos = editorContainer.getTextPane(tabIndex).getCaretPosition();
+
+        data.matches.setSelected(data.matches.nearest(caretPos));
+        data.phraseCount = data.matches.getSelected() + 1;
+
+        listener.setCountLblTxt(data.phraseCount, data.totalOccurrences);
+        searchHighlighter.refresh(tabIndex);
     }
 
     /**
-     *  Removes and resets the search box data at a specified index
+     *  Hides the search box of a tab that is being closed; its search data
+     *  goes away with the tab
      *
      * @param index     index in the tabbed pane
      */
     public void removeSearchBoxAtIndex(int index) {
-        if(index < 0 || index >= MAX_TABS)
+        if(index < 0 || index >= editorContainer.getFileData().numTabsOpen())
             return;
 
-        searchData.resetAtIndex(index);
         setVisibleAtIndex(index, false);
     }
 
@@ -176,7 +240,7 @@ public class SearchBox extends Box {
      * @param tabIndex      the index at which to set the element value in the 'currentSearches' data structure
      */
     public void setCurrentSearch(int tabIndex) {
-        searchData.currentSearches[tabIndex] = searchBox.getText();
+        getSearchData(tabIndex).currentSearch = searchBox.getText();
     }
 
     /**
@@ -192,12 +256,12 @@ public class SearchBox extends Box {
      *                  to hide the search bar
      */
     public void setTab(int index) {
-        if(index < 0 || index >= MAX_TABS)
+        if(index < 0 || index >= editorContainer.getFileData().numTabsOpen())
             return;
 
-        setVisible(searchData.visible[index]);
-        searchBox.setText(searchData.currentSearches[index]);
-        countLabel.setText(searchData.results[index] != null ? searchData.results[index] : initLblTxt);
+        setVisible(getSearchData(index).visible);
+        searchBox.setText(getSearchData(index).currentSearch);
+        countLabel.setText(getSearchData(index).result != null ? getSearchData(index).result : initLblTxt);
     }
 
     /**
@@ -208,6 +272,9 @@ public class SearchBox extends Box {
         prevButton.setToolTipText("Previous Occurrence");
         nextButton.setToolTipText("Next Occurrence");
         caseSenButton.setToolTipText("Case Sensitive");
+        regexButton.setToolTipText("Regular Expression");
+        allTabsButton.setToolTipText("Find in All Tabs");
+        projectButton.setToolTipText("Find in Project");
 
         searchHistoryComboBox.addItem("");
         searchHistoryComboBox.addItemListener(new ItemListener() {
@@ -224,11 +291,17 @@ public class SearchBox extends Box {
         prevButton.addActionListener(listener);
         nextButton.addActionListener(listener);
         caseSenButton.addActionListener(listener);
+        regexButton.addActionListener(listener);
+        allTabsButton.addActionListener(listener);
+        projectButton.addActionListener(listener);
 
         // Set sizes for each component
         setDimensions(prevButton, 75, 25);
         setDimensions(nextButton, 75, 25);
         setDimensions(caseSenButton, 50, 25);
+        setDimensions(regexButton, 50, 25);
+        setDimensions(allTabsButton, 50, 25);
+        setDimensions(projectButton, 75, 25);
         setDimensions(countLabel, 75, 15);
 
         setDimensions(searchHistoryComboBox, 100, this.getHeight());
@@ -245,9 +318,12 @@ public class SearchBox extends Box {
         // Add all components to the SearchBox class type
         add(scrollPane);
         add(caseSenButton);
+        add(regexButton);
         add(countLabel);
         add(prevButton);
         add(nextButton);
+        add(allTabsButton);
+        add(projectButton);
         add(searchHistoryComboBox);
         KeyAdapter keyAdapter = new KeyAdapter() {
             @Override
@@ -284,6 +360,16 @@ public class SearchBox extends Box {
         }
     }
 
+    /**
+     *  Returns the search data of a tab
+     *
+     * @param index     the index of the tab in the tabbed pane
+     * @return          the search data of the tab
+     */
+    private SearchData getSearchData(int index) {
+        return editorContainer.getFileData().getTabs().get(index).getSearchData();
+    }
+
     /**
      *  Determines whether or not the search bar should be visible
      *  at a given tab in the tabbed pane
@@ -292,14 +378,14 @@ public class SearchBox extends Box {
      * @param flag      true if visible at this position in the tabbed pane, false if not
      */
     private void setVisibleAtIndex(int index, boolean flag) {
-        if(index < 0 || index >= MAX_TABS)
+        if(index < 0 || index >= editorContainer.getFileData().numTabsOpen())
             return;
 
-        searchData.visible[index] = flag;
+        getSearchData(index).visible = flag;
 
         // Set visibility here if applicable; set corresponding text pane as well
         if(index == editorContainer.getTabbedPane().getSelectedIndex()) {
-            setVisible(searchData.visible[index]);
+            setVisible(getSearchData(index).visible);
             setTextPane(editorContainer.getTextPane(index));
         }
     }
@@ -322,86 +408,172 @@ public class SearchBox extends Box {
         }
 
         // Set highlighted text and focus
-        if(searchData.visible[tabIndex]) {
+        if(getSearchData(tabIndex).visible) {
             searchBox.requestFocus();
             searchBox.selectAll();
         } else {
             searchHighlighter.removeAllHighlights(tabIndex);
 
-            searchData.lastRecordedText[tabIndex] = "";
+            getSearchData(tabIndex).lastRecordedVersion = -1;
+            getSearchData(tabIndex).matches.clear();
+            getSearchData(tabIndex).searcher = null;
 
-            searchData.results[tabIndex] = initLblTxt;
-            searchData.phraseCount[tabIndex] = 1;
-            searchData.totalOccurrences[tabIndex] = 0;
+            getSearchData(tabIndex).result = initLblTxt;
+            getSearchData(tabIndex).phraseCount = 1;
+            getSearchData(tabIndex).totalOccurrences = 0;
 
             countLabel.setText(initLblTxt);
         }
     }
 
     /**
-     * Stores information relating to each individual tab's search bar information
+     * Keeps the instances of the searched phrase in a tab up to date as its text is
+     * edited.  Instead of searching the whole text again, the instances after an edit
+     * are moved by the number of characters added or removed, and only the text
+     * around the edit (as far as an instance could reach into it) is searched again.
      *
      * @author Justin Kocur
      */
-    private class SearchData {
-        // Contains the current searched phrase at different tabs
-        private final String[] currentSearches;
-
-        /* The last time the text was recorded, i.e. when the prev/ next buttons
-           were used to search the text pane */
-        private final String[] lastRecordedText;
+    private class MatchUpdater implements DocumentListener {
+        // The tab whose text is listened to
+        private final TabState tab;
 
-        // True if case sensitive (e.g. 'A' != 'a'), false if not (e.g. 'A' == 'a')
-        private final boolean[] matchCases;
+        /**
+         *  Creates a listener for the text of a tab
+         *
+         * @param tab   the tab whose instances are kept up to date
+         */
+        public MatchUpdater(TabState tab) {
+            this.tab = tab;
+        }
 
-        // The number of instances a phrase is found in the text pane
-        private final int[] phraseCount;
+        @Override
+        public void changedUpdate(DocumentEvent e) {
 
-        /* The current entry over the total entries that pop up
-           when searching in the form 'a / b' */
-        private final String[] results;
+        }
 
-        // The total number of occurrences of the user-typed phrase
-        private final int[] totalOccurrences;
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            update(e.getDocument(), e.getOffset(), e.getLength(), 0);
+        }
 
-        // Determines if a specified tab should allow this search box to be visible
-        private final boolean[] visible;
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            update(e.getDocument(), e.getOffset(), 0, e.getLength());
+        }
 
         /**
-         * Initializes a SearchData instance
+         *  Updates the instances after an edit of the text
+         *
+         * @param document  the edited document
+         * @param offset    where the text was edited
+         * @param inserted  the number of characters added
+         * @param removed   the number of characters removed
          */
-        public SearchData() {
-            visible = new boolean[SearchBox.this.MAX_TABS];
+        private void update(Document document, int offset, int inserted, int removed) {
+            SearchData data = tab.getSearchData();
+
+            // Nothing searched, or the whole text is searched again anyway
+            if(data.searcher == null || data.lastRecordedVersion < 0)
+                return;
+
+            // The running search is of the text before the edit, so it is started over once looked at
+            if(listener.isSearching(data)) {
+                listener.worker.cancel(true);
+                data.lastRecordedVersion = -1;
+                return;
+            }
 
-            currentSearches = new String[SearchBox.this.MAX_TABS];
-            Arrays.fill(currentSearches, "");
+            // How far an occurrence of a pattern reaches is not known, so the text is searched again
+            if(!(data.searcher instanceof LiteralSearcher)) {
+                data.lastRecordedVersion = -1;
+                return;
+            }
+
+            LiteralSearcher searcher    = (LiteralSearcher) data.searcher;
+            MatchList matches           = data.matches;
+
+            // The text is searched again if the part around the edit could not be read
+            if(!searcher.findAgain(document, matches, offset, inserted, removed)) {
+                data.lastRecordedVersion = -1;
+                return;
+            }
+
+            data.lastRecordedVersion = ((PieceTableDocument) document).getPieceTable().version();
 
-            results = new String[SearchBox.this.MAX_TABS];
-            Arrays.fill(results, initLblTxt);
+            // The instance being looked at was edited; look at the one nearest the edit instead
+            if(matches.getSelected() < 0 && !matches.isEmpty())
+                matches.setSelected(matches.nearest(offset + inserted));
 
-            lastRecordedText = new String[SearchBox.this.MAX_TABS];
-            Arrays.fill(lastRecordedText, "");
+            data.phraseCount        = matches.getSelected() + 1;
+            data.totalOccurrences   = matches.size();
 
-            phraseCount = new int[SearchBox.this.MAX_TABS];
-            Arrays.fill(phraseCount, 1);
+            int index = editorContainer.getFileData().getTabs().indexOf(tab);
 
-            totalOccurrences = new int[SearchBox.this.MAX_TABS];
-            matchCases = new boolean[SearchBox.this.MAX_TABS];
+            if(index >= 0 && index == editorContainer.getTabbedPane().getSelectedIndex()) {
+                listener.setCountLblTxt(data.phraseCount, data.totalOccurrences);
+                searchHighlighter.update(index);
+            } else {
+                data.result = String.format("%d/%d results", data.phraseCount, data.totalOccurrences);
+            }
         }
+    }
+
+    /**
+     * Stores information relating to one tab's search bar information
+     *
+     * @author Justin Kocur
+     */
+    public static class SearchData {
+        // Contains the current searched phrase
+        private String currentSearch;
+
+        // The highlight spanning the text, painting the instances; null if not highlighted
+        private Object highlightTag;
+
+        /* The version of the document the last time the text was recorded, i.e. when
+           the prev/ next buttons were used to search the text pane; -1 if never */
+        private long lastRecordedVersion;
+
+        // True if case sensitive (e.g. 'A' != 'a'), false if not (e.g. 'A' == 'a')
+        private boolean matchCase;
+
+        // The instances of the searched phrase; the selected one is being looked at
+        private final MatchList matches;
+
+        // Paints the instances of the searched phrase; null until first searched
+        private MatchHighlightPainter painter;
+
+        // The number of instances a phrase is found in the text pane
+        private int phraseCount;
+
+        // True if the phrase is a regular expression, false if it is found as typed
+        private boolean regex;
+
+        /* The current entry over the total entries that pop up
+           when searching in the form 'a / b'; null if nothing was searched */
+        private String result;
+
+        // Finds the instances of the searched phrase; null if nothing is searched
+        private Searcher searcher;
+
+        // The total number of occurrences of the user-typed phrase
+        private int totalOccurrences;
+
+        // Keeps the instances up to date as the text is edited; null until first searched
+        private MatchUpdater updater;
+
+        // Determines if the tab should allow the search box to be visible
+        private boolean visible;
 
         /**
-         * Resets all data regarding the search information on a specified tab 'index'
-         *
-         * @param index     the tab index at which to reset the tab search information
+         * Initializes a SearchData instance
          */
-        public void resetAtIndex(int index) {
-            visible[index] = false;
-            currentSearches[index] = "";
-            results[index] = initLblTxt;
-            lastRecordedText[index] = "";
-            phraseCount[index] = 1;
-            totalOccurrences[index] = 0;
-            matchCases[index] = false;
+        public SearchData() {
+            currentSearch       = "";
+            lastRecordedVersion = -1;
+            matches             = new MatchList();
+            phraseCount         = 1;
         }
     }
 
@@ -428,67 +600,46 @@ public class SearchBox extends Box {
 
         /**
          * Highlights all character sequences in the given text pane
-         * at the specified index that matches the user-typed phrase
+         * at the specified index that matches the user-typed phrase.  A single
+         * highlight spans the text, and only the instances on the screen are
+         * looked up and painted (see MatchHighlightPainter), so there is no limit on
+         * the number of instances highlighted.
          *
-         * @param list              used for the iterator (and to reset it); goes over each element in the list to highlight
-         *                          each instance of the phrase
          * @param index             the index in the tabbed pane at which to get the highlighter
-         * @param phrase            the user-typed phrase to highlight
-         * @param selectFlag        true if text at 'selectedIndex' should be highlighted, false if text pane's 'select' method should be used
-         * @param selectedIndex     the index in the text of the text pane to highlight with the 'selectedColor' color
+         * @param selectFlag        true if the selected instance should be highlighted, false if text pane's 'select' method should be used
          */
-        public void highlightAll(LinkedList<Integer> list, int index, String phrase, boolean selectFlag, int selectedIndex) {
+        public void highlightAll(int index, boolean selectFlag) {
             removeAllHighlights(index);
 
-            Highlighter highlighter                 = SearchBox.this.editorContainer.getTextPane(index).getHighlighter();
-            Highlighter.HighlightPainter p1         = new DefaultHighlighter.DefaultHighlightPainter(phraseColor);
-            Highlighter.HighlightPainter p2         = new DefaultHighlighter.DefaultHighlightPainter(selectedColor);
-            int length                              = phrase.length();
+            JTextPane pane      = SearchBox.this.editorContainer.getTextPane(index);
+            SearchData data     = getSearchData(index);
 
-            // Go over each instance of the phrase in the text pane
-            for (int start : list) {
-                int end = start + length;
-                int addedLines = editorContainer.getFileData().isOpenedFromDir(index) ?
-                        0 : LineData.getIndexLineNumber(editorContainer.getTextPane(index), start);
+            if(data.painter == null)
+                data.painter = new MatchHighlightPainter(phraseColor, selectedColor);
 
-                try {
-                    if (start == selectedIndex) {
-                        if(selectFlag)
-                            highlighter.addHighlight(start - addedLines, end - addedLines, p2);
-                        else {
-                            editorContainer.getTextPane(index).requestFocus();
-                            editorContainer.getTextPane(index).select(start - addedLines, end - addedLines);
-                        }
-                    }
-                    else
-                        highlighter.addHighlight(start - addedLines, end - addedLines, p1);
-                } catch (BadLocationException ex) {
-                    ex.printStackTrace();
-                }
+            data.painter.setMatches(data.matches, selectFlag);
+
+            try {
+                data.highlightTag = pane.getHighlighter().addHighlight(0, pane.getDocument().getLength(),
+                        data.painter);
+            } catch (BadLocationException ex) {
+                ex.printStackTrace();
+            }
+
+            // Select the instance being looked at instead of highlighting it
+            if(!selectFlag && data.matches.getSelected() >= 0) {
+                pane.requestFocus();
+                pane.select(data.matches.getSelectedOffset(), data.matches.getEnd(data.matches.getSelected()));
             }
         }
 
         /**
-         *  Highlights part of the text in a text pane.  This method should only be used
-         *  if there are no other highlights
+         *  Repaints the instances of the phrase, e.g. once more of them are found
          *
-         * @param index             the index of the text pane in the tabbed pane
-         * @param selectedIndex     the start of the text to select
-         * @param length            the length of the text to select
+         * @param index     the index in the tabbed pane at which the text pane is located
          */
-        public void highlightSelected(int index, int selectedIndex, int length) {
-            removeAllHighlights(index); // this should only remove one highlight
-
-            Highlighter highlighter                 = SearchBox.this.editorContainer.getTextPane(index).getHighlighter();
-            Highlighter.HighlightPainter p          = new DefaultHighlighter.DefaultHighlightPainter(selectedColor);
-            int addedLines                          = editorContainer.getFileData().isOpenedFromDir(index) ?
-                                                    0 : LineData.getIndexLineNumber(editorContainer.getTextPane(index), selectedIndex);
-
-            try {
-                highlighter.addHighlight(selectedIndex - addedLines, selectedIndex + length - addedLines, p);
-            } catch (BadLocationException ex) {
-                ex.printStackTrace();
-            }
+        public void refresh(int index) {
+            SearchBox.this.editorContainer.getTextPane(index).repaint();
         }
 
         /**
@@ -498,6 +649,29 @@ public class SearchBox extends Box {
          */
         public void removeAllHighlights(int index) {
             SearchBox.this.editorContainer.getTextPane(index).getHighlighter().removeAllHighlights();
+
+            getSearchData(index).highlightTag = null;
+        }
+
+        /**
+         *  Stretches the highlight over the whole text again after the text was edited
+         *  (text added at the end is not covered by it otherwise), and repaints it
+         *
+         * @param index     the index in the tabbed pane at which the text pane is located
+         */
+        public void update(int index) {
+            JTextPane pane  = SearchBox.this.editorContainer.getTextPane(index);
+            SearchData data = getSearchData(index);
+
+            if(data.highlightTag != null) {
+                try {
+                    pane.getHighlighter().changeHighlight(data.highlightTag, 0, pane.getDocument().getLength());
+                } catch (BadLocationException ex) {
+                    ex.printStackTrace();
+                }
+            }
+
+            pane.repaint();
         }
     }
 
@@ -507,20 +681,14 @@ public class SearchBox extends Box {
      * @author Justin Kocur
      */
     private class SearchListener implements ActionListener {
-        /* Contains all starting indexes (in the String of a text pane)
-           of the designated phrase being searched for */
-        private final LinkedList<Integer> indexes;
+        // The number of characters searched before the occurrences found are shown
+        private final int SEARCH_BATCH_SIZE = 4 * 1_024 * 1_024;
 
-        // Used to easily traverse between indexes when user presses previous and next buttons
-        private ListIterator<Integer> iterator;
+        // The search of every open tab (or file of the project) running in the background; null if none ever started
+        private ResultsWorker resultsWorker;
 
-        // The last index returned by the list iterator
-        private int lastTextIndex;
-
-        /* The maximum number of occurrences that will be highlighted.
-           If the number of max occurrences is exceeded, only the currently
-           selected occurrence being looked at will be highlighted. */
-        private final int MAX_HIGHLIGHT_OCCURRENCES = 2_000;
+        // The search running in the background; null if none ever started
+        private SearchWorker worker;
 
         // The maximum number of searches the user can look at from search history
         private final int MAX_SEARCHES;
@@ -529,8 +697,6 @@ public class SearchBox extends Box {
          *  Constructs a new SearchListener instance
          */
         public SearchListener() {
-            indexes             = new LinkedList<>();
-            iterator            = indexes.listIterator();
             MAX_SEARCHES        = 10;
         }
 
@@ -555,6 +721,12 @@ public class SearchBox extends Box {
                 nextFunctionality();
             } else if(source == SearchBox.this.caseSenButton) {
                 caseSenFunctionality(tabIndex);
+            } else if(source == SearchBox.this.regexButton) {
+                regexFunctionality(tabIndex);
+            } else if(source == SearchBox.this.allTabsButton) {
+                allTabsFunctionality(tabIndex);
+            } else if(source == SearchBox.this.projectButton) {
+                projectFunctionality(tabIndex);
             }
         }
 
@@ -577,10 +749,55 @@ public class SearchBox extends Box {
             SearchBox.this.searchHistoryComboBox.insertItemAt(phrase, 1);
         }
 
+        /**
+         *  Searches every open tab for the phrase (as set in the tab currently being
+         *  looked at: case sensitive or not, a regular expression or not), listing the
+         *  occurrences in the search results panel as each tab is searched.  A search
+         *  of every tab still running is cancelled first.  Hibernated tabs are left
+         *  out (as waking them would undo the hibernation), and counted in the title
+         *  of the results.
+         *
+         * @param tabIndex  the index of the tab currently being looked at
+         */
+        private void allTabsFunctionality(int tabIndex) {
+            String phrase       = SearchBox.this.searchBox.getText();
+            Searcher searcher   = startResultsSearch(phrase, tabIndex);
+
+            if(searcher == null)
+                return;
+
+            TabRegistry registry        = editorContainer.getFileData().getTabs();
+            List<TabState> tabs         = new ArrayList<>();
+            List<TextSnapshot> texts    = new ArrayList<>();
+            int hibernated              = 0;
+
+            // Only the piece list of each tab is copied; a read-only viewer only holds a page of its file
+            for(int i = 0; i < registry.size(); i++) {
+                TabState tab = registry.get(i);
+
+                if(editorContainer.getTabHibernator().isHibernated(tab)) {
+                    hibernated++;
+                    continue;
+                }
+
+                if(tab.isReadOnly() || tab.getTextPane() == null)
+                    continue;
+
+                tabs.add(tab);
+                texts.add(((PieceTableDocument) tab.getTextPane().getDocument()).snapshot());
+            }
+
+            editorContainer.getSearchResultsPanel().clear(String.format("Searching %d tabs for '%s'...",
+                    tabs.size(), phrase));
+
+            resultsWorker = new AllTabsWorker(phrase, searcher, tabs, texts, hibernated);
+            resultsWorker.execute();
+        }
+
         private void caseSenFunctionality(int tabIndex) {
-            searchData.matchCases[tabIndex] = !searchData.matchCases[tabIndex];
+            getSearchData(tabIndex).matchCase = !getSearchData(tabIndex).matchCase;
 
-            if(searchData.matchCases[tabIndex]) {
+            if(getSearchData(tabIndex).matchCase) {
                 caseSenButton.setBackground(new Color(125, 150, 200));
             } else {
                 caseSenButton.setBackground(Color.lightGray);
@@ -590,228 +807,675 @@ public class SearchBox extends Box {
         }
 
         /**
-         *  Adds all starting indexes of the searched-for phrase in the linked list
+         *  Starts adding all starting indexes of the searched-for phrase in the match list.
+         *  The text is searched in the background, and the occurrences are shown as they
+         *  are found; a search still running is cancelled first.
          *
          * @param searchText    the text the user is searching for via the search bar
-         * @param wholeText     the text in the text pane
+         * @param wholeText     the snapshot of the text in the text pane
          * @param selectFlag    true if selected text should be highlighted, false if text pane's
          *                      'select' method should be used
          */
-        private void findAllOccurrences(String searchText, String wholeText, boolean selectFlag) {
+        private void findAllOccurrences(String searchText, TextSnapshot wholeText, boolean selectFlag) {
             // Index of the tab currently being looked at
             int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
-            SearchBox.this.searchHighlighter.removeAllHighlights(tabIndex);
 
-            lastTextIndex = 0;
-
-            setCurrentSearch(tabIndex);
+            // A new search replaces the one still running (stopping a pattern taking long to match)
+            if(worker != null)
+                worker.cancel(true);
 
-            SearchBox.this.searchData.phraseCount[tabIndex] = 1;
+            SearchBox.this.searchHighlighter.removeAllHighlights(tabIndex);
 
-            // Implicit cursor should be placed back at the beginning of the list
-            iterator = indexes.listIterator();
+            setCurrentSearch(tabIndex);
 
             // Clear all previous entries
-            while(iterator.hasNext()) {
-                iterator.next();
-                iterator.remove();
-            }
+            getSearchData(tabIndex).matches.clear();
+            getSearchData(tabIndex).searcher = null;
+
+            getSearchData(tabIndex).phraseCount = 0;
+            getSearchData(tabIndex).totalOccurrences = 0;
 
             // No search
             if(searchText.equals("")) {
-                SearchBox.this.searchData.phraseCount[tabIndex] = 0;
-                SearchBox.this.searchData.totalOccurrences[tabIndex] = 0;
                 setCountLblTxt(0, 0);
                 return;
             }
 
             addSearch(searchText);
 
-            if(!SearchBox.this.searchData.matchCases[tabIndex]) {
-                searchText = searchText.toLowerCase();
-                wholeText = wholeText.toLowerCase();
+            // A phrase that is not a valid regular expression cannot be searched for
+            try {
+                getSearchData(tabIndex).searcher = getSearchData(tabIndex).regex
+                        ? new RegexSearcher(PatternCache.compile(searchText, getSearchData(tabIndex).matchCase))
+                        : new LiteralSearcher(searchText, getSearchData(tabIndex).matchCase);
+            } catch(PatternSyntaxException ex) {
+                setCountLblTxt("Bad pattern");
+                return;
+            }
+
+            // Set the last recorded text used to find user-typed phrase
+            getSearchData(tabIndex).lastRecordedVersion = wholeText.getVersion();
+
+            // From now on the edits of the text are searched as they are made
+            if(getSearchData(tabIndex).updater == null) {
+                getSearchData(tabIndex).updater = new MatchUpdater(editorContainer.getFileData().getTabs().get(tabIndex));
+                editorContainer.getTextPane(tabIndex).getDocument().addDocumentListener(getSearchData(tabIndex).updater);
             }
 
-            int currentIndex    = wholeText.indexOf(searchText);
-            int index           = currentIndex + searchText.length();
-            int numOccurrences  = 0;
+            // The instances found are painted as they come in
+            SearchBox.this.searchHighlighter.highlightAll(tabIndex, true);
 
-            /* Search through the whole text pane; note that a character is
-               only counted once, e.g. text 'abcabca' with search term 'abca'
-               will mean the linked list will only have one item: abca|bca, where
+            /* Search through the whole text pane (without copying it); note that a
+               character is only counted once, e.g. text 'abcabca' with search term 'abca'
+               will mean the match list will only have one item: abca|bca, where
                where the loop will continue with 'bca'*/
-            while(currentIndex != -1) {
-                numOccurrences++;
-                iterator.add(index - searchText.length());
+            worker = new SearchWorker(tabIndex, wholeText, selectFlag);
+            worker.execute();
+        }
 
-                if(index < wholeText.length()) {
-                    currentIndex = wholeText.substring(index).indexOf(searchText);
-                    index += currentIndex + searchText.length();
-                } else
-                    currentIndex = -1;
+        /**
+         *  Returns whether a tab is still being searched in the background
+         *
+         * @param data  the search data of the tab
+         * @return      true if its search is running, false if not
+         */
+        private boolean isSearching(SearchData data) {
+            return worker != null && !worker.isDone() && worker.tab.getSearchData() == data;
+        }
+
+        /**
+         * Defines what the next button should do upon a user pressing it
+         */
+        private void nextFunctionality() {
+            // Index of the tab currently being looked at
+            int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
+
+            // Check if there is a next element, and advance to it
+            if(getSearchData(tabIndex).totalOccurrences > 1 && getSearchData(tabIndex).matches.selectNext()) {
+                getSearchData(tabIndex).phraseCount = getSearchData(tabIndex).matches.getSelected() + 1;
+                SearchBox.this.searchHighlighter.highlightAll(tabIndex, false);
             }
 
-            // Implicit cursor should be placed back at the beginning of the list
-            iterator = indexes.listIterator();
+            setCountLblTxt(getSearchData(tabIndex).phraseCount, getSearchData(tabIndex).totalOccurrences);
+        }
 
-            /* Set implicit cursor to where highlighted text is, or if no text highlighted, set to
-               closest instance of phrase to caret position in text */
-            String selectedText = editorContainer.getTextPane(tabIndex).getSelectedText();
-            int idx             = -1;
-            if(selectedText != null && selectedText.equals(searchText)) {
-                if(iterator.hasNext())
-                    idx = iterator.next();
+        /**
+         * Defines what the previous button should do upon a user pressing it
+         */
+        private void prevFunctionality() {
+            // Index of the tab currently being looked at
+            int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
 
-                while(iterator.hasNext() && idx != editorContainer.getTextPane(tabIndex).getSelectionStart()) {
-                    idx = iterator.next();
+            // Check if there is a previous element, and go back to it
+            if(getSearchData(tabIndex).totalOccurrences > 1 && getSearchData(tabIndex).matches.selectPrevious()) {
+                getSearchData(tabIndex).phraseCount = getSearchData(tabIndex).matches.getSelected() + 1;
+                SearchBox.this.searchHighlighter.highlightAll(tabIndex, false);
+            }
 
-                    SearchBox.this.searchData.phraseCount[tabIndex]++;
-                }
+            setCountLblTxt(getSearchData(tabIndex).phraseCount, getSearchData(tabIndex).totalOccurrences);
+        }
+
+        /**
+         *  Searches every file under the root of the file tree for the phrase (as set in
+         *  the tab currently being looked at), listing the occurrences in the search
+         *  results panel as each file is searched.  A search of every tab or file still
+         *  running is cancelled first.
+         *
+         * @param tabIndex  the index of the tab currently being looked at
+         */
+        private void projectFunctionality(int tabIndex) {
+            String phrase       = SearchBox.this.searchBox.getText();
+            Searcher searcher   = startResultsSearch(phrase, tabIndex);
+
+            if(searcher == null)
+                return;
+
+            Path root = editorContainer.getFileTree().getRoot().getAbsoluteFile().toPath();
+
+            editorContainer.getSearchResultsPanel().clear(String.format("Searching %s for '%s'...", root, phrase));
+
+            resultsWorker = new ProjectWorker(phrase, getSearchData(tabIndex).regex, searcher, root);
+            resultsWorker.execute();
+        }
+
+        /**
+         *  Toggles whether the phrase is a regular expression, and searches for it again
+         *
+         * @param tabIndex  the index of the tab currently being looked at
+         */
+        private void regexFunctionality(int tabIndex) {
+            getSearchData(tabIndex).regex = !getSearchData(tabIndex).regex;
 
-                lastTextIndex = idx;
+            if(getSearchData(tabIndex).regex) {
+                regexButton.setBackground(new Color(125, 150, 200));
+            } else {
+                regexButton.setBackground(Color.lightGray);
             }
 
-            // Find closest instance of phrase to caret position
-            else {
-                int caretPos    = editorContainer.getTextPane(tabIndex).getCaretPosition();
-                int prevIdx     = 0;
-                int length      = searchText.length();
+            rehighlight(true);
+        }
 
-                while(iterator.hasNext()) {
-                    prevIdx = idx;
-                    idx     = iterator.next();
+        /**
+         *  Sets the text on the count label.  Used for updating the current
+         *  entry being looked at
+         *
+         * @param count             the current entry being looked at
+         * @param occurrences       the maximum number of times the user-looked-up
+         *                          phrase was found in the text pane
+         */
+        private void setCountLblTxt(int count, int occurrences) {
+            int index = editorContainer.getTabbedPane().getSelectedIndex();
+            getSearchData(index).result = String.format("%d/%d results", count, occurrences);
 
-                    // Position found
-                    if(prevIdx + length <= caretPos && idx >= caretPos) {
-                        // Caret closer to prevIdx
-                        if(caretPos - prevIdx + length - 1 <= idx - caretPos) {
-                            iterator.previous();
-                            idx = prevIdx;
-                            SearchBox.this.searchData.phraseCount[tabIndex]--;
-                        }
-                        break;
-                    }
+            SearchBox.this.countLabel.setText(getSearchData(index).result);
+        }
 
-                    if(iterator.hasNext())
-                        SearchBox.this.searchData.phraseCount[tabIndex]++;
-                }
+        /**
+         *  Sets the text on the count label to a message instead of a count, e.g.
+         *  if the phrase could not be searched for
+         *
+         * @param message   the message to show
+         */
+        private void setCountLblTxt(String message) {
+            int index = editorContainer.getTabbedPane().getSelectedIndex();
+            getSearchData(index).result = message;
 
-                lastTextIndex = idx;
-            }
-
-            // Highlight appropriately
-            if(indexes.size() > 0) {
-                if(numOccurrences <= MAX_HIGHLIGHT_OCCURRENCES) {
-                    if (idx == -1)
-                        SearchBox.this.searchHighlighter.highlightAll(indexes, tabIndex, searchText, selectFlag, indexes.getFirst());
-                    else
-                        SearchBox.this.searchHighlighter.highlightAll(indexes, tabIndex, searchText, selectFlag, idx);
-                } else {
-                    if (idx == -1)
-                        SearchBox.this.searchHighlighter.highlightSelected(tabIndex, indexes.getFirst(), searchText.length());
-                    else
-                        SearchBox.this.searchHighlighter.highlightSelected(tabIndex, idx, searchText.length());
-                }
+            SearchBox.this.countLabel.setText(getSearchData(index).result);
+        }
+
+        /**
+         *  Gets ready to search every open tab or file for a phrase: cancels the search
+         *  of every tab or file still running, and finds the phrase as set in the tab
+         *  currently being looked at
+         *
+         * @param phrase    the phrase to search for
+         * @param tabIndex  the index of the tab currently being looked at
+         * @return          finds the occurrences of the phrase; null if there is nothing to search for
+         */
+        private Searcher startResultsSearch(String phrase, int tabIndex) {
+            if(phrase.equals(""))
+                return null;
+
+            if(resultsWorker != null) {
+                resultsWorker.cancelSearch();
+                resultsWorker.cancel(true);
             }
 
-            if(numOccurrences == 0)
-                setCountLblTxt(0, numOccurrences);
-            else
-                setCountLblTxt(SearchBox.this.searchData.phraseCount[tabIndex], numOccurrences);
+            Searcher searcher;
 
-            SearchBox.this.searchData.totalOccurrences[tabIndex] = numOccurrences;
+            try {
+                searcher = getSearchData(tabIndex).regex
+                        ? new RegexSearcher(PatternCache.compile(phrase, getSearchData(tabIndex).matchCase))
+                        : new LiteralSearcher(phrase, getSearchData(tabIndex).matchCase);
+            } catch(PatternSyntaxException ex) {
+                setCountLblTxt("Bad pattern");
+                return null;
+            }
 
-            // Set the last recorded text used to find user-typed phrase
-            SearchBox.this.searchData.lastRecordedText[tabIndex] = wholeText;
+            addSearch(phrase);
+            return searcher;
+        }
 
-            // Still 0, set to first index
-            if(numOccurrences != 0 && lastTextIndex == 0)
-                lastTextIndex = indexes.getFirst();
+        /**
+         * Searches every open tab in the background, all at once (see ParallelSearch),
+         * and lists the occurrences found in each tab on the EDT once it was searched
+         *
+         * @author Justin Kocur
+         */
+        private class AllTabsWorker extends ResultsWorker {
+            // The number of hibernated tabs left out
+            private final int hibernated;
+
+            // Searches the texts of the tabs
+            private final ParallelSearch search;
+
+            // The tabs searched
+            private final List<TabState> tabs;
+
+            // The snapshots of the texts of the tabs, in the same order
+            private final List<TextSnapshot> texts;
+
+            /**
+             *  Creates a search of several tabs; it is run by 'execute'
+             *
+             * @param phrase        the phrase searched for
+             * @param searcher      finds the occurrences of the phrase
+             * @param tabs          the tabs to search
+             * @param texts         the snapshots of the texts of the tabs, in the same order
+             * @param hibernated    the number of hibernated tabs left out
+             */
+            private AllTabsWorker(String phrase, Searcher searcher, List<TabState> tabs, List<TextSnapshot> texts,
+                    int hibernated) {
+                super(phrase);
+
+                this.tabs       = tabs;
+                this.texts      = texts;
+                this.hibernated = hibernated;
+
+                search = new ParallelSearch(searcher, new ParallelSearch.Listener() {
+                    @Override
+                    public void found(int index, int count, List<SearchResult> results) {
+                        // Tabs without any occurrences are left out
+                        if(count > 0)
+                            publish(new Found(tabs.get(index), tabs.get(index).getName(), index, count, results));
+                    }
+                });
+            }
+
+            /**
+             * Cancels the search of the tabs not searched yet
+             */
+            @Override
+            protected void cancelSearch() {
+                search.cancel();
+            }
+
+            /**
+             *  Searches the texts of the tabs, publishing the occurrences of each tab
+             *  once it was searched
+             *
+             * @return  nothing
+             */
+            @Override
+            protected Void doInBackground() {
+                search.search(texts);
+                return null;
+            }
+
+            /**
+             *  Returns what was searched, e.g. to show with the number of occurrences found
+             *
+             * @return  the number of tabs searched (and of hibernated tabs left out)
+             */
+            @Override
+            protected String getSearched() {
+                if(hibernated > 0)
+                    return String.format("%d tabs (%d hibernated, not searched)", tabs.size(), hibernated);
+
+                return String.format("%d tabs", tabs.size());
+            }
         }
 
         /**
-         * Defines what the next button should do upon a user pressing it
+         * Searches every file under a directory in the background, several at once
+         * (see ProjectSearch), and lists the occurrences found in each file on the EDT
+         * once it was searched
+         *
+         * @author Justin Kocur
          */
-        private void nextFunctionality() {
-            // Index of the tab currently being looked at
-            int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
+        private class ProjectWorker extends ResultsWorker {
+            // The files the index narrowed the search down to; null if every file is searched
+            private List<Path> candidates;
+
+            // The number of files indexed, if the directory is indexed
+            private int indexed;
+
+            // True if the phrase is a regular expression, false if not
+            private final boolean regex;
+
+            // The directory searched
+            private final Path root;
+
+            // Searches the files
+            private final ProjectSearch search;
+
+            /**
+             *  Creates a search of the files under a directory; it is run by 'execute'
+             *
+             * @param phrase    the phrase searched for
+             * @param regex     true if the phrase is a regular expression, false if not
+             * @param searcher  finds the occurrences of the phrase
+             * @param root      the directory to search
+             */
+            private ProjectWorker(String phrase, boolean regex, Searcher searcher, Path root) {
+                super(phrase);
+
+                this.regex  = regex;
+                this.root   = root;
+
+                search = new ProjectSearch(searcher, new ProjectSearch.Listener() {
+                    @Override
+                    public void found(int index, Path file, int count, List<SearchResult> results) {
+                        publish(new Found(file.toFile(), root.relativize(file).toString(), index, count, results));
+                    }
+                });
+            }
+
+            /**
+             * Stops walking the directory, and cancels the search of the files not searched yet
+             */
+            @Override
+            protected void cancelSearch() {
+                search.cancel();
+            }
 
-            // The phrase currently in the search bar
-            String currentPhrase = SearchBox.this.searchData.matchCases[tabIndex] ? SearchBox.this.searchBox.getText()
-                    : SearchBox.this.searchBox.getText().toLowerCase();
+            /**
+             *  Searches the files the index of the directory narrows the search down to,
+             *  or walks the whole directory if it is not indexed (yet), publishing the
+             *  occurrences of each file once it was searched
+             *
+             * @return              nothing
+             * @throws IOException  if the directory cannot be walked
+             */
+            @Override
+            protected Void doInBackground() throws IOException {
+                TrigramIndex index = editorContainer.getProjectIndexer().getIndex(root);
 
-            // Check if there is a next element
-            if(iterator.hasNext() && SearchBox.this.searchData.totalOccurrences[tabIndex] > 1) {
-                int tempIdx = iterator.next();
+                if(index != null) {
+                    indexed     = index.getFileCount();
+                    candidates  = index.candidates(getPhrase(), regex);
+                }
 
-                // Handle what happens at end of iterator
-                if(lastTextIndex == tempIdx)
-                    lastTextIndex = iterator.next();
+                if(candidates != null)
+                    search.search(candidates);
                 else
-                    lastTextIndex = tempIdx;
+                    search.search(root);
 
-                // Advance implicit cursor
-                SearchBox.this.searchData.phraseCount[tabIndex]++;
-                if(SearchBox.this.searchData.totalOccurrences[tabIndex] <= MAX_HIGHLIGHT_OCCURRENCES)
-                    SearchBox.this.searchHighlighter.highlightAll(indexes, tabIndex, currentPhrase, false, lastTextIndex);
-                else
-                    SearchBox.this.searchHighlighter.highlightSelected(tabIndex, lastTextIndex, currentPhrase.length());
+                return null;
             }
 
-            if(SearchBox.this.searchData.totalOccurrences[tabIndex] == 0)
-                setCountLblTxt(0, SearchBox.this.searchData.totalOccurrences[tabIndex]);
-            else
-                setCountLblTxt(SearchBox.this.searchData.phraseCount[tabIndex], SearchBox.this.searchData.totalOccurrences[tabIndex]);
+            /**
+             *  Returns what was searched, e.g. to show with the number of occurrences found
+             *
+             * @return  the number of files searched (and skipped)
+             */
+            @Override
+            protected String getSearched() {
+                if(candidates != null)
+                    return String.format("%d of %d indexed files", search.getSearched(), indexed);
+
+                return String.format("%d files (%d skipped)", search.getSearched(), search.getSkipped());
+            }
         }
 
         /**
-         * Defines what the previous button should do upon a user pressing it
+         * Searches several tabs or files in the background, and lists the occurrences
+         * found in each one on the EDT once it was searched
+         *
+         * @author Justin Kocur
          */
-        private void prevFunctionality() {
-            // Index of the tab currently being looked at
-            int tabIndex = editorContainer.getTabbedPane().getSelectedIndex();
+        private abstract class ResultsWorker extends SwingWorker<Void, ResultsWorker.Found> {
+            // The phrase searched for
+            private final String phrase;
 
-            // The phrase currently in the search bar
-            String currentPhrase = SearchBox.this.searchData.matchCases[tabIndex] ? SearchBox.this.searchBox.getText()
-                    : SearchBox.this.searchBox.getText().toLowerCase();
+            // When the search started (ms)
+            private final long start;
 
-            // Check if there is a previous element
-            if(iterator.hasPrevious() && SearchBox.this.searchData.totalOccurrences[tabIndex] > 1) {
-                int tempIdx = iterator.previous();
+            // The number of occurrences found so far
+            private int total;
 
-                // Handle what happens at end of iterator
-                if(lastTextIndex == tempIdx)
-                    lastTextIndex = iterator.previous();
-                else
-                    lastTextIndex = tempIdx;
+            /**
+             *  Creates a search; it is run by 'execute'
+             *
+             * @param phrase    the phrase searched for
+             */
+            private ResultsWorker(String phrase) {
+                this.phrase = phrase;
 
-                // Advance implicit cursor
-                SearchBox.this.searchData.phraseCount[tabIndex]--;
-                if(SearchBox.this.searchData.totalOccurrences[tabIndex] <= MAX_HIGHLIGHT_OCCURRENCES)
-                    SearchBox.this.searchHighlighter.highlightAll(indexes, tabIndex, currentPhrase, false, lastTextIndex);
-                else
-                    SearchBox.this.searchHighlighter.highlightSelected(tabIndex, lastTextIndex, currentPhrase.length());
+                start = System.currentTimeMillis();
+            }
+
+            /**
+             *  Returns the phrase searched for
+             *
+             * @return  the phrase searched for
+             */
+            protected String getPhrase() {
+                return phrase;
+            }
+
+            /**
+             * Cancels the search of the tabs or files not searched yet (the worker itself
+             * is cancelled by 'cancel')
+             */
+            protected abstract void cancelSearch();
+
+            /**
+             *  Returns what was searched, e.g. to show with the number of occurrences found
+             *
+             * @return  the number of tabs or files searched
+             */
+            protected abstract String getSearched();
+
+            /**
+             *  Lists the occurrences found in the tabs or files searched since last time
+             *
+             * @param found     the occurrences found in each tab or file
+             */
+            @Override
+            protected void process(List<Found> found) {
+                if(isCancelled())
+                    return;
+
+                for(Found results : found) {
+                    editorContainer.getSearchResultsPanel().addGroup(results.source, results.name, results.order,
+                            results.count, results.results);
+
+                    total += results.count;
+                }
+            }
+
+            /**
+             * Shows how many occurrences were found, and how long it took
+             */
+            @Override
+            protected void done() {
+                if(isCancelled())
+                    return;
+
+                try {
+                    get();
+                } catch(ExecutionException ex) {
+                    // A pattern that takes too long to match in one of the tabs is given up on
+                    if(ex.getCause() instanceof RegexSearcher.BudgetExceededException) {
+                        editorContainer.getSearchResultsPanel().setTitle(String.format("Timed out searching for '%s'",
+                                phrase));
+                    } else {
+                        editorContainer.getSearchResultsPanel().setTitle(String.format("Could not search for '%s': %s",
+                                phrase, ex.getCause().getMessage()));
+                    }
+
+                    return;
+                } catch(InterruptedException ex) {
+                    System.err.println(ex.getMessage());
+                    return;
+                }
+
+                editorContainer.getSearchResultsPanel().setTitle(String.format("%d results for '%s' in %s (%d ms)",
+                        total, phrase, getSearched(), System.currentTimeMillis() - start));
             }
 
-            if(SearchBox.this.searchData.totalOccurrences[tabIndex] == 0)
-                setCountLblTxt(0, SearchBox.this.searchData.totalOccurrences[tabIndex]);
-            else
-                setCountLblTxt(SearchBox.this.searchData.phraseCount[tabIndex], SearchBox.this.searchData.totalOccurrences[tabIndex]);
+            /**
+             * The occurrences found in one tab or file
+             */
+            protected class Found {
+                // The number of occurrences found
+                private final int count;
+
+                // The name of the tab or file
+                private final String name;
+
+                // Where the tab or file goes among the others listed
+                private final int order;
+
+                // The occurrences listed (the first ones found)
+                private final List<SearchResult> results;
+
+                // The tab (TabState) or file (File) searched
+                private final Object source;
+
+                /**
+                 *  Creates the occurrences of a tab or file
+                 *
+                 * @param source    the tab (TabState) or file (File) searched
+                 * @param name      the name of the tab or file
+                 * @param order     where the tab or file goes among the others listed
+                 * @param count     the number of occurrences found
+                 * @param results   the occurrences listed
+                 */
+                protected Found(Object source, String name, int order, int count, List<SearchResult> results) {
+                    this.source     = source;
+                    this.name       = name;
+                    this.order      = order;
+                    this.count      = count;
+                    this.results    = results;
+                }
+            }
         }
 
         /**
-         *  Sets the text on the count label.  Used for updating the current
-         *  entry being looked at
+         * Searches the text of a tab in the background, a batch of characters at a time,
+         * and shows the occurrences of each batch on the EDT as they are found
          *
-         * @param count             the current entry being looked at
-         * @param occurrences       the maximum number of times the user-looked-up
-         *                          phrase was found in the text pane
+         * @author Justin Kocur
          */
-        private void setCountLblTxt(int count, int occurrences) {
-            int index = editorContainer.getTabbedPane().getSelectedIndex();
-            searchData.results[index] = String.format("%d/%d results", count, occurrences);
+        private class SearchWorker extends SwingWorker<Void, MatchList> {
+            // Finds the occurrences of the phrase
+            private final Searcher searcher;
+
+            // True if the selected occurrence should be highlighted, false if it should be selected
+            private final boolean selectFlag;
+
+            // The tab being searched
+            private final TabState tab;
+
+            // The snapshot of the text being searched
+            private final TextSnapshot text;
+
+            /**
+             *  Creates a search of the text of a tab; it is run by 'execute'
+             *
+             * @param tabIndex      the index of the tab in the tabbed pane
+             * @param text          the snapshot of the text to search
+             * @param selectFlag    true if the selected occurrence should be highlighted, false
+             *                      if text pane's 'select' method should be used
+             */
+            private SearchWorker(int tabIndex, TextSnapshot text, boolean selectFlag) {
+                this.text       = text;
+                this.selectFlag = selectFlag;
+
+                tab         = editorContainer.getFileData().getTabs().get(tabIndex);
+                searcher    = getSearchData(tabIndex).searcher;
+            }
+
+            /**
+             *  Searches the text, publishing the occurrences found in each batch
+             *
+             * @return  nothing
+             */
+            @Override
+            protected Void doInBackground() {
+                Searcher.Scan scan = searcher.scan(text);
+
+                while(!scan.isDone() && !isCancelled()) {
+                    MatchList batch = new MatchList();
+
+                    scan.next(batch, SEARCH_BATCH_SIZE);
+
+                    if(!batch.isEmpty())
+                        publish(batch);
+                }
+
+                return null;
+            }
+
+            /**
+             *  Adds the occurrences found to the match list, painting them, and shows
+             *  how many were found so far
+             *
+             * @param batches   the occurrences found in each batch
+             */
+            @Override
+            protected void process(List<MatchList> batches) {
+                // Replaced by a newer search, or the tab is no longer looked at
+                if(isCancelled() || !isShown())
+                    return;
+
+                int tabIndex        = editorContainer.getTabbedPane().getSelectedIndex();
+                MatchList matches   = tab.getSearchData().matches;
+
+                for(MatchList batch : batches)
+                    matches.addAll(batch);
+
+                SearchBox.this.searchHighlighter.refresh(tabIndex);
+
+                int caretPos = editorContainer.getTextPane(tabIndex).getCaretPosition();
 
-            SearchBox.this.countLabel.setText(searchData.results[index]);
+                setCountLblTxt(matches.nearest(caretPos) + 1, matches.size());
+            }
+
+            /**
+             * Selects the occurrence being looked at once the whole text was searched
+             */
+            @Override
+            protected void done() {
+                if(isCancelled())
+                    return;
+
+                try {
+                    get();
+                } catch(ExecutionException ex) {
+                    // A pattern that takes too long to match is given up on
+                    if(ex.getCause() instanceof RegexSearcher.BudgetExceededException) {
+                        tab.getSearchData().matches.clear();
+
+                        if(isShown()) {
+                            SearchBox.this.searchHighlighter.refresh(editorContainer.getTabbedPane().getSelectedIndex());
+                            setCountLblTxt("Timed out");
+                        }
+                    } else {
+                        System.err.println(ex.getMessage());
+                    }
+
+                    return;
+                } catch(InterruptedException ex) {
+                    System.err.println(ex.getMessage());
+                    return;
+                }
+
+                // The tab is searched again once it is looked at
+                if(!isShown()) {
+                    tab.getSearchData().lastRecordedVersion = -1;
+                    return;
+                }
+
+                int tabIndex        = editorContainer.getTabbedPane().getSelectedIndex();
+                MatchList matches   = tab.getSearchData().matches;
+                int numOccurrences  = matches.size();
+
+                /* Select the highlighted text, or if no text highlighted (or it is not an
+                   instance of the phrase), the closest instance of phrase to caret position in text */
+                JTextPane pane = editorContainer.getTextPane(tabIndex);
+
+                if(numOccurrences > 0) {
+                    int selected = matches.lowerBound(pane.getSelectionStart());
+
+                    if(selected == numOccurrences || matches.get(selected) != pane.getSelectionStart()
+                            || matches.getEnd(selected) != pane.getSelectionEnd())
+                        selected = matches.nearest(pane.getCaretPosition());
+
+                    matches.setSelected(selected);
+
+                    // Highlight appropriately
+                    SearchBox.this.searchHighlighter.highlightAll(tabIndex, selectFlag);
+                }
+
+                getSearchData(tabIndex).phraseCount = matches.getSelected() + 1;
+                getSearchData(tabIndex).totalOccurrences = numOccurrences;
+
+                setCountLblTxt(getSearchData(tabIndex).phraseCount, numOccurrences);
+            }
+
+            /**
+             *  Returns whether the tab being searched is the one being looked at
+             *
+             * @return  true if the tab is selected, false if not (or closed)
+             */
+            private boolean isShown() {
+                int index = editorContainer.getFileData().getTabs().indexOf(tab);
+
+                return index >= 0 && index == editorContainer.getTabbedPane().getSelectedIndex();
+            }
         }
     }
 }
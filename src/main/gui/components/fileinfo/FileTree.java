@@ -144,6 +144,15 @@ public class FileTree {
         tree.setBackground(color);
     }
 
+    /**
+     *  Returns the directory shown by the file tree, e.g. to search every file of the project
+     *
+     * @return  the root directory of the file tree
+     */
+    public File getRoot() {
+        return (File) tree.getModel().getRoot();
+    }
+
     public JScrollPane getScrollableTree() {
         return scrollPane;
     }
@@ -0,0 +1,153 @@
+package main.gui.components.textpanecomponents;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.DocumentFilter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Segment;
+
+/**
+ * Completes the pairs of quotes and brackets typed in a text pane:
+ *
+ *  - typing an opening character adds its closing one after the caret;
+ *  - typing an opening character while text is selected wraps the selection in the pair;
+ *  - typing a closing character right before the same character only moves the caret
+ *    past it (unless escaped by a '\');
+ *  - deleting an opening character right before its closing one deletes both.
+ *
+ * The pairs are looked up in a table, and the characters around the caret are read
+ * one at a time through a Segment kept by the filter, which points straight into
+ * the content of the document: nothing is copied, however long the text is, and
+ * typing a character allocates nothing beyond what the document does itself.
+ *
+ * @author Justin Kocur
+ */
+public class AutoPairFilter extends DocumentFilter {
+    // The characters that close a pair, by the index of the pair
+    private static final String CLOSING = "\"')]}";
+
+    // Each closing character as a String, by the index of the pair
+    private static final String[] CLOSING_TEXTS = {"\"", "'", ")", "]", "}"};
+
+    // The characters that open a pair, by the index of the pair
+    private static final String OPENING = "\"'([{";
+
+    // Each pair as a String, by the index of the pair
+    private static final String[] PAIR_TEXTS = {"\"\"", "''", "()", "[]", "{}"};
+
+    // Points at the character read last; reused for every character read
+    private final Segment segment;
+
+    // The text pane the pairs are completed in
+    private final JTextComponent textPane;
+
+    /**
+     *  Creates a filter completing the pairs typed in a text pane
+     *
+     * @param textPane  the text pane; the filter is set on its document
+     */
+    public AutoPairFilter(JTextComponent textPane) {
+        this.textPane = textPane;
+
+        segment = new Segment();
+        segment.setPartialReturn(true);
+    }
+
+    /**
+     *  Removes text, along with the closing character of a pair if its opening
+     *  character is the only one removed
+     *
+     * @param fb                        used to remove the text from the document
+     * @param offset                    the offset of the text removed
+     * @param length                    the number of characters removed
+     * @throws BadLocationException     if the text is not within the document
+     */
+    @Override
+    public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+        Document document   = fb.getDocument();
+        boolean selected    = textPane.getSelectionStart() != textPane.getSelectionEnd();
+
+        if(length == 1 && !selected && offset + 1 < document.getLength()) {
+            int pair = OPENING.indexOf(charAt(document, offset));
+
+            if(pair >= 0 && charAt(document, offset + 1) == CLOSING.charAt(pair))
+                length++;
+        }
+
+        super.remove(fb, offset, length);
+    }
+
+    /**
+     *  Replaces text, completing the pair if an opening character is typed, and
+     *  moving over the closing character of a pair if it is typed again
+     *
+     * @param fb                        used to change the document
+     * @param offset                    the offset of the text replaced
+     * @param length                    the number of characters replaced
+     * @param text                      the text typed
+     * @param attrs                     the attributes of the text
+     * @throws BadLocationException     if the text is not within the document
+     */
+    @Override
+    public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+            throws BadLocationException {
+        // Only a single character typed is looked at
+        if(text == null || text.length() != 1) {
+            super.replace(fb, offset, length, text, attrs);
+            return;
+        }
+
+        Document document   = fb.getDocument();
+        char typed          = text.charAt(0);
+        int pair            = OPENING.indexOf(typed);
+        int start           = textPane.getSelectionStart();
+        int end             = textPane.getSelectionEnd();
+
+        // Text selected: an opening character wraps it in the pair
+        if(start != end) {
+            if(pair < 0) {
+                super.replace(fb, offset, length, text, attrs);
+                return;
+            }
+
+            fb.insertString(start, text, attrs);
+            fb.insertString(end + 1, CLOSING_TEXTS[pair], attrs);
+            textPane.setSelectionEnd(end + 1);
+            return;
+        }
+
+        // Closing character already there: move over it, unless escaped
+        if(offset < document.getLength() && CLOSING.indexOf(typed) >= 0 && charAt(document, offset) == typed) {
+            if(offset > 0 && charAt(document, offset - 1) == '\\')
+                super.replace(fb, offset, length, text, attrs);
+            else
+                textPane.setCaretPosition(offset + 1);
+
+            return;
+        }
+
+        if(pair < 0) {
+            super.replace(fb, offset, length, text, attrs);
+            return;
+        }
+
+        // The pair is added at once, so it is undone at once
+        fb.replace(offset, length, PAIR_TEXTS[pair], attrs);
+        textPane.setCaretPosition(offset + 1);
+    }
+
+    /**
+     *  Reads a character of a document, without copying the text around it
+     *
+     * @param document                  the document
+     * @param offset                    the offset of the character
+     * @return                          the character
+     * @throws BadLocationException     if the offset is not within the document
+     */
+    private char charAt(Document document, int offset) throws BadLocationException {
+        document.getText(offset, 1, segment);
+
+        return segment.array[segment.offset];
+    }
+}
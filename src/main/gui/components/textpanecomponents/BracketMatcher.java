@@ -0,0 +1,124 @@
+package main.gui.components.textpanecomponents;
+
+import main.data.document.PieceTableDocument;
+
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+
+/**
+ * Highlights the bracket next to the caret along with the bracket matching it,
+ * and moves the caret over to the matching bracket when asked.  The match is
+ * looked up in the BracketIndex of the document, so moving the caret never reads
+ * the text between the two brackets.
+ *
+ * The bracket right after the caret is looked at first, then the one right before it.
+ *
+ * @author Justin Kocur
+ */
+public class BracketMatcher implements CaretListener {
+    // Paints the two brackets
+    private final Highlighter.HighlightPainter painter;
+
+    // The highlights of the two brackets; null if not highlighted
+    private Object[] tags;
+
+    // The text pane the brackets are matched in
+    private final JTextComponent textPane;
+
+    /**
+     *  Creates a matcher highlighting the brackets next to the caret of a text pane
+     *
+     * @param textPane  the text pane; the matcher listens to its caret
+     * @param color     the color to paint the brackets
+     */
+    public BracketMatcher(JTextComponent textPane, Color color) {
+        this.textPane = textPane;
+
+        painter = new DefaultHighlighter.DefaultHighlightPainter(color);
+
+        textPane.addCaretListener(this);
+    }
+
+    /**
+     *  Highlights the brackets next to the caret once it moved
+     *
+     * @param e     the event describing the move
+     */
+    @Override
+    public void caretUpdate(CaretEvent e) {
+        refresh();
+    }
+
+    /**
+     * Moves the caret to the bracket matching the one next to it, on the same side
+     * of the bracket; nothing is done if there is no matched bracket next to the caret
+     */
+    public void jumpToMatch() {
+        int bracket = findBracket();
+
+        if(bracket < 0)
+            return;
+
+        int match = ((PieceTableDocument) textPane.getDocument()).matchBracket(bracket);
+
+        textPane.setCaretPosition(bracket == textPane.getCaretPosition() ? match : match + 1);
+    }
+
+    /**
+     * Highlights the brackets next to the caret again, e.g. once every highlight of
+     * the text pane was removed, or its document set again
+     */
+    public void refresh() {
+        Highlighter highlighter = textPane.getHighlighter();
+
+        if(tags != null) {
+            highlighter.removeHighlight(tags[0]);
+            highlighter.removeHighlight(tags[1]);
+            tags = null;
+        }
+
+        int bracket = findBracket();
+
+        if(bracket < 0)
+            return;
+
+        int match = ((PieceTableDocument) textPane.getDocument()).matchBracket(bracket);
+
+        try {
+            tags = new Object[] {
+                    highlighter.addHighlight(bracket, bracket + 1, painter),
+                    highlighter.addHighlight(match, match + 1, painter)
+            };
+        } catch(BadLocationException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     *  Returns the matched bracket next to the caret, if any.  Nothing is looked for
+     *  while text is selected.
+     *
+     * @return  the offset of the bracket; -1 if there is no matched bracket next to the caret
+     */
+    private int findBracket() {
+        if(!(textPane.getDocument() instanceof PieceTableDocument)
+                || textPane.getSelectionStart() != textPane.getSelectionEnd())
+            return -1;
+
+        PieceTableDocument document = (PieceTableDocument) textPane.getDocument();
+        int dot                     = textPane.getCaretPosition();
+
+        if(document.matchBracket(dot) >= 0)
+            return dot;
+
+        if(dot > 0 && document.matchBracket(dot - 1) >= 0)
+            return dot - 1;
+
+        return -1;
+    }
+}
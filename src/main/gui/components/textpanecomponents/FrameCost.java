@@ -0,0 +1,82 @@
+package main.gui.components.textpanecomponents;
+
+import java.awt.*;
+
+/**
+ * Counts the frames a component paints, how long they took and how much of the
+ * component they covered, so that the cost of repainting (e.g. of a text pane
+ * while typing, or while the caret blinks) can be measured.
+ *
+ * @author Justin Kocur
+ */
+public class FrameCost {
+    // The number of frames painted
+    private long frameCount;
+
+    // The number of pixels painted, over every frame
+    private long paintedArea;
+
+    // The time spent painting, over every frame (ns)
+    private long paintTime;
+
+    /**
+     *  Returns the number of frames painted since the counter was created (or reset)
+     *
+     * @return  the number of frames
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     *  Returns the number of pixels painted, over every frame
+     *
+     * @return  the area painted
+     */
+    public long getPaintedArea() {
+        return paintedArea;
+    }
+
+    /**
+     *  Returns the time spent painting, over every frame
+     *
+     * @return  the time spent painting (ns)
+     */
+    public long getPaintTime() {
+        return paintTime;
+    }
+
+    /**
+     *  Counts a frame
+     *
+     * @param time  the time it took to paint (ns)
+     * @param clip  the area painted
+     */
+    public void record(long time, Rectangle clip) {
+        frameCount++;
+        paintedArea += (long) clip.width * clip.height;
+        paintTime   += time;
+    }
+
+    /**
+     * Starts counting again from 0
+     */
+    public void reset() {
+        frameCount  = 0;
+        paintedArea = 0;
+        paintTime   = 0;
+    }
+
+    /**
+     *  Returns the counts, and the average cost of a frame
+     *
+     * @return  a summary of the counts
+     */
+    @Override
+    public String toString() {
+        long frames = Math.max(frameCount, 1);
+
+        return String.format("%d frames, %d us and %d pixels a frame", frameCount,
+                paintTime / frames / 1_000, paintedArea / frames);
+    }
+}
@@ -0,0 +1,149 @@
+package main.gui.components.textpanecomponents;
+
+import main.data.search.MatchList;
+
+import javax.swing.plaf.TextUI;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.LayeredHighlighter;
+import javax.swing.text.Position;
+import javax.swing.text.View;
+import java.awt.*;
+
+/**
+ * Highlights every occurrence of a searched-for phrase with a single highlight
+ * spanning the whole text.  Rather than adding one highlight per occurrence, the
+ * painter looks up the occurrences inside the part of the text being painted in
+ * the match list (by a binary search) when it is painted, so only the occurrences
+ * on the screen cost anything, however many there are.
+ *
+ * The selected occurrence (see 'MatchList.getSelected') is painted in its own color.
+ *
+ * @author Justin Kocur
+ */
+public class MatchHighlightPainter extends LayeredHighlighter.LayerPainter {
+    // The color to paint every occurrence but the selected one
+    private final Color matchColor;
+
+    // The occurrences to paint; null if none
+    private MatchList matches;
+
+    // True if the selected occurrence is painted in 'selectedColor', false if like the others
+    private boolean paintSelected;
+
+    // The color to paint the selected occurrence
+    private final Color selectedColor;
+
+    /**
+     *  Creates a painter that has no occurrences to paint yet
+     *
+     * @param matchColor        the color to paint the occurrences
+     * @param selectedColor     the color to paint the selected occurrence
+     */
+    public MatchHighlightPainter(Color matchColor, Color selectedColor) {
+        this.matchColor     = matchColor;
+        this.selectedColor  = selectedColor;
+    }
+
+    /**
+     *  Sets the occurrences to paint.  The list is read each time the text is
+     *  painted, so occurrences added later show up once the text is repainted.
+     *
+     * @param matches           the occurrences to paint; null if none
+     * @param paintSelected     true if the selected occurrence is painted in its own color
+     */
+    public void setMatches(MatchList matches, boolean paintSelected) {
+        this.matches        = matches;
+        this.paintSelected  = paintSelected;
+    }
+
+    /**
+     *  Paints the occurrences inside the area of the text being repainted (used if the
+     *  highlighter does not draw layered highlights)
+     *
+     * @param g         the graphics context
+     * @param p0        the start of the highlight
+     * @param p1        the end of the highlight
+     * @param bounds    the bounding box of the highlight
+     * @param c         the text component being painted
+     */
+    @Override
+    public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
+        Rectangle clip  = g.getClipBounds() != null ? g.getClipBounds() : c.getVisibleRect();
+        TextUI ui       = c.getUI();
+
+        // The part of the text inside the clip
+        int start   = Math.max(p0, ui.viewToModel2D(c, new Point(clip.x, clip.y), new Position.Bias[1]));
+        int end     = Math.min(p1, ui.viewToModel2D(c, new Point(clip.x + clip.width, clip.y + clip.height),
+                new Position.Bias[1]));
+
+        if(matches == null || start > end)
+            return;
+
+        for(int i = matches.firstEndingAfter(start); i < matches.size() && matches.get(i) < end; i++) {
+            try {
+                Rectangle r0 = ui.modelToView2D(c, matches.get(i), Position.Bias.Forward).getBounds();
+                Rectangle r1 = ui.modelToView2D(c, matches.getEnd(i), Position.Bias.Backward).getBounds();
+
+                g.setColor(getColor(i));
+
+                // One rectangle per line the occurrence is on
+                if(r0.y == r1.y) {
+                    g.fillRect(r0.x, r0.y, r1.x - r0.x, r0.height);
+                } else {
+                    g.fillRect(r0.x, r0.y, clip.x + clip.width - r0.x, r0.height);
+                    g.fillRect(clip.x, r1.y, r1.x - clip.x, r1.height);
+                }
+            } catch(BadLocationException ex) {
+                System.err.println(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     *  Paints the occurrences inside a view of the text being painted
+     *
+     * @param g         the graphics context
+     * @param offs0     the start of the part of the highlight inside the view
+     * @param offs1     the end of the part of the highlight inside the view
+     * @param bounds    the bounding box of the view
+     * @param c         the text component being painted
+     * @param view      the view being painted
+     * @return          the area that was painted over
+     */
+    @Override
+    public Shape paintLayer(Graphics g, int offs0, int offs1, Shape bounds, JTextComponent c, View view) {
+        Rectangle alloc = bounds instanceof Rectangle ? (Rectangle) bounds : bounds.getBounds();
+
+        if(matches == null)
+            return alloc;
+
+        // Occurrences starting before the view may end inside it
+        for(int i = matches.firstEndingAfter(offs0); i < matches.size() && matches.get(i) < offs1; i++) {
+            int start   = Math.max(offs0, matches.get(i));
+            int end     = Math.min(offs1, matches.getEnd(i));
+
+            try {
+                Shape shape = view.modelToView(start, Position.Bias.Forward, end, Position.Bias.Backward, bounds);
+                Rectangle r = shape instanceof Rectangle ? (Rectangle) shape : shape.getBounds();
+
+                g.setColor(getColor(i));
+                g.fillRect(r.x, r.y, r.width, r.height);
+            } catch(BadLocationException ex) {
+                System.err.println(ex.getMessage());
+            }
+        }
+
+        return alloc;
+    }
+
+    /**
+     *  Returns the color to paint an occurrence
+     *
+     * @param i     the position of the occurrence in the match list
+     * @return      the color of the occurrence
+     */
+    private Color getColor(int i) {
+        return paintSelected && i == matches.getSelected() ? selectedColor : matchColor;
+    }
+}
@@ -2,12 +2,19 @@ package main.gui.components.textpanecomponents;
 
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultCaret;
+import javax.swing.text.Document;
 import javax.swing.text.JTextComponent;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 
 /**
  * Based off of the DefaultCaret, this class modifies the interaction
@@ -22,15 +29,30 @@ import java.awt.geom.Rectangle2D;
  *      a new custom caret that can be modified in shape and
  *      color as needed.
  *
+ * The caret blinks on the timer of the DefaultCaret, which only repaints the
+ * area of the caret, as does moving the caret (its old and new areas).  Where
+ * the caret is drawn is worked out once and kept until the caret moves, the
+ * text changes or the text component is resized (see GeometryHandler), so
+ * painting the caret of an idle editor costs next to nothing.
+ *
  * @author Justin Kocur
  */
 public class TextCaret extends DefaultCaret {
+    // The space left above and below the caret, within the line (px)
+    private static final int MARGIN = 2;
+
+    // The width of the caret (px)
+    private static final int STROKE_WIDTH = 2;
+
+    // Draws the caret
+    private static final BasicStroke STROKE = new BasicStroke(STROKE_WIDTH);
+
+    // The area of the character the caret is drawn at; null if to be worked out again
+    private Rectangle caretBounds;
+
     // The color of the caret
     private Color caretColor;
 
-    // True if caret should be drawn, false if not
-    private boolean caretVisible;
-
     /* The component to which this caret belongs to.
        Used for accessing certain methods from the
        component for modified behavior. */
@@ -42,18 +64,17 @@ public class TextCaret extends DefaultCaret {
     // The selected text to move to a new location; null if none
     private String dragItem;
 
+    // Where the mouse is while dragging the selected text; null if not dragging
     private Point dragPoint;
 
-    // The last time the visibility of the caret was updated
-    private long lastBlinkTime;
+    // Forgets where the caret is drawn when it may have moved
+    private final GeometryHandler geometryHandler;
 
     /**
      *  Creates a new TextCaret instance.
-     *  Initially sets the caret visibility on, blink rate
-     *  to 500 (blink every 0.5 sec), and adds a new
-     *  ChangeListener that keeps the caret visible when
-     *  the text component is being updated (more specifically
-     *  when the caret state is changed).
+     *  Initially sets the blink rate to 500 (blink every
+     *  0.5 sec); the DefaultCaret keeps the caret visible
+     *  while it is being moved.
      *
      * @param component     text component that this caret class
      *                      belongs to
@@ -62,17 +83,10 @@ public class TextCaret extends DefaultCaret {
         this.component = component;
 
         caretColor      = Color.black;
-        caretVisible    = true;
-        lastBlinkTime   = System.currentTimeMillis();
+        geometryHandler = new GeometryHandler();
 
         setBlinkRate(500);
-
-        addChangeListener(new ChangeListener() {
-            @Override
-            public void stateChanged(ChangeEvent e) {
-                keepCaretVisible();
-            }
-        });
+        addChangeListener(geometryHandler);
     }
 
     /**
@@ -93,6 +107,35 @@ public class TextCaret extends DefaultCaret {
         this.caretColor = caretColor;
     }
 
+    /**
+     *  Stops forgetting where the caret is drawn when the text component changes
+     *
+     * @param c     the text component the caret is removed from
+     */
+    @Override
+    public void deinstall(JTextComponent c) {
+        super.deinstall(c);
+
+        c.removePropertyChangeListener(geometryHandler);
+        c.removeComponentListener(geometryHandler);
+        c.getDocument().removeDocumentListener(geometryHandler);
+    }
+
+    /**
+     *  Forgets where the caret is drawn whenever the text component changes in a
+     *  way that may move it
+     *
+     * @param c     the text component the caret is set on
+     */
+    @Override
+    public void install(JTextComponent c) {
+        super.install(c);
+
+        c.addPropertyChangeListener(geometryHandler);
+        c.addComponentListener(geometryHandler);
+        c.getDocument().addDocumentListener(geometryHandler);
+    }
+
     /**
      *  Allows for the un-selection of text
      *
@@ -116,7 +159,8 @@ public class TextCaret extends DefaultCaret {
             dragged = true;
             dragPoint = e.getPoint();
 
-            keepCaretVisible();
+            // Only the old and new places of the caret are repainted
+            repaintCaret();
         } else
             moveDot(position(e.getPoint()));
     }
@@ -168,6 +212,10 @@ public class TextCaret extends DefaultCaret {
      */
     @Override
     public void mouseReleased(MouseEvent e) {
+        // Clear the caret drawn at the mouse
+        if(dragged)
+            repaintCaret();
+
         if(dragItem != null && dragged) {
             try {
                 int pos         = position(e.getPoint());
@@ -193,53 +241,64 @@ public class TextCaret extends DefaultCaret {
         dragged = false;
         dragItem = null;
         dragPoint = null;
+
+        // The caret goes back from the mouse to the dot
+        caretBounds = null;
     }
 
     /**
-     *  Paints a new custom caret
+     *  Paints a new custom caret, unless blinked off
      *
      * @param g     Graphics content
      */
     @Override
     public void paint(Graphics g) {
-        damage(getBounds());
-
-        if(!isActive()) {
-            caretVisible = false;
+        if(!isVisible() && !dragged)
             return;
-        }
 
-        if(System.currentTimeMillis() - lastBlinkTime >= getBlinkRate()) {
-            caretVisible = !caretVisible;
-            lastBlinkTime = System.currentTimeMillis();
-        }
+        Rectangle r = getCaretBounds();
 
-        if(!caretVisible)
+        if(r == null)
             return;
 
+        Graphics2D g2d  = (Graphics2D) g;
+        Stroke stroke   = g2d.getStroke();
+        int lineX       = r.x - STROKE_WIDTH / 2 + 1;
+
+        g2d.setStroke(STROKE);
+        g2d.setColor(caretColor);
+        g2d.drawLine(lineX, r.y + MARGIN, lineX, r.y + r.height - MARGIN);
+        g2d.setStroke(stroke);
+    }
+
+    /**
+     *  Returns the area of the character the caret is drawn at (the one the mouse
+     *  is over while dragging the selected text), working it out if the caret may
+     *  have moved since it was last drawn
+     *
+     * @return  the area of the character; null if the text component is not laid out
+     */
+    private Rectangle getCaretBounds() {
+        if(caretBounds != null)
+            return caretBounds;
+
         try {
-            Rectangle2D r;
-            if(dragged)
-                r = component.modelToView2D(position(dragPoint));
-            else
-                r = component.modelToView2D(component.getCaretPosition());
-
-            int strW        = 2;
-            int margY       = 2;
-
-            Graphics2D g2d = (Graphics2D) g;
-            g2d.setStroke(new BasicStroke(strW));
-            g2d.setColor(caretColor);
-            g2d.drawLine((int) (r.getX() - strW / 2) + 1, (int) (r.getY() + margY),
-                    (int) (r.getX() - strW / 2) + 1, (int) (r.getY() + r.getHeight() - margY));
+            Rectangle2D r = component.modelToView2D(dragged ? position(dragPoint) : component.getCaretPosition());
+
+            if(r == null)
+                return null;
+
+            caretBounds = r.getBounds();
         } catch (BadLocationException e) {
             e.printStackTrace();
+            return null;
         }
-    }
 
-    private void keepCaretVisible() {
-        lastBlinkTime = System.currentTimeMillis();
-        caretVisible = true;
+        // The caret moved without the DefaultCaret knowing (e.g. the lines were wrapped anew): blink there from now on
+        if(!dragged && (caretBounds.y != y || caretBounds.height != height || Math.abs(caretBounds.x - x) > width))
+            damage(caretBounds);
+
+        return caretBounds;
     }
 
     private int position(Point pt) {
@@ -280,4 +339,97 @@ public class TextCaret extends DefaultCaret {
             return 0;
         return p - currentLine + 1;
     }
-}
\ No newline at end of file
+
+    /**
+     *  Repaints the caret where it was drawn last, and where it is to be drawn next
+     */
+    private void repaintCaret() {
+        if(caretBounds != null)
+            component.repaint(caretBounds.x - STROKE_WIDTH, caretBounds.y, 2 * STROKE_WIDTH + 1, caretBounds.height);
+
+        caretBounds = null;
+
+        Rectangle r = getCaretBounds();
+
+        if(r != null)
+            component.repaint(r.x - STROKE_WIDTH, r.y, 2 * STROKE_WIDTH + 1, r.height);
+    }
+
+    /**
+     * Forgets where the caret is drawn when the caret moves, the text changes, or
+     * the text component changes its size, font or document
+     */
+    private class GeometryHandler extends ComponentAdapter
+            implements ChangeListener, DocumentListener, PropertyChangeListener {
+        /**
+         *  Forgets where the caret is drawn once the attributes of the text changed
+         *
+         * @param e     the event describing the change
+         */
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            caretBounds = null;
+        }
+
+        /**
+         *  Forgets where the caret is drawn once the text component was resized,
+         *  which may wrap its lines anew
+         *
+         * @param e     the event describing the resize
+         */
+        @Override
+        public void componentResized(ComponentEvent e) {
+            caretBounds = null;
+        }
+
+        /**
+         *  Forgets where the caret is drawn once text was inserted
+         *
+         * @param e     the event describing the insertion
+         */
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            caretBounds = null;
+        }
+
+        /**
+         *  Forgets where the caret is drawn once the font or the document of the text
+         *  component changed, listening to the new document
+         *
+         * @param e     the event describing the change
+         */
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            if("document".equals(e.getPropertyName())) {
+                if(e.getOldValue() instanceof Document)
+                    ((Document) e.getOldValue()).removeDocumentListener(this);
+
+                if(e.getNewValue() instanceof Document)
+                    ((Document) e.getNewValue()).addDocumentListener(this);
+            }
+
+            if("document".equals(e.getPropertyName()) || "font".equals(e.getPropertyName()))
+                caretBounds = null;
+        }
+
+        /**
+         *  Forgets where the caret is drawn once text was removed
+         *
+         * @param e     the event describing the removal
+         */
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            caretBounds = null;
+        }
+
+        /**
+         *  Forgets where the caret is drawn once it moved
+         *
+         * @param e     the event describing the move
+         */
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            caretBounds = null;
+        }
+    }
+}
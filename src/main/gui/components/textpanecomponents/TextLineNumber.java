@@ -51,6 +51,11 @@ public class TextLineNumber extends JPanel
 
     private Color sepBorder;
 
+    //  The number of lines shown before the first line of the text component
+    //  (when it holds a window of a larger file)
+
+    private long lineOffset;
+
     //  Keep history information to reduce the number of times the component
     //  needs to be repainted
 
@@ -58,6 +63,11 @@ public class TextLineNumber extends JPanel
     private int lastHeight;
     private int lastLine;
 
+    //  True while a check of the height of the text is waiting to run,
+    //  so that many edits made at once (e.g. replacing all) only need one
+
+    private boolean updatePending;
+
     private HashMap<String, FontMetrics> fonts;
 
     /**
@@ -279,13 +289,37 @@ public class TextLineNumber extends JPanel
         setPreferredWidth();
     }
 
+    /**
+     *  Gets the number of lines shown before the first line of the text component
+     *
+     *  @return the number of lines before the first line of the text component
+     */
+    public long getLineOffset()
+    {
+        return lineOffset;
+    }
+
+    /**
+     *  Specify the number of lines before the first line of the text component,
+     *  for when it holds a window of a larger file. Default is 0.
+     *
+     *  @param lineOffset  the number of lines before the first line of the
+     *                     text component
+     */
+    public void setLineOffset(long lineOffset)
+    {
+        this.lineOffset = lineOffset;
+        setPreferredWidth();
+        repaint();
+    }
+
     /**
      *  Calculate the width needed to display the maximum line number
      */
     private void setPreferredWidth()
     {
         Element root = component.getDocument().getDefaultRootElement();
-        int lines = root.getElementCount();
+        long lines = root.getElementCount() + lineOffset;
         int digits = Math.max(String.valueOf(lines).length(), minimumDisplayDigits);
 
         //  Update sizes when number of digits in the line number changes
@@ -406,7 +440,7 @@ public class TextLineNumber extends JPanel
         Element line = root.getElement( index );
 
         if (line.getStartOffset() == rowStartOffset)
-            return String.valueOf(index + 1);
+            return String.valueOf(index + 1 + lineOffset);
         else
             return "";
     }
@@ -521,6 +555,11 @@ public class TextLineNumber extends JPanel
      */
     private void documentChanged()
     {
+        if (updatePending)
+            return;
+
+        updatePending = true;
+
         //  View of the component has not been updated at the time
         //  the DocumentEvent is fired
 
@@ -529,6 +568,8 @@ public class TextLineNumber extends JPanel
             @Override
             public void run()
             {
+                updatePending = false;
+
                 try
                 {
                     int endPos = component.getDocument().getLength();
@@ -0,0 +1,232 @@
+package main.gui.components.textpanecomponents.caretpos;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Finds where the words of a document start and end, for moving the caret (or
+ * the end of a selection) a word at a time and for selecting the word double
+ * clicked.  A "word" is one of:
+ *
+ *  - a run of letters, digits and underscores, which may hold a '.' between two
+ *    digits (so that a number like 3.14 is a single word);
+ *  - a run of the same character otherwise (e.g. spaces, or "==");
+ *  - a newline on its own.
+ *
+ * The text is read straight from the document through a Segment, a few characters
+ * at a time around the offset, and the kind of each character is looked up in a
+ * table built once: finding a boundary costs as much as the word is long, however
+ * long the text is.
+ *
+ * @author Justin Kocur
+ */
+public class WordBoundary {
+    // The kinds of characters (0 for the others)
+    private static final byte CLASS_NEWLINE = 2;
+    private static final byte CLASS_WORD    = 1;
+
+    // The kind of every character
+    private static final byte[] CLASSES = new byte[Character.MAX_VALUE + 1];
+
+    // The number of characters read from the document at a time
+    private static final int WINDOW_SIZE = 64;
+
+    static {
+        for(int c = 0; c <= Character.MAX_VALUE; c++) {
+            if(Character.isLetterOrDigit(c) || c == '_')
+                CLASSES[c] = CLASS_WORD;
+        }
+
+        CLASSES['\n'] = CLASS_NEWLINE;
+    }
+
+    // The document read
+    private final Document document;
+
+    // The characters read last, starting at 'windowStart'
+    private final Segment window;
+
+    // The offset in the document of the first character of the window
+    private int windowStart;
+
+    /**
+     *  Creates the finder of the words of a document, having read nothing yet
+     *
+     * @param document  the document
+     */
+    private WordBoundary(Document document) {
+        this.document = document;
+
+        window = new Segment();
+        window.setPartialReturn(true);
+    }
+
+    /**
+     *  Returns where the word after an offset ends (e.g. for Ctrl+Right)
+     *
+     * @param document  the document
+     * @param offset    the offset (e.g. of the caret)
+     * @return          the offset just past the word starting at the offset; the
+     *                  length of the document if the offset is at its end
+     */
+    public static int nextWordEnd(Document document, int offset) {
+        if(offset >= document.getLength())
+            return document.getLength();
+
+        return new WordBoundary(document).runEnd(offset);
+    }
+
+    /**
+     *  Returns where the word before an offset starts (e.g. for Ctrl+Left)
+     *
+     * @param document  the document
+     * @param offset    the offset (e.g. of the caret)
+     * @return          the offset of the first character of the word ending at the
+     *                  offset; 0 if the offset is at the start of the document
+     */
+    public static int previousWordStart(Document document, int offset) {
+        if(offset <= 0)
+            return 0;
+
+        return new WordBoundary(document).runStart(offset - 1);
+    }
+
+    /**
+     *  Returns the word at an offset (e.g. the one double clicked).  A word on
+     *  either side of the offset is preferred over another kind of run; at the end
+     *  of a line, the run before the offset is taken.
+     *
+     * @param document  the document
+     * @param offset    the offset (e.g. of the caret)
+     * @return          the start of the word in the upper 32 bits, its end in the
+     *                  lower 32 bits; both are the offset on an empty line
+     */
+    public static long wordAt(Document document, int offset) {
+        WordBoundary words  = new WordBoundary(document);
+        int length          = document.getLength();
+        int at              = -1;
+
+        if(offset < length && words.classAt(offset) == CLASS_WORD)
+            at = offset;
+        else if(offset > 0 && words.classAt(offset - 1) == CLASS_WORD)
+            at = offset - 1;
+        else if(offset < length && words.classAt(offset) != CLASS_NEWLINE)
+            at = offset;
+        else if(offset > 0 && words.classAt(offset - 1) != CLASS_NEWLINE)
+            at = offset - 1;
+
+        if(at < 0)
+            return ((long) offset << 32) | offset;
+
+        return ((long) words.runStart(at) << 32) | words.runEnd(at);
+    }
+
+    /**
+     *  Returns a character of the document, reading the window around it if it is
+     *  not in the window read last
+     *
+     * @param offset    the offset of the character; within the document
+     * @return          the character
+     */
+    private char charAt(int offset) {
+        int index = offset - windowStart;
+
+        if(index < 0 || index >= window.count) {
+            // Read a little on both sides, as the caller may be walking either way
+            int start = Math.max(0, offset - WINDOW_SIZE / 2);
+
+            try {
+                document.getText(start, Math.min(WINDOW_SIZE, document.getLength() - start), window);
+
+                // A partial read may stop short of the offset (at the end of a piece)
+                if(offset - start >= window.count) {
+                    start = offset;
+                    document.getText(start, Math.min(WINDOW_SIZE, document.getLength() - start), window);
+                }
+            } catch(BadLocationException ex) {
+                System.err.println(ex.getMessage());
+                return '\n';
+            }
+
+            windowStart = start;
+            index       = offset - start;
+        }
+
+        return window.array[window.offset + index];
+    }
+
+    /**
+     *  Returns the kind of a character of the document
+     *
+     * @param offset    the offset of the character; within the document
+     * @return          the kind of the character
+     */
+    private byte classAt(int offset) {
+        return CLASSES[charAt(offset)];
+    }
+
+    /**
+     *  Returns whether a '.' belongs to the number around it
+     *
+     * @param offset    the offset of the '.'
+     * @return          true if the '.' is between two digits
+     */
+    private boolean isDecimalPoint(int offset) {
+        return offset > 0 && offset + 1 < document.getLength()
+                && Character.isDigit(charAt(offset - 1)) && Character.isDigit(charAt(offset + 1));
+    }
+
+    /**
+     *  Returns whether a character belongs to the same run as another
+     *
+     * @param offset    the offset of the character
+     * @param first     the offset of a character of the run
+     * @return          true if the character continues the run
+     */
+    private boolean isSameRun(int offset, int first) {
+        byte kind = classAt(first);
+
+        switch(kind) {
+            case CLASS_WORD:
+                return classAt(offset) == CLASS_WORD || charAt(offset) == '.' && isDecimalPoint(offset);
+
+            case CLASS_NEWLINE:
+                return false;
+
+            default:
+                return charAt(offset) == charAt(first);
+        }
+    }
+
+    /**
+     *  Returns the offset just past the end of the run holding a character
+     *
+     * @param first     the offset of the character
+     * @return          the offset just past the last character of the run
+     */
+    private int runEnd(int first) {
+        int length  = document.getLength();
+        int end     = first + 1;
+
+        while(end < length && isSameRun(end, first))
+            end++;
+
+        return end;
+    }
+
+    /**
+     *  Returns the offset of the start of the run holding a character
+     *
+     * @param first     the offset of the character
+     * @return          the offset of the first character of the run
+     */
+    private int runStart(int first) {
+        int start = first;
+
+        while(start > 0 && isSameRun(start - 1, first))
+            start--;
+
+        return start;
+    }
+}